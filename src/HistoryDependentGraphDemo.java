@@ -1,6 +1,7 @@
 import automaton.builder.AlgorithmBuilder;
 import automaton.core.CoreProbabilisticAutomaton;
 import automaton.input.SimpleInputMessage;
+import automaton.probability.CachingHistoryProbabilityProvider;
 import automaton.probability.HistoryProbabilityProvider;
 import automaton.random.RandomProvider;
 import automaton.state.State;
@@ -136,7 +137,9 @@ private static List<String> names(List<State> states) {
 }
 
 public static void main(String[] args) {
-        HistoryProbabilityProvider provider = new GraphHistoryProbabilityProvider();
+        // Провайдер зависит только от двух последних состояний — результаты можно кэшировать
+        CachingHistoryProbabilityProvider provider =
+                new CachingHistoryProbabilityProvider(new GraphHistoryProbabilityProvider(), 2);
 
         System.out.println("=== Demo 1: N0 -> N1 -> N3 -> N11 (because N3 came from N1) ===");
         CoreProbabilisticAutomaton a1 = build(provider, new SequenceRandomProvider(0.10, 0.10, 0.99));
@@ -154,5 +157,7 @@ public static void main(String[] args) {
             System.out.println("Current: " + a2.getCurrentStateName()
                     + " | history: " + names(r.getVisitedStates()));
         }
+
+        System.out.println("\nProvider cache: " + provider);
     }
 }
@@ -1,13 +1,16 @@
 import automaton.builder.AlgorithmBuilder;
 import automaton.commands.Command;
-import automaton.commands.ClearNextStatesCommand;
+import automaton.commands.BeginTransitionOverlayCommand;
 import automaton.commands.ProbabilisticTransitionCommand;
 import automaton.context.Context;
+import automaton.context.MemoryKey;
+import automaton.context.TransitionOverlay;
 import automaton.core.CoreProbabilisticAutomaton;
 import automaton.input.InputMessage;
 import automaton.input.SimpleInputMessage;
 import automaton.output.OutputMessage;
 import automaton.output.SimpleOutputMessage;
+import automaton.probability.TransitionDistribution;
 import automaton.random.RandomProvider;
 import automaton.state.State;
 
@@ -38,6 +41,9 @@ public class TesterAgentStyleDemo {
         }
     }
 
+    /** Счётчик сканирований: примитивный слот памяти, без хеширования строки и упаковки int. */
+    static final MemoryKey<Long> SCAN_COUNT = MemoryKey.ofLong("scanCount");
+
     // Команды демонстрации (здесь разработчик подключает свою логику)
 
     /** Отправляет сообщение в outbox с информацией о состоянии и дополнительными атрибутами. */
@@ -71,13 +77,15 @@ public class TesterAgentStyleDemo {
             context.put("targets", targets);
             context.put("bugFound", bugFound);
 
-            int scans = (int) context.memoryView().getOrDefault("scanCount", 0);
-            context.put("scanCount", scans + 1);
+            context.addLong(SCAN_COUNT, 1);
         }
         @Override public String getName() { return "scan_ui"; }
     }
 
-    /** На основе памяти (bugFound/targets) подготавливает следующие состояния для вероятностного перехода. */
+    /**
+     * На основе памяти (bugFound/targets) подготавливает следующие состояния для вероятностного перехода.
+     * Переходы пишутся в overlay сессии, общий State не изменяется.
+     */
     static class BuildScanTransitionsCommand implements Command {
         private final State scan;
         private final State choose;
@@ -92,6 +100,7 @@ public class TesterAgentStyleDemo {
         }
 
         @Override public void execute(Context context, State currentState) {
+            TransitionOverlay overlay = context.getTransitionOverlay();
             boolean bugFound = Boolean.TRUE.equals(context.get("bugFound"));
             Object t = context.get("targets");
             int targetsSize = 0;
@@ -99,19 +108,19 @@ public class TesterAgentStyleDemo {
 
             // Если найден баг — переходим в REPORT с вероятностью 1
             if (bugFound) {
-                currentState.addNextState(report, 1.0);
+                overlay.add(report, 1.0);
                 return;
             }
 
             // Если есть цели — обычно выбираем цель, иногда ждём (моделируем задержки)
             if (targetsSize > 0) {
-                currentState.addNextState(choose, 0.85);
-                currentState.addNextState(wait, 0.15);
+                overlay.add(choose, 0.85);
+                overlay.add(wait, 0.15);
                 return;
             }
 
             // Нет целей — ждём, затем повторное сканирование
-            currentState.addNextState(wait, 1.0);
+            overlay.add(wait, 1.0);
         }
 
         @Override public String getName() { return "build_scan_transitions"; }
@@ -152,34 +161,16 @@ public class TesterAgentStyleDemo {
     }
 
     /**
-     * Шаг проверки после клика.
+     * Шаг проверки после клика: выбирает шаблон переходов VERIFY.
      *
      * Атрибут входного сообщения: clickOk (boolean)
-     * - если false — переходим в REPORT (1.0)
-     * - если true — обычно возвращаемся в SCAN_UI, иногда в REPORT (моделируем случайное обнаружение бага)
+     * - если false — шаблон 0: REPORT (1.0)
+     * - если true — шаблон 1: обычно возвращаемся в SCAN_UI, иногда в REPORT (моделируем случайное обнаружение бага)
      */
-    static class BuildVerifyTransitionsCommand implements Command {
-        private final State scan;
-        private final State report;
-        BuildVerifyTransitionsCommand(State scan, State report) {
-            this.scan = scan;
-            this.report = report;
-        }
-
-        @Override public void execute(Context context, State currentState) {
-            InputMessage msg = context.getInputMessage();
-            Map<String, Object> attrs = msg != null ? msg.getAttributes() : Collections.emptyMap();
-            boolean ok = Boolean.TRUE.equals(attrs.get("clickOk"));
-
-            if (!ok) {
-                currentState.addNextState(report, 1.0);
-                return;
-            }
-            currentState.addNextState(scan, 0.9);
-            currentState.addNextState(report, 0.1);
-        }
-
-        @Override public String getName() { return "build_verify_transitions"; }
+    static int verifyGuard(Context context, State currentState) {
+        InputMessage msg = context.getInputMessage();
+        Map<String, Object> attrs = msg != null ? msg.getAttributes() : Collections.emptyMap();
+        return Boolean.TRUE.equals(attrs.get("clickOk")) ? 1 : 0;
     }
 
     /** Отправляет отчёт, используя данные из памяти. */
@@ -187,7 +178,7 @@ public class TesterAgentStyleDemo {
         @Override public void execute(Context context, State currentState) {
             Map<String, Object> attrs = new HashMap<>();
             attrs.put("state", currentState.getName());
-            attrs.put("scanCount", context.get("scanCount"));
+            attrs.put("scanCount", context.getLong(SCAN_COUNT));
             attrs.put("bugFound", context.get("bugFound"));
             attrs.put("selectedTarget", context.get("selectedTarget"));
             context.emit(new SimpleOutputMessage("REPORT", attrs));
@@ -218,13 +209,19 @@ public class TesterAgentStyleDemo {
         // Общий детерминированный источник случайности для стабильности вывода
         RandomProvider provider = new SequenceRandomProvider(0.10, 0.95, 0.20, 0.05, 0.50, 0.99);
 
+        // Статические переходы задаются один раз при сборке модели;
+        // динамические строятся в overlay сессии (SCAN_UI) или выбираются из шаблонов (VERIFY)
+        CHOOSE_TARGET.addNextState(CLICK, 1.0);
+        CLICK.addNextState(VERIFY, 1.0);
+        WAIT.addNextState(SCAN_UI, 1.0);
+
         // Алгоритмы ("tick")
 
         // SCAN_UI
         AlgorithmBuilder scan = new AlgorithmBuilder("tick")
                 .addCommand(new EmitCommand("LOG", Map.of("event", "scan_enter")))
                 .addCommand(new ScanUiCommand())
-                .addCommand(new ClearNextStatesCommand())
+                .addCommand(new BeginTransitionOverlayCommand())
                 .addCommand(new BuildScanTransitionsCommand(SCAN_UI, CHOOSE_TARGET, WAIT, REPORT))
                 .addCommand(new ProbabilisticTransitionCommand(provider));
         SCAN_UI.addAlgorithm("tick", scan.build());
@@ -233,8 +230,6 @@ public class TesterAgentStyleDemo {
         AlgorithmBuilder choose = new AlgorithmBuilder("tick")
                 .addCommand(new EmitCommand("LOG", Map.of("event", "choose_enter")))
                 .addCommand(new ChooseTargetCommand())
-                .clearNextStates()
-                .addExistingState(CLICK, false, 1.0)
                 .probabilisticTransition(provider);
         CHOOSE_TARGET.addAlgorithm("tick", choose.build());
 
@@ -242,25 +237,21 @@ public class TesterAgentStyleDemo {
         AlgorithmBuilder click = new AlgorithmBuilder("tick")
                 .addCommand(new EmitCommand("LOG", Map.of("event", "click_enter")))
                 .addCommand(new ClickCommand())
-                .clearNextStates()
-                .addExistingState(VERIFY, false, 1.0)
                 .probabilisticTransition(provider);
         CLICK.addAlgorithm("tick", click.build());
 
         // VERIFY
         AlgorithmBuilder verify = new AlgorithmBuilder("tick")
                 .addCommand(new EmitCommand("LOG", Map.of("event", "verify_enter")))
-                .addCommand(new ClearNextStatesCommand())
-                .addCommand(new BuildVerifyTransitionsCommand(SCAN_UI, REPORT))
-                .addCommand(new ProbabilisticTransitionCommand(provider));
+                .transitionTemplate(TesterAgentStyleDemo::verifyGuard, provider,
+                        TransitionDistribution.of(REPORT),
+                        TransitionDistribution.builder().add(SCAN_UI, 0.9).add(REPORT, 0.1).build());
         VERIFY.addAlgorithm("tick", verify.build());
 
         // WAIT
         AlgorithmBuilder wait = new AlgorithmBuilder("tick")
                 .addCommand(new EmitCommand("LOG", Map.of("event", "wait_enter")))
                 .addCommand(new WaitCommand())
-                .clearNextStates()
-                .addExistingState(SCAN_UI, false, 1.0)
                 .probabilisticTransition(provider);
         WAIT.addAlgorithm("tick", wait.build());
 
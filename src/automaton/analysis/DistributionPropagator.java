@@ -0,0 +1,147 @@
+package automaton.analysis;
+
+import automaton.compiled.CompiledModel;
+
+import java.util.stream.IntStream;
+
+/**
+ * Точное распределение по состояниям через k шагов: вектор вероятностей умножается
+ * на матрицу переходов k раз ({@code next[t] = sum p(s → t) * cur[s]}).
+ *
+ * Матрица хранится транспонированной (по целям: входящие рёбра, источники по возрастанию),
+ * поэтому каждая строка результата — одна непрерывная свёртка без записи в чужие ячейки.
+ * Строки делятся на блоки, блоки одного шага считаются параллельно в общем пуле fork/join;
+ * между шагами два буфера меняются местами, новые массивы не выделяются.
+ *
+ * Конечные состояния и тупики (без исходящих переходов) поглощающие: масса в них остаётся,
+ * как в {@link CompiledModel#sample(int, double)}. Экземпляр неизменяем и потокобезопасен.
+ */
+public final class DistributionPropagator {
+
+    /** Строк в блоке параллельного умножения. */
+    private static final int BLOCK = 4096;
+
+    private final CompiledModel model;
+    private final boolean parallel;
+
+    /** Транспонированный CSR: входящие рёбра состояния t — [inOffsets[t], inOffsets[t + 1]). */
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final double[] inProbabilities;
+
+    public DistributionPropagator(CompiledModel model) {
+        this(model, true);
+    }
+
+    /** @param parallel считать блоки строк параллельно */
+    public DistributionPropagator(CompiledModel model, boolean parallel) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        this.model = model;
+        this.parallel = parallel;
+
+        int n = model.getStateCount();
+        int[] offsets = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            if (isAbsorbing(s)) {
+                offsets[s + 1]++;
+            } else {
+                for (int e = model.rowStart(s); e < model.rowEnd(s); e++) offsets[model.target(e) + 1]++;
+            }
+        }
+        for (int t = 0; t < n; t++) offsets[t + 1] += offsets[t];
+
+        int[] fill = new int[n];
+        int[] sources = new int[offsets[n]];
+        double[] probabilities = new double[offsets[n]];
+        // Обход источников по возрастанию: внутри строки источники упорядочены
+        for (int s = 0; s < n; s++) {
+            if (isAbsorbing(s)) {
+                int at = offsets[s] + fill[s]++;
+                sources[at] = s;
+                probabilities[at] = 1.0;
+                continue;
+            }
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) {
+                int t = model.target(e);
+                int at = offsets[t] + fill[t]++;
+                sources[at] = s;
+                probabilities[at] = model.probability(e);
+            }
+        }
+        this.inOffsets = offsets;
+        this.inSources = sources;
+        this.inProbabilities = probabilities;
+    }
+
+    private boolean isAbsorbing(int state) {
+        return model.isFinal(state) || model.outDegree(state) == 0;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /** Распределение через steps шагов из состояния start. */
+    public double[] propagate(int start, int steps) {
+        double[] initial = new double[model.getStateCount()];
+        initial[start] = 1.0;
+        return propagate(initial, steps);
+    }
+
+    /**
+     * Распределение через steps шагов из начального распределения initial
+     * (массив не изменяется).
+     */
+    public double[] propagate(double[] initial, int steps) {
+        int n = model.getStateCount();
+        if (initial.length != n) {
+            throw new IllegalArgumentException("Expected a distribution over " + n + " states but got "
+                    + initial.length);
+        }
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps must be >= 0: " + steps);
+        }
+        double[] current = initial.clone();
+        double[] next = new double[n];
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        for (int k = 0; k < steps; k++) {
+            double[] cur = current;
+            double[] out = next;
+            if (parallel && blocks > 1) {
+                IntStream.range(0, blocks).parallel().forEach(b -> multiplyRows(cur, out, b * BLOCK,
+                        Math.min(n, (b + 1) * BLOCK)));
+            } else {
+                multiplyRows(cur, out, 0, n);
+            }
+            current = out;
+            next = cur;
+        }
+        return current;
+    }
+
+    private void multiplyRows(double[] current, double[] next, int from, int to) {
+        for (int t = from; t < to; t++) {
+            double sum = 0.0;
+            for (int e = inOffsets[t]; e < inOffsets[t + 1]; e++) {
+                sum += inProbabilities[e] * current[inSources[e]];
+            }
+            next[t] = sum;
+        }
+    }
+
+    /** Суммарная вероятность конечных состояний в распределении. */
+    public double finalMass(double[] distribution) {
+        double sum = 0.0;
+        for (int s = 0; s < distribution.length; s++) {
+            if (model.isFinal(s)) sum += distribution[s];
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "DistributionPropagator{" + model + ", parallel=" + parallel + '}';
+    }
+}
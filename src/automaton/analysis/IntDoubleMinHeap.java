@@ -0,0 +1,76 @@
+package automaton.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Двоичная min-куча элементов int с ключами double в двух плоских массивах
+ * (без упаковки и без объектов-узлов). Повторная вставка элемента допускается —
+ * поиск путей отбрасывает устаревшие записи при извлечении.
+ */
+final class IntDoubleMinHeap {
+
+    private int[] items;
+    private double[] keys;
+    private int size;
+
+    IntDoubleMinHeap(int capacity) {
+        items = new int[Math.max(capacity, 16)];
+        keys = new double[items.length];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void push(int item, double key) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        // Просеивание вверх
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            items[i] = items[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        items[i] = item;
+        keys[i] = key;
+    }
+
+    /** Ключ минимального элемента. */
+    double peekKey() {
+        return keys[0];
+    }
+
+    /** Извлекает минимальный элемент. */
+    int poll() {
+        int top = items[0];
+        int lastItem = items[--size];
+        double lastKey = keys[size];
+        // Просеивание вниз
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (lastKey <= keys[child]) break;
+            items[i] = items[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        items[i] = lastItem;
+        keys[i] = lastKey;
+        return top;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
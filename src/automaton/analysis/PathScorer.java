@@ -0,0 +1,160 @@
+package automaton.analysis;
+
+import automaton.compiled.CompiledModel;
+import automaton.learning.ByteNameTable;
+import automaton.learning.TraceReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Оценка правдоподобия путей по скомпилированной модели в логарифмической шкале:
+ * {@code log p(s0 → s1 → ... → sn) = sum log p(si → si+1)}.
+ *
+ * Сумма логарифмов не уходит в машинный ноль на длинных сессиях, в отличие от
+ * произведения вероятностей. Вероятность ребра ищется двоичным поиском по строке
+ * {@link CompiledModel}, без карт и без выделения памяти на шаг.
+ *
+ * Путь, в котором есть переход вне модели или неизвестное состояние, получает
+ * {@link Double#NEGATIVE_INFINITY}. Путь из одного состояния — 0 (log 1).
+ * Экземпляр неизменяем и потокобезопасен.
+ */
+public final class PathScorer {
+
+    private final CompiledModel model;
+
+    public PathScorer(CompiledModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        this.model = model;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /** Логарифм вероятности пути из id состояний. */
+    public double logLikelihood(int[] path) {
+        return logLikelihood(path, 0, path.length);
+    }
+
+    /** Логарифм вероятности пути path[from .. to). */
+    public double logLikelihood(int[] path, int from, int to) {
+        int n = model.getStateCount();
+        double sum = 0.0;
+        for (int i = from; i + 1 < to; i++) {
+            int s = path[i];
+            int t = path[i + 1];
+            if (s < 0 || s >= n || t < 0 || t >= n) return Double.NEGATIVE_INFINITY;
+            sum += logProbability(s, t);
+        }
+        return sum;
+    }
+
+    /** Логарифм вероятности пути из имён состояний. */
+    public double logLikelihood(List<String> path) {
+        double sum = 0.0;
+        int previous = -1;
+        for (String name : path) {
+            int id = model.stateId(name);
+            if (id < 0) return Double.NEGATIVE_INFINITY;
+            if (previous >= 0) sum += logProbability(previous, id);
+            previous = id;
+        }
+        return sum;
+    }
+
+    /** log p(from → to); -∞, если перехода нет. */
+    public double logProbability(int from, int to) {
+        int edge = model.edgeIndex(from, to);
+        return edge >= 0 ? Math.log(model.probability(edge)) : Double.NEGATIVE_INFINITY;
+    }
+
+    /** Оценки пакета путей (в порядке путей). */
+    public double[] scoreAll(int[][] paths) {
+        double[] scores = new double[paths.length];
+        for (int i = 0; i < paths.length; i++) scores[i] = logLikelihood(paths[i]);
+        return scores;
+    }
+
+    /** Оценки пакета путей, вычисленные параллельно в общем пуле fork/join. */
+    public double[] scoreAllParallel(int[][] paths) {
+        double[] scores = new double[paths.length];
+        IntStream.range(0, paths.length).parallel().forEach(i -> scores[i] = logLikelihood(paths[i]));
+        return scores;
+    }
+
+    /**
+     * Оценивает каждую трассу файлов (формат — {@link TraceReader}) параллельно по кускам.
+     *
+     * @return оценки трасс в порядке файлов и строк
+     */
+    public double[] scoreFiles(List<Path> files, int threads, long shardBytes) throws IOException {
+        // Имена модели интернируются заранее; разбор только ищет их по байтам
+        ByteNameTable names = new ByteNameTable();
+        int[] modelIds = new int[model.getStateCount()];
+        Arrays.fill(modelIds, -1);
+        for (int s = 0; s < modelIds.length; s++) {
+            int id = names.intern(model.getStateName(s));
+            // При повторе имени — первое состояние, как в stateId и в реестре
+            if (modelIds[id] < 0) modelIds[id] = s;
+        }
+        List<ShardScorer> readers = TraceReader.readPerShard(
+                TraceReader.split(files, shardBytes), threads, () -> new ShardScorer(names, modelIds));
+
+        int total = 0;
+        for (ShardScorer reader : readers) total += reader.count;
+        double[] scores = new double[total];
+        int at = 0;
+        for (ShardScorer reader : readers) {
+            System.arraycopy(reader.scores, 0, scores, at, reader.count);
+            at += reader.count;
+        }
+        return scores;
+    }
+
+    /** Читатель куска: накапливает сумму логарифмов текущей трассы. */
+    private final class ShardScorer extends TraceReader {
+        private final ByteNameTable names;
+        private final int[] modelIds;
+        private double[] scores = new double[256];
+        private int count;
+        private int previous = -1;
+        private double sum;
+
+        ShardScorer(ByteNameTable names, int[] modelIds) {
+            this.names = names;
+            this.modelIds = modelIds;
+        }
+
+        @Override
+        protected void onState(byte[] name, int length) {
+            // Таблица имён только читается, поэтому общая для всех потоков
+            int found = names.find(name, length);
+            int id = found >= 0 ? modelIds[found] : -1;
+            if (id < 0) {
+                sum = Double.NEGATIVE_INFINITY;
+            } else if (previous >= 0) {
+                sum += logProbability(previous, id);
+            }
+            previous = id;
+        }
+
+        @Override
+        protected void onTraceEnd() {
+            if (count == scores.length) scores = Arrays.copyOf(scores, count * 2);
+            scores[count++] = sum;
+            sum = 0.0;
+            previous = -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PathScorer{" + model + '}';
+    }
+}
@@ -0,0 +1,244 @@
+package automaton.analysis;
+
+import automaton.compiled.CompiledModel;
+import automaton.state.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Поиск наиболее вероятных путей по скомпилированной модели.
+ *
+ * Вероятность пути — произведение вероятностей переходов, поэтому самый вероятный путь —
+ * кратчайший по весам {@code -log p} (неотрицательным), и его находит алгоритм Дейкстры.
+ * Очередь — примитивная двоичная куча с ленивым удалением устаревших записей.
+ *
+ * k наиболее вероятных путей перечисляются тем же поиском, в котором каждое состояние
+ * может быть извлечено из очереди до k раз: j-е извлечение состояния даёт j-й по вероятности
+ * путь до него. Как и в алгоритме Эппштейна, пути могут содержать циклы (это разные сценарии
+ * сессии); пути выдаются по убыванию вероятности.
+ *
+ * Путь заканчивается в цели; из конечных состояний (сессия завершена) и из цели поиск
+ * не продолжается. Переходы с нулевой вероятностью не используются.
+ * Экземпляр неизменяем и потокобезопасен.
+ */
+public final class PathSearch {
+
+    /** Цель «любое конечное состояние». */
+    public static final int ANY_FINAL = -1;
+
+    private final CompiledModel model;
+
+    /** -log p по рёбрам в порядке CSR. */
+    private final double[] costs;
+
+    public PathSearch(CompiledModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        this.model = model;
+        this.costs = new double[model.getEdgeCount()];
+        for (int e = 0; e < costs.length; e++) {
+            costs[e] = -Math.log(model.probability(e));
+        }
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    private boolean isTarget(int state, int target) {
+        return target == ANY_FINAL ? model.isFinal(state) : state == target;
+    }
+
+    private void checkState(int state, String what) {
+        if (state < 0 || state >= model.getStateCount()) {
+            throw new IllegalArgumentException(what + " id " + state + " out of range [0, " + model.getStateCount() + ")");
+        }
+    }
+
+    private int idOf(State state) {
+        if (state.getRegistry() == null || state.getRegistry() != model.getRegistry()) {
+            throw new IllegalArgumentException("State " + state.getName() + " does not belong to the compiled model");
+        }
+        return state.getId();
+    }
+
+    /** Самый вероятный путь из from до любого конечного состояния или null. */
+    public ScoredPath mostLikelyPath(State from) {
+        return mostLikelyPath(idOf(from), ANY_FINAL);
+    }
+
+    /** Самый вероятный путь из from в target или null. */
+    public ScoredPath mostLikelyPath(State from, State target) {
+        return mostLikelyPath(idOf(from), idOf(target));
+    }
+
+    /**
+     * Самый вероятный путь из from в target ({@link #ANY_FINAL} — в любое конечное состояние).
+     *
+     * @return путь или null, если цель недостижима
+     */
+    public ScoredPath mostLikelyPath(int from, int target) {
+        checkState(from, "from");
+        if (target != ANY_FINAL) checkState(target, "target");
+        int n = model.getStateCount();
+        double[] distance = new double[n];
+        int[] previous = new int[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+
+        IntDoubleMinHeap heap = new IntDoubleMinHeap(64);
+        distance[from] = 0.0;
+        heap.push(from, 0.0);
+        while (!heap.isEmpty()) {
+            double d = heap.peekKey();
+            int s = heap.poll();
+            // Устаревшая запись: состояние уже извлечено с меньшим расстоянием
+            if (d > distance[s]) continue;
+            if (isTarget(s, target)) {
+                return new ScoredPath(model, tracePath(previous, s), -d);
+            }
+            if (model.isFinal(s)) continue;
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) {
+                double nd = d + costs[e];
+                int t = model.target(e);
+                if (nd < distance[t]) {
+                    distance[t] = nd;
+                    previous[t] = s;
+                    heap.push(t, nd);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Вероятность самого вероятного пути из каждого состояния в target (0 — цель недостижима).
+     * Обратная Дейкстра от цели; пути не проходят через другие конечные состояния.
+     */
+    public double[] bestPathProbabilitiesTo(int target) {
+        checkState(target, "target");
+        int n = model.getStateCount();
+        int m = model.getEdgeCount();
+        // Обратный граф: входящие рёбра каждого состояния
+        int[] inOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) inOffsets[model.target(e) + 1]++;
+        for (int t = 0; t < n; t++) inOffsets[t + 1] += inOffsets[t];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        int[] inEdges = new int[m];
+        for (int s = 0; s < n; s++) {
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) inEdges[fill[model.target(e)]++] = e;
+        }
+        int[] sourceOf = new int[m];
+        for (int s = 0; s < n; s++) {
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) sourceOf[e] = s;
+        }
+
+        double[] distance = new double[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        distance[target] = 0.0;
+        IntDoubleMinHeap heap = new IntDoubleMinHeap(64);
+        heap.push(target, 0.0);
+        while (!heap.isEmpty()) {
+            double d = heap.peekKey();
+            int t = heap.poll();
+            if (d > distance[t]) continue;
+            for (int i = inOffsets[t]; i < inOffsets[t + 1]; i++) {
+                int e = inEdges[i];
+                int s = sourceOf[e];
+                if (model.isFinal(s) && s != target) continue;
+                double nd = d + costs[e];
+                if (nd < distance[s]) {
+                    distance[s] = nd;
+                    heap.push(s, nd);
+                }
+            }
+        }
+        double[] probabilities = new double[n];
+        for (int s = 0; s < n; s++) probabilities[s] = Math.exp(-distance[s]);
+        return probabilities;
+    }
+
+    private static int[] tracePath(int[] previous, int end) {
+        int length = 1;
+        for (int s = end; previous[s] >= 0; s = previous[s]) length++;
+        int[] path = new int[length];
+        for (int s = end, i = length - 1; i >= 0; s = previous[s], i--) path[i] = s;
+        return path;
+    }
+
+    /** k наиболее вероятных путей из from до любого конечного состояния. */
+    public List<ScoredPath> mostLikelyPaths(State from, int k) {
+        return mostLikelyPaths(idOf(from), ANY_FINAL, k);
+    }
+
+    /**
+     * k наиболее вероятных путей из from в target ({@link #ANY_FINAL} — в любое конечное
+     * состояние) по убыванию вероятности; меньше k, если путей меньше.
+     */
+    public List<ScoredPath> mostLikelyPaths(int from, int target, int k) {
+        checkState(from, "from");
+        if (target != ANY_FINAL) checkState(target, "target");
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be >= 1: " + k);
+        }
+        int n = model.getStateCount();
+        int[] pops = new int[n];
+
+        // Записи путей: состояние, предыдущая запись и стоимость; куча хранит номера записей
+        int[] entryState = new int[64];
+        int[] entryParent = new int[64];
+        double[] entryCost = new double[64];
+        int entries = 0;
+
+        IntDoubleMinHeap heap = new IntDoubleMinHeap(64);
+        entryState[0] = from;
+        entryParent[0] = -1;
+        entryCost[0] = 0.0;
+        heap.push(entries++, 0.0);
+
+        List<ScoredPath> result = new ArrayList<>(k);
+        while (!heap.isEmpty() && result.size() < k) {
+            int entry = heap.poll();
+            int s = entryState[entry];
+            if (pops[s] >= k) continue;
+            pops[s]++;
+            double cost = entryCost[entry];
+            if (isTarget(s, target)) {
+                result.add(new ScoredPath(model, traceEntries(entryState, entryParent, entry), -cost));
+                continue;
+            }
+            if (model.isFinal(s)) continue;
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) {
+                int t = model.target(e);
+                if (pops[t] >= k || costs[e] == Double.POSITIVE_INFINITY) continue;
+                if (entries == entryState.length) {
+                    entryState = Arrays.copyOf(entryState, entries * 2);
+                    entryParent = Arrays.copyOf(entryParent, entries * 2);
+                    entryCost = Arrays.copyOf(entryCost, entries * 2);
+                }
+                entryState[entries] = t;
+                entryParent[entries] = entry;
+                entryCost[entries] = cost + costs[e];
+                heap.push(entries, entryCost[entries]);
+                entries++;
+            }
+        }
+        return result;
+    }
+
+    private static int[] traceEntries(int[] entryState, int[] entryParent, int entry) {
+        int length = 0;
+        for (int x = entry; x >= 0; x = entryParent[x]) length++;
+        int[] path = new int[length];
+        for (int x = entry, i = length - 1; x >= 0; x = entryParent[x], i--) path[i] = entryState[x];
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "PathSearch{" + model + '}';
+    }
+}
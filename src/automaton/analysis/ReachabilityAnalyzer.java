@@ -0,0 +1,160 @@
+package automaton.analysis;
+
+import automaton.compiled.CompiledModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Структурный анализ графа переходов скомпилированной модели:
+ * достижимость из начального состояния (обход в ширину), компоненты сильной связности
+ * (итеративный алгоритм Тарьяна) и классы-ловушки.
+ *
+ * Оба обхода работают на плоских массивах с явными стеками, без рекурсии, поэтому
+ * выдерживают модели из миллионов состояний и длинные цепочки.
+ *
+ * Из конечных состояний сессия не продолжается, поэтому их исходящие рёбра не учитываются.
+ * Тупик — нефинальное состояние без переходов ({@code selectNextState} молча оставляет сессию
+ * в нём навсегда). Класс-ловушка — достижимая компонента сильной связности без рёбер наружу
+ * и без конечных состояний: попав в неё, сессия никогда не завершится (тупики — частный
+ * случай таких классов).
+ */
+public final class ReachabilityAnalyzer {
+
+    private ReachabilityAnalyzer() {
+        // Утилитарный класс
+    }
+
+    /** Анализирует модель относительно начального состояния initial. */
+    public static ReachabilityReport analyze(CompiledModel model, int initial) {
+        int n = model.getStateCount();
+        if (initial < 0 || initial >= n) {
+            throw new IllegalArgumentException("initial id " + initial + " out of range [0, " + n + ")");
+        }
+        boolean[] reachable = reachableFrom(model, initial);
+        int[] component = new int[n];
+        int components = stronglyConnectedComponents(model, component);
+
+        // Компоненты с рёбрами наружу и компоненты с конечными состояниями
+        boolean[] leaves = new boolean[components];
+        boolean[] hasFinal = new boolean[components];
+        for (int s = 0; s < n; s++) {
+            int c = component[s];
+            if (model.isFinal(s)) {
+                hasFinal[c] = true;
+                continue;
+            }
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) {
+                if (component[model.target(e)] != c) {
+                    leaves[c] = true;
+                    break;
+                }
+            }
+        }
+        boolean[] trapping = new boolean[components];
+        for (int s = 0; s < n; s++) {
+            int c = component[s];
+            if (reachable[s] && !leaves[c] && !hasFinal[c]) trapping[c] = true;
+        }
+        return new ReachabilityReport(model, initial, reachable, component, components, trapping);
+    }
+
+    /** Состояния, достижимые из initial (обход в ширину; из конечных состояний не продолжается). */
+    public static boolean[] reachableFrom(CompiledModel model, int initial) {
+        int n = model.getStateCount();
+        boolean[] seen = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        seen[initial] = true;
+        queue[tail++] = initial;
+        while (head < tail) {
+            int s = queue[head++];
+            if (model.isFinal(s)) continue;
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) {
+                int t = model.target(e);
+                if (!seen[t]) {
+                    seen[t] = true;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Компоненты сильной связности (итеративный Тарьян). component[s] — номер компоненты;
+     * номера идут в обратном топологическом порядке (сток получает меньший номер).
+     *
+     * @return число компонент
+     */
+    public static int stronglyConnectedComponents(CompiledModel model, int[] component) {
+        int n = model.getStateCount();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        Arrays.fill(component, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int sp = 0;
+        // Явный стек вызовов: вершина и позиция следующего ребра
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        int csp = 0;
+        int nextIndex = 0;
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            index[root] = low[root] = nextIndex++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            callNode[csp] = root;
+            callEdge[csp++] = model.rowStart(root);
+
+            while (csp > 0) {
+                int v = callNode[csp - 1];
+                int e = callEdge[csp - 1];
+                int end = model.isFinal(v) ? model.rowStart(v) : model.rowEnd(v);
+                if (e < end) {
+                    callEdge[csp - 1] = e + 1;
+                    int w = model.target(e);
+                    if (index[w] < 0) {
+                        index[w] = low[w] = nextIndex++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callNode[csp] = w;
+                        callEdge[csp++] = model.rowStart(w);
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                // Все рёбра v просмотрены
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        component[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+                csp--;
+                if (csp > 0) {
+                    int u = callNode[csp - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+            }
+        }
+        return components;
+    }
+
+    /** Имена состояний по id. */
+    static List<String> names(CompiledModel model, int[] ids, int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) names.add(model.getStateName(ids[i]));
+        return names;
+    }
+}
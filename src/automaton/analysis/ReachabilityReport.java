@@ -0,0 +1,158 @@
+package automaton.analysis;
+
+import automaton.compiled.CompiledModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат {@link ReachabilityAnalyzer#analyze(CompiledModel, int)}: недостижимые состояния,
+ * тупики и классы-ловушки. Неизменяем.
+ */
+public final class ReachabilityReport {
+
+    private final CompiledModel model;
+    private final int initial;
+    private final boolean[] reachable;
+    private final int[] component;
+    private final int componentCount;
+    private final int reachableCount;
+    private final int[] unreachable;
+    private final int[] deadEnds;
+    private final List<int[]> trappingClasses;
+
+    ReachabilityReport(CompiledModel model, int initial, boolean[] reachable, int[] component,
+                       int componentCount, boolean[] trapping) {
+        this.model = model;
+        this.initial = initial;
+        this.reachable = reachable;
+        this.component = component;
+        this.componentCount = componentCount;
+        int n = model.getStateCount();
+
+        int reachableCount = 0;
+        int deadEndCount = 0;
+        int[] classSize = new int[componentCount];
+        for (int s = 0; s < n; s++) {
+            if (reachable[s]) reachableCount++;
+            if (isDeadEnd(s)) deadEndCount++;
+            if (trapping[component[s]]) classSize[component[s]]++;
+        }
+        this.reachableCount = reachableCount;
+        this.unreachable = new int[n - reachableCount];
+        this.deadEnds = new int[deadEndCount];
+        int[][] classes = new int[componentCount][];
+        for (int c = 0; c < componentCount; c++) {
+            if (trapping[c]) classes[c] = new int[classSize[c]];
+        }
+        int[] fill = new int[componentCount];
+        for (int s = 0, u = 0, d = 0; s < n; s++) {
+            if (!reachable[s]) unreachable[u++] = s;
+            if (isDeadEnd(s)) deadEnds[d++] = s;
+            int c = component[s];
+            if (trapping[c]) classes[c][fill[c]++] = s;
+        }
+        List<int[]> trappingClasses = new ArrayList<>();
+        for (int[] members : classes) {
+            if (members != null) trappingClasses.add(members);
+        }
+        this.trappingClasses = trappingClasses;
+    }
+
+    private boolean isDeadEnd(int s) {
+        return !model.isFinal(s) && model.outDegree(s) == 0;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    public int getInitialState() {
+        return initial;
+    }
+
+    public boolean isReachable(int state) {
+        return reachable[state];
+    }
+
+    public int getReachableCount() {
+        return reachableCount;
+    }
+
+    /** Номер компоненты сильной связности состояния. */
+    public int componentOf(int state) {
+        return component[state];
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /** id состояний, недостижимых из начального, по возрастанию. */
+    public int[] getUnreachable() {
+        return unreachable.clone();
+    }
+
+    /** id нефинальных состояний без переходов (достижимых и нет) по возрастанию. */
+    public int[] getDeadEnds() {
+        return deadEnds.clone();
+    }
+
+    /** Достижимые классы-ловушки (id по возрастанию в каждом), включая тупики. */
+    public List<int[]> getTrappingClasses() {
+        List<int[]> copy = new ArrayList<>(trappingClasses.size());
+        for (int[] members : trappingClasses) copy.add(members.clone());
+        return copy;
+    }
+
+    public List<String> getUnreachableNames() {
+        return ReachabilityAnalyzer.names(model, unreachable, unreachable.length);
+    }
+
+    public List<String> getDeadEndNames() {
+        return ReachabilityAnalyzer.names(model, deadEnds, deadEnds.length);
+    }
+
+    public List<List<String>> getTrappingClassNames() {
+        List<List<String>> names = new ArrayList<>(trappingClasses.size());
+        for (int[] members : trappingClasses) {
+            names.add(ReachabilityAnalyzer.names(model, members, members.length));
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /** Нет ни недостижимых состояний, ни тупиков, ни ловушек. */
+    public boolean isClean() {
+        return unreachable.length == 0 && deadEnds.length == 0 && trappingClasses.isEmpty();
+    }
+
+    /** Список проблем по одной на строку (пустой, если {@link #isClean()}). */
+    public List<String> getProblems() {
+        List<String> problems = new ArrayList<>();
+        if (unreachable.length > 0) {
+            problems.add(unreachable.length + " state(s) unreachable from "
+                    + model.getStateName(initial) + ": " + limit(getUnreachableNames()));
+        }
+        if (deadEnds.length > 0) {
+            problems.add(deadEnds.length + " non-final state(s) without transitions: " + limit(getDeadEndNames()));
+        }
+        for (List<String> members : getTrappingClassNames()) {
+            problems.add("trapping class without final states: " + limit(members));
+        }
+        return problems;
+    }
+
+    private static String limit(List<String> names) {
+        int max = 10;
+        if (names.size() <= max) return names.toString();
+        return names.subList(0, max) + " and " + (names.size() - max) + " more";
+    }
+
+    @Override
+    public String toString() {
+        return "ReachabilityReport{states=" + model.getStateCount() + ", reachable=" + reachableCount
+                + ", components=" + componentCount + ", unreachable=" + unreachable.length
+                + ", deadEnds=" + deadEnds.length + ", trappingClasses=" + trappingClasses.size() + '}';
+    }
+}
@@ -0,0 +1,61 @@
+package automaton.analysis;
+
+import automaton.compiled.CompiledModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Путь по скомпилированной модели с его вероятностью. Неизменяем. */
+public final class ScoredPath {
+
+    private final CompiledModel model;
+    private final int[] states;
+    private final double logProbability;
+
+    ScoredPath(CompiledModel model, int[] states, double logProbability) {
+        this.model = model;
+        this.states = states;
+        this.logProbability = logProbability;
+    }
+
+    /** id состояний пути (копия). */
+    public int[] getStates() {
+        return states.clone();
+    }
+
+    /** Имена состояний пути. */
+    public List<String> getStateNames() {
+        List<String> names = new ArrayList<>(states.length);
+        for (int s : states) names.add(model.getStateName(s));
+        return names;
+    }
+
+    /** Число переходов в пути. */
+    public int length() {
+        return states.length - 1;
+    }
+
+    public double getLogProbability() {
+        return logProbability;
+    }
+
+    public double getProbability() {
+        return Math.exp(logProbability);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ScoredPath && Arrays.equals(states, ((ScoredPath) o).states);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(states);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" -> ", getStateNames()) + " (p=" + getProbability() + ')';
+    }
+}
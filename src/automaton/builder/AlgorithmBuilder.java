@@ -2,6 +2,7 @@ package automaton.builder;
 
 import automaton.commands.*;
 import automaton.probability.HistoryProbabilityProvider;
+import automaton.probability.TransitionDistribution;
 import automaton.random.RandomProvider;
 import java.util.*;
 
@@ -31,6 +32,19 @@ public class AlgorithmBuilder {
         return addCommand(new AddExistingStateWithProbabilityCommand(state, probability));
     }
 
+    /**
+     * Начинает динамические переходы сессии: в отличие от {@link #clearNextStates()},
+     * общий State не изменяется, переходы пишутся в overlay контекста.
+     */
+    public AlgorithmBuilder beginOverlay() {
+        return addCommand(new BeginTransitionOverlayCommand());
+    }
+
+    /** Добавляет переход к существующему состоянию в overlay сессии (после {@link #beginOverlay()}). */
+    public AlgorithmBuilder addOverlayState(automaton.state.State state, double probability) {
+        return addCommand(new AddOverlayTransitionCommand(state, probability));
+    }
+
     public AlgorithmBuilder transitionTo(int index) {
         return addCommand(new TransitionCommand(index));
     }
@@ -72,6 +86,16 @@ public class AlgorithmBuilder {
         return addCommand(new HistoryBasedTransitionCommand(provider, randomProvider));
     }
 
+    /**
+     * Условный переход по шаблонам: распределения собираются заранее,
+     * guard на каждом шаге выбирает одно из них по индексу.
+     */
+    public AlgorithmBuilder transitionTemplate(TransitionTemplateCommand.Guard guard,
+                                               RandomProvider provider,
+                                               TransitionDistribution... templates) {
+        return addCommand(new TransitionTemplateCommand(guard, provider, templates));
+    }
+
 
     public List<Command> build() {
         System.out.println("Built algorithm '" + algorithmName + "' with " + commands.size() + " commands");
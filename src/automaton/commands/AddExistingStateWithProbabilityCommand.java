@@ -1,6 +1,7 @@
 package automaton.commands;
 
 import automaton.context.Context;
+import automaton.core.AutomatonLog;
 import automaton.state.State;
 
 /**
@@ -25,8 +26,20 @@ public class AddExistingStateWithProbabilityCommand implements Command {
     @Override
     public void execute(Context context, State currentState) {
         currentState.addNextState(targetState, probability);
-        System.out.println("  -> Add existing next state: " + targetState.getName() +
-                " (probability: " + probability + ")");
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("  -> Add existing next state: " + targetState.getName() +
+                    " (probability: " + probability + ")");
+        }
+    }
+
+    /** Целевое состояние перехода. */
+    public State getTargetState() {
+        return targetState;
+    }
+
+    /** Вес перехода. */
+    public double getProbability() {
+        return probability;
     }
 
     @Override
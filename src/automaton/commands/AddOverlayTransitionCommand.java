@@ -0,0 +1,47 @@
+package automaton.commands;
+
+import automaton.context.Context;
+import automaton.core.AutomatonLog;
+import automaton.state.State;
+
+/**
+ * Добавляет переход к существующему состоянию в overlay сессии
+ * (см. {@link BeginTransitionOverlayCommand}), не изменяя общий {@link State}.
+ */
+public class AddOverlayTransitionCommand implements Command {
+
+    private final State targetState;
+    private final double probability;
+
+    public AddOverlayTransitionCommand(State targetState, double probability) {
+        if (targetState == null) {
+            throw new IllegalArgumentException("targetState is null");
+        }
+        this.targetState = targetState;
+        this.probability = probability;
+    }
+
+    @Override
+    public void execute(Context context, State currentState) {
+        context.getTransitionOverlay().add(targetState, probability);
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("  -> Add overlay next state: " + targetState.getName() +
+                    " (probability: " + probability + ")");
+        }
+    }
+
+    /** Целевое состояние перехода. */
+    public State getTargetState() {
+        return targetState;
+    }
+
+    /** Вес перехода. */
+    public double getProbability() {
+        return probability;
+    }
+
+    @Override
+    public String getName() {
+        return "add_overlay_transition_" + targetState.getName();
+    }
+}
@@ -1,6 +1,7 @@
 package automaton.commands;
 
 import automaton.context.Context;
+import automaton.core.AutomatonLog;
 import automaton.state.State;
 
 public class AddStateWithProbabilityCommand implements Command {
@@ -18,7 +19,9 @@ public class AddStateWithProbabilityCommand implements Command {
     public void execute(Context context, State currentState) {
         State newState = new State(stateName, isFinal);
         currentState.addNextState(newState, probability);
-        System.out.println("  -> Add next state: " + stateName + " (probability: " + probability + ")");
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("  -> Add next state: " + stateName + " (probability: " + probability + ")");
+        }
     }
 
     @Override
@@ -0,0 +1,25 @@
+package automaton.commands;
+
+import automaton.context.Context;
+import automaton.core.AutomatonLog;
+import automaton.state.State;
+
+/**
+ * Начинает новый набор динамических переходов сессии для текущего состояния.
+ *
+ * Аналог {@link ClearNextStatesCommand}, но общий {@link State} не изменяется:
+ * последующие {@link AddOverlayTransitionCommand} и пользовательские команды пишут
+ * переходы в {@link automaton.context.TransitionOverlay} контекста.
+ */
+public class BeginTransitionOverlayCommand implements Command {
+    @Override
+    public void execute(Context context, State currentState) {
+        if (AutomatonLog.isEnabled()) System.out.println("  -> Begin transition overlay");
+        context.getTransitionOverlay().begin(currentState);
+    }
+
+    @Override
+    public String getName() {
+        return "begin_transition_overlay";
+    }
+}
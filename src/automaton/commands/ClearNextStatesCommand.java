@@ -1,12 +1,13 @@
 package automaton.commands;
 
 import automaton.context.Context;
+import automaton.core.AutomatonLog;
 import automaton.state.State;
 
 public class ClearNextStatesCommand implements Command {
     @Override
     public void execute(Context context, State currentState) {
-        System.out.println("  -> Clear next states");
+        if (AutomatonLog.isEnabled()) System.out.println("  -> Clear next states");
         currentState.clearNextStates();
     }
 
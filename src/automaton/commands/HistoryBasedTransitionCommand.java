@@ -1,8 +1,12 @@
 package automaton.commands;
 
 import automaton.context.Context;
+import automaton.context.TransitionOverlay;
+import automaton.core.AutomatonLog;
 import automaton.input.InputMessage;
 import automaton.probability.HistoryProbabilityProvider;
+import automaton.probability.HistorySamplerProvider;
+import automaton.probability.TransitionDistribution;
 import automaton.random.JavaRandomProvider;
 import automaton.random.RandomProvider;
 import automaton.state.State;
@@ -36,67 +40,98 @@ public class HistoryBasedTransitionCommand implements Command {
 
     @Override
     public void execute(Context context, State currentState) {
-        List<State> nextStates = currentState.getNextStates();
-
-        if (nextStates.isEmpty()) {
-            System.out.println("  -> History-based transition: no next states, staying in " + currentState.getName());
+        // Живые представления вместо копий: провайдер читает их только во время вызова.
+        // Пока overlay сессии активен для состояния, кандидаты берутся из него.
+        TransitionOverlay overlay = context.getTransitionOverlay();
+        List<State> nextStates = overlay.isActiveFor(currentState)
+                ? overlay.targetsView()
+                : currentState.nextStatesView();
+        int n = nextStates.size();
+
+        if (n == 0) {
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("  -> History-based transition: no next states, staying in " + currentState.getName());
+            }
             return;
         }
 
-        List<State> history = context.getStateHistory();
+        List<State> history = context.historyView();
         InputMessage input = context.getInputMessage();
 
+        if (probabilityProvider instanceof HistorySamplerProvider) {
+            transitionBySampler((HistorySamplerProvider) probabilityProvider, context, history, input, nextStates);
+            return;
+        }
+
         double[] raw = probabilityProvider.computeProbabilities(history, input, nextStates);
-        if (raw == null || raw.length != nextStates.size()) {
+        if (raw == null || raw.length != n) {
             throw new IllegalStateException(
                     "HistoryProbabilityProvider returned invalid probabilities: expected length " +
-                            nextStates.size() + " but got " + (raw == null ? "null" : raw.length)
+                            n + " but got " + (raw == null ? "null" : raw.length)
             );
         }
 
-        // Нормализуем вероятности
+        // Нормализуем вероятности на лету, без промежуточного массива
         double sum = 0.0;
         for (double v : raw) {
             if (v > 0.0) {
                 sum += v;
             }
         }
-        if (sum <= 0.0) {
-            // Если все вероятности нулевые или отрицательные, используем равномерное распределение
-            sum = nextStates.size();
-            raw = new double[nextStates.size()];
-            for (int i = 0; i < raw.length; i++) {
-                raw[i] = 1.0;
-            }
-        }
-
-        double[] probs = new double[raw.length];
-        for (int i = 0; i < raw.length; i++) {
-            probs[i] = Math.max(0.0, raw[i]) / sum;
-        }
+        // Если все вероятности нулевые или отрицательные, используем равномерное распределение
+        boolean uniform = sum <= 0.0;
 
         // Выбираем следующее состояние
         double r = randomProvider.nextUnit();
         double cumulative = 0.0;
-        State chosen = nextStates.get(nextStates.size() - 1); // Запасной вариант
-        for (int i = 0; i < probs.length; i++) {
-            cumulative += probs[i];
+        State chosen = nextStates.get(n - 1); // Запасной вариант
+        for (int i = 0; i < n; i++) {
+            cumulative += uniform ? 1.0 / n : Math.max(0.0, raw[i]) / sum;
             if (r <= cumulative) {
                 chosen = nextStates.get(i);
                 break;
             }
         }
 
+        // Отладочная информация строится до перехода: переход снимает overlay сессии
+        List<String> probInfo = null;
+        if (AutomatonLog.isEnabled()) {
+            probInfo = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                double p = uniform ? 1.0 / n : Math.max(0.0, raw[i]) / sum;
+                probInfo.add(nextStates.get(i).getName() + "=" + p);
+            }
+        }
+
         context.setState(chosen);
 
-        // Подготавливаем отладочную информацию
-        List<String> probInfo = new ArrayList<>();
-        for (int i = 0; i < nextStates.size(); i++) {
-            probInfo.add(nextStates.get(i).getName() + "=" + probs[i]);
+        if (probInfo != null) {
+            System.out.println("  -> History-based probabilistic transition to: " + chosen.getName());
+            System.out.println("    Computed probabilities: " + probInfo);
         }
+    }
 
-        System.out.println("  -> History-based probabilistic transition to: " + chosen.getName());
-        System.out.println("    Computed probabilities: " + probInfo);
+    /** Выбор по готовому (например, закэшированному) нормализованному распределению. */
+    private void transitionBySampler(HistorySamplerProvider provider,
+                                     Context context,
+                                     List<State> history,
+                                     InputMessage input,
+                                     List<State> nextStates) {
+        TransitionDistribution sampler = provider.samplerFor(history, input, nextStates);
+        int n = nextStates.size();
+        if (sampler == null || sampler.size() != n) {
+            throw new IllegalStateException(
+                    "HistorySamplerProvider returned invalid distribution: expected size " +
+                            n + " but got " + (sampler == null ? "null" : sampler.size())
+            );
+        }
+        State chosen = nextStates.get(sampler.sampleIndex(randomProvider.nextUnit()));
+        context.setState(chosen);
+
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("  -> History-based probabilistic transition to: " + chosen.getName());
+            System.out.println("    Cached probabilities: " + sampler);
+        }
     }
 
     @Override
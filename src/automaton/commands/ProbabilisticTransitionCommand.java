@@ -1,5 +1,7 @@
 package automaton.commands;
 import automaton.context.Context;
+import automaton.context.TransitionOverlay;
+import automaton.core.AutomatonLog;
 import automaton.state.State;
 import automaton.random.RandomProvider;
 import automaton.random.JavaRandomProvider;
@@ -19,13 +21,31 @@ public class ProbabilisticTransitionCommand implements Command {
     @Override
     public void execute(Context context, State currentState) {
         if (currentState == null) return;
-        if (!currentState.getNextStates().isEmpty()) {
+        TransitionOverlay overlay = context.getTransitionOverlay();
+        if (overlay.isActiveFor(currentState)) {
+            // Динамические переходы сессии имеют приоритет над статическими
+            if (overlay.size() > 0) {
+                if (AutomatonLog.isEnabled()) System.out.println("    Overlay: " + overlay);
+                State nextState = overlay.select(provider.nextUnit());
+                context.setState(nextState);
+                if (AutomatonLog.isEnabled()) {
+                    System.out.println("  -> Probabilistic transition to: " + nextState.getName());
+                }
+            } else if (AutomatonLog.isEnabled()) {
+                System.out.println("  -> Stay in current state: " + currentState.getName());
+            }
+            return;
+        }
+        if (currentState.getNextStateCount() > 0) {
             State nextState = currentState.selectNextState(provider);
             context.setState(nextState);
-            System.out.println("  -> Probabilistic transition to: " + nextState.getName());
-            Map<State, Double> probabilities = currentState.getTransitionProbabilities();
-            if (!probabilities.isEmpty()) System.out.println("    Probabilities: " + probabilities);
-        } else {
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("  -> Probabilistic transition to: " + nextState.getName());
+                // Карта вероятностей нужна только для лога — не строим её при выключенном выводе
+                Map<State, Double> probabilities = currentState.getTransitionProbabilities();
+                if (!probabilities.isEmpty()) System.out.println("    Probabilities: " + probabilities);
+            }
+        } else if (AutomatonLog.isEnabled()) {
             System.out.println("  -> Stay in current state: " + currentState.getName());
         }
     }
@@ -1,6 +1,8 @@
 package automaton.commands;
 
 import automaton.context.Context;
+import automaton.context.TransitionOverlay;
+import automaton.core.AutomatonLog;
 import automaton.state.State;
 import java.util.*;
 
@@ -13,28 +15,40 @@ public class TransitionCommand implements Command {
 
     @Override
     public void execute(Context context, State currentState) {
-        List<State> nextStates = currentState.getNextStates();
-        if (nextStates.isEmpty()) {
-            System.out.println("  -> No next states, staying in: " + currentState.getName());
+        // Пока overlay сессии активен для состояния, индекс относится к его переходам
+        TransitionOverlay overlay = context.getTransitionOverlay();
+        boolean useOverlay = overlay.isActiveFor(currentState);
+        int n = useOverlay ? overlay.size() : currentState.getNextStateCount();
+        if (n == 0) {
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("  -> No next states, staying in: " + currentState.getName());
+            }
             return;
         }
 
         int idx = stateIndex;
         if (stateIndex == -1) { // Маркер: последний
-            idx = nextStates.size() - 1;
+            idx = n - 1;
         } else if (stateIndex == -2) { // Маркер: первый
             idx = 0;
         }
 
-        if (idx >= 0 && idx < nextStates.size()) {
-            State nextState = nextStates.get(idx);
+        if (idx >= 0 && idx < n) {
+            State nextState = useOverlay ? overlay.get(idx) : currentState.getNextState(idx);
             context.setState(nextState);
-            System.out.println("  -> Deterministic transition to: " + nextState.getName());
-        } else {
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("  -> Deterministic transition to: " + nextState.getName());
+            }
+        } else if (AutomatonLog.isEnabled()) {
             System.out.println("  -> Error: invalid state index " + stateIndex);
         }
     }
 
+    /** Индекс перехода в списке; -2 — первый, -1 — последний. */
+    public int getStateIndex() {
+        return stateIndex;
+    }
+
     @Override
     public String getName() {
         return "transition_to_" + stateIndex;
@@ -0,0 +1,86 @@
+package automaton.commands;
+
+import automaton.context.Context;
+import automaton.core.AutomatonLog;
+import automaton.probability.TransitionDistribution;
+import automaton.random.JavaRandomProvider;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Условный переход по заранее собранным шаблонам.
+ *
+ * Если «динамические» переходы на деле выбираются из небольшого фиксированного набора
+ * (например, {@code {REPORT:1}} или {@code {SCAN:0.9, REPORT:0.1}} в зависимости от условия),
+ * распределения собираются один раз при сборке модели, а на шаге guard только выбирает
+ * одно из них по индексу. Переходы состояния не очищаются и не перестраиваются.
+ */
+public class TransitionTemplateCommand implements Command {
+
+    /** Выбирает номер шаблона для текущего шага. */
+    @FunctionalInterface
+    public interface Guard {
+        /**
+         * @return индекс шаблона или отрицательное число, чтобы остаться в текущем состоянии
+         */
+        int select(Context context, State currentState);
+    }
+
+    private final Guard guard;
+    private final TransitionDistribution[] templates;
+    private final RandomProvider provider;
+
+    public TransitionTemplateCommand(Guard guard, TransitionDistribution... templates) {
+        this(guard, new JavaRandomProvider(), templates);
+    }
+
+    public TransitionTemplateCommand(Guard guard, RandomProvider provider, TransitionDistribution... templates) {
+        if (guard == null) {
+            throw new IllegalArgumentException("guard is null");
+        }
+        if (templates == null || templates.length == 0) {
+            throw new IllegalArgumentException("At least one transition template is required");
+        }
+        for (TransitionDistribution t : templates) {
+            if (t == null) throw new IllegalArgumentException("Transition template is null");
+        }
+        this.guard = guard;
+        this.templates = templates.clone();
+        this.provider = provider != null ? provider : new JavaRandomProvider();
+    }
+
+    @Override
+    public void execute(Context context, State currentState) {
+        int index = guard.select(context, currentState);
+        if (index < 0) {
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("  -> Template transition: guard kept state " + currentState.getName());
+            }
+            return;
+        }
+        if (index >= templates.length) {
+            throw new IllegalStateException("Guard selected template " + index
+                    + " but only " + templates.length + " are defined");
+        }
+        TransitionDistribution template = templates[index];
+        State nextState = template.sample(provider.nextUnit());
+        context.setState(nextState);
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("  -> Template transition #" + index + " " + template + " to: " + nextState.getName());
+        }
+    }
+
+    /** Только для чтения: шаблоны в порядке индексов guard. */
+    public List<TransitionDistribution> getTemplates() {
+        return Collections.unmodifiableList(Arrays.asList(templates));
+    }
+
+    @Override
+    public String getName() {
+        return "transition_template";
+    }
+}
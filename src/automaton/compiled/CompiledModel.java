@@ -0,0 +1,651 @@
+package automaton.compiled;
+
+import automaton.commands.AddExistingStateWithProbabilityCommand;
+import automaton.commands.AddOverlayTransitionCommand;
+import automaton.commands.AddStateWithProbabilityCommand;
+import automaton.commands.BeginTransitionOverlayCommand;
+import automaton.commands.ClearNextStatesCommand;
+import automaton.commands.Command;
+import automaton.commands.HistoryBasedTransitionCommand;
+import automaton.commands.ProbabilisticTransitionCommand;
+import automaton.commands.TransitionCommand;
+import automaton.commands.TransitionTemplateCommand;
+import automaton.probability.TransitionDistribution;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Скомпилированная таблица переходов модели в формате CSR (compressed sparse row).
+ *
+ * Строка s — исходящие переходы состояния с id s из {@link StateRegistry}:
+ * цели и нормализованные вероятности лежат в плоских массивах
+ * {@code targets[rowStart(s) .. rowEnd(s))} и {@code probabilities[...]}.
+ * Такие таблицы читаются без карт и упаковки и подходят для аналитики (оценка путей,
+ * распространение распределений), обучения весов и массовой симуляции.
+ *
+ * {@link #compile(StateRegistry, String)} строит строки по командам одного алгоритма —
+ * распределение, по которому действительно идёт шаг этого алгоритма: статические переходы
+ * ({@link State#nextStatesView()}) с учётом очистки и добавления командами, overlay,
+ * шаблон или детерминированный переход. Эту модель используют оценка путей, распространение
+ * распределений, поиск путей и обучение весов.
+ *
+ * {@link #compile(StateRegistry)} объединяет статические переходы и цели команд всех
+ * алгоритмов; повторная цель учитывается один раз (первое объявление). Такая строка верна
+ * для достижимости, но её вероятности могут не совпадать ни с одним алгоритмом.
+ *
+ * Строки, вероятности которых не описывают шаг точно, помечаются {@link #isApproximate(int)}:
+ * объединение разных распределений, шаблон с несколькими распределениями, переход по истории,
+ * цели вне реестра, статические переходы, которые меняет другой алгоритм, и собственные
+ * команды, о переходах которых компиляция ничего не знает.
+ *
+ * Веса строки нормализуются так же, как в {@link State}: неположительные считаются нулевыми,
+ * при нулевой сумме — равномерно.
+ *
+ * Экземпляр неизменяем. {@link #withProbabilities(double[])} создаёт новый снимок
+ * с той же структурой и другими вероятностями.
+ */
+public final class CompiledModel {
+
+    private final StateRegistry registry;
+    private final String[] names;
+    private final boolean[] finalStates;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] probabilities;
+    private final double[] cumulative;
+
+    /** Цели строки, отсортированные по id, и соответствующие им индексы рёбер — для edgeIndex. */
+    private final int[] sortedTargets;
+    private final int[] sortedEdges;
+
+    /** id по имени для моделей без реестра (обученных по трассам, прочитанных из файла); иначе null. */
+    private final Map<String, Integer> idsByName;
+
+    /** Строки, вероятности которых лишь приближают шаг (см. описание класса). */
+    private final boolean[] approximate;
+    private final int approximateCount;
+
+    private CompiledModel(StateRegistry registry, String[] names, boolean[] finalStates,
+                          int[] offsets, int[] targets, double[] probabilities,
+                          int[] sortedTargets, int[] sortedEdges, Map<String, Integer> idsByName,
+                          boolean[] approximate) {
+        this.registry = registry;
+        this.names = names;
+        this.finalStates = finalStates;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.probabilities = probabilities;
+        this.sortedTargets = sortedTargets;
+        this.sortedEdges = sortedEdges;
+        this.idsByName = idsByName;
+        this.approximate = approximate;
+        int count = 0;
+        for (boolean a : approximate) if (a) count++;
+        this.approximateCount = count;
+        this.cumulative = new double[probabilities.length];
+        for (int s = 0; s < names.length; s++) {
+            double acc = 0.0;
+            for (int e = offsets[s]; e < offsets[s + 1]; e++) {
+                acc += probabilities[e];
+                cumulative[e] = acc;
+            }
+        }
+    }
+
+    /**
+     * Компилирует все состояния реестра, объединяя переходы всех алгоритмов. Подходит для
+     * достижимости; строки, где алгоритмы задают разные распределения, помечаются
+     * {@link #isApproximate(int)}. Для вероятностей используйте
+     * {@link #compile(StateRegistry, String)}.
+     *
+     * Цели, не зарегистрированные в этом реестре, пропускаются (зарегистрируйте их заранее,
+     * например через {@link StateRegistry#registerReachable(State)}).
+     */
+    public static CompiledModel compile(StateRegistry registry) {
+        return compile(registry, null);
+    }
+
+    /**
+     * Компилирует все состояния реестра по командам алгоритма algorithm: строка состояния —
+     * распределение, по которому идёт шаг этого алгоритма. У состояния без алгоритма строка
+     * пуста (шаг его не сдвигает). Цели вне реестра пропускаются, а строка помечается
+     * {@link #isApproximate(int)}.
+     *
+     * @param algorithm имя алгоритма; null — объединение всех алгоритмов, как {@link #compile(StateRegistry)}
+     */
+    public static CompiledModel compile(StateRegistry registry, String algorithm) {
+        List<State> states = registry.getStates();
+        int n = states.size();
+        String[] names = new String[n];
+        boolean[] finalStates = new boolean[n];
+        boolean[] approximate = new boolean[n];
+        int[] offsets = new int[n + 1];
+
+        RowBuilder builder = new RowBuilder(registry);
+        Row row = new Row();
+        int[] targets = new int[16];
+        double[] probabilities = new double[16];
+        int edgeCount = 0;
+
+        for (int s = 0; s < n; s++) {
+            State state = states.get(s);
+            names[s] = state.getName();
+            finalStates[s] = state.isFinal();
+
+            if (algorithm != null) {
+                List<Command> commands = state.getAlgorithm(algorithm);
+                row.clear();
+                approximate[s] = commands != null && !builder.build(state, commands, row);
+            } else {
+                approximate[s] = !unionRow(builder, state, row);
+            }
+
+            int rowSize = row.size;
+            if (edgeCount + rowSize > targets.length) {
+                int capacity = Math.max(targets.length * 2, edgeCount + rowSize);
+                targets = Arrays.copyOf(targets, capacity);
+                probabilities = Arrays.copyOf(probabilities, capacity);
+            }
+            normaliseRange(row.weights, 0, rowSize);
+            System.arraycopy(row.targets, 0, targets, edgeCount, rowSize);
+            System.arraycopy(row.weights, 0, probabilities, edgeCount, rowSize);
+            edgeCount += rowSize;
+            offsets[s + 1] = edgeCount;
+        }
+        return create(registry, names, finalStates, offsets,
+                Arrays.copyOf(targets, edgeCount), Arrays.copyOf(probabilities, edgeCount), approximate);
+    }
+
+    /**
+     * Объединённая строка: статические переходы, затем цели команд всех алгоритмов.
+     *
+     * @return true, если строка совпадает с распределением каждого алгоритма состояния
+     */
+    private static boolean unionRow(RowBuilder builder, State state, Row row) {
+        StateRegistry registry = builder.registry;
+        row.clear();
+        boolean exact = true;
+        for (int i = 0; i < state.getNextStateCount(); i++) {
+            exact &= row.add(registry, state.getNextState(i), state.getNextStateWeight(i));
+        }
+        for (String algorithm : state.getAlgorithmNames()) {
+            for (Command command : state.getAlgorithm(algorithm)) {
+                if (command instanceof AddExistingStateWithProbabilityCommand) {
+                    AddExistingStateWithProbabilityCommand add = (AddExistingStateWithProbabilityCommand) command;
+                    exact &= row.add(registry, add.getTargetState(), add.getProbability());
+                } else if (command instanceof AddOverlayTransitionCommand) {
+                    AddOverlayTransitionCommand add = (AddOverlayTransitionCommand) command;
+                    exact &= row.add(registry, add.getTargetState(), add.getProbability());
+                } else if (command instanceof TransitionTemplateCommand) {
+                    for (TransitionDistribution template : ((TransitionTemplateCommand) command).getTemplates()) {
+                        for (int i = 0; i < template.size(); i++) {
+                            exact &= row.add(registry, template.getTarget(i), template.getProbability(i));
+                        }
+                    }
+                }
+            }
+        }
+        if (!exact) return false;
+        if (state.getAlgorithmCount() == 0) {
+            // Без алгоритмов шаг не сдвигает состояние
+            return row.size == 0;
+        }
+        Row own = new Row();
+        for (String algorithm : state.getAlgorithmNames()) {
+            own.clear();
+            if (!builder.build(state, state.getAlgorithm(algorithm), own) || !own.sameDistribution(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Разбирает команды алгоритма так же, как их выполнит шаг: какие статические переходы
+     * останутся, какой overlay будет активен и по какой строке пойдёт переход.
+     */
+    private static final class RowBuilder {
+        final StateRegistry registry;
+        private final Row statics = new Row();
+        private final Row overlay = new Row();
+
+        RowBuilder(StateRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * Записывает в row распределение шага алгоритма commands в состоянии state.
+         *
+         * @return true, если строка описывает шаг точно
+         */
+        boolean build(State state, List<Command> commands, Row row) {
+            boolean exact = true;
+            boolean cleared = false;
+            boolean overlayActive = false;
+            boolean unknown = false;
+            statics.clear();
+            for (int i = 0; i < state.getNextStateCount(); i++) {
+                exact &= statics.add(registry, state.getNextState(i), state.getNextStateWeight(i));
+            }
+            for (Command command : commands) {
+                if (command instanceof ClearNextStatesCommand) {
+                    statics.clear();
+                    cleared = true;
+                } else if (command instanceof AddExistingStateWithProbabilityCommand) {
+                    AddExistingStateWithProbabilityCommand add = (AddExistingStateWithProbabilityCommand) command;
+                    exact &= statics.add(registry, add.getTargetState(), add.getProbability());
+                } else if (command instanceof AddStateWithProbabilityCommand) {
+                    // Новое состояние на каждом шаге — его нет в модели
+                    exact = false;
+                } else if (command instanceof BeginTransitionOverlayCommand) {
+                    overlay.clear();
+                    overlayActive = true;
+                } else if (command instanceof AddOverlayTransitionCommand) {
+                    AddOverlayTransitionCommand add = (AddOverlayTransitionCommand) command;
+                    if (overlayActive) exact &= overlay.add(registry, add.getTargetState(), add.getProbability());
+                } else if (command instanceof TransitionCommand) {
+                    Row active = overlayActive ? overlay : statics;
+                    int index = ((TransitionCommand) command).getStateIndex();
+                    if (index == -2) index = 0;
+                    else if (index == -1) index = active.size - 1;
+                    if (index >= 0 && index < active.size) {
+                        row.targets[0] = active.targets[index];
+                        row.weights[0] = 1.0;
+                        row.size = 1;
+                    }
+                    return exact && !unknown && staticsStable(state, cleared, overlayActive);
+                } else if (command instanceof ProbabilisticTransitionCommand) {
+                    row.copyFrom(overlayActive ? overlay : statics);
+                    return exact && !unknown && staticsStable(state, cleared, overlayActive);
+                } else if (command instanceof HistoryBasedTransitionCommand) {
+                    // Веса задаёт история сессии: строка — лишь множество кандидатов
+                    row.copyFrom(overlayActive ? overlay : statics);
+                    return false;
+                } else if (command instanceof TransitionTemplateCommand) {
+                    List<TransitionDistribution> templates = ((TransitionTemplateCommand) command).getTemplates();
+                    for (TransitionDistribution template : templates) {
+                        for (int i = 0; i < template.size(); i++) {
+                            exact &= row.add(registry, template.getTarget(i), template.getProbability(i));
+                        }
+                    }
+                    // Условный выбор шаблона точен, только если все шаблоны одинаковы
+                    Row single = new Row();
+                    for (TransitionDistribution template : templates) {
+                        single.clear();
+                        for (int i = 0; i < template.size(); i++) {
+                            single.add(registry, template.getTarget(i), template.getProbability(i));
+                        }
+                        exact &= single.sameDistribution(row);
+                    }
+                    return exact && !unknown;
+                } else {
+                    // Собственная команда: её переходы компиляции не видны
+                    unknown = true;
+                }
+            }
+            // Встроенной команды перехода нет: без собственных команд шаг остаётся на месте
+            if (unknown) row.copyFrom(overlayActive ? overlay : statics);
+            return exact && !unknown;
+        }
+
+        /**
+         * Статические переходы не зависят от предыдущих шагов: алгоритм строит их сам
+         * (очистка) или использует overlay, либо никакой алгоритм состояния их не меняет.
+         */
+        private static boolean staticsStable(State state, boolean cleared, boolean overlayActive) {
+            if (cleared || overlayActive) return true;
+            for (String algorithm : state.getAlgorithmNames()) {
+                for (Command command : state.getAlgorithm(algorithm)) {
+                    if (command instanceof ClearNextStatesCommand
+                            || command instanceof AddExistingStateWithProbabilityCommand
+                            || command instanceof AddStateWithProbabilityCommand) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Собирает модель из готовых CSR-массивов (например, оценённых по трассам).
+     * Вероятности каждой строки нормализуются; массивы копируются.
+     *
+     * @param registry реестр, по id которого построены строки (может быть null)
+     */
+    public static CompiledModel of(StateRegistry registry, String[] names, boolean[] finalStates,
+                                   int[] offsets, int[] targets, double[] weights) {
+        int n = names.length;
+        if (finalStates.length != n || offsets.length != n + 1
+                || offsets[0] != 0 || offsets[n] != targets.length || weights.length != targets.length) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays for " + n + " states");
+        }
+        double[] probabilities = weights.clone();
+        for (int s = 0; s < n; s++) {
+            int from = offsets[s];
+            int to = offsets[s + 1];
+            if (to < from) {
+                throw new IllegalArgumentException("Offsets must be non-decreasing at state " + s);
+            }
+            for (int e = from; e < to; e++) {
+                if (targets[e] < 0 || targets[e] >= n) {
+                    throw new IllegalArgumentException("Target id " + targets[e] + " out of range at edge " + e);
+                }
+            }
+            normaliseRange(probabilities, from, to);
+        }
+        return create(registry, names.clone(), finalStates.clone(), offsets.clone(), targets.clone(), probabilities,
+                new boolean[n]);
+    }
+
+    private static CompiledModel create(StateRegistry registry, String[] names, boolean[] finalStates,
+                                        int[] offsets, int[] targets, double[] probabilities,
+                                        boolean[] approximate) {
+        int[] sortedTargets = new int[targets.length];
+        int[] sortedEdges = new int[targets.length];
+        long[] packed = new long[0];
+        for (int s = 0; s < names.length; s++) {
+            int from = offsets[s];
+            int size = offsets[s + 1] - from;
+            if (packed.length < size) packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) targets[from + i] << 32) | (from + i);
+            }
+            Arrays.sort(packed, 0, size);
+            for (int i = 0; i < size; i++) {
+                sortedTargets[from + i] = (int) (packed[i] >>> 32);
+                sortedEdges[from + i] = (int) packed[i];
+            }
+        }
+        Map<String, Integer> idsByName = null;
+        if (registry == null) {
+            idsByName = new HashMap<>(names.length * 2);
+            for (int s = 0; s < names.length; s++) {
+                // При повторе имени — первое состояние, как при поиске по реестру
+                idsByName.putIfAbsent(names[s], s);
+            }
+        }
+        return new CompiledModel(registry, names, finalStates, offsets, targets, probabilities,
+                sortedTargets, sortedEdges, idsByName, approximate);
+    }
+
+    /** Буфер строки при компиляции: цели без повторов и их веса. */
+    private static final class Row {
+        int[] targets = new int[8];
+        double[] weights = new double[8];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Добавляет цель; повторная цель пропускается (первое объявление, как в
+         * {@link State#addNextState(State, double)}).
+         *
+         * @return false, если цель не из этого реестра и пропущена
+         */
+        boolean add(StateRegistry registry, State target, double weight) {
+            if (target.getRegistry() != registry) return false;
+            int id = target.getId();
+            for (int i = 0; i < size; i++) {
+                if (targets[i] == id) return true;
+            }
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            targets[size] = id;
+            weights[size++] = weight;
+            return true;
+        }
+
+        void copyFrom(Row other) {
+            if (targets.length < other.size) {
+                targets = new int[other.targets.length];
+                weights = new double[other.weights.length];
+            }
+            System.arraycopy(other.targets, 0, targets, 0, other.size);
+            System.arraycopy(other.weights, 0, weights, 0, other.size);
+            size = other.size;
+        }
+
+        /** Те же цели с теми же нормализованными вероятностями (порядок не важен). */
+        boolean sameDistribution(Row other) {
+            if (size != other.size) return false;
+            double[] mine = Arrays.copyOf(weights, size);
+            double[] theirs = Arrays.copyOf(other.weights, size);
+            normaliseRange(mine, 0, size);
+            normaliseRange(theirs, 0, size);
+            for (int i = 0; i < size; i++) {
+                int j = 0;
+                while (j < size && other.targets[j] != targets[i]) j++;
+                if (j == size || Math.abs(mine[i] - theirs[j]) > 1e-12) return false;
+            }
+            return true;
+        }
+    }
+
+    private static void normaliseRange(double[] weights, int from, int to) {
+        double sum = 0.0;
+        for (int i = from; i < to; i++) {
+            if (weights[i] > 0.0) sum += weights[i];
+        }
+        for (int i = from; i < to; i++) {
+            // Если все веса <= 0, используем равномерное распределение
+            weights[i] = sum <= 0.0 ? 1.0 / (to - from) : Math.max(0.0, weights[i]) / sum;
+        }
+    }
+
+    /**
+     * Новый снимок с той же структурой и другими вероятностями рёбер
+     * (нормализуются по строкам; массив копируется).
+     */
+    public CompiledModel withProbabilities(double[] edgeWeights) {
+        if (edgeWeights.length != targets.length) {
+            throw new IllegalArgumentException("Expected " + targets.length + " edge weights but got "
+                    + edgeWeights.length);
+        }
+        double[] probs = edgeWeights.clone();
+        for (int s = 0; s < names.length; s++) {
+            normaliseRange(probs, offsets[s], offsets[s + 1]);
+        }
+        return new CompiledModel(registry, names, finalStates, offsets, targets, probs, sortedTargets, sortedEdges,
+                idsByName, approximate);
+    }
+
+    /** Реестр, по id которого построена модель (может быть null). */
+    public StateRegistry getRegistry() {
+        return registry;
+    }
+
+    public int getStateCount() {
+        return names.length;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    public String getStateName(int state) {
+        return names[state];
+    }
+
+    /** id состояния по имени или -1. */
+    public int stateId(String name) {
+        if (registry != null) return registry.idOf(name);
+        Integer id = idsByName.get(name);
+        return id != null ? id : -1;
+    }
+
+    public boolean isFinal(int state) {
+        return finalStates[state];
+    }
+
+    /**
+     * Вероятности строки лишь приближают шаг автомата (объединение алгоритмов, условный
+     * выбор, собственные команды — см. описание класса). Модели из массивов, трасс и файла
+     * таких строк не имеют.
+     */
+    public boolean isApproximate(int state) {
+        return approximate[state];
+    }
+
+    /** Число строк, помеченных {@link #isApproximate(int)}. */
+    public int getApproximateStateCount() {
+        return approximateCount;
+    }
+
+    /** Первое ребро строки state. */
+    public int rowStart(int state) {
+        return offsets[state];
+    }
+
+    /** Конец (исключительно) строки state. */
+    public int rowEnd(int state) {
+        return offsets[state + 1];
+    }
+
+    /** Число исходящих рёбер состояния. */
+    public int outDegree(int state) {
+        return offsets[state + 1] - offsets[state];
+    }
+
+    /** id цели ребра. */
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /** Нормализованная вероятность ребра. */
+    public double probability(int edge) {
+        return probabilities[edge];
+    }
+
+    /** Индекс ребра from → to или -1, если такого перехода нет (двоичный поиск по строке). */
+    public int edgeIndex(int from, int to) {
+        int lo = offsets[from];
+        int hi = offsets[from + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int t = sortedTargets[mid];
+            if (t < to) lo = mid + 1;
+            else if (t > to) hi = mid - 1;
+            else return sortedEdges[mid];
+        }
+        return -1;
+    }
+
+    /** Вероятность перехода from → to (0, если перехода нет). */
+    public double transitionProbability(int from, int to) {
+        int edge = edgeIndex(from, to);
+        return edge >= 0 ? probabilities[edge] : 0.0;
+    }
+
+    /**
+     * Выбирает следующее состояние по равномерному u из [0, 1)
+     * с той же семантикой, что {@link State#selectNextState(double)};
+     * без исходящих рёбер возвращает само состояние.
+     */
+    public int sample(int state, double u) {
+        int edge = sampleEdge(state, u);
+        return edge >= 0 ? targets[edge] : state;
+    }
+
+    /** Выбирает исходящее ребро по равномерному u из [0, 1); -1, если рёбер нет. */
+    public int sampleEdge(int state, double u) {
+        int lo = offsets[state];
+        int hi = offsets[state + 1] - 1;
+        if (hi < lo) return -1;
+        if (u > cumulative[hi]) return hi;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (u <= cumulative[mid]) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /** Сигнатура двоичного формата {@link #write(DataOutput)}: "PACM". */
+    private static final int FORMAT_MAGIC = 0x5041434D;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Записывает модель в компактном двоичном виде: имена, признаки конечности и CSR-массивы.
+     * Вероятности сохраняются побитно, поэтому {@link #read(DataInput)} восстанавливает модель,
+     * выбирающую переходы точно так же (реестр не сохраняется).
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(names.length);
+        out.writeInt(targets.length);
+        for (int s = 0; s < names.length; s++) {
+            out.writeUTF(names[s]);
+            out.writeBoolean(finalStates[s]);
+            out.writeInt(offsets[s + 1]);
+        }
+        for (int e = 0; e < targets.length; e++) {
+            out.writeInt(targets[e]);
+            out.writeDouble(probabilities[e]);
+        }
+    }
+
+    /** Читает модель, записанную {@link #write(DataOutput)}. */
+    public static CompiledModel read(DataInput in) throws IOException {
+        if (in.readInt() != FORMAT_MAGIC) {
+            throw new IOException("Not a compiled model stream");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported compiled model version: " + version);
+        }
+        int n = in.readInt();
+        int m = in.readInt();
+        if (n < 0 || m < 0) {
+            throw new IOException("Corrupted compiled model header: " + n + " states, " + m + " edges");
+        }
+        String[] names = new String[n];
+        boolean[] finalStates = new boolean[n];
+        int[] offsets = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            names[s] = in.readUTF();
+            finalStates[s] = in.readBoolean();
+            offsets[s + 1] = in.readInt();
+            if (offsets[s + 1] < offsets[s] || offsets[s + 1] > m) {
+                throw new IOException("Corrupted offsets at state " + s);
+            }
+        }
+        if (offsets[n] != m) {
+            throw new IOException("Corrupted offsets: expected " + m + " edges but got " + offsets[n]);
+        }
+        int[] targets = new int[m];
+        double[] probabilities = new double[m];
+        for (int e = 0; e < m; e++) {
+            targets[e] = in.readInt();
+            probabilities[e] = in.readDouble();
+            if (targets[e] < 0 || targets[e] >= n) {
+                throw new IOException("Target id " + targets[e] + " out of range at edge " + e);
+            }
+        }
+        return create(null, names, finalStates, offsets, targets, probabilities, new boolean[n]);
+    }
+
+    /** Копия вероятностей рёбер (в порядке CSR). */
+    public double[] probabilitiesCopy() {
+        return probabilities.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledModel{states=" + names.length + ", edges=" + targets.length
+                + (approximateCount > 0 ? ", approximate=" + approximateCount : "") + '}';
+    }
+}
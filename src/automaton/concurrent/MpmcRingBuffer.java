@@ -0,0 +1,144 @@
+package automaton.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Ограниченный lock-free кольцевой буфер для нескольких производителей и потребителей
+ * (схема Д. Вьюкова: у каждой ячейки свой счётчик последовательности).
+ *
+ * Ни offer, ни poll не берут блокировок и не выделяют память. Ёмкость округляется
+ * вверх до степени двойки. При переполнении offer возвращает false — решать,
+ * что делать с сообщением, должен вызывающий код.
+ *
+ * @param <E> тип элементов (null не допускается)
+ */
+public class MpmcRingBuffer<E> {
+
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public MpmcRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity is too large: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.mask = size - 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** Добавляет элемент; возвращает false, если буфер заполнен. */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element is null");
+        }
+        long pos = tail.get();
+        for (;;) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[idx] = element;
+                    // Публикация элемента: потребитель увидит запись после чтения последовательности
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** Извлекает элемент или возвращает null, если буфер пуст. */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head.get();
+        for (;;) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E element = (E) buffer[idx];
+                    buffer[idx] = null;
+                    // Освобождаем ячейку для следующего круга производителей
+                    sequences.set(idx, pos + mask + 1);
+                    return element;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * Передаёт все доступные элементы потребителю без промежуточной копии.
+     *
+     * @return количество переданных элементов
+     */
+    public int drain(Consumer<? super E> consumer) {
+        return drain(consumer, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Передаёт потребителю не более limit элементов без промежуточной копии.
+     *
+     * @return количество переданных элементов
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int count = 0;
+        while (count < limit) {
+            E element = poll();
+            if (element == null) break;
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    /** Удаляет все элементы. */
+    public void clear() {
+        while (poll() != null) {
+            // выбрасываем
+        }
+    }
+
+    /** Приблизительное число элементов (точное, если нет конкурентных операций). */
+    public int size() {
+        for (;;) {
+            long h = head.get();
+            long t = tail.get();
+            if (h == head.get()) {
+                long size = t - h;
+                if (size < 0) return 0;
+                return (int) Math.min(size, buffer.length);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /** Фактическая ёмкость (степень двойки). */
+    public int capacity() {
+        return buffer.length;
+    }
+}
@@ -1,10 +1,15 @@
 package automaton.config;
 
+import automaton.analysis.ReachabilityAnalyzer;
+import automaton.analysis.ReachabilityReport;
 import automaton.builder.AlgorithmBuilder;
 import automaton.commands.Command;
+import automaton.compiled.CompiledModel;
+import automaton.core.AutomatonLog;
 import automaton.core.CoreProbabilisticAutomaton;
 import automaton.random.RandomProvider;
 import automaton.state.State;
+import automaton.state.StateRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
@@ -14,24 +19,54 @@ import java.util.*;
 /**
  * Загрузчик вероятностного автомата из JSON-конфигурации.
  * Позволяет собирать CoreProbabilisticAutomaton без написания Java-кода.
+ *
+ * После сборки граф переходов проверяется {@link ReachabilityAnalyzer}: недостижимые
+ * из initialState состояния, тупики и классы-ловушки без конечных состояний выводятся
+ * предупреждениями, а в строгом режиме приводят к IllegalArgumentException.
  */
 public class JsonAutomatonLoader {
 
     private final ObjectMapper mapper = new ObjectMapper();
+    private final boolean strict;
+    private volatile ReachabilityReport lastReport;
+
+    public JsonAutomatonLoader() {
+        this(false);
+    }
+
+    /** @param strict отклонять конфигурации с недостижимыми состояниями, тупиками и ловушками */
+    public JsonAutomatonLoader(boolean strict) {
+        this.strict = strict;
+    }
+
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /** Отчёт проверки последнего собранного автомата (null, если сборок не было). */
+    public ReachabilityReport getLastReport() {
+        return lastReport;
+    }
 
     /** Загружает автомат из JSON-потока. */
     public CoreProbabilisticAutomaton load(InputStream in) throws IOException {
-        AutomatonConfig cfg = mapper.readValue(in, AutomatonConfig.class);
+        return build(mapper.readValue(in, AutomatonConfig.class));
+    }
 
+    /** Собирает автомат по уже прочитанной (или сгенерированной) конфигурации. */
+    public CoreProbabilisticAutomaton build(AutomatonConfig cfg) {
         if (cfg.states == null || cfg.states.isEmpty()) {
             throw new IllegalArgumentException("Config.states is empty");
         }
 
-        // Создаём все состояния заранее, чтобы переходы могли ссылаться по имени
+        // Создаём все состояния заранее, чтобы переходы могли ссылаться по имени.
+        // id в реестре модели идут в порядке описания состояний в конфигурации.
         Map<String, State> stateMap = new LinkedHashMap<>();
+        StateRegistry registry = new StateRegistry();
         for (AutomatonConfig.StateConfig sc : cfg.states) {
             State st = new State(sc.name, sc.finalState);
             stateMap.put(sc.name, st);
+            registry.register(st);
         }
 
         // Для каждого состояния собираем алгоритмы из команд
@@ -74,6 +109,23 @@ public class JsonAutomatonLoader {
                             break;
                         }
 
+                        case "begin_overlay":
+                            builder.beginOverlay();
+                            break;
+
+                        case "add_overlay_state": {
+                            if (cc.target == null) {
+                                throw new IllegalArgumentException("add_overlay_state: target is null");
+                            }
+                            State target = stateMap.get(cc.target);
+                            if (target == null) {
+                                throw new IllegalArgumentException("Unknown state in add_overlay_state: " + cc.target);
+                            }
+                            double prob = cc.probability != null ? cc.probability : 1.0;
+                            builder.addOverlayState(target, prob);
+                            break;
+                        }
+
                         case "transition": {
                             if (cc.target == null) {
                                 throw new IllegalArgumentException("transition: target is null");
@@ -111,7 +163,25 @@ public class JsonAutomatonLoader {
         if (initial == null) {
             throw new IllegalArgumentException("Unknown initialState: " + cfg.initialState);
         }
+        validate(registry, initial);
 
         return new CoreProbabilisticAutomaton(initial);
     }
+
+    private void validate(StateRegistry registry, State initial) {
+        ReachabilityReport report = ReachabilityAnalyzer.analyze(CompiledModel.compile(registry), initial.getId());
+        lastReport = report;
+        if (report.isClean()) {
+            return;
+        }
+        List<String> problems = report.getProblems();
+        if (strict) {
+            throw new IllegalArgumentException("Invalid automaton graph: " + String.join("; ", problems));
+        }
+        if (AutomatonLog.isEnabled()) {
+            for (String problem : problems) {
+                System.out.println("Warning: " + problem);
+            }
+        }
+    }
 }
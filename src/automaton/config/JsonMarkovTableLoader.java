@@ -0,0 +1,72 @@
+package automaton.config;
+
+import automaton.probability.MarkovHistoryProbabilityProvider;
+import automaton.state.StateRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Загрузчик таблиц провайдера k-го порядка из JSON.
+ * Имена состояний разрешаются в id через реестр модели.
+ *
+ * <pre>
+ * { "order": 2,
+ *   "contexts": [ { "history": ["N1", "N3"], "next": { "N11": 1.0 } } ] }
+ * </pre>
+ */
+public class JsonMarkovTableLoader {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** Загружает таблицы из JSON-потока. */
+    public MarkovHistoryProbabilityProvider load(InputStream in, StateRegistry registry) throws IOException {
+        MarkovTableConfig cfg = mapper.readValue(in, MarkovTableConfig.class);
+        return build(cfg, registry).build();
+    }
+
+    /**
+     * Заполняет сборщик по конфигурации, чтобы до build() можно было задать fallback
+     * или дообучить таблицы на трассах.
+     */
+    public MarkovHistoryProbabilityProvider.Builder build(MarkovTableConfig cfg, StateRegistry registry) {
+        if (cfg.order < 1) {
+            throw new IllegalArgumentException("Markov table order must be >= 1: " + cfg.order);
+        }
+        MarkovHistoryProbabilityProvider.Builder builder = MarkovHistoryProbabilityProvider.builder(cfg.order);
+        if (cfg.unseenWeight != null) {
+            builder.unseenWeight(cfg.unseenWeight);
+        }
+        if (cfg.contexts == null) {
+            return builder;
+        }
+        for (MarkovTableConfig.ContextConfig cc : cfg.contexts) {
+            if (cc.history == null || cc.history.size() > cfg.order) {
+                throw new IllegalArgumentException("Context history must have at most " + cfg.order
+                        + " states: " + cc.history);
+            }
+            int[] context = new int[cc.history.size()];
+            for (int i = 0; i < context.length; i++) {
+                context[i] = idOf(registry, cc.history.get(i));
+            }
+            if (cc.next == null || cc.next.isEmpty()) {
+                throw new IllegalArgumentException("Context " + cc.history + " has no next states");
+            }
+            for (Map.Entry<String, Double> e : cc.next.entrySet()) {
+                double weight = e.getValue() != null ? e.getValue() : 1.0;
+                builder.add(context, idOf(registry, e.getKey()), weight);
+            }
+        }
+        return builder;
+    }
+
+    private static int idOf(StateRegistry registry, String name) {
+        int id = registry.idOf(name);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown state in Markov table: " + name);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,28 @@
+package automaton.config;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON-описание таблиц провайдера k-го порядка.
+ * Используется JsonMarkovTableLoader для построения MarkovHistoryProbabilityProvider.
+ */
+public class MarkovTableConfig {
+
+    /** Порядок модели: сколько последних состояний образуют контекст. */
+    public int order;
+
+    /** Вес кандидата, которого нет в строке контекста (по умолчанию 0). */
+    public Double unseenWeight;
+
+    /** Строки таблицы. */
+    public List<ContextConfig> contexts;
+
+    public static class ContextConfig {
+        /** Имена последних состояний от старого к новому; короче order — начало истории. */
+        public List<String> history;
+
+        /** Веса переходов: имя следующего состояния → вес. */
+        public Map<String, Double> next;
+    }
+}
@@ -1,9 +1,14 @@
 package automaton.context;
 
+import automaton.concurrent.MpmcRingBuffer;
+import automaton.core.AutomatonLog;
 import automaton.input.InputMessage;
 import automaton.output.OutputMessage;
 import automaton.state.State;
+import automaton.state.StateRegistry;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Контекст выполнения вероятностного автомата.
@@ -11,14 +16,25 @@ import java.util.*;
  * и последнее входное сообщение, связанное с текущей обработкой.
  */
 public class Context {
+    /** Ёмкость outbox по умолчанию. */
+    public static final int DEFAULT_OUTBOX_CAPACITY = 1024;
+
     /** Текущее состояние автомата. */
     private State currentState;
 
     /** Все уникальные состояния, которые когда-либо встречались в этом контексте. */
     private final List<State> states = new ArrayList<>();
 
+    /** Реестр модели (по начальному состоянию) и множество встреченных id — быстрый аналог states.contains. */
+    private final StateRegistry registry;
+    private final BitSet seenIds = new BitSet();
+
     /** Полная хронологическая история посещённых состояний (включая повторения). */
-    private final List<State> stateHistory = new ArrayList<>();
+    private final ArrayList<State> stateHistory = new ArrayList<>();
+    private final List<State> stateHistoryView = Collections.unmodifiableList(stateHistory);
+
+    /** Номер «эпохи» истории: увеличивается при каждом reset, пока история только дописывается. */
+    private long historyEpoch;
 
     /** Последнее входное сообщение, переданное автомату (может быть null). */
     private InputMessage inputMessage;
@@ -27,9 +43,34 @@ public class Context {
     /** Общая память ключ-значение для команд/алгоритмов состояний (рабочая память агента). */
     private final Map<String, Object> memory = new HashMap<>();
 
-    /** Исходящие сообщения, созданные во время шага/запуска. Внешний агент может их получить и обработать. */
-    private final List<OutputMessage> outbox = new ArrayList<>();
+    /** Типизированная рабочая память: слоты по индексам {@link MemoryKey}. */
+    private Object[] objectSlots = new Object[MemoryKey.slotCount(MemoryKey.Kind.OBJECT)];
+    private long[] longSlots = new long[MemoryKey.slotCount(MemoryKey.Kind.LONG)];
+    private double[] doubleSlots = new double[MemoryKey.slotCount(MemoryKey.Kind.DOUBLE)];
+
+    /**
+     * Исходящие сообщения, созданные во время шага/запуска. Внешний агент может их получить и обработать.
+     * Ограниченный lock-free буфер: команды и поток агента обмениваются сообщениями без блокировок.
+     */
+    private final MpmcRingBuffer<OutputMessage> outbox;
+
+    /** Сообщения, не поместившиеся в outbox (отправлять могут несколько потоков). */
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    /** Динамические переходы этой сессии поверх неизменяемой модели. */
+    private final TransitionOverlay overlay = new TransitionOverlay();
+
+    /** Наблюдатель переходов (например, обучение весов); null — не задан. */
+    private TransitionListener transitionListener;
+
     public Context(State initialState) {
+        this(initialState, DEFAULT_OUTBOX_CAPACITY);
+    }
+
+    /** Создаёт контекст с заданной ёмкостью outbox (округляется вверх до степени двойки). */
+    public Context(State initialState, int outboxCapacity) {
+        this.outbox = new MpmcRingBuffer<>(outboxCapacity);
+        this.registry = initialState.getRegistry();
         reset(initialState);
     }
 
@@ -38,28 +79,52 @@ public class Context {
      *  - текущее состояние устанавливается в initialState;
      *  - список известных состояний переинициализируется;
      *  - история очищается и начинается с initialState;
-     *  - последнее входное сообщение очищается.
+     *  - последнее входное сообщение очищается;
+     *  - рабочая память (и строковая, и типизированная) очищается;
+     *  - overlay динамических переходов снимается.
      */
     public void reset(State initialState) {
         this.currentState = initialState;
         states.clear();
-        states.add(initialState);
+        seenIds.clear();
+        markSeen(initialState);
         stateHistory.clear();
         stateHistory.add(initialState);
+        historyEpoch++;
         inputMessage = null;
         memory.clear();
+        Arrays.fill(objectSlots, null);
+        Arrays.fill(longSlots, 0L);
+        Arrays.fill(doubleSlots, 0.0);
         outbox.clear();
+        overlay.clear();
     }
 
     public void setState(State state) {
+        State from = currentState;
         if (!state.equals(currentState)) {
-            System.out.println("Context: transition from " + currentState.getName() + " to " + state.getName());
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("Context: transition from " + currentState.getName() + " to " + state.getName());
+            }
             this.currentState = state;
-            if (!states.contains(state)) {
-                states.add(state);
+            overlay.clear();
+            if (!containsState(state)) {
+                markSeen(state);
             }
             stateHistory.add(state);
         }
+        if (transitionListener != null) {
+            transitionListener.onTransition(from, state);
+        }
+    }
+
+    /** Задаёт наблюдателя переходов (null — снять). Сброс контекста наблюдателя не снимает. */
+    public void setTransitionListener(TransitionListener listener) {
+        this.transitionListener = listener;
+    }
+
+    public TransitionListener getTransitionListener() {
+        return transitionListener;
     }
 
     public State getCurrentState() {
@@ -76,15 +141,68 @@ public class Context {
         return new ArrayList<>(stateHistory);
     }
 
+    /**
+     * Только для чтения: живое представление истории без копирования.
+     * Меняется вместе с контекстом, поэтому его не стоит хранить дольше одного шага.
+     */
+    public List<State> historyView() {
+        return stateHistoryView;
+    }
+
+    /**
+     * Номер эпохи истории. Между двумя reset история только дописывается,
+     * поэтому её префикс, запомненный в пределах одной эпохи, остаётся неизменным.
+     */
+    public long getHistoryEpoch() {
+        return historyEpoch;
+    }
+
+    /** Длина истории посещённых состояний. */
+    public int getHistorySize() {
+        return stateHistory.size();
+    }
+
+    /**
+     * Заранее резервирует место под историю, чтобы длинная сессия
+     * не перевыделяла массив истории во время шагов.
+     */
+    public void ensureHistoryCapacity(int capacity) {
+        stateHistory.ensureCapacity(capacity);
+    }
+
+    /**
+     * Overlay динамических переходов сессии. Команды, строящие переходы на каждом шаге,
+     * начинают его через {@link TransitionOverlay#begin(State)} и пишут цели туда,
+     * не изменяя общий {@link State}.
+     */
+    public TransitionOverlay getTransitionOverlay() {
+        return overlay;
+    }
+
     /** Выполняет алгоритм текущего состояния. */
     public void executeCurrentStateAlgorithm(String algorithmName) {
         currentState.executeAlgorithm(this, algorithmName);
     }
 
+    /** Выполняет алгоритм текущего состояния по handle. */
+    public void executeCurrentStateAlgorithm(int algorithmHandle) {
+        currentState.executeAlgorithm(this, algorithmHandle);
+    }
+
     public boolean containsState(State state) {
+        if (registry != null && state.getRegistry() == registry) {
+            return seenIds.get(state.getId());
+        }
         return states.contains(state);
     }
 
+    private void markSeen(State state) {
+        states.add(state);
+        if (registry != null && state.getRegistry() == registry) {
+            seenIds.set(state.getId());
+        }
+    }
+
     /** Устанавливает последнее входное сообщение для этого контекста. */
     public void setInputMessage(InputMessage message) {
         this.inputMessage = message;
@@ -110,16 +228,152 @@ public class Context {
         return Collections.unmodifiableMap(memory);
     }
 
-    /** Отправляет выходное сообщение из команды/алгоритма. */
-    public void emit(OutputMessage message) {
-        if (message != null) outbox.add(message);
+    /** Получает значение из типизированной памяти (может быть null). */
+    public <T> T get(MemoryKey<T> key) {
+        requireKind(key, MemoryKey.Kind.OBJECT);
+        int slot = key.getSlot();
+        return slot < objectSlots.length ? key.getType().cast(objectSlots[slot]) : null;
+    }
+
+    /** Сохраняет значение в типизированной памяти. */
+    public <T> void put(MemoryKey<T> key, T value) {
+        requireKind(key, MemoryKey.Kind.OBJECT);
+        int slot = key.getSlot();
+        if (slot >= objectSlots.length) {
+            objectSlots = Arrays.copyOf(objectSlots, MemoryKey.slotCount(MemoryKey.Kind.OBJECT));
+        }
+        objectSlots[slot] = key.getType().cast(value);
+    }
+
+    /** Читает примитивный слот long (0, если в него ещё не писали). */
+    public long getLong(MemoryKey<Long> key) {
+        requireKind(key, MemoryKey.Kind.LONG);
+        int slot = key.getSlot();
+        return slot < longSlots.length ? longSlots[slot] : 0L;
+    }
+
+    /** Записывает примитивный слот long. */
+    public void putLong(MemoryKey<Long> key, long value) {
+        requireKind(key, MemoryKey.Kind.LONG);
+        ensureLongSlot(key.getSlot());
+        longSlots[key.getSlot()] = value;
+    }
+
+    /** Прибавляет delta к слоту long и возвращает новое значение (удобно для счётчиков). */
+    public long addLong(MemoryKey<Long> key, long delta) {
+        requireKind(key, MemoryKey.Kind.LONG);
+        ensureLongSlot(key.getSlot());
+        return longSlots[key.getSlot()] += delta;
+    }
+
+    /** Читает примитивный слот double (0.0, если в него ещё не писали). */
+    public double getDouble(MemoryKey<Double> key) {
+        requireKind(key, MemoryKey.Kind.DOUBLE);
+        int slot = key.getSlot();
+        return slot < doubleSlots.length ? doubleSlots[slot] : 0.0;
+    }
+
+    /** Записывает примитивный слот double. */
+    public void putDouble(MemoryKey<Double> key, double value) {
+        requireKind(key, MemoryKey.Kind.DOUBLE);
+        int slot = key.getSlot();
+        if (slot >= doubleSlots.length) {
+            doubleSlots = Arrays.copyOf(doubleSlots, MemoryKey.slotCount(MemoryKey.Kind.DOUBLE));
+        }
+        doubleSlots[slot] = value;
+    }
+
+    private void ensureLongSlot(int slot) {
+        if (slot >= longSlots.length) {
+            longSlots = Arrays.copyOf(longSlots, MemoryKey.slotCount(MemoryKey.Kind.LONG));
+        }
+    }
+
+    private static void requireKind(MemoryKey<?> key, MemoryKey.Kind kind) {
+        if (key.getKind() != kind) {
+            throw new IllegalArgumentException("Memory key " + key + " is not a " + kind + " key");
+        }
+    }
+
+    /**
+     * Отправляет выходное сообщение из команды/алгоритма.
+     *
+     * Если outbox заполнен (его давно не опустошали), сообщение отбрасывается и учитывается
+     * в {@link #getDroppedMessageCount()}: шаг алгоритма не прерывается на полпути.
+     *
+     * @return true, если сообщение помещено в outbox; false, если оно отброшено
+     */
+    public boolean emit(OutputMessage message) {
+        if (message == null) return false;
+        if (outbox.offer(message)) return true;
+        droppedMessages.incrementAndGet();
+        return false;
+    }
+
+    /** Сколько сообщений отброшено из-за заполненного outbox за время жизни контекста. */
+    public long getDroppedMessageCount() {
+        return droppedMessages.get();
     }
 
     /** Возвращает и очищает все отправленные сообщения с последнего вызова drain. */
     public List<OutputMessage> drainOutbox() {
-        List<OutputMessage> copy = new ArrayList<>(outbox);
-        outbox.clear();
+        List<OutputMessage> copy = new ArrayList<>(outbox.size());
+        outbox.drain(copy::add);
         return copy;
     }
 
+    /**
+     * Передаёт все отправленные сообщения потребителю без копирования в промежуточный список.
+     *
+     * @return количество переданных сообщений
+     */
+    public int drainOutbox(Consumer<? super OutputMessage> consumer) {
+        return outbox.drain(consumer);
+    }
+
+    /** Количество сообщений, ожидающих в outbox. */
+    public int outboxSize() {
+        return outbox.size();
+    }
+
+    /** Реестр модели, по id которого строится множество встреченных состояний (может быть null). */
+    StateRegistry getRegistry() {
+        return registry;
+    }
+
+    /** Есть ли значения в объектных слотах типизированной памяти. */
+    boolean hasObjectSlotValues() {
+        for (Object value : objectSlots) {
+            if (value != null) return true;
+        }
+        return false;
+    }
+
+    /** Живые массивы примитивных слотов (для {@link ContextCodec}). */
+    long[] longSlots() {
+        return longSlots;
+    }
+
+    double[] doubleSlots() {
+        return doubleSlots;
+    }
+
+    /**
+     * Восстанавливает сессию, сохранённую {@link ContextCodec}: история (последний элемент —
+     * текущее состояние) и примитивные слоты. Остальное — как после {@link #reset(State)}.
+     */
+    void restore(State[] history, int length, long[] longValues, double[] doubleValues) {
+        reset(history[0]);
+        for (int i = 1; i < length; i++) {
+            State state = history[i];
+            if (!containsState(state)) markSeen(state);
+            stateHistory.add(state);
+        }
+        currentState = history[length - 1];
+        if (longValues.length > longSlots.length) longSlots = new long[longValues.length];
+        System.arraycopy(longValues, 0, longSlots, 0, longValues.length);
+        if (doubleValues.length > doubleSlots.length) doubleSlots = new double[doubleValues.length];
+        System.arraycopy(doubleValues, 0, doubleSlots, 0, doubleValues.length);
+    }
+
 }
@@ -0,0 +1,209 @@
+package automaton.context;
+
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактная двоичная форма сессии: история посещённых состояний (id из реестра модели,
+ * последний — текущее), строковая рабочая память с простыми значениями и примитивные слоты.
+ * Целые пишутся varint-ами, так что шаг истории обычно занимает 1–3 байта.
+ *
+ * Сохраняется не всё: последнее входное сообщение не пишется (следующий шаг передаст своё),
+ * overlay динамических переходов строится заново на каждом шаге и тоже не пишется,
+ * наблюдатель переходов задаёт тот, кто восстанавливает сессию. Контекст, который нельзя
+ * сохранить без потерь (см. {@link #isEncodable(Context)}), не кодируется.
+ */
+public final class ContextCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+
+    private ContextCodec() {
+        // Утилитарный класс
+    }
+
+    /**
+     * Можно ли сохранить контекст без потерь: все состояния истории из реестра модели,
+     * значения памяти — null, String, Integer, Long, Double или Boolean, строки без одиночных
+     * суррогатов (длина не ограничена), объектные слоты пусты и outbox пуст.
+     */
+    public static boolean isEncodable(Context context) {
+        StateRegistry registry = context.getRegistry();
+        if (registry == null || context.outboxSize() > 0 || context.hasObjectSlotValues()) {
+            return false;
+        }
+        for (State state : context.historyView()) {
+            if (state.getRegistry() != registry) return false;
+        }
+        for (Map.Entry<String, Object> entry : context.memoryView().entrySet()) {
+            Object value = entry.getValue();
+            if (tagOf(value) < 0 || !isWellFormed(entry.getKey())) return false;
+            if (value instanceof String && !isWellFormed((String) value)) return false;
+        }
+        return true;
+    }
+
+    /** Нет ли в строке одиночных суррогатов: их UTF-8 не передаёт без потерь. */
+    private static boolean isWellFormed(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (Character.isHighSurrogate(ch)) {
+                if (i + 1 == value.length() || !Character.isLowSurrogate(value.charAt(i + 1))) return false;
+                i++;
+            } else if (Character.isLowSurrogate(ch)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int tagOf(Object value) {
+        if (value == null) return NULL;
+        if (value instanceof String) return STRING;
+        if (value instanceof Integer) return INT;
+        if (value instanceof Long) return LONG;
+        if (value instanceof Double) return DOUBLE;
+        if (value instanceof Boolean) return BOOLEAN;
+        return -1;
+    }
+
+    /**
+     * Записывает контекст.
+     *
+     * @throws IllegalArgumentException если контекст нельзя сохранить без потерь
+     */
+    public static void encode(Context context, DataOutput out) throws IOException {
+        if (!isEncodable(context)) {
+            throw new IllegalArgumentException("Context cannot be encoded without loss");
+        }
+        List<State> history = context.historyView();
+        writeVarInt(out, history.size());
+        for (State state : history) {
+            writeVarInt(out, state.getId());
+        }
+
+        Map<String, Object> memory = context.memoryView();
+        writeVarInt(out, memory.size());
+        for (Map.Entry<String, Object> entry : memory.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            int tag = tagOf(value);
+            out.writeByte(tag);
+            switch (tag) {
+                case STRING: writeString(out, (String) value); break;
+                case INT: out.writeInt((Integer) value); break;
+                case LONG: out.writeLong((Long) value); break;
+                case DOUBLE: out.writeDouble((Double) value); break;
+                case BOOLEAN: out.writeBoolean((Boolean) value); break;
+                default: break;
+            }
+        }
+
+        // Примитивные слоты — до последнего ненулевого
+        long[] longs = context.longSlots();
+        int longCount = longs.length;
+        while (longCount > 0 && longs[longCount - 1] == 0L) longCount--;
+        writeVarInt(out, longCount);
+        for (int i = 0; i < longCount; i++) out.writeLong(longs[i]);
+        double[] doubles = context.doubleSlots();
+        int doubleCount = doubles.length;
+        while (doubleCount > 0 && Double.doubleToRawLongBits(doubles[doubleCount - 1]) == 0L) doubleCount--;
+        writeVarInt(out, doubleCount);
+        for (int i = 0; i < doubleCount; i++) out.writeDouble(doubles[i]);
+    }
+
+    /** Восстанавливает в context сессию, записанную {@link #encode}; состояния берутся из реестра контекста. */
+    public static void decode(DataInput in, Context context) throws IOException {
+        StateRegistry registry = context.getRegistry();
+        if (registry == null) {
+            throw new IllegalArgumentException("Context has no state registry");
+        }
+        int length = readVarInt(in);
+        if (length < 1) {
+            throw new IOException("Corrupted session: empty history");
+        }
+        State[] history = new State[length];
+        int states = registry.size();
+        for (int i = 0; i < length; i++) {
+            int id = readVarInt(in);
+            if (id < 0 || id >= states) {
+                throw new IOException("Corrupted session: state id " + id + " out of range");
+            }
+            history[i] = registry.get(id);
+        }
+
+        int memorySize = readVarInt(in);
+        String[] keys = new String[memorySize];
+        Object[] values = new Object[memorySize];
+        for (int i = 0; i < memorySize; i++) {
+            keys[i] = readString(in);
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL: values[i] = null; break;
+                case STRING: values[i] = readString(in); break;
+                case INT: values[i] = in.readInt(); break;
+                case LONG: values[i] = in.readLong(); break;
+                case DOUBLE: values[i] = in.readDouble(); break;
+                case BOOLEAN: values[i] = in.readBoolean(); break;
+                default: throw new IOException("Corrupted session: unknown value tag " + tag);
+            }
+        }
+
+        long[] longs = new long[readVarInt(in)];
+        for (int i = 0; i < longs.length; i++) longs[i] = in.readLong();
+        double[] doubles = new double[readVarInt(in)];
+        for (int i = 0; i < doubles.length; i++) doubles[i] = in.readDouble();
+
+        context.restore(history, length, longs, doubles);
+        for (int i = 0; i < memorySize; i++) {
+            context.put(keys[i], values[i]);
+        }
+    }
+
+    /** Строка как varint-длина и байты UTF-8 — без предела 64 КБ у {@link DataOutput#writeUTF}. */
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0) {
+            throw new IOException("Corrupted session: string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Беззнаковое целое по 7 бит в байте, старший бит — «есть продолжение». */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupted varint");
+    }
+}
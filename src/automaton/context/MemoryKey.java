@@ -0,0 +1,99 @@
+package automaton.context;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Типизированный ключ рабочей памяти контекста.
+ *
+ * Имя ключа разрешается в целочисленный слот один раз — при создании ключа.
+ * Дальше команды читают и пишут память по индексу массива, без хеширования строк,
+ * упаковки чисел и выделения памяти. Для счётчиков и метрик есть примитивные слоты
+ * long/double (см. {@link #ofLong(String)}, {@link #ofDouble(String)}).
+ *
+ * Ключи с одинаковыми именем и видом — один и тот же объект, поэтому их можно
+ * объявлять как static final константы в разных командах.
+ * Типизированная память — отдельное пространство имён: она не видна через
+ * {@link Context#get(String)} и {@link Context#memoryView()}.
+ *
+ * @param <T> тип значения
+ */
+public final class MemoryKey<T> {
+
+    /** Вид слота. */
+    public enum Kind { OBJECT, LONG, DOUBLE }
+
+    private static final Map<String, MemoryKey<?>> REGISTRY = new ConcurrentHashMap<>();
+    private static final AtomicInteger[] SLOT_COUNTERS = {
+            new AtomicInteger(), new AtomicInteger(), new AtomicInteger()
+    };
+
+    private final String name;
+    private final Class<T> type;
+    private final Kind kind;
+    private final int slot;
+
+    private MemoryKey(String name, Class<T> type, Kind kind, int slot) {
+        this.name = name;
+        this.type = type;
+        this.kind = kind;
+        this.slot = slot;
+    }
+
+    /** Ключ для объектного значения заданного типа. */
+    public static <T> MemoryKey<T> of(String name, Class<T> type) {
+        Objects.requireNonNull(type, "type");
+        return resolve(name, type, Kind.OBJECT);
+    }
+
+    /** Ключ для примитивного слота long. */
+    public static MemoryKey<Long> ofLong(String name) {
+        return resolve(name, Long.class, Kind.LONG);
+    }
+
+    /** Ключ для примитивного слота double. */
+    public static MemoryKey<Double> ofDouble(String name) {
+        return resolve(name, Double.class, Kind.DOUBLE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MemoryKey<T> resolve(String name, Class<T> type, Kind kind) {
+        Objects.requireNonNull(name, "name");
+        MemoryKey<?> key = REGISTRY.computeIfAbsent(kind + ":" + name,
+                k -> new MemoryKey<>(name, type, kind, SLOT_COUNTERS[kind.ordinal()].getAndIncrement()));
+        if (key.type != type) {
+            throw new IllegalArgumentException("Memory key '" + name + "' is already declared with type "
+                    + key.type.getName() + ", not " + type.getName());
+        }
+        return (MemoryKey<T>) key;
+    }
+
+    /** Сколько слотов заданного вида объявлено на данный момент. */
+    static int slotCount(Kind kind) {
+        return SLOT_COUNTERS[kind.ordinal()].get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /** Индекс слота внутри массивов своего вида. */
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryKey{" + name + ", " + kind + "#" + slot + "}";
+    }
+}
@@ -0,0 +1,16 @@
+package automaton.context;
+
+import automaton.state.State;
+
+/**
+ * Наблюдатель переходов сессии: вызывается из {@link Context#setState(State)} на каждый
+ * выбранный переход, включая переход в то же состояние.
+ *
+ * Вызывается в потоке, выполняющем шаг, поэтому реализация должна быть быстрой
+ * и не выделять память (например, увеличивать счётчик).
+ */
+@FunctionalInterface
+public interface TransitionListener {
+
+    void onTransition(State from, State to);
+}
@@ -0,0 +1,166 @@
+package automaton.context;
+
+import automaton.probability.TransitionDistribution;
+import automaton.state.State;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Динамический набор переходов одной сессии (overlay поверх общей модели).
+ *
+ * Команды, которые на каждом шаге заново строят переходы из текущего состояния,
+ * пишут их сюда, а не в общий {@link State}: модель остаётся неизменной и может
+ * обслуживать много сессий одновременно без гонок. Пока overlay активен для текущего
+ * состояния, команды перехода выбирают следующее состояние из него, а не из
+ * статических переходов состояния.
+ *
+ * Буферы (цели, веса, накопленные вероятности) переиспользуются между шагами
+ * и растут только при необходимости. Overlay снимается при уходе из состояния
+ * и при сбросе контекста.
+ */
+public final class TransitionOverlay {
+
+    private State owner;
+    private State[] targets = new State[4];
+    private double[] weights = new double[4];
+    private double[] cumulative = new double[4];
+    private int size;
+    private boolean cumulativeValid;
+
+    private final List<State> targetsView = new TargetsView();
+
+    TransitionOverlay() {
+    }
+
+    /** Начинает новый набор переходов для состояния owner (аналог clearNextStates). */
+    public void begin(State owner) {
+        this.owner = owner;
+        clearTargets();
+    }
+
+    /**
+     * Добавляет переход; повторное добавление уже известной цели игнорируется,
+     * как в {@link State#addNextState(State, double)}.
+     *
+     * @throws IllegalStateException если overlay не начат
+     */
+    public void add(State target, double weight) {
+        if (owner == null) {
+            throw new IllegalStateException("Transition overlay is not started: call begin() first");
+        }
+        for (int i = 0; i < size; i++) {
+            if (targets[i].equals(target)) return;
+        }
+        if (size == targets.length) {
+            int capacity = size * 2;
+            targets = Arrays.copyOf(targets, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            cumulative = new double[capacity];
+        }
+        targets[size] = target;
+        weights[size] = weight;
+        size++;
+        cumulativeValid = false;
+    }
+
+    /** Снимает overlay: команды перехода снова используют статические переходы состояния. */
+    public void clear() {
+        owner = null;
+        clearTargets();
+    }
+
+    private void clearTargets() {
+        Arrays.fill(targets, 0, size, null);
+        size = 0;
+        cumulativeValid = false;
+    }
+
+    /** Активен ли overlay для данного состояния. */
+    public boolean isActiveFor(State state) {
+        return owner != null && owner == state;
+    }
+
+    /** Состояние, для которого построен overlay (null, если overlay не активен). */
+    public State getOwner() {
+        return owner;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public State get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of overlay size " + size);
+        }
+        return targets[index];
+    }
+
+    public double getWeight(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of overlay size " + size);
+        }
+        return weights[index];
+    }
+
+    /**
+     * Только для чтения: живое представление целей (для {@code HistoryProbabilityProvider}).
+     * Меняется вместе с overlay, поэтому его не стоит хранить дольше одного шага.
+     */
+    public List<State> targetsView() {
+        return targetsView;
+    }
+
+    /**
+     * Выбирает цель по равномерному числу u из [0, 1) с той же семантикой,
+     * что и {@link State#selectNextState(double)}: веса нормализуются, при неположительной
+     * сумме распределение равномерное. Для пустого overlay возвращает null.
+     */
+    public State select(double u) {
+        int n = size;
+        if (n == 0) return null;
+        return targets[TransitionDistribution.sampleIndex(cumulativeProbabilities(), n, u)];
+    }
+
+    private double[] cumulativeProbabilities() {
+        if (cumulativeValid) return cumulative;
+        int n = size;
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            if (weights[i] > 0.0) sum += weights[i];
+        }
+        double acc = 0.0;
+        for (int i = 0; i < n; i++) {
+            // Если все веса <= 0, используем равномерное распределение
+            acc += sum <= 0.0 ? 1.0 / n : Math.max(0.0, weights[i]) / sum;
+            cumulative[i] = acc;
+        }
+        cumulativeValid = true;
+        return cumulative;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TransitionOverlay{owner=").append(owner).append(", targets=[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(targets[i].getName()).append('=').append(weights[i]);
+        }
+        return sb.append("]}").toString();
+    }
+
+    private final class TargetsView extends AbstractList<State> implements RandomAccess {
+        @Override
+        public State get(int index) {
+            return TransitionOverlay.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
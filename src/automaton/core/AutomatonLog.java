@@ -0,0 +1,31 @@
+package automaton.core;
+
+/**
+ * Глобальный переключатель отладочного вывода автомата.
+ *
+ * По умолчанию вывод включён (как и раньше, всё печатается в System.out).
+ * В нагруженных сценариях его стоит выключить: строки сообщений собираются
+ * только при включённом выводе, так что выключенный лог не выделяет память на шаге.
+ *
+ * Начальное значение задаётся системным свойством {@code automaton.log}
+ * (например, {@code -Dautomaton.log=false}).
+ */
+public final class AutomatonLog {
+
+    private static volatile boolean enabled =
+            Boolean.parseBoolean(System.getProperty("automaton.log", "true"));
+
+    private AutomatonLog() {
+        // Утилитарный класс
+    }
+
+    /** Включён ли отладочный вывод. */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Включает или выключает отладочный вывод для всех автоматов процесса. */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+}
@@ -1,32 +1,90 @@
 package automaton.core;
 
+import automaton.context.Context;
 import automaton.input.InputMessage;
 import automaton.state.State;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * Неизменяемый результат одного запуска автомата для заданного входного сообщения.
- * Содержит конечное состояние, полный путь посещённых состояний и исходное входное сообщение.
+ * Результат одного запуска автомата для заданного входного сообщения: конечное состояние,
+ * путь посещённых состояний, число шагов и исходное входное сообщение.
+ *
+ * В полном режиме ({@link ResultMode#FULL}) путь копируется при создании и результат неизменяем.
+ *
+ * В облегчённом режиме ({@link ResultMode#LIGHTWEIGHT}) результат хранит ссылку на контекст
+ * сессии и длину пути, а путь копирует при первом {@link #getVisitedStates()} (изменяемое
+ * ленивое поле, без синхронизации — обращайтесь из потока сессии или передавайте результат
+ * с happens-before). Путь действителен, пока история контекста не сброшена: после
+ * {@code reset()}, {@code run()} или {@code readSession()} ещё не запрошенный путь уже
+ * недоступен и {@link #getVisitedStates()} бросает {@link IllegalStateException};
+ * однажды скопированный путь остаётся доступным. {@code resetTo()} историю не сбрасывает
+ * (переход дописывается в неё), поэтому путь после него доступен.
+ * Остальные геттеры работают в обоих режимах всегда.
  */
 public class AutomatonResult {
 
     private final State finalState;
-    private final List<State> visitedStates;
+    private List<State> visitedStates;
     private final boolean inFinalState;
     private final InputMessage inputMessage;
+    private final int pathLength;
+    private final long stepCount;
+
+    /** Источник ленивой истории (null, если путь уже скопирован). */
+    private Context source;
+    private final long sourceEpoch;
 
     public AutomatonResult(State finalState,
                            List<State> visitedStates,
                            boolean inFinalState,
                            InputMessage inputMessage) {
+        this(finalState, visitedStates, inFinalState, inputMessage, 0);
+    }
+
+    public AutomatonResult(State finalState,
+                           List<State> visitedStates,
+                           boolean inFinalState,
+                           InputMessage inputMessage,
+                           long stepCount) {
         this.finalState = finalState;
         this.visitedStates = visitedStates != null
                 ? Collections.unmodifiableList(visitedStates)
                 : Collections.emptyList();
         this.inFinalState = inFinalState;
         this.inputMessage = inputMessage;
+        this.pathLength = this.visitedStates.size();
+        this.stepCount = stepCount;
+        this.source = null;
+        this.sourceEpoch = 0;
+    }
+
+    private AutomatonResult(State finalState,
+                            Context source,
+                            boolean inFinalState,
+                            InputMessage inputMessage,
+                            long stepCount) {
+        this.finalState = finalState;
+        this.visitedStates = null;
+        this.inFinalState = inFinalState;
+        this.inputMessage = inputMessage;
+        this.pathLength = source.getHistorySize();
+        this.stepCount = stepCount;
+        this.source = source;
+        this.sourceEpoch = source.getHistoryEpoch();
+    }
+
+    /**
+     * Облегчённый результат: история контекста не копируется, пока её не запросят.
+     * Запомненный префикс истории действителен до следующего сброса контекста.
+     */
+    public static AutomatonResult lightweight(State finalState,
+                                              Context context,
+                                              InputMessage inputMessage,
+                                              long stepCount) {
+        return new AutomatonResult(finalState, context, finalState.isFinal(), inputMessage, stepCount);
     }
 
     /** Конечное состояние после выполнения выбранного алгоритма. */
@@ -34,11 +92,35 @@ public class AutomatonResult {
         return finalState;
     }
 
-    /** Полная хронологическая последовательность состояний, посещённых во время обработки. */
+    /**
+     * Полная хронологическая последовательность состояний, посещённых во время обработки.
+     *
+     * @throws IllegalStateException если результат облегчённый, путь ещё не запрашивался,
+     *                               а контекст автомата с тех пор был сброшен
+     */
     public List<State> getVisitedStates() {
+        if (visitedStates == null) {
+            if (source.getHistoryEpoch() != sourceEpoch) {
+                throw new IllegalStateException(
+                        "History of a lightweight result is no longer available: the automaton was reset");
+            }
+            visitedStates = Collections.unmodifiableList(
+                    new ArrayList<>(source.historyView().subList(0, pathLength)));
+            source = null;
+        }
         return visitedStates;
     }
 
+    /** Длина пути (количество посещённых состояний) без материализации самого пути. */
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    /** Сколько шагов (step/run) выполнено с последнего сброса автомата; 0, если неизвестно. */
+    public long getStepCount() {
+        return stepCount;
+    }
+
     /** Является ли конечное состояние принимающим/финальным в модели автомата. */
     public boolean isInFinalState() {
         return inFinalState;
@@ -54,7 +136,7 @@ public class AutomatonResult {
         return "AutomatonResult{" +
                 "finalState=" + finalState +
                 ", inFinalState=" + inFinalState +
-                ", visitedStates=" + visitedStates +
+                ", visitedStates=" + (visitedStates != null ? visitedStates : "<" + pathLength + " states, lazy>") +
                 '}';
     }
 }
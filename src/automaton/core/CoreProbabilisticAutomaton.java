@@ -1,36 +1,83 @@
 package automaton.core;
 
 import automaton.context.Context;
+import automaton.context.ContextCodec;
+import automaton.context.MemoryKey;
+import automaton.context.TransitionListener;
 import automaton.input.InputMessage;
 import automaton.output.OutputMessage;
+import automaton.state.AlgorithmHandles;
 import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class CoreProbabilisticAutomaton {
     private final Context context;
     private final Random random = new Random();
     private final State initialState;
+    private final StateRegistry registry;
+    private ResultMode resultMode = ResultMode.FULL;
+
+    /** Число шагов (step/run) с последнего сброса контекста. */
+    private long stepCount;
+
+    /** Потребитель outbox для runUntilFinal без обратного вызова. */
+    private static final Consumer<OutputMessage> DISCARD = message -> { };
 
     public CoreProbabilisticAutomaton(State initialState) {
+        this(initialState, Context.DEFAULT_OUTBOX_CAPACITY);
+    }
+
+    /** Создаёт автомат с заданной ёмкостью outbox. */
+    public CoreProbabilisticAutomaton(State initialState, int outboxCapacity) {
         this.initialState = initialState;
-        this.context = new Context(initialState);
+        this.registry = initialState.getRegistry();
+        this.context = new Context(initialState, outboxCapacity);
+    }
+
+    /**
+     * Реестр состояний модели: плотные id для табличной статистики и аналитики.
+     * Берётся у начального состояния; null, если модель не зарегистрирована
+     * ({@link StateRegistry#registerGraph(State)}).
+     */
+    public StateRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Подключает наблюдателя переходов этой сессии (например, {@code TransitionLearner},
+     * общий для всех сессий модели); null — отключить.
+     */
+    public void setTransitionListener(TransitionListener listener) {
+        context.setTransitionListener(listener);
     }
 
     public void processInput(String input) {
-        System.out.println("Processing input: '" + input + "' in state " + getCurrentStateName());
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("Processing input: '" + input + "' in state " + getCurrentStateName());
+        }
 
         State currentState = context.getCurrentState();
-        Set<String> algorithms = currentState.getAlgorithmNames();
+        int count = currentState.getAlgorithmCount();
 
-        if (algorithms.isEmpty()) {
-            System.out.println("No algorithms for input '" + input + "'");
+        if (count == 0) {
+            if (AutomatonLog.isEnabled()) System.out.println("No algorithms for input '" + input + "'");
             return;
         }
 
-        String selectedAlgorithm = algorithms.contains(input) ? input :
-                new ArrayList<>(algorithms).get(random.nextInt(algorithms.size()));
+        // Выбор по handle: без копирования набора имён в список
+        int selected = AlgorithmHandles.find(input);
+        if (!currentState.hasAlgorithm(selected)) {
+            selected = currentState.getAlgorithmHandle(random.nextInt(count));
+        }
 
-        currentState.executeAlgorithm(context, selectedAlgorithm);
+        currentState.executeAlgorithm(context, selected);
     }
 
     public void executeCurrentStateAlgorithm(String algorithmName) {
@@ -38,9 +85,29 @@ public class CoreProbabilisticAutomaton {
         currentState.executeAlgorithm(context, algorithmName);
     }
 
+    /** Выполняет алгоритм текущего состояния по handle. */
+    public void executeCurrentStateAlgorithm(int algorithmHandle) {
+        context.getCurrentState().executeAlgorithm(context, algorithmHandle);
+    }
+
+    /**
+     * Разрешает имя алгоритма в целочисленный handle. Разрешить имя стоит один раз
+     * при настройке агента и дальше вызывать перегрузки step/run с handle:
+     * шаг находит команды по индексу массива, без поиска строки.
+     *
+     * Имя не заводится в глобальной таблице: для алгоритма, которого не объявило ни одно
+     * состояние, возвращается -1 (шаг с таким handle ничего не делает, runUntilFinal
+     * останавливается с NO_ALGORITHM). Поэтому разрешайте имя после построения модели.
+     */
+    public static int resolveAlgorithm(String algorithmName) {
+        return AlgorithmHandles.find(algorithmName);
+    }
+
     public void addTransition(State from, State to, double probability) {
         from.addNextState(to, probability);
-        System.out.println("Added transition: " + from.getName() + " -> " + to.getName() + " (probability: " + probability + ")");
+        if (AutomatonLog.isEnabled()) {
+            System.out.println("Added transition: " + from.getName() + " -> " + to.getName() + " (probability: " + probability + ")");
+        }
     }
 
     public void addTransition(State from, State to) {
@@ -53,12 +120,13 @@ public class CoreProbabilisticAutomaton {
 
     public void reset() {
         context.reset(initialState);
-        System.out.println("Automaton reset to initial state: " + initialState.getName());
+        stepCount = 0;
+        if (AutomatonLog.isEnabled()) System.out.println("Automaton reset to initial state: " + initialState.getName());
     }
 
     public void resetTo(State state) {
         context.setState(state);
-        System.out.println("Automaton reset to state: " + state.getName());
+        if (AutomatonLog.isEnabled()) System.out.println("Automaton reset to state: " + state.getName());
     }
 
     public String getCurrentStateName() {
@@ -88,18 +156,29 @@ public class CoreProbabilisticAutomaton {
     public AutomatonResult run(String algorithmName, InputMessage inputMessage) {
         // Сбрасываем контекст и историю
         context.reset(initialState);
+        stepCount = 0;
         if (inputMessage != null) {
             context.setInputMessage(inputMessage);
         }
         // Выполняем выбранный алгоритм с начального состояния
         State current = context.getCurrentState();
         current.executeAlgorithm(context, algorithmName);
+        stepCount++;
 
-        State finalState = context.getCurrentState();
-        return new AutomatonResult(finalState,
-                context.getStateHistory(),
-                finalState.isFinal(),
-                inputMessage);
+        return buildResult(inputMessage);
+    }
+
+    /** Как {@link #run(String, InputMessage)}, но алгоритм задан handle. */
+    public AutomatonResult run(int algorithmHandle, InputMessage inputMessage) {
+        context.reset(initialState);
+        stepCount = 0;
+        if (inputMessage != null) {
+            context.setInputMessage(inputMessage);
+        }
+        context.getCurrentState().executeAlgorithm(context, algorithmHandle);
+        stepCount++;
+
+        return buildResult(inputMessage);
     }
 
     /**
@@ -109,6 +188,10 @@ public class CoreProbabilisticAutomaton {
      *  - automaton.step("handle", message);
      *  - проверка текущего состояния и/или истории;
      *  - повторять, пока не достигнуто конечное состояние.
+     *
+     * В режиме {@link ResultMode#FULL} каждый результат содержит копию всей истории,
+     * поэтому n шагов копируют O(n²) состояний; для длинных сессий используйте
+     * {@link ResultMode#LIGHTWEIGHT}.
      */
     public AutomatonResult step(String algorithmName, InputMessage inputMessage) {
         if (inputMessage != null) {
@@ -116,12 +199,142 @@ public class CoreProbabilisticAutomaton {
         }
         State current = context.getCurrentState();
         current.executeAlgorithm(context, algorithmName);
+        stepCount++;
+
+        return buildResult(inputMessage);
+    }
+
+    /** Как {@link #step(String, InputMessage)}, но алгоритм задан handle. */
+    public AutomatonResult step(int algorithmHandle, InputMessage inputMessage) {
+        if (inputMessage != null) {
+            context.setInputMessage(inputMessage);
+        }
+        context.getCurrentState().executeAlgorithm(context, algorithmHandle);
+        stepCount++;
+
+        return buildResult(inputMessage);
+    }
 
-        State newCurrent = context.getCurrentState();
-        return new AutomatonResult(newCurrent,
+    private AutomatonResult buildResult(InputMessage inputMessage) {
+        State finalState = context.getCurrentState();
+        if (resultMode == ResultMode.LIGHTWEIGHT) {
+            return AutomatonResult.lightweight(finalState, context, inputMessage, stepCount);
+        }
+        return new AutomatonResult(finalState,
                 context.getStateHistory(),
-                newCurrent.isFinal(),
-                inputMessage);
+                finalState.isFinal(),
+                inputMessage,
+                stepCount);
+    }
+
+    /** Режим формирования результатов run()/step(). */
+    public ResultMode getResultMode() {
+        return resultMode;
+    }
+
+    /** Задаёт режим формирования результатов run()/step(). */
+    public void setResultMode(ResultMode resultMode) {
+        this.resultMode = Objects.requireNonNull(resultMode, "resultMode");
+    }
+
+    /** Число шагов (step/run) с последнего сброса. */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Шаг без выделения памяти: как {@link #step(String, InputMessage)}, но вместо нового
+     * AutomatonResult с копией истории заполняет переданный переиспользуемый объект.
+     *
+     * Вместе с выключенным {@link AutomatonLog}, {@link #drainOutbox(Consumer)} и
+     * заранее зарезервированной историей ({@link #ensureHistoryCapacity(int)}) шаг
+     * по встроенным командам не создаёт объектов.
+     *
+     * @return тот же объект result
+     */
+    public StepResult step(String algorithmName, InputMessage inputMessage, StepResult result) {
+        if (inputMessage != null) {
+            context.setInputMessage(inputMessage);
+        }
+        context.getCurrentState().executeAlgorithm(context, algorithmName);
+        stepCount++;
+        result.set(context.getCurrentState(), inputMessage, context.getHistorySize());
+        return result;
+    }
+
+    /** Как {@link #step(String, InputMessage, StepResult)}, но алгоритм задан handle. */
+    public StepResult step(int algorithmHandle, InputMessage inputMessage, StepResult result) {
+        if (inputMessage != null) {
+            context.setInputMessage(inputMessage);
+        }
+        context.getCurrentState().executeAlgorithm(context, algorithmHandle);
+        stepCount++;
+        result.set(context.getCurrentState(), inputMessage, context.getHistorySize());
+        return result;
+    }
+
+    /** Как {@link #runUntilFinal(int, Supplier, int, Consumer)}; выходные сообщения отбрасываются. */
+    public RunSummary runUntilFinal(String algorithmName, Supplier<? extends InputMessage> inputSource, int maxSteps) {
+        return runUntilFinal(AlgorithmHandles.find(algorithmName), inputSource, maxSteps, null);
+    }
+
+    /**
+     * Как {@link #runUntilFinal(int, Supplier, int, Consumer)}, но алгоритм задан именем.
+     * Имя ищется без заведения handle: неизвестное имя даёт NO_ALGORITHM и не растит
+     * глобальную таблицу алгоритмов.
+     */
+    public RunSummary runUntilFinal(String algorithmName, Supplier<? extends InputMessage> inputSource, int maxSteps,
+                                    Consumer<? super OutputMessage> output) {
+        return runUntilFinal(AlgorithmHandles.find(algorithmName), inputSource, maxSteps, output);
+    }
+
+    /**
+     * Цикл агента внутри автомата: с текущего состояния (без сброса) выполняет алгоритм
+     * algorithmHandle, пока сессия не придёт в конечное состояние или не исчерпает maxSteps шагов.
+     *
+     * Перед каждым шагом вход берётся у inputSource (null-источник или null-сообщение — вход
+     * прежний, как в {@link #step(int, InputMessage)}). После шага outbox передаётся output;
+     * без потребителя сообщения отбрасываются (но считаются). Результат и копия истории на шагах
+     * не создаются — возвращается один итог. Если у текущего состояния нет алгоритма, цикл
+     * останавливается: шаг всё равно ничего не изменил бы.
+     */
+    public RunSummary runUntilFinal(int algorithmHandle, Supplier<? extends InputMessage> inputSource, int maxSteps,
+                                    Consumer<? super OutputMessage> output) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("maxSteps must be >= 0: " + maxSteps);
+        }
+        Consumer<? super OutputMessage> sink = output != null ? output : DISCARD;
+        int steps = 0;
+        int outputs = 0;
+        InputMessage lastInput = null;
+        RunSummary.StopReason reason = RunSummary.StopReason.STEP_LIMIT;
+        while (true) {
+            State current = context.getCurrentState();
+            if (current.isFinal()) {
+                reason = RunSummary.StopReason.FINAL;
+                break;
+            }
+            if (!current.hasAlgorithm(algorithmHandle)) {
+                reason = RunSummary.StopReason.NO_ALGORITHM;
+                break;
+            }
+            if (steps == maxSteps) break;
+            InputMessage input = inputSource != null ? inputSource.get() : null;
+            if (input != null) {
+                context.setInputMessage(input);
+                lastInput = input;
+            }
+            current.executeAlgorithm(context, algorithmHandle);
+            stepCount++;
+            steps++;
+            outputs += context.drainOutbox(sink);
+        }
+        return new RunSummary(context.getCurrentState(), reason, steps, stepCount, outputs, lastInput);
+    }
+
+    /** Резервирует место под историю посещённых состояний на заданное число шагов. */
+    public void ensureHistoryCapacity(int capacity) {
+        context.ensureHistoryCapacity(capacity);
     }
 
     /** Очищает и возвращает все выходные сообщения, отправленные за последний шаг/запуск. */
@@ -129,6 +342,48 @@ public class CoreProbabilisticAutomaton {
         return context.drainOutbox();
     }
 
+    /** Передаёт выходные сообщения потребителю без промежуточной копии; возвращает их количество. */
+    public int drainOutbox(Consumer<? super OutputMessage> consumer) {
+        return context.drainOutbox(consumer);
+    }
+
+    /** Сколько выходных сообщений отброшено из-за заполненного outbox. */
+    public long getDroppedMessageCount() {
+        return context.getDroppedMessageCount();
+    }
+
+    /** Можно ли сохранить сессию без потерь ({@link ContextCodec#isEncodable(Context)}). */
+    public boolean isSessionEncodable() {
+        return ContextCodec.isEncodable(context);
+    }
+
+    /**
+     * Записывает сессию (число шагов, режим результатов и контекст) в компактном двоичном виде.
+     *
+     * @throws IllegalArgumentException если сессию нельзя сохранить без потерь
+     */
+    public void writeSession(DataOutput out) throws IOException {
+        if (!isSessionEncodable()) {
+            throw new IllegalArgumentException("Session cannot be encoded without loss");
+        }
+        out.writeLong(stepCount);
+        out.writeByte(resultMode.ordinal());
+        ContextCodec.encode(context, out);
+    }
+
+    /** Восстанавливает сессию, записанную {@link #writeSession(DataOutput)} для той же модели. */
+    public void readSession(DataInput in) throws IOException {
+        long steps = in.readLong();
+        int mode = in.readUnsignedByte();
+        ResultMode[] modes = ResultMode.values();
+        if (mode >= modes.length) {
+            throw new IOException("Corrupted session: unknown result mode " + mode);
+        }
+        ContextCodec.decode(in, context);
+        stepCount = steps;
+        resultMode = modes[mode];
+    }
+
     /** Сохраняет значение в рабочей памяти автомата. */
     public void put(String key, Object value) {
         context.put(key, value);
@@ -144,6 +399,21 @@ public class CoreProbabilisticAutomaton {
         return context.memoryView();
     }
 
+    /** Читает значение из типизированной рабочей памяти. */
+    public <T> T get(MemoryKey<T> key) {
+        return context.get(key);
+    }
+
+    /** Читает примитивный слот long рабочей памяти. */
+    public long getLong(MemoryKey<Long> key) {
+        return context.getLong(key);
+    }
+
+    /** Читает примитивный слот double рабочей памяти. */
+    public double getDouble(MemoryKey<Double> key) {
+        return context.getDouble(key);
+    }
+
 public void printStatus() {
         State current = context.getCurrentState();
         System.out.println("Automaton status:");
@@ -0,0 +1,16 @@
+package automaton.core;
+
+/**
+ * Как {@link CoreProbabilisticAutomaton} формирует {@link AutomatonResult} в run()/step().
+ */
+public enum ResultMode {
+    /** Результат сразу получает полную копию истории (поведение по умолчанию). */
+    FULL,
+
+    /**
+     * Результат хранит только конечное состояние, счётчики и длину пути.
+     * История копируется лениво — при первом вызове getVisitedStates(),
+     * и только пока контекст автомата не был сброшен.
+     */
+    LIGHTWEIGHT
+}
@@ -0,0 +1,78 @@
+package automaton.core;
+
+import automaton.input.InputMessage;
+import automaton.state.State;
+
+/**
+ * Итог {@link CoreProbabilisticAutomaton#runUntilFinal}: где остановилась сессия, почему,
+ * сколько шагов выполнено и сколько выходных сообщений отправлено. История не копируется —
+ * при необходимости её можно получить у автомата. Неизменяем.
+ */
+public final class RunSummary {
+
+    /** Причина остановки цикла. */
+    public enum StopReason {
+        /** Достигнуто конечное состояние. */
+        FINAL,
+        /** Исчерпан бюджет шагов. */
+        STEP_LIMIT,
+        /** У текущего состояния нет запрошенного алгоритма: шаг ничего бы не изменил. */
+        NO_ALGORITHM
+    }
+
+    private final State state;
+    private final StopReason reason;
+    private final int steps;
+    private final long totalStepCount;
+    private final int outputCount;
+    private final InputMessage lastInput;
+
+    RunSummary(State state, StopReason reason, int steps, long totalStepCount, int outputCount,
+               InputMessage lastInput) {
+        this.state = state;
+        this.reason = reason;
+        this.steps = steps;
+        this.totalStepCount = totalStepCount;
+        this.outputCount = outputCount;
+        this.lastInput = lastInput;
+    }
+
+    /** Состояние, в котором остановилась сессия. */
+    public State getState() {
+        return state;
+    }
+
+    public boolean isInFinalState() {
+        return reason == StopReason.FINAL;
+    }
+
+    public StopReason getStopReason() {
+        return reason;
+    }
+
+    /** Шагов, выполненных этим вызовом. */
+    public int getSteps() {
+        return steps;
+    }
+
+    /** Шагов с последнего сброса автомата (как {@link CoreProbabilisticAutomaton#getStepCount()}). */
+    public long getTotalStepCount() {
+        return totalStepCount;
+    }
+
+    /** Выходных сообщений, отправленных за вызов. */
+    public int getOutputCount() {
+        return outputCount;
+    }
+
+    /** Последнее входное сообщение, полученное от источника (null, если не было). */
+    public InputMessage getLastInput() {
+        return lastInput;
+    }
+
+    @Override
+    public String toString() {
+        return "RunSummary{state=" + state + ", reason=" + reason + ", steps=" + steps
+                + ", outputs=" + outputCount + '}';
+    }
+}
@@ -0,0 +1,53 @@
+package automaton.core;
+
+import automaton.input.InputMessage;
+import automaton.state.State;
+
+/**
+ * Изменяемый переиспользуемый результат шага.
+ *
+ * В отличие от {@link AutomatonResult}, не копирует историю и не создаётся заново:
+ * агент выделяет один объект и передаёт его в
+ * {@link CoreProbabilisticAutomaton#step(String, InputMessage, StepResult)} на каждом шаге.
+ * Значения действительны до следующего заполнения.
+ */
+public final class StepResult {
+
+    private State state;
+    private boolean inFinalState;
+    private InputMessage inputMessage;
+    private int historySize;
+
+    void set(State state, InputMessage inputMessage, int historySize) {
+        this.state = state;
+        this.inFinalState = state.isFinal();
+        this.inputMessage = inputMessage;
+        this.historySize = historySize;
+    }
+
+    /** Состояние после шага. */
+    public State getState() {
+        return state;
+    }
+
+    /** Является ли состояние после шага финальным. */
+    public boolean isInFinalState() {
+        return inFinalState;
+    }
+
+    /** Входное сообщение шага. */
+    public InputMessage getInputMessage() {
+        return inputMessage;
+    }
+
+    /** Длина истории посещённых состояний после шага. */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    @Override
+    public String toString() {
+        return "StepResult{state=" + state + ", inFinalState=" + inFinalState
+                + ", historySize=" + historySize + '}';
+    }
+}
@@ -0,0 +1,101 @@
+package automaton.learning;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Таблица имён состояний, которая ищет имя прямо по байтам UTF-8 (открытая адресация
+ * по хешу FNV-1a), без создания строки на каждый токен трассы. Байты имён хранятся
+ * в одном пуле; id — номер имени в порядке добавления. Не потокобезопасна.
+ */
+public final class ByteNameTable {
+
+    private byte[] pool = new byte[1 << 12];
+    private int poolSize;
+    private int[] nameStart = new int[64];
+    private int[] nameLength = new int[64];
+    private int[] nameHash = new int[64];
+    private int size;
+
+    /** Слоты: id + 1, 0 — пусто. */
+    private int[] slots = new int[128];
+
+    /** id имени bytes[0 .. length) или -1, если его нет. */
+    public int find(byte[] bytes, int length) {
+        int h = hash(bytes, length);
+        int mask = slots.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int v = slots[i];
+            if (v == 0) return -1;
+            if (matches(v - 1, h, bytes, length)) return v - 1;
+        }
+    }
+
+    /** id имени; новое имя добавляется. */
+    public int intern(byte[] bytes, int length) {
+        int h = hash(bytes, length);
+        int mask = slots.length - 1;
+        int i = h & mask;
+        for (int v = slots[i]; v != 0; v = slots[i]) {
+            if (matches(v - 1, h, bytes, length)) return v - 1;
+            i = (i + 1) & mask;
+        }
+
+        int id = size++;
+        if (id == nameStart.length) {
+            nameStart = Arrays.copyOf(nameStart, id * 2);
+            nameLength = Arrays.copyOf(nameLength, id * 2);
+            nameHash = Arrays.copyOf(nameHash, id * 2);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(bytes, 0, pool, poolSize, length);
+        nameStart[id] = poolSize;
+        nameLength[id] = length;
+        nameHash[id] = h;
+        poolSize += length;
+        slots[i] = id + 1;
+        if (size * 2 > slots.length) rehash();
+        return id;
+    }
+
+    /** id имени; новое имя добавляется. */
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, bytes.length);
+    }
+
+    public String name(int id) {
+        return new String(pool, nameStart[id], nameLength[id], StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean matches(int id, int h, byte[] bytes, int length) {
+        return nameHash[id] == h && nameLength[id] == length
+                && Arrays.equals(pool, nameStart[id], nameStart[id] + length, bytes, 0, length);
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        // Младшие биты FNV перемешаны слабо — добавляем финальное перемешивание
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        int[] grown = new int[slots.length * 2];
+        int mask = grown.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = nameHash[id] & mask;
+            while (grown[i] != 0) i = (i + 1) & mask;
+            grown[i] = id + 1;
+        }
+        slots = grown;
+    }
+}
@@ -0,0 +1,177 @@
+package automaton.learning;
+
+import automaton.compiled.CompiledModel;
+import automaton.config.AutomatonConfig;
+import automaton.config.JsonAutomatonLoader;
+import automaton.core.CoreProbabilisticAutomaton;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Модель, оценённая по трассам {@link TraceModelFitter}: число наблюдений каждого перехода
+ * в формате CSR (строка — исходное состояние, цели упорядочены по id) и оценки
+ * максимального правдоподобия {@code p(s → t) = count(s → t) / count(s → *)}.
+ *
+ * id состояний — номера имён в алфавитном порядке. Начальное состояние — то, с которого
+ * начинается больше всего трасс; конечными считаются состояния без наблюдённых исходящих
+ * переходов.
+ */
+public final class FittedTraceModel {
+
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] targets;
+    private final long[] counts;
+    private final long[] startCounts;
+    private final long traceCount;
+    private final long transitionCount;
+    private final long bytesRead;
+
+    FittedTraceModel(String[] names, int[] offsets, int[] targets, long[] counts, long[] startCounts,
+                     long traceCount, long transitionCount, long bytesRead) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.counts = counts;
+        this.startCounts = startCounts;
+        this.traceCount = traceCount;
+        this.transitionCount = transitionCount;
+        this.bytesRead = bytesRead;
+    }
+
+    public int getStateCount() {
+        return names.length;
+    }
+
+    public String getStateName(int id) {
+        return names[id];
+    }
+
+    /** id состояния по имени или -1. */
+    public int stateId(String name) {
+        int i = Arrays.binarySearch(names, name);
+        return i >= 0 ? i : -1;
+    }
+
+    /** Состояние без наблюдённых исходящих переходов. */
+    public boolean isFinal(int id) {
+        return offsets[id] == offsets[id + 1];
+    }
+
+    /** Имя состояния, с которого начинается больше всего трасс (null, если трасс нет). */
+    public String getInitialState() {
+        int best = -1;
+        for (int s = 0; s < startCounts.length; s++) {
+            if (startCounts[s] > 0 && (best < 0 || startCounts[s] > startCounts[best])) best = s;
+        }
+        return best >= 0 ? names[best] : null;
+    }
+
+    /** Число наблюдений перехода from → to. */
+    public long getCount(int from, int to) {
+        int at = Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to);
+        return at >= 0 ? counts[at] : 0L;
+    }
+
+    /** Оценка вероятности перехода from → to (0, если из from переходов не было). */
+    public double getProbability(int from, int to) {
+        long row = rowTotal(from);
+        return row > 0 ? (double) getCount(from, to) / row : 0.0;
+    }
+
+    private long rowTotal(int state) {
+        long sum = 0L;
+        for (int e = offsets[state]; e < offsets[state + 1]; e++) sum += counts[e];
+        return sum;
+    }
+
+    public long getTraceCount() {
+        return traceCount;
+    }
+
+    public long getTransitionCount() {
+        return transitionCount;
+    }
+
+    /** Число разобранных байтов всех файлов. */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** Скомпилированная модель с оценёнными вероятностями (без реестра состояний). */
+    public CompiledModel toCompiledModel() {
+        boolean[] finals = new boolean[names.length];
+        for (int s = 0; s < names.length; s++) finals[s] = isFinal(s);
+        double[] weights = new double[counts.length];
+        for (int e = 0; e < counts.length; e++) weights[e] = counts[e];
+        return CompiledModel.of(null, names, finals, offsets, targets, weights);
+    }
+
+    /**
+     * Конфигурация автомата в формате {@link JsonAutomatonLoader}: у каждого нефинального
+     * состояния алгоритм algorithm — clear_next_states, add_state с оценёнными вероятностями
+     * и probabilistic_transition.
+     */
+    public AutomatonConfig toConfig(String algorithm) {
+        String initial = getInitialState();
+        if (initial == null) {
+            throw new IllegalStateException("No traces were fitted");
+        }
+        AutomatonConfig cfg = new AutomatonConfig();
+        cfg.initialState = initial;
+        cfg.states = new ArrayList<>(names.length);
+        for (int s = 0; s < names.length; s++) {
+            AutomatonConfig.StateConfig sc = new AutomatonConfig.StateConfig();
+            sc.name = names[s];
+            sc.finalState = isFinal(s);
+            if (!sc.finalState) {
+                long row = rowTotal(s);
+                List<AutomatonConfig.CommandConfig> commands = new ArrayList<>();
+                commands.add(command("clear_next_states", null, null));
+                for (int e = offsets[s]; e < offsets[s + 1]; e++) {
+                    commands.add(command("add_state", names[targets[e]], (double) counts[e] / row));
+                }
+                commands.add(command("probabilistic_transition", null, null));
+                sc.algorithms = new LinkedHashMap<>();
+                sc.algorithms.put(algorithm, commands);
+            }
+            cfg.states.add(sc);
+        }
+        return cfg;
+    }
+
+    private static AutomatonConfig.CommandConfig command(String type, String target, Double probability) {
+        AutomatonConfig.CommandConfig cc = new AutomatonConfig.CommandConfig();
+        cc.type = type;
+        cc.target = target;
+        cc.probability = probability;
+        return cc;
+    }
+
+    /** Записывает конфигурацию автомата в JSON. */
+    public void writeJson(OutputStream out, String algorithm) throws IOException {
+        ObjectMapper mapper = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(out, toConfig(algorithm));
+    }
+
+    /** Собирает автомат с оценёнными весами. */
+    public CoreProbabilisticAutomaton toAutomaton(String algorithm) {
+        return new JsonAutomatonLoader().build(toConfig(algorithm));
+    }
+
+    @Override
+    public String toString() {
+        return "FittedTraceModel{states=" + names.length + ", edges=" + targets.length
+                + ", traces=" + traceCount + ", transitions=" + transitionCount + '}';
+    }
+}
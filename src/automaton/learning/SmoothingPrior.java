@@ -0,0 +1,49 @@
+package automaton.learning;
+
+import automaton.compiled.CompiledModel;
+
+/**
+ * Априорные псевдосчётчики для сглаживания выученных вероятностей.
+ *
+ * Опубликованная вероятность ребра e строки s:
+ * {@code p(e) = (count(e) + alpha(e)) / (count(s) + sum alpha(s))}.
+ * Пока наблюдений мало, вероятности остаются близки к априорным, а не обнуляются
+ * для ещё не встреченных переходов.
+ */
+public final class SmoothingPrior {
+
+    private final double alpha;
+    private final boolean dirichlet;
+
+    private SmoothingPrior(double alpha, boolean dirichlet) {
+        if (!(alpha >= 0.0) || Double.isInfinite(alpha)) {
+            throw new IllegalArgumentException("Prior strength must be a finite non-negative number: " + alpha);
+        }
+        this.alpha = alpha;
+        this.dirichlet = dirichlet;
+    }
+
+    /** Сглаживание Лапласа: alpha псевдонаблюдений на каждое ребро (alpha = 1 — классическое «+1»). */
+    public static SmoothingPrior laplace(double alpha) {
+        return new SmoothingPrior(alpha, false);
+    }
+
+    /**
+     * Априор Дирихле с центром в вероятностях исходной модели:
+     * alpha(e) = strength * p0(e), т.е. strength псевдонаблюдений на строку,
+     * распределённых как в модели до обучения.
+     */
+    public static SmoothingPrior dirichlet(double strength) {
+        return new SmoothingPrior(strength, true);
+    }
+
+    /** Псевдосчётчик ребра edge; prior — исходная модель. */
+    public double pseudoCount(CompiledModel prior, int edge) {
+        return dirichlet ? alpha * prior.probability(edge) : alpha;
+    }
+
+    @Override
+    public String toString() {
+        return (dirichlet ? "Dirichlet{strength=" : "Laplace{alpha=") + alpha + '}';
+    }
+}
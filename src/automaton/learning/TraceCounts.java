@@ -0,0 +1,68 @@
+package automaton.learning;
+
+import automaton.probability.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Счётчики одного потока оценки: локальные id имён состояний, число переходов
+ * по парам (from, to) и число трасс, начинающихся в каждом состоянии.
+ *
+ * Имена интернируются прямо из байтов файла ({@link ByteNameTable}), поэтому разбор
+ * не создаёт строку на каждый токен: строки появляются только при слиянии, по одной
+ * на различное имя. Не потокобезопасен — у каждого потока свой.
+ */
+final class TraceCounts extends TraceReader {
+
+    final ByteNameTable names = new ByteNameTable();
+
+    /** Пара (from << 32 | to) → индекс счётчика в edgeCounts. */
+    final LongIntHashMap edgeByKey = new LongIntHashMap(1024);
+    long[] edgeKeys = new long[1024];
+    long[] edgeCounts = new long[1024];
+    int edgeCount;
+
+    long[] startCounts = new long[64];
+    long traceCount;
+    long transitionCount;
+
+    private int previous = -1;
+
+    @Override
+    protected void onState(byte[] name, int length) {
+        int id = names.intern(name, length);
+        if (previous < 0) {
+            if (id >= startCounts.length) startCounts = Arrays.copyOf(startCounts, Math.max(id + 1, startCounts.length * 2));
+            startCounts[id]++;
+            traceCount++;
+        } else {
+            addTransition(previous, id, 1L);
+        }
+        previous = id;
+    }
+
+    @Override
+    protected void onTraceEnd() {
+        previous = -1;
+    }
+
+    long startCount(int id) {
+        return id < startCounts.length ? startCounts[id] : 0L;
+    }
+
+    void addTransition(int from, int to, long count) {
+        long key = ((long) from << 32) | to;
+        int edge = edgeByKey.get(key, -1);
+        if (edge < 0) {
+            if (edgeCount == edgeKeys.length) {
+                edgeKeys = Arrays.copyOf(edgeKeys, edgeCount * 2);
+                edgeCounts = Arrays.copyOf(edgeCounts, edgeCount * 2);
+            }
+            edge = edgeCount++;
+            edgeKeys[edge] = key;
+            edgeByKey.put(key, edge, -1);
+        }
+        edgeCounts[edge] += count;
+        transitionCount += count;
+    }
+}
@@ -0,0 +1,105 @@
+package automaton.learning;
+
+import automaton.probability.LongIntHashMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Оценка вероятностей переходов по записанным трассам методом максимального правдоподобия:
+ * вероятность перехода s → t равна доле переходов из s, ведущих в t.
+ *
+ * Формат трасс — см. {@link TraceReader}. Файлы режутся на куски по байтовым диапазонам,
+ * куски разбирают рабочие потоки. У каждого потока свои примитивные таблицы
+ * ({@link TraceCounts}); после разбора они сливаются по именам состояний, поэтому потоки
+ * не синхронизируются на каждом переходе.
+ */
+public class TraceModelFitter {
+
+    /** Размер куска по умолчанию: 64 МБ. */
+    public static final long DEFAULT_SHARD_BYTES = 64L << 20;
+
+    private final int threads;
+    private final long shardBytes;
+
+    /** Оценка в число потоков по числу процессоров. */
+    public TraceModelFitter() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_SHARD_BYTES);
+    }
+
+    /**
+     * @param threads    число рабочих потоков
+     * @param shardBytes размер куска файла, который разбирается одним заданием
+     */
+    public TraceModelFitter(int threads, long shardBytes) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: " + threads);
+        }
+        if (shardBytes < 1) {
+            throw new IllegalArgumentException("shardBytes must be >= 1: " + shardBytes);
+        }
+        this.threads = threads;
+        this.shardBytes = shardBytes;
+    }
+
+    public FittedTraceModel fit(Path... files) throws IOException {
+        return fit(Arrays.asList(files));
+    }
+
+    /** Разбирает файлы трасс параллельно и возвращает оценённую модель. */
+    public FittedTraceModel fit(List<Path> files) throws IOException {
+        List<TraceCounts> counts = TraceReader.readPerWorker(
+                TraceReader.split(files, shardBytes), threads, TraceCounts::new);
+        return merge(counts);
+    }
+
+    /** Сливает таблицы потоков: глобальные id — по алфавиту имён, чтобы результат не зависел от разбиения. */
+    private static FittedTraceModel merge(List<TraceCounts> counts) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (TraceCounts local : counts) {
+            for (int id = 0; id < local.names.size(); id++) ids.putIfAbsent(local.names.name(id), 0);
+        }
+        String[] names = ids.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        for (int i = 0; i < names.length; i++) ids.put(names[i], i);
+
+        TraceCounts total = new TraceCounts();
+        long[] startCounts = new long[names.length];
+        long traces = 0L;
+        long bytes = 0L;
+        for (TraceCounts local : counts) {
+            int[] toGlobal = new int[local.names.size()];
+            for (int id = 0; id < toGlobal.length; id++) {
+                toGlobal[id] = ids.get(local.names.name(id));
+                startCounts[toGlobal[id]] += local.startCount(id);
+            }
+            for (int e = 0; e < local.edgeCount; e++) {
+                long key = local.edgeKeys[e];
+                total.addTransition(toGlobal[(int) (key >>> 32)], toGlobal[(int) key], local.edgeCounts[e]);
+            }
+            traces += local.traceCount;
+            bytes += local.getBytesRead();
+        }
+
+        // CSR: ключи (from << 32 | to) после сортировки сгруппированы по строкам, цели упорядочены
+        long[] keys = Arrays.copyOf(total.edgeKeys, total.edgeCount);
+        Arrays.sort(keys);
+        LongIntHashMap edgeByKey = total.edgeByKey;
+        int[] offsets = new int[names.length + 1];
+        int[] targets = new int[keys.length];
+        long[] edgeCounts = new long[keys.length];
+        for (int e = 0; e < keys.length; e++) {
+            offsets[(int) (keys[e] >>> 32) + 1]++;
+            targets[e] = (int) keys[e];
+            edgeCounts[e] = total.edgeCounts[edgeByKey.get(keys[e], -1)];
+        }
+        for (int s = 0; s < names.length; s++) offsets[s + 1] += offsets[s];
+
+        return new FittedTraceModel(names, offsets, targets, edgeCounts, startCounts,
+                traces, total.transitionCount, bytes);
+    }
+}
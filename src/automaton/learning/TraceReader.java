@@ -0,0 +1,230 @@
+package automaton.learning;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Потоковый разбор файлов трасс по байтовым кускам.
+ *
+ * Формат: одна сессия на строку, имена состояний через пробелы, табуляции, запятые
+ * или точки с запятой (UTF-8); пустые строки и строки, начинающиеся с '#', пропускаются.
+ * <pre>
+ * START SCAN_UI CHOOSE_TARGET CLICK VERIFY REPORT
+ * START SCAN_UI WAIT SCAN_UI REPORT
+ * </pre>
+ *
+ * Кусок [start, end) содержит строки, которые в нём начинаются: строка, начатая до start,
+ * принадлежит предыдущему куску, а строка, начатая до end, дочитывается за end. Поэтому
+ * файл можно резать в произвольных местах и разбирать куски параллельно.
+ *
+ * Наследник получает имена состояний как байты во внутреннем буфере ({@link #onState})
+ * и конец каждой непустой трассы ({@link #onTraceEnd()}). Экземпляр не потокобезопасен:
+ * у каждого потока свой.
+ */
+public abstract class TraceReader {
+
+    private static final int READ_BUFFER = 1 << 20;
+
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private boolean traceStarted;
+    private long bytesRead;
+
+    /** Очередное состояние трассы: байты имени name[0 .. length), буфер переиспользуется. */
+    protected abstract void onState(byte[] name, int length);
+
+    /** Конец непустой трассы. */
+    protected abstract void onTraceEnd();
+
+    /** Число прочитанных байтов (включая дочитанные за концом куска). */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** Разбирает строки файла, начинающиеся в [start, end). */
+    public void read(Path file, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+            long pos = start;
+            boolean skipping = false;
+            if (start > 0) {
+                ByteBuffer one = ByteBuffer.allocate(1);
+                channel.read(one, start - 1);
+                skipping = one.get(0) != '\n';
+            }
+            boolean lineStart = !skipping;
+            tokenLength = 0;
+            traceStarted = false;
+
+            byte[] bytes = buffer.array();
+            int limit = 0;
+            int i = 0;
+            while (true) {
+                if (i == limit) {
+                    buffer.clear();
+                    int n = channel.read(buffer, pos);
+                    if (n <= 0) break;
+                    limit = n;
+                    i = 0;
+                }
+                byte b = bytes[i++];
+                pos++;
+                bytesRead++;
+                if (b == '\n') {
+                    if (!skipping) endLine();
+                    skipping = false;
+                    lineStart = true;
+                    if (pos >= end) return;
+                    continue;
+                }
+                if (skipping) continue;
+                if (lineStart) {
+                    lineStart = false;
+                    // Строка-комментарий
+                    if (b == '#') {
+                        skipping = true;
+                        continue;
+                    }
+                }
+                if (b == ' ' || b == '\t' || b == ',' || b == ';' || b == '\r') {
+                    endToken();
+                } else {
+                    if (tokenLength == token.length) token = Arrays.copyOf(token, tokenLength * 2);
+                    token[tokenLength++] = b;
+                }
+            }
+            // Последняя строка файла без перевода строки
+            if (!skipping) endLine();
+        }
+    }
+
+    private void endToken() {
+        if (tokenLength == 0) return;
+        onState(token, tokenLength);
+        tokenLength = 0;
+        traceStarted = true;
+    }
+
+    private void endLine() {
+        endToken();
+        if (traceStarted) onTraceEnd();
+        traceStarted = false;
+    }
+
+    /** Кусок файла трасс. */
+    public static final class Shard {
+        public final Path file;
+        public final long start;
+        public final long end;
+
+        public Shard(Path file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** Режет файлы на куски не больше shardBytes (в порядке файлов и смещений). */
+    public static List<Shard> split(List<Path> files, long shardBytes) throws IOException {
+        if (shardBytes < 1) {
+            throw new IllegalArgumentException("shardBytes must be >= 1: " + shardBytes);
+        }
+        List<Shard> shards = new ArrayList<>();
+        for (Path file : files) {
+            long size = Files.size(file);
+            for (long start = 0; start < size; start += shardBytes) {
+                shards.add(new Shard(file, start, Math.min(size, start + shardBytes)));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Разбирает куски в threads потоках; у каждого потока свой читатель из factory,
+     * который накапливает результаты всех доставшихся ему кусков.
+     *
+     * @return читатели потоков (порядок кусков внутри читателя не определён)
+     */
+    public static <R extends TraceReader> List<R> readPerWorker(List<Shard> shards, int threads,
+                                                                 Supplier<R> factory) throws IOException {
+        int workers = Math.max(1, Math.min(threads, shards.size()));
+        List<R> readers = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) readers.add(factory.get());
+        AtomicInteger next = new AtomicInteger();
+        run(workers, w -> {
+            for (int s = next.getAndIncrement(); s < shards.size(); s = next.getAndIncrement()) {
+                Shard shard = shards.get(s);
+                readers.get(w).read(shard.file, shard.start, shard.end);
+            }
+        });
+        return readers;
+    }
+
+    /**
+     * Разбирает куски в threads потоках, по читателю на кусок.
+     *
+     * @return читатели в порядке кусков — результаты можно склеить в порядке файла
+     */
+    public static <R extends TraceReader> List<R> readPerShard(List<Shard> shards, int threads,
+                                                                Supplier<R> factory) throws IOException {
+        List<R> readers = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) readers.add(factory.get());
+        AtomicInteger next = new AtomicInteger();
+        run(Math.max(1, Math.min(threads, shards.size())), w -> {
+            for (int s = next.getAndIncrement(); s < shards.size(); s = next.getAndIncrement()) {
+                Shard shard = shards.get(s);
+                readers.get(s).read(shard.file, shard.start, shard.end);
+            }
+        });
+        return readers;
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+        void run(int worker) throws IOException;
+    }
+
+    private static void run(int workers, Worker body) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                int worker = w;
+                futures.add(executor.submit(() -> {
+                    try {
+                        body.run(worker);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Trace reading interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException("Trace reading failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package automaton.learning;
+
+import automaton.commands.AddExistingStateWithProbabilityCommand;
+import automaton.commands.AddStateWithProbabilityCommand;
+import automaton.commands.ClearNextStatesCommand;
+import automaton.commands.Command;
+import automaton.compiled.CompiledModel;
+import automaton.context.TransitionListener;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Онлайн-обучение вероятностей переходов по наблюдаемым сессиям.
+ *
+ * Подключается к сессиям как {@link TransitionListener}
+ * ({@link automaton.core.CoreProbabilisticAutomaton#setTransitionListener}) и считает
+ * переходы по рёбрам {@link CompiledModel}. Счётчики разбиты на полосы (stripes):
+ * у каждой полосы свой массив {@link AtomicLongArray} на все рёбра, поток пишет в полосу
+ * по своему id, поэтому параллельные сессии почти не конкурируют за одни и те же ячейки.
+ * Запись — один атомарный инкремент, без блокировок и без выделения памяти.
+ *
+ * {@link #publish()} суммирует полосы, сглаживает частоты априором {@link SmoothingPrior}
+ * и публикует результат: новый снимок модели ({@link #getModel()}) и новые веса статических
+ * переходов состояний ({@link State#publishWeights(double[])}). Публикация не берёт
+ * блокировок, которые нужны шагающим потокам: они продолжают считать и выбирать переходы,
+ * видя либо старую, либо новую таблицу. Счётчики, увеличенные во время публикации,
+ * попадут в следующую.
+ *
+ * В состояния публикуются только строки, стабильные с момента создания обучения
+ * ({@link #isLearnedRow(int)}): статические переходы, которые не очищает и не дополняет
+ * ни один алгоритм состояния. Строки, которые команды перестраивают на каждом шаге
+ * (clear + add, в том числе все JSON-модели с {@code clear_next_states}), не обучаются:
+ * следующий шаг всё равно заменил бы опубликованные веса. Их выученные вероятности есть
+ * только в снимке модели. Если собственная команда всё же изменила строку, публикация
+ * в неё пропускается ({@link #getSkippedRowCount()}).
+ *
+ * Переходы, которых нет в модели (в том числе «остаться на месте» без петли в модели),
+ * и состояния другого реестра не учитываются в рёбрах, а только в {@link #getUnmatchedCount()}.
+ */
+public final class TransitionLearner implements TransitionListener {
+
+    private final CompiledModel prior;
+    private final SmoothingPrior smoothing;
+    private final StateRegistry registry;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final LongAdder unmatched = new LongAdder();
+    private final LongAdder skippedRows = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+
+    /** Цели обучаемых строк на момент создания (по id состояния); null — строка не обучается. */
+    private final State[][] learnedTargets;
+
+    private volatile CompiledModel current;
+    private volatile long publishCount;
+
+    /** Обучение с числом полос по числу процессоров. */
+    public TransitionLearner(CompiledModel model, SmoothingPrior smoothing) {
+        this(model, smoothing, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param model    исходная модель: структура рёбер и априорные вероятности
+     * @param stripes  число полос счётчиков (округляется вверх до степени двойки)
+     */
+    public TransitionLearner(CompiledModel model, SmoothingPrior smoothing, int stripes) {
+        if (model == null || smoothing == null) {
+            throw new IllegalArgumentException("model and smoothing must not be null");
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be >= 1: " + stripes);
+        }
+        int count = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.prior = model;
+        this.smoothing = smoothing;
+        this.registry = model.getRegistry();
+        this.current = model;
+        this.stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new AtomicLongArray(model.getEdgeCount());
+        }
+        this.stripeMask = count - 1;
+        this.learnedTargets = new State[model.getStateCount()][];
+        if (registry != null) {
+            List<State> states = registry.getStates();
+            int n = Math.min(states.size(), model.getStateCount());
+            for (int s = 0; s < n; s++) {
+                State state = states.get(s);
+                if (state.getNextStateCount() > 0 && !rebuildsTransitions(state)) {
+                    learnedTargets[s] = state.getNextStates().toArray(new State[0]);
+                }
+            }
+        }
+    }
+
+    /** Меняет ли какой-либо алгоритм состояния его статические переходы. */
+    private static boolean rebuildsTransitions(State state) {
+        for (String algorithm : state.getAlgorithmNames()) {
+            for (Command command : state.getAlgorithm(algorithm)) {
+                if (command instanceof ClearNextStatesCommand
+                        || command instanceof AddExistingStateWithProbabilityCommand
+                        || command instanceof AddStateWithProbabilityCommand) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onTransition(State from, State to) {
+        if (from == null || to == null || from.getRegistry() != registry || to.getRegistry() != registry) {
+            unmatched.increment();
+            return;
+        }
+        int edge = prior.edgeIndex(from.getId(), to.getId());
+        if (edge < 0) {
+            unmatched.increment();
+            return;
+        }
+        stripes[stripe()].incrementAndGet(edge);
+    }
+
+    private int stripe() {
+        // Перемешиваем id потока, чтобы соседние id не попадали в одну полосу
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & stripeMask;
+    }
+
+    /** Суммарные счётчики рёбер (в порядке CSR модели) на момент вызова. */
+    public long[] snapshotCounts() {
+        long[] counts = new long[prior.getEdgeCount()];
+        for (AtomicLongArray stripe : stripes) {
+            for (int e = 0; e < counts.length; e++) {
+                counts[e] += stripe.get(e);
+            }
+        }
+        return counts;
+    }
+
+    /** Число наблюдений перехода from → to (0, если такого ребра нет). */
+    public long getCount(int from, int to) {
+        int edge = prior.edgeIndex(from, to);
+        if (edge < 0) return 0L;
+        long sum = 0L;
+        for (AtomicLongArray stripe : stripes) sum += stripe.get(edge);
+        return sum;
+    }
+
+    /**
+     * Публикует сглаженные вероятности по текущим счётчикам и возвращает новый снимок модели.
+     * Вызовы публикации упорядочены между собой; шагающие потоки не ждут.
+     */
+    public synchronized CompiledModel publish() {
+        long[] counts = snapshotCounts();
+        double[] probabilities = new double[counts.length];
+        for (int s = 0; s < prior.getStateCount(); s++) {
+            int from = prior.rowStart(s);
+            int to = prior.rowEnd(s);
+            double total = 0.0;
+            for (int e = from; e < to; e++) {
+                probabilities[e] = counts[e] + smoothing.pseudoCount(prior, e);
+                total += probabilities[e];
+            }
+            for (int e = from; e < to; e++) {
+                // Без наблюдений и без априора оставляем исходные вероятности строки
+                probabilities[e] = total > 0.0 ? probabilities[e] / total : prior.probability(e);
+            }
+        }
+        CompiledModel published = prior.withProbabilities(probabilities);
+        current = published;
+        if (registry != null) {
+            publishToStates(published);
+        }
+        publishCount++;
+        return published;
+    }
+
+    /** Переносит вероятности снимка в обучаемые строки состояний реестра. */
+    private void publishToStates(CompiledModel model) {
+        List<State> states = registry.getStates();
+        for (int s = 0; s < learnedTargets.length; s++) {
+            State[] targets = learnedTargets[s];
+            if (targets == null) continue;
+            double[] w = new double[targets.length];
+            boolean complete = true;
+            for (int i = 0; i < targets.length && complete; i++) {
+                State next = targets[i];
+                int edge = next.getRegistry() == registry ? model.edgeIndex(s, next.getId()) : -1;
+                if (edge < 0) {
+                    complete = false;
+                } else {
+                    w[i] = model.probability(edge);
+                }
+            }
+            // Строки с переходами вне модели не трогаем: их веса несравнимы с выученными
+            if (!complete) continue;
+            State state = states.get(s);
+            try {
+                if (sameTargets(state, targets)) {
+                    state.publishWeights(w);
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                // Строку меняют прямо сейчас (собственная команда): публикуем в следующий раз
+            }
+            skippedRows.increment();
+        }
+    }
+
+    private static boolean sameTargets(State state, State[] targets) {
+        if (state.getNextStateCount() != targets.length) return false;
+        for (int i = 0; i < targets.length; i++) {
+            if (state.getNextState(i) != targets[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Публикует вероятности периодически в потоке executor.
+     * Ошибка одной публикации учитывается в {@link #getPublishFailureCount()} и не отменяет
+     * следующие. Отмена — через возвращённый {@link ScheduledFuture}.
+     */
+    public ScheduledFuture<?> schedulePublishing(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be > 0: " + period);
+        }
+        return executor.scheduleAtFixedRate(() -> {
+            try {
+                publish();
+            } catch (RuntimeException e) {
+                publishFailures.increment();
+            }
+        }, period, period, unit);
+    }
+
+    /** Публикуются ли выученные веса в статические переходы состояния с данным id. */
+    public boolean isLearnedRow(int state) {
+        return learnedTargets[state] != null;
+    }
+
+    /** Последний опубликованный снимок (до первой публикации — исходная модель). */
+    public CompiledModel getModel() {
+        return current;
+    }
+
+    /** Исходная модель, по структуре которой ведутся счётчики. */
+    public CompiledModel getPriorModel() {
+        return prior;
+    }
+
+    public SmoothingPrior getSmoothing() {
+        return smoothing;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /** Число учтённых переходов по рёбрам модели. */
+    public long getObservedCount() {
+        long sum = 0L;
+        for (long c : snapshotCounts()) sum += c;
+        return sum;
+    }
+
+    /** Число переходов, которых нет в модели. */
+    public long getUnmatchedCount() {
+        return unmatched.sum();
+    }
+
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    /** Сколько раз публикация в строку пропущена, потому что её переходы изменились. */
+    public long getSkippedRowCount() {
+        return skippedRows.sum();
+    }
+
+    /** Сколько периодических публикаций завершилось ошибкой. */
+    public long getPublishFailureCount() {
+        return publishFailures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TransitionLearner{" + smoothing + ", stripes=" + stripes.length
+                + ", observed=" + getObservedCount() + ", unmatched=" + getUnmatchedCount()
+                + ", publishes=" + publishCount + '}';
+    }
+}
@@ -0,0 +1,242 @@
+package automaton.probability;
+
+import automaton.input.InputMessage;
+import automaton.state.State;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Кэширующий декоратор для {@link HistoryProbabilityProvider}.
+ *
+ * Многие провайдеры зависят только от последних k состояний истории и нескольких признаков
+ * входного сообщения, но пересчитывают всё (включая построение таблиц) на каждом вызове.
+ * Декоратор запоминает нормализованное распределение по ключу
+ * «последние historyWindow состояний + признак входа + набор кандидатов»
+ * и при повторе ключа отдаёт готовое распределение, не вызывая исходный провайдер.
+ *
+ * Корректность зависит от объявленного окна: если исходный провайдер смотрит глубже
+ * historyWindow состояний или на признаки входа, не попавшие в inputFeature,
+ * кэш вернёт устаревший результат.
+ *
+ * Размер кэша ограничен, вытесняется давно не использованная запись (LRU).
+ * Поиск по кэшу при попадании не выделяет памяти. Методы синхронизированы,
+ * исходный провайдер вызывается под блокировкой.
+ */
+public class CachingHistoryProbabilityProvider implements HistorySamplerProvider {
+
+    /** Размер кэша по умолчанию. */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private final HistoryProbabilityProvider delegate;
+    private final int historyWindow;
+    private final Function<? super InputMessage, ?> inputFeature;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, TransitionDistribution> cache;
+
+    /** Переиспользуемый ключ для поиска — на попадании ключ не создаётся. */
+    private final Key probe = new Key();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** Кэш по последним historyWindow состояниям; входное сообщение не учитывается. */
+    public CachingHistoryProbabilityProvider(HistoryProbabilityProvider delegate, int historyWindow) {
+        this(delegate, historyWindow, null, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param inputFeature функция признаков входа, от которых зависит провайдер
+     *                     (результат должен корректно реализовывать equals/hashCode; null — вход не учитывается)
+     */
+    public CachingHistoryProbabilityProvider(HistoryProbabilityProvider delegate,
+                                             int historyWindow,
+                                             Function<? super InputMessage, ?> inputFeature) {
+        this(delegate, historyWindow, inputFeature, DEFAULT_MAX_ENTRIES);
+    }
+
+    public CachingHistoryProbabilityProvider(HistoryProbabilityProvider delegate,
+                                             int historyWindow,
+                                             Function<? super InputMessage, ?> inputFeature,
+                                             int maxEntries) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is null");
+        }
+        if (historyWindow < 0) {
+            throw new IllegalArgumentException("historyWindow must be >= 0: " + historyWindow);
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0: " + maxEntries);
+        }
+        this.delegate = delegate;
+        this.historyWindow = historyWindow;
+        this.inputFeature = inputFeature;
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TransitionDistribution> eldest) {
+                if (size() > CachingHistoryProbabilityProvider.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public synchronized TransitionDistribution samplerFor(List<State> history,
+                                                          InputMessage input,
+                                                          List<State> nextStates) {
+        Object feature = inputFeature != null ? inputFeature.apply(input) : null;
+        probe.fill(history, historyWindow, nextStates, feature);
+        TransitionDistribution cached = cache.get(probe);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        misses++;
+
+        int n = nextStates.size();
+        double[] raw = delegate.computeProbabilities(history, input, nextStates);
+        if (raw == null || raw.length != n) {
+            throw new IllegalStateException(
+                    "HistoryProbabilityProvider returned invalid probabilities: expected length " +
+                            n + " but got " + (raw == null ? "null" : raw.length)
+            );
+        }
+        TransitionDistribution sampler = TransitionDistribution.fromWeights(
+                nextStates.toArray(new State[0]), Arrays.copyOf(raw, n));
+        cache.put(probe.copy(), sampler);
+        return sampler;
+    }
+
+    /** Нормализованные вероятности из кэша (новый массив на каждый вызов). */
+    @Override
+    public double[] computeProbabilities(List<State> history, InputMessage input, List<State> nextStates) {
+        TransitionDistribution sampler = samplerFor(history, input, nextStates);
+        double[] probabilities = new double[sampler.size()];
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] = sampler.getProbability(i);
+        }
+        return probabilities;
+    }
+
+    public int getHistoryWindow() {
+        return historyWindow;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /** Доля попаданий (0, если обращений ещё не было). */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /** Очищает кэш и счётчики. */
+    public synchronized void clear() {
+        cache.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CachingHistoryProbabilityProvider{window=" + historyWindow
+                + ", size=" + cache.size() + "/" + maxEntries
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + '}';
+    }
+
+    /**
+     * Ключ кэша: окно последних состояний, признак входа и кандидаты.
+     * Состояния сравниваются через equals (внутри одной модели — по id).
+     */
+    private static final class Key {
+        private State[] window = new State[0];
+        private int windowLength;
+        private State[] candidates = new State[0];
+        private int candidateCount;
+        private Object feature;
+        private int hash;
+
+        void fill(List<State> history, int k, List<State> nextStates, Object feature) {
+            int size = history != null ? history.size() : 0;
+            int from = Math.max(0, size - k);
+            windowLength = size - from;
+            if (window.length < windowLength) window = new State[windowLength];
+            for (int i = 0; i < windowLength; i++) window[i] = history.get(from + i);
+
+            candidateCount = nextStates.size();
+            if (candidates.length < candidateCount) candidates = new State[candidateCount];
+            for (int i = 0; i < candidateCount; i++) candidates[i] = nextStates.get(i);
+
+            this.feature = feature;
+
+            int h = windowLength;
+            for (int i = 0; i < windowLength; i++) h = 31 * h + window[i].hashCode();
+            for (int i = 0; i < candidateCount; i++) h = 31 * h + candidates[i].hashCode();
+            hash = 31 * h + Objects.hashCode(feature);
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.window = Arrays.copyOf(window, windowLength);
+            key.windowLength = windowLength;
+            key.candidates = Arrays.copyOf(candidates, candidateCount);
+            key.candidateCount = candidateCount;
+            key.feature = feature;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            if (hash != other.hash
+                    || windowLength != other.windowLength
+                    || candidateCount != other.candidateCount
+                    || !Objects.equals(feature, other.feature)) {
+                return false;
+            }
+            for (int i = 0; i < windowLength; i++) {
+                if (!window[i].equals(other.window[i])) return false;
+            }
+            for (int i = 0; i < candidateCount; i++) {
+                if (!candidates[i].equals(other.candidates[i])) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -18,6 +18,10 @@ public interface HistoryProbabilityProvider {
      * Вычисляет вероятности переходов из текущего состояния в каждое из
      * кандидатских следующих состояний.
      *
+     * Списки передаются как представления только для чтения (без копирования) и действительны
+     * лишь на время вызова. Возвращаемый массив используется сразу и не сохраняется,
+     * поэтому реализация может каждый раз возвращать один и тот же буфер.
+     *
      * @param history    хронологический список посещённых состояний (включая текущее в конце)
      * @param input      входное сообщение, обрабатываемое сейчас (может быть null)
      * @param nextStates список кандидатских следующих состояний для выбора
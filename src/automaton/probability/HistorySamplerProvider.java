@@ -0,0 +1,25 @@
+package automaton.probability;
+
+import automaton.input.InputMessage;
+import automaton.state.State;
+
+import java.util.List;
+
+/**
+ * Провайдер, который сразу отдаёт готовое нормализованное распределение
+ * (например, закэшированное), а не сырые веса.
+ *
+ * {@link automaton.commands.HistoryBasedTransitionCommand} распознаёт такие провайдеры
+ * и выбирает следующее состояние по возвращённому распределению без повторной нормализации.
+ */
+public interface HistorySamplerProvider extends HistoryProbabilityProvider {
+
+    /**
+     * Возвращает распределение по кандидатам: индекс i распределения соответствует nextStates.get(i).
+     * Аргументы — те же представления только для чтения, что и в
+     * {@link #computeProbabilities(List, InputMessage, List)}.
+     */
+    TransitionDistribution samplerFor(List<State> history,
+                                      InputMessage input,
+                                      List<State> nextStates);
+}
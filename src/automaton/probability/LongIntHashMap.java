@@ -0,0 +1,164 @@
+package automaton.probability;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица long → int с открытой адресацией (линейное пробирование) без упаковки ключей.
+ *
+ * Хранит ключи и значения в двух плоских массивах, поэтому таблица на миллионы записей
+ * занимает ~12 байт на ячейку вместо десятков байт у {@code HashMap<Long, Integer>},
+ * а поиск не создаёт объектов. Удаление не поддерживается. Не потокобезопасна;
+ * после заполнения её можно читать из нескольких потоков без синхронизации
+ * (при безопасной публикации).
+ */
+public final class LongIntHashMap {
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /** Ключ 0 совпадает с маркером пустой ячейки, поэтому хранится отдельно. */
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /** Создаёт таблицу, рассчитанную на expectedSize записей без перестроения. */
+    public LongIntHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must be >= 0: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 4) / (double) LOAD_FACTOR);
+        if (needed > (1 << 30)) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(long key, int mask) {
+        // Перемешивание битов (финализатор MurmurHash3), чтобы соседние ключи не слипались
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    /** Значение по ключу или defaultValue, если ключа нет. */
+    public int get(long key, int defaultValue) {
+        if (key == EMPTY) return hasZeroKey ? zeroValue : defaultValue;
+        int i = slot(key, mask);
+        while (true) {
+            long k = keys[i];
+            if (k == EMPTY) return defaultValue;
+            if (k == key) return values[i];
+            i = (i + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) return hasZeroKey;
+        int i = slot(key, mask);
+        while (true) {
+            long k = keys[i];
+            if (k == EMPTY) return false;
+            if (k == key) return true;
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Записывает значение; возвращает прежнее значение или defaultValue, если ключа не было. */
+    public int put(long key, int value, int defaultValue) {
+        if (key == EMPTY) {
+            int previous = hasZeroKey ? zeroValue : defaultValue;
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int i = slot(key, mask);
+        while (true) {
+            long k = keys[i];
+            if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeAt) rehash();
+                return defaultValue;
+            }
+            if (k == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Прибавляет delta к значению (отсутствующий ключ считается равным 0); возвращает новое значение. */
+    public int addTo(long key, int delta) {
+        int updated = get(key, 0) + delta;
+        put(key, updated, 0);
+        return updated;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Обход всех записей (порядок не определён). */
+    public void forEach(Entry consumer) {
+        if (hasZeroKey) consumer.accept(EMPTY, zeroValue);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    /** Удаляет все записи, сохраняя ёмкость. */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key == EMPTY) continue;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+    }
+
+    /** Потребитель записи без упаковки. */
+    @FunctionalInterface
+    public interface Entry {
+        void accept(long key, int value);
+    }
+}
@@ -0,0 +1,276 @@
+package automaton.probability;
+
+import automaton.input.InputMessage;
+import automaton.state.State;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Встроенный провайдер k-го порядка: вероятности следующего состояния зависят
+ * от k последних состояний истории (включая текущее).
+ *
+ * Условные таблицы хранятся по хешу контекста — 64-битному полиномиальному хешу id последних
+ * k состояний (id из {@link automaton.state.StateRegistry}). Хеш ведёт в примитивную таблицу
+ * {@link LongIntHashMap} → номер строки, строки лежат в плоских массивах (CSR):
+ * цели отсортированы по id, поэтому вес кандидата ищется двоичным поиском.
+ * Поиск контекста — O(k) на вычисление хеша и O(1) на таблицу, без упаковки и без строк,
+ * что позволяет держать таблицы на миллионы контекстов.
+ *
+ * Если история короче k, недостающие позиции слева считаются маркером начала {@link #START}.
+ * Совпадение 64-битных хешей разных контекстов не проверяется: при миллионах контекстов
+ * его вероятность пренебрежимо мала.
+ *
+ * Для контекста без строки используется fallback-провайдер, если он задан, иначе равные веса.
+ * Кандидату, которого нет в строке, достаётся unseenWeight (по умолчанию 0).
+ *
+ * Провайдер неизменяем и потокобезопасен; возвращаемый массив — буфер текущего потока.
+ * Состояния истории должны быть зарегистрированы в реестре модели.
+ */
+public final class MarkovHistoryProbabilityProvider implements HistoryProbabilityProvider {
+
+    /** id маркера начала истории в контексте. */
+    public static final int START = -1;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+
+    private final int order;
+    private final LongIntHashMap rowByContext;
+    private final int[] rowOffsets;
+    private final int[] targetIds;
+    private final double[] weights;
+    private final double unseenWeight;
+    private final HistoryProbabilityProvider fallback;
+
+    private final ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[0]);
+
+    private MarkovHistoryProbabilityProvider(Builder builder, LongIntHashMap rowByContext,
+                                             int[] rowOffsets, int[] targetIds, double[] weights) {
+        this.order = builder.order;
+        this.rowByContext = rowByContext;
+        this.rowOffsets = rowOffsets;
+        this.targetIds = targetIds;
+        this.weights = weights;
+        this.unseenWeight = builder.unseenWeight;
+        this.fallback = builder.fallback;
+    }
+
+    /** Сборщик таблиц порядка order. */
+    public static Builder builder(int order) {
+        return new Builder(order);
+    }
+
+    /**
+     * Хеш контекста по id состояний (от старого к новому). Массив короче order
+     * дополняется слева маркером {@link #START}.
+     */
+    public static long contextHash(int order, int[] contextIds) {
+        if (contextIds.length > order) {
+            throw new IllegalArgumentException("Context length " + contextIds.length + " exceeds order " + order);
+        }
+        long h = SEED;
+        int pad = order - contextIds.length;
+        for (int i = 0; i < pad; i++) h = step(h, START);
+        for (int id : contextIds) h = step(h, id);
+        return finish(h);
+    }
+
+    /** Хеш последних order состояний истории (тот же, что у {@link #contextHash(int, int[])}). */
+    public static long contextHash(int order, List<State> history) {
+        int size = history != null ? history.size() : 0;
+        long h = SEED;
+        for (int p = size - order; p < size; p++) {
+            h = step(h, p < 0 ? START : idOf(history.get(p)));
+        }
+        return finish(h);
+    }
+
+    private static long step(long h, int id) {
+        return Long.rotateLeft((h ^ (id + 1L)) * MULTIPLIER, 31);
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int idOf(State state) {
+        int id = state.getId();
+        if (id < 0) {
+            throw new IllegalStateException("State " + state.getName()
+                    + " is not registered in a model registry; k-order tables are keyed by state ids");
+        }
+        return id;
+    }
+
+    @Override
+    public double[] computeProbabilities(List<State> history, InputMessage input, List<State> nextStates) {
+        int n = nextStates.size();
+        int row = rowByContext.get(contextHash(order, history), -1);
+        if (row < 0 && fallback != null) {
+            return fallback.computeProbabilities(history, input, nextStates);
+        }
+
+        double[] out = buffers.get();
+        if (out.length != n) {
+            out = new double[n];
+            buffers.set(out);
+        }
+        if (row < 0) {
+            Arrays.fill(out, 1.0);
+            return out;
+        }
+        int from = rowOffsets[row];
+        int to = rowOffsets[row + 1];
+        for (int i = 0; i < n; i++) {
+            int id = nextStates.get(i).getId();
+            int at = id >= 0 ? Arrays.binarySearch(targetIds, from, to, id) : -1;
+            out[i] = at >= 0 ? weights[at] : unseenWeight;
+        }
+        return out;
+    }
+
+    /** Вес перехода context → target или NaN, если строки или перехода нет. */
+    public double weight(int[] contextIds, int targetId) {
+        int row = rowByContext.get(contextHash(order, contextIds), -1);
+        if (row < 0) return Double.NaN;
+        int at = Arrays.binarySearch(targetIds, rowOffsets[row], rowOffsets[row + 1], targetId);
+        return at >= 0 ? weights[at] : Double.NaN;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    /** Количество различных контекстов (строк таблицы). */
+    public int getContextCount() {
+        return rowOffsets.length - 1;
+    }
+
+    /** Количество ненулевых записей context → target. */
+    public int getEntryCount() {
+        return targetIds.length;
+    }
+
+    @Override
+    public String toString() {
+        return "MarkovHistoryProbabilityProvider{order=" + order
+                + ", contexts=" + getContextCount() + ", entries=" + getEntryCount() + '}';
+    }
+
+    /**
+     * Накопитель таблиц: записи можно задать явно ({@link #add}) или выучить из трасс
+     * ({@link #observe}) — тогда вес равен числу наблюдений перехода. Повторные записи
+     * для одной пары context → target суммируются.
+     */
+    public static final class Builder {
+        private final int order;
+        private double unseenWeight = 0.0;
+        private HistoryProbabilityProvider fallback;
+
+        private final LongIntHashMap rowByContext = new LongIntHashMap();
+        private final LongIntHashMap edgeByKey = new LongIntHashMap();
+        private long[] edgeKeys = new long[16];
+        private double[] edgeWeights = new double[16];
+        private int edgeCount;
+
+        private Builder(int order) {
+            if (order < 1) {
+                throw new IllegalArgumentException("order must be >= 1: " + order);
+            }
+            this.order = order;
+        }
+
+        /** Вес кандидата, которого нет в строке контекста. */
+        public Builder unseenWeight(double weight) {
+            this.unseenWeight = weight;
+            return this;
+        }
+
+        /** Провайдер для контекстов, которых нет в таблице. */
+        public Builder fallback(HistoryProbabilityProvider fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /** Добавляет вес перехода; contextIds — id от старого к новому (короче order — дополняется START). */
+        public Builder add(int[] contextIds, int targetId, double weight) {
+            if (targetId < 0) {
+                throw new IllegalArgumentException("targetId must be >= 0: " + targetId);
+            }
+            long context = contextHash(order, contextIds);
+            int row = rowByContext.get(context, -1);
+            if (row < 0) {
+                row = rowByContext.size();
+                rowByContext.put(context, row, -1);
+            }
+            long key = ((long) row << 32) | targetId;
+            int edge = edgeByKey.get(key, -1);
+            if (edge < 0) {
+                if (edgeCount == edgeKeys.length) {
+                    edgeKeys = Arrays.copyOf(edgeKeys, edgeCount * 2);
+                    edgeWeights = Arrays.copyOf(edgeWeights, edgeCount * 2);
+                }
+                edge = edgeCount++;
+                edgeKeys[edge] = key;
+                edgeByKey.put(key, edge, -1);
+            }
+            edgeWeights[edge] += weight;
+            return this;
+        }
+
+        /** Добавляет вес перехода по состояниям (контекст от старого к новому). */
+        public Builder add(List<State> context, State target, double weight) {
+            int[] ids = new int[context.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = idOf(context.get(i));
+            return add(ids, idOf(target), weight);
+        }
+
+        /** Учитывает все переходы трассы (последовательности id состояний от начала сессии). */
+        public Builder observe(int[] trace) {
+            int[] context = new int[order];
+            for (int t = 1; t < trace.length; t++) {
+                for (int j = 0; j < order; j++) {
+                    int p = t - order + j;
+                    context[j] = p < 0 ? START : trace[p];
+                }
+                add(context, trace[t], 1.0);
+            }
+            return this;
+        }
+
+        /** Учитывает все переходы трассы состояний (например, истории завершённой сессии). */
+        public Builder observe(List<State> trace) {
+            int[] ids = new int[trace.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = idOf(trace.get(i));
+            return observe(ids);
+        }
+
+        public MarkovHistoryProbabilityProvider build() {
+            int rows = rowByContext.size();
+            long[] sorted = Arrays.copyOf(edgeKeys, edgeCount);
+            // Ключ (row << 32 | target): сортировка группирует строки и упорядочивает цели внутри строки
+            Arrays.sort(sorted);
+
+            int[] rowOffsets = new int[rows + 1];
+            int[] targetIds = new int[edgeCount];
+            double[] weights = new double[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                long key = sorted[i];
+                rowOffsets[(int) (key >>> 32) + 1]++;
+                targetIds[i] = (int) key;
+                weights[i] = edgeWeights[edgeByKey.get(key, -1)];
+            }
+            for (int r = 0; r < rows; r++) rowOffsets[r + 1] += rowOffsets[r];
+
+            LongIntHashMap index = new LongIntHashMap(rows);
+            rowByContext.forEach((context, row) -> index.put(context, row, -1));
+            return new MarkovHistoryProbabilityProvider(this, index, rowOffsets, targetIds, weights);
+        }
+    }
+}
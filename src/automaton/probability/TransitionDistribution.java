@@ -0,0 +1,146 @@
+package automaton.probability;
+
+import automaton.state.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Неизменяемое распределение переходов, подготовленное при сборке модели.
+ *
+ * Веса нормализуются один раз, накопленные вероятности кэшируются, поэтому выборка —
+ * это только двоичный поиск по готовому массиву: без очистки, повторного добавления
+ * переходов и перенормировки на каждом шаге. Семантика совпадает с
+ * {@link State#selectNextState(double)}: неположительные веса считаются нулевыми,
+ * при неположительной сумме распределение равномерное.
+ */
+public final class TransitionDistribution {
+
+    private final State[] targets;
+    private final double[] probabilities;
+    private final double[] cumulative;
+
+    private TransitionDistribution(State[] targets, double[] weights) {
+        int n = targets.length;
+        this.targets = targets;
+        this.probabilities = new double[n];
+        this.cumulative = new double[n];
+        double sum = 0.0;
+        for (double w : weights) {
+            if (w > 0.0) sum += w;
+        }
+        double acc = 0.0;
+        for (int i = 0; i < n; i++) {
+            probabilities[i] = sum <= 0.0 ? 1.0 / n : Math.max(0.0, weights[i]) / sum;
+            acc += probabilities[i];
+            cumulative[i] = acc;
+        }
+    }
+
+    /**
+     * Распределение по готовому массиву целей и весов без проверки повторов
+     * (индексы совпадают с индексами кандидатов). Массив targets не копируется.
+     */
+    static TransitionDistribution fromWeights(State[] targets, double[] weights) {
+        return new TransitionDistribution(targets, weights);
+    }
+
+    /** Распределение из одного перехода с вероятностью 1. */
+    public static TransitionDistribution of(State target) {
+        return builder().add(target, 1.0).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Выбирает цель по равномерному числу u из [0, 1). */
+    public State sample(double u) {
+        return targets[sampleIndex(u)];
+    }
+
+    /** Индекс цели, выбранной по равномерному числу u из [0, 1). */
+    public int sampleIndex(double u) {
+        return sampleIndex(cumulative, targets.length, u);
+    }
+
+    /**
+     * Первый индекс i < n, для которого u <= cumulative[i]; если u больше всех значений
+     * (погрешность округления), возвращается последний индекс.
+     */
+    public static int sampleIndex(double[] cumulative, int n, double u) {
+        int lo = 0;
+        int hi = n - 1;
+        if (u > cumulative[hi]) return hi;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (u <= cumulative[mid]) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    public int size() {
+        return targets.length;
+    }
+
+    public State getTarget(int index) {
+        return targets[index];
+    }
+
+    /** Нормализованная вероятность перехода. */
+    public double getProbability(int index) {
+        return probabilities[index];
+    }
+
+    /** Только для чтения: цели распределения. */
+    public List<State> getTargets() {
+        return Collections.unmodifiableList(Arrays.asList(targets));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < targets.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(targets[i].getName()).append(':').append(probabilities[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /** Сборщик распределения; повторное добавление цели игнорируется, как в {@link State#addNextState(State, double)}. */
+    public static final class Builder {
+        private final List<State> targets = new ArrayList<>();
+        private double[] weights = new double[4];
+
+        private Builder() {
+        }
+
+        public Builder add(State target, double weight) {
+            if (target == null) {
+                throw new IllegalArgumentException("target is null");
+            }
+            if (targets.contains(target)) return this;
+            int n = targets.size();
+            if (n == weights.length) {
+                weights = Arrays.copyOf(weights, n * 2);
+            }
+            weights[n] = weight;
+            targets.add(target);
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException если не добавлено ни одного перехода
+         */
+        public TransitionDistribution build() {
+            if (targets.isEmpty()) {
+                throw new IllegalStateException("Transition distribution must have at least one target");
+            }
+            int n = targets.size();
+            return new TransitionDistribution(targets.toArray(new State[0]), Arrays.copyOf(weights, n));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package automaton.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Файл записей переменной длины, отображённый в память сегментами.
+ *
+ * Запись занимает слот размера степени двойки (от 64 байт до размера сегмента): 4 байта длины
+ * и данные. Освобождённые слоты попадают в список своего класса и переиспользуются, поэтому
+ * при постоянном обороте сессий файл не растёт бесконечно (потери — не больше половины слота).
+ * Слот задаётся handle: смещение в файле и класс размера.
+ *
+ * Выделение и освобождение синхронизированы; запись и чтение слота идут абсолютными
+ * операциями над общим буфером сегмента и не требуют блокировок — видимость данных
+ * обеспечивает тот, кто передаёт handle между потоками.
+ */
+final class MappedSlotFile implements Closeable {
+
+    private static final int MIN_SHIFT = 6;
+    private static final int CLASS_BITS = 6;
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final int classCount;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /** Следующий свободный байт (смещение в файле). */
+    private long bump;
+    private final long[][] free;
+    private final int[] freeCount;
+    private long usedBytes;
+
+    /** @param segmentSize размер сегмента отображения (степень двойки, не меньше 64 байт) */
+    MappedSlotFile(Path path, int segmentSize) throws IOException {
+        if (segmentSize < (1 << MIN_SHIFT) || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("segmentSize must be a power of two >= 64: " + segmentSize);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.segmentSize = segmentSize;
+        this.classCount = Integer.numberOfTrailingZeros(segmentSize) - MIN_SHIFT + 1;
+        this.free = new long[classCount][];
+        this.freeCount = new int[classCount];
+        for (int c = 0; c < classCount; c++) free[c] = new long[16];
+    }
+
+    private static int slotSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_SHIFT);
+    }
+
+    /** Записывает length байт data в новый слот и возвращает его handle. */
+    long store(byte[] data, int length) throws IOException {
+        long handle = allocate(length + 4);
+        long offset = handle >>> CLASS_BITS;
+        MappedByteBuffer segment = segments[(int) (offset / segmentSize)];
+        int position = (int) (offset % segmentSize);
+        segment.putInt(position, length);
+        segment.put(position + 4, data, 0, length);
+        return handle;
+    }
+
+    /** Читает данные слота. */
+    byte[] read(long handle) {
+        long offset = handle >>> CLASS_BITS;
+        MappedByteBuffer segment = segments[(int) (offset / segmentSize)];
+        int position = (int) (offset % segmentSize);
+        byte[] data = new byte[segment.getInt(position)];
+        segment.get(position + 4, data);
+        return data;
+    }
+
+    private synchronized long allocate(int recordSize) throws IOException {
+        if (recordSize > segmentSize) {
+            throw new IllegalStateException("Session record of " + recordSize
+                    + " bytes exceeds segment size " + segmentSize);
+        }
+        int sizeClass = Math.max(0, 32 - Integer.numberOfLeadingZeros(recordSize - 1) - MIN_SHIFT);
+        int size = slotSize(sizeClass);
+        usedBytes += size;
+        if (freeCount[sizeClass] > 0) {
+            return free[sizeClass][--freeCount[sizeClass]];
+        }
+        long inSegment = bump % segmentSize;
+        if (inSegment + size > segmentSize) {
+            // Хвост сегмента раскладываем по спискам свободных слотов
+            long tail = segmentSize - inSegment;
+            for (int c = classCount - 1; c >= 0 && tail > 0; c--) {
+                while (tail >= slotSize(c)) {
+                    push(c, bump);
+                    bump += slotSize(c);
+                    tail -= slotSize(c);
+                }
+            }
+        }
+        long offset = bump;
+        bump += size;
+        int segment = (int) (offset / segmentSize);
+        if (segment >= segments.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(segments, segment + 1);
+            grown[segment] = channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * segmentSize, segmentSize);
+            segments = grown;
+        }
+        return (offset << CLASS_BITS) | sizeClass;
+    }
+
+    /** Освобождает слот для повторного использования. */
+    synchronized void free(long handle) {
+        int sizeClass = (int) (handle & ((1 << CLASS_BITS) - 1));
+        usedBytes -= slotSize(sizeClass);
+        push(sizeClass, handle >>> CLASS_BITS);
+    }
+
+    private void push(int sizeClass, long offset) {
+        if (freeCount[sizeClass] == free[sizeClass].length) {
+            free[sizeClass] = Arrays.copyOf(free[sizeClass], freeCount[sizeClass] * 2);
+        }
+        free[sizeClass][freeCount[sizeClass]++] = (offset << CLASS_BITS) | sizeClass;
+    }
+
+    /** Байт в занятых слотах. */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /** Размер отображённой части файла. */
+    long getMappedBytes() {
+        return (long) segments.length * segmentSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
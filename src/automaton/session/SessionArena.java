@@ -0,0 +1,445 @@
+package automaton.session;
+
+import automaton.compiled.CompiledModel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Сессии скомпилированной модели вне кучи: каждая сессия — запись фиксированного размера
+ * в прямом {@link ByteBuffer}, сессия задаётся индексом записи (int).
+ *
+ * Запись хранит число шагов, id текущего состояния, кольцо последних historyCapacity
+ * состояний истории, примитивные слоты памяти (long и double) и outbox — очередь
+ * int-значений (смещений или кодов сообщений во внешнем хранилище, которое ведёт вызывающий).
+ * Записи лежат блоками по sessionsPerChunk; освобождённые записи образуют список свободных
+ * и переиспользуются. Объектов на сессию в куче нет, поэтому работа сборщика мусора не зависит
+ * от числа сессий, а занимаемая память — {@link #getReservedBytes()}.
+ *
+ * Шаг выбирает переход так же, как {@link CompiledModel#sample(int, double)}. Арена не
+ * потокобезопасна: одна арена на поток или внешняя синхронизация.
+ */
+public final class SessionArena {
+
+    private static final int FREE = -1;
+
+    private static final int STEPS = 0;
+    private static final int STATE = 8;
+    private static final int OUTBOX_COUNT = 12;
+    private static final int LONGS = 16;
+
+    private final CompiledModel model;
+    private final int initialState;
+    private final int historyCapacity;
+    private final int longSlots;
+    private final int doubleSlots;
+    private final int outboxCapacity;
+    private final int maxSessions;
+
+    private final int doublesOffset;
+    private final int historyOffset;
+    private final int outboxOffset;
+    private final int recordSize;
+    private final int chunkShift;
+    private final int chunkMask;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    /** Записей, когда-либо выданных (индексы [0, used) размечены). */
+    private int used;
+    private int freeHead = FREE;
+    private int live;
+
+    private SessionArena(Builder b) {
+        this.model = b.model;
+        this.initialState = b.initialState;
+        this.historyCapacity = b.historyCapacity;
+        this.longSlots = b.longSlots;
+        this.doubleSlots = b.doubleSlots;
+        this.outboxCapacity = b.outboxCapacity;
+        this.maxSessions = b.maxSessions;
+        this.doublesOffset = LONGS + 8 * longSlots;
+        this.historyOffset = doublesOffset + 8 * doubleSlots;
+        this.outboxOffset = historyOffset + 4 * historyCapacity;
+        // Выравнивание по 8 байт, чтобы long/double следующей записи не пересекали слово
+        this.recordSize = (outboxOffset + 4 * outboxCapacity + 7) & ~7;
+        this.chunkShift = Integer.numberOfTrailingZeros(b.sessionsPerChunk);
+        this.chunkMask = b.sessionsPerChunk - 1;
+        if ((long) recordSize * b.sessionsPerChunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk of " + b.sessionsPerChunk + " sessions of "
+                    + recordSize + " bytes exceeds 2 GB");
+        }
+    }
+
+    /** Построитель арены для модели; начальное состояние по умолчанию — id 0. */
+    public static Builder builder(CompiledModel model) {
+        return new Builder(model);
+    }
+
+    private ByteBuffer chunk(int session) {
+        return chunks[session >>> chunkShift];
+    }
+
+    private int base(int session) {
+        return (session & chunkMask) * recordSize;
+    }
+
+    /** Создаёт сессию в начальном состоянии арены и возвращает её индекс. */
+    public int allocate() {
+        return allocate(initialState);
+    }
+
+    /**
+     * Создаёт сессию в состоянии startState и возвращает её индекс.
+     *
+     * @throws IllegalStateException если достигнут лимит maxSessions
+     */
+    public int allocate(int startState) {
+        checkState(startState);
+        int session;
+        if (freeHead != FREE) {
+            session = freeHead;
+            freeHead = (int) chunk(session).getLong(base(session) + STEPS);
+        } else {
+            if (used >= maxSessions) {
+                throw new IllegalStateException("Session arena is full: " + maxSessions + " sessions");
+            }
+            session = used++;
+            int chunkIndex = session >>> chunkShift;
+            if (chunkIndex == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkIndex + 1);
+                chunks[chunkIndex] = ByteBuffer.allocateDirect(recordSize << chunkShift)
+                        .order(ByteOrder.nativeOrder());
+            }
+        }
+        live++;
+        start(session, startState);
+        return session;
+    }
+
+    private void start(int session, int startState) {
+        ByteBuffer buf = chunk(session);
+        int base = base(session);
+        buf.putLong(base + STEPS, 0L);
+        buf.putInt(base + STATE, startState);
+        buf.putInt(base + OUTBOX_COUNT, 0);
+        for (int i = 0; i < longSlots + doubleSlots; i++) buf.putLong(base + LONGS + 8 * i, 0L);
+        buf.putInt(base + historyOffset, startState);
+    }
+
+    /** Возвращает сессию в начальное состояние арены, не освобождая запись. */
+    public void reset(int session) {
+        checkSession(session);
+        start(session, initialState);
+    }
+
+    /** Освобождает запись сессии для повторного использования. */
+    public void free(int session) {
+        checkSession(session);
+        ByteBuffer buf = chunk(session);
+        int base = base(session);
+        buf.putInt(base + STATE, FREE);
+        buf.putLong(base + STEPS, freeHead);
+        freeHead = session;
+        live--;
+    }
+
+    /** Живая ли сессия (выдана и не освобождена). */
+    public boolean isLive(int session) {
+        return session >= 0 && session < used && chunk(session).getInt(base(session) + STATE) != FREE;
+    }
+
+    private void checkSession(int session) {
+        if (!isLive(session)) {
+            throw new IllegalArgumentException("Unknown or freed session: " + session);
+        }
+    }
+
+    private void checkState(int state) {
+        if (state < 0 || state >= model.getStateCount()) {
+            throw new IllegalArgumentException("State id out of range: " + state);
+        }
+    }
+
+    // ---------------------------------------------------------------- состояние и шаги
+
+    public int getState(int session) {
+        checkSession(session);
+        return chunk(session).getInt(base(session) + STATE);
+    }
+
+    public boolean isInFinalState(int session) {
+        return model.isFinal(getState(session));
+    }
+
+    /** Переходов с создания или сброса сессии. */
+    public long getStepCount(int session) {
+        checkSession(session);
+        return chunk(session).getLong(base(session) + STEPS);
+    }
+
+    /**
+     * Делает один переход по равномерному u из [0, 1) и возвращает новое состояние.
+     * Без исходящих рёбер сессия остаётся на месте, но шаг засчитывается.
+     */
+    public int step(int session, double u) {
+        checkSession(session);
+        ByteBuffer buf = chunk(session);
+        int base = base(session);
+        return advance(buf, base, model.sample(buf.getInt(base + STATE), u));
+    }
+
+    /** Переводит сессию в состояние target (например, выбранное снаружи) и записывает его в историю. */
+    public void moveTo(int session, int target) {
+        checkSession(session);
+        checkState(target);
+        advance(chunk(session), base(session), target);
+    }
+
+    private int advance(ByteBuffer buf, int base, int target) {
+        long steps = buf.getLong(base + STEPS) + 1;
+        buf.putLong(base + STEPS, steps);
+        buf.putInt(base + STATE, target);
+        buf.putInt(base + historyOffset + 4 * (int) (steps % historyCapacity), target);
+        return target;
+    }
+
+    /**
+     * Делает шаги, пока сессия не окажется в конечном состоянии или не будет исчерпан бюджет;
+     * u для каждого шага берётся из uniforms. Возвращает число сделанных шагов.
+     */
+    public int runUntilFinal(int session, int maxSteps, DoubleSupplier uniforms) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("maxSteps must be >= 0: " + maxSteps);
+        }
+        checkSession(session);
+        ByteBuffer buf = chunk(session);
+        int base = base(session);
+        int state = buf.getInt(base + STATE);
+        int steps = 0;
+        while (steps < maxSteps && !model.isFinal(state)) {
+            state = advance(buf, base, model.sample(state, uniforms.getAsDouble()));
+            steps++;
+        }
+        return steps;
+    }
+
+    // ---------------------------------------------------------------- история
+
+    /** Сколько состояний истории сохранено: min(шаги + 1, historyCapacity). */
+    public int getHistoryLength(int session) {
+        return (int) Math.min(getStepCount(session) + 1, historyCapacity);
+    }
+
+    /**
+     * Состояние истории, отстоящее от текущего на back шагов (0 — текущее).
+     *
+     * @throws IllegalArgumentException если такое состояние уже вытеснено из кольца
+     */
+    public int getHistoryState(int session, int back) {
+        long steps = getStepCount(session);
+        if (back < 0 || back >= historyCapacity || back > steps) {
+            throw new IllegalArgumentException("History position " + back + " is not retained (steps="
+                    + steps + ", capacity=" + historyCapacity + ")");
+        }
+        int position = (int) ((steps - back) % historyCapacity);
+        return chunk(session).getInt(base(session) + historyOffset + 4 * position);
+    }
+
+    /** Копирует сохранённую историю (от старых к новым) в target; возвращает число состояний. */
+    public int copyHistory(int session, int[] target) {
+        int length = getHistoryLength(session);
+        if (target.length < length) {
+            throw new IllegalArgumentException("target holds " + target.length + " states, need " + length);
+        }
+        for (int i = 0; i < length; i++) {
+            target[i] = getHistoryState(session, length - 1 - i);
+        }
+        return length;
+    }
+
+    // ---------------------------------------------------------------- память
+
+    public long getLong(int session, int slot) {
+        return chunk(session).getLong(longSlot(session, slot));
+    }
+
+    public void setLong(int session, int slot, long value) {
+        chunk(session).putLong(longSlot(session, slot), value);
+    }
+
+    public double getDouble(int session, int slot) {
+        return chunk(session).getDouble(doubleSlot(session, slot));
+    }
+
+    public void setDouble(int session, int slot, double value) {
+        chunk(session).putDouble(doubleSlot(session, slot), value);
+    }
+
+    private int longSlot(int session, int slot) {
+        checkSession(session);
+        if (slot < 0 || slot >= longSlots) {
+            throw new IllegalArgumentException("long slot out of range: " + slot);
+        }
+        return base(session) + LONGS + 8 * slot;
+    }
+
+    private int doubleSlot(int session, int slot) {
+        checkSession(session);
+        if (slot < 0 || slot >= doubleSlots) {
+            throw new IllegalArgumentException("double slot out of range: " + slot);
+        }
+        return base(session) + doublesOffset + 8 * slot;
+    }
+
+    // ---------------------------------------------------------------- outbox
+
+    /** Добавляет значение в outbox сессии; false, если outbox заполнен. */
+    public boolean emit(int session, int value) {
+        checkSession(session);
+        ByteBuffer buf = chunk(session);
+        int base = base(session);
+        int count = buf.getInt(base + OUTBOX_COUNT);
+        if (count == outboxCapacity) return false;
+        buf.putInt(base + outboxOffset + 4 * count, value);
+        buf.putInt(base + OUTBOX_COUNT, count + 1);
+        return true;
+    }
+
+    public int getOutboxSize(int session) {
+        checkSession(session);
+        return chunk(session).getInt(base(session) + OUTBOX_COUNT);
+    }
+
+    /** Передаёт значения outbox в порядке добавления и очищает его; возвращает их количество. */
+    public int drainOutbox(int session, IntConsumer consumer) {
+        checkSession(session);
+        ByteBuffer buf = chunk(session);
+        int base = base(session);
+        int count = buf.getInt(base + OUTBOX_COUNT);
+        // Сначала очищаем: потребитель может снова писать в outbox этой сессии
+        buf.putInt(base + OUTBOX_COUNT, 0);
+        for (int i = 0; i < count; i++) {
+            consumer.accept(buf.getInt(base + outboxOffset + 4 * i));
+        }
+        return count;
+    }
+
+    // ---------------------------------------------------------------- размеры
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /** Живых сессий. */
+    public int getSessionCount() {
+        return live;
+    }
+
+    /** Размер записи одной сессии в байтах. */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /** Байт вне кучи, занятых блоками записей. */
+    public long getReservedBytes() {
+        return (long) chunks.length * recordSize << chunkShift;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionArena{sessions=" + live + ", recordSize=" + recordSize
+                + ", reservedBytes=" + getReservedBytes() + '}';
+    }
+
+    public static final class Builder {
+        private final CompiledModel model;
+        private int initialState;
+        private int historyCapacity = 16;
+        private int longSlots = 4;
+        private int doubleSlots = 4;
+        private int outboxCapacity = 8;
+        private int sessionsPerChunk = 1 << 16;
+        private int maxSessions = Integer.MAX_VALUE;
+
+        private Builder(CompiledModel model) {
+            if (model == null) {
+                throw new IllegalArgumentException("model must not be null");
+            }
+            if (model.getStateCount() == 0) {
+                throw new IllegalArgumentException("model has no states");
+            }
+            this.model = model;
+        }
+
+        /** Начальное состояние новых сессий (id в модели). */
+        public Builder initialState(int initialState) {
+            if (initialState < 0 || initialState >= model.getStateCount()) {
+                throw new IllegalArgumentException("State id out of range: " + initialState);
+            }
+            this.initialState = initialState;
+            return this;
+        }
+
+        /** Начальное состояние новых сессий по имени. */
+        public Builder initialState(String name) {
+            int id = model.stateId(name);
+            if (id < 0) {
+                throw new IllegalArgumentException("Unknown state: " + name);
+            }
+            this.initialState = id;
+            return this;
+        }
+
+        /** Сколько последних состояний (включая текущее) хранит кольцо истории. */
+        public Builder historyCapacity(int historyCapacity) {
+            if (historyCapacity < 1) {
+                throw new IllegalArgumentException("historyCapacity must be >= 1: " + historyCapacity);
+            }
+            this.historyCapacity = historyCapacity;
+            return this;
+        }
+
+        /** Число long- и double-слотов памяти сессии. */
+        public Builder slots(int longSlots, int doubleSlots) {
+            if (longSlots < 0 || doubleSlots < 0) {
+                throw new IllegalArgumentException("slot counts must be >= 0: " + longSlots + ", " + doubleSlots);
+            }
+            this.longSlots = longSlots;
+            this.doubleSlots = doubleSlots;
+            return this;
+        }
+
+        public Builder outboxCapacity(int outboxCapacity) {
+            if (outboxCapacity < 0) {
+                throw new IllegalArgumentException("outboxCapacity must be >= 0: " + outboxCapacity);
+            }
+            this.outboxCapacity = outboxCapacity;
+            return this;
+        }
+
+        /** Записей в одном блоке памяти (степень двойки). */
+        public Builder sessionsPerChunk(int sessionsPerChunk) {
+            if (sessionsPerChunk < 1 || Integer.bitCount(sessionsPerChunk) != 1) {
+                throw new IllegalArgumentException("sessionsPerChunk must be a power of two: " + sessionsPerChunk);
+            }
+            this.sessionsPerChunk = sessionsPerChunk;
+            return this;
+        }
+
+        /** Предел числа выданных записей: память арены не превысит maxSessions записей с округлением до блока. */
+        public Builder maxSessions(int maxSessions) {
+            if (maxSessions < 1) {
+                throw new IllegalArgumentException("maxSessions must be >= 1: " + maxSessions);
+            }
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        public SessionArena build() {
+            return new SessionArena(this);
+        }
+    }
+}
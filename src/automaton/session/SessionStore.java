@@ -0,0 +1,465 @@
+package automaton.session;
+
+import automaton.context.Context;
+import automaton.context.TransitionListener;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Хранилище сессий одной модели по идентификатору сессии.
+ *
+ * Горячие сессии — обычные {@link CoreProbabilisticAutomaton} в куче, не больше maxHotSessions
+ * в сумме. Давно не использованные вытесняются: сессия сериализуется в компактную форму
+ * ({@link CoreProbabilisticAutomaton#writeSession}) и фоновым потоком записывается в файл,
+ * отображённый в память; при следующем обращении она читается оттуда. Пока запись не
+ * завершена, сериализованная форма остаётся в памяти и обращение берёт её без ожидания.
+ * Если очередь записи заполнена, вытесняющий поток пишет сам.
+ *
+ * Сессии распределены по полосам (stripes) по хешу идентификатора; у каждой полосы свой
+ * замок и своя LRU-очередь, поэтому обращения к разным сессиям почти не конкурируют.
+ * Действие над сессией выполняется под замком её полосы — оно должно быть коротким
+ * (например, один шаг или {@code runUntilFinal} с небольшим бюджетом).
+ *
+ * Сессии, которые нельзя сохранить без потерь ({@link CoreProbabilisticAutomaton#isSessionEncodable()},
+ * например с объектами в памяти или неразобранным outbox), а также не поместившиеся в сегмент
+ * файла не вытесняются и могут превысить лимит; ошибка вытеснения не прерывает withSession.
+ * Файл — рабочее пространство, а не хранилище: он очищается при открытии.
+ */
+public final class SessionStore implements Closeable {
+
+    private final State initialState;
+    private final int outboxCapacity;
+    private final TransitionListener transitionListener;
+    private final Stripe[] stripes;
+    private final MappedSlotFile file;
+    /** Самая длинная сессия, которая помещается в слот файла (4 байта — длина записи). */
+    private final int maxRecordBytes;
+
+    private final ArrayBlockingQueue<Object> writeQueue;
+    private final Thread writer;
+    private static final Object STOP = new Object();
+    private volatile RuntimeException writeFailure;
+    private volatile boolean closed;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder syncWrites = new LongAdder();
+
+    private SessionStore(Builder b) throws IOException {
+        // Сериализация сессий идёт по id состояний: хранилище — владелец модели и регистрирует её
+        StateRegistry.registerGraph(b.initialState);
+        this.initialState = b.initialState;
+        this.outboxCapacity = b.outboxCapacity;
+        this.transitionListener = b.transitionListener;
+        int perStripe = Math.max(1, (b.maxHotSessions + b.stripes - 1) / b.stripes);
+        this.stripes = new Stripe[b.stripes];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Stripe(perStripe);
+        this.file = new MappedSlotFile(b.file, b.segmentSize);
+        this.maxRecordBytes = b.segmentSize - 4;
+        this.writeQueue = new ArrayBlockingQueue<>(b.writeQueueCapacity);
+        this.writer = new Thread(this::writeLoop, "session-store-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Построитель хранилища для модели с начальным состоянием initialState и файлом вытеснения file. */
+    public static Builder builder(State initialState, Path file) {
+        return new Builder(initialState, file);
+    }
+
+    private Stripe stripeOf(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    /**
+     * Выполняет action над сессией id под замком её полосы: сессия берётся из кучи,
+     * восстанавливается из файла или создаётся в начальном состоянии.
+     */
+    public <R> R withSession(String id, Function<? super CoreProbabilisticAutomaton, ? extends R> action) {
+        if (id == null) {
+            throw new IllegalArgumentException("session id must not be null");
+        }
+        ensureOpen();
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            CoreProbabilisticAutomaton session = stripe.hot.get(id);
+            if (session == null) {
+                session = load(stripe, id);
+                stripe.hot.put(id, session);
+            }
+            R result = action.apply(session);
+            evictIfNeeded(stripe);
+            return result;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private CoreProbabilisticAutomaton load(Stripe stripe, String id) {
+        CoreProbabilisticAutomaton session = new CoreProbabilisticAutomaton(initialState, outboxCapacity);
+        session.setTransitionListener(transitionListener);
+        byte[] bytes = stripe.pending.get(id);
+        Long handle = bytes == null ? stripe.cold.get(id) : null;
+        if (bytes == null && handle == null) {
+            created.increment();
+            return session;
+        }
+        try {
+            if (handle != null) bytes = file.read(handle);
+            session.readSession(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException | RuntimeException e) {
+            // Сохранённая копия остаётся на месте: сессия не теряется из-за ошибки чтения
+            throw new IllegalStateException("Failed to restore session " + id, e);
+        }
+        // Слот освобождается только после успешного восстановления
+        if (handle != null) {
+            stripe.cold.remove(id);
+            file.free(handle);
+        } else {
+            stripe.pending.remove(id);
+        }
+        restored.increment();
+        return session;
+    }
+
+    /** Вытесняет самые старые сохраняемые сессии полосы сверх её доли лимита. */
+    private void evictIfNeeded(Stripe stripe) {
+        int excess = stripe.hot.size() - stripe.capacity;
+        if (excess <= 0) return;
+        Iterator<Map.Entry<String, CoreProbabilisticAutomaton>> it = stripe.hot.entrySet().iterator();
+        // Последняя запись — только что использованная сессия, её не трогаем
+        int remaining = stripe.hot.size() - 1;
+        while (excess > 0 && remaining-- > 0) {
+            Map.Entry<String, CoreProbabilisticAutomaton> entry = it.next();
+            CoreProbabilisticAutomaton session = entry.getValue();
+            if (!session.isSessionEncodable()) continue;
+            String id = entry.getKey();
+            byte[] bytes = encode(session);
+            if (bytes == null || bytes.length > maxRecordBytes) {
+                // Не удалось сохранить или не поместится в слот: сессия остаётся в куче,
+                // а результат действия вызывающего не теряется
+                continue;
+            }
+            it.remove();
+            excess--;
+            evicted.increment();
+            stripe.pending.put(id, bytes);
+            if (!writeQueue.offer(new WriteTask(stripe, id, bytes))) {
+                // Очередь полна: пишем сами, замок полосы уже у нас
+                syncWrites.increment();
+                try {
+                    stripe.cold.put(id, file.store(bytes, bytes.length));
+                    stripe.pending.remove(id);
+                } catch (IOException | RuntimeException e) {
+                    // Данные остаются в pending — сессия не теряется
+                    writeFailure = e instanceof RuntimeException ? (RuntimeException) e
+                            : new IllegalStateException("Failed to write session " + id, e);
+                }
+            }
+        }
+    }
+
+    /** Сериализует сессию; null, если это не удалось. */
+    private static byte[] encode(CoreProbabilisticAutomaton session) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            session.writeSession(new DataOutputStream(bytes));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Object task;
+            try {
+                task = writeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == STOP) return;
+            if (task instanceof CountDownLatch) {
+                ((CountDownLatch) task).countDown();
+                continue;
+            }
+            WriteTask write = (WriteTask) task;
+            long handle;
+            try {
+                handle = file.store(write.bytes, write.bytes.length);
+            } catch (IOException | RuntimeException e) {
+                writeFailure = e instanceof RuntimeException ? (RuntimeException) e
+                        : new IllegalStateException("Failed to write session " + write.id, e);
+                continue;
+            }
+            write.stripe.lock.lock();
+            try {
+                // Сессию могли снова взять в работу, пока шла запись: тогда слот не нужен
+                if (write.stripe.pending.get(write.id) == write.bytes) {
+                    write.stripe.pending.remove(write.id);
+                    write.stripe.cold.put(write.id, handle);
+                } else {
+                    file.free(handle);
+                }
+            } finally {
+                write.stripe.lock.unlock();
+            }
+        }
+    }
+
+    /** Ждёт, пока все вытесненные на момент вызова сессии будут записаны в файл. */
+    public void flush() {
+        ensureOpen();
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            writeQueue.put(done);
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while flushing sessions", e);
+        }
+        RuntimeException failure = writeFailure;
+        if (failure != null) {
+            throw new IllegalStateException("Session write-back failed", failure);
+        }
+    }
+
+    /** Есть ли сессия id (в куче или в файле). */
+    public boolean contains(String id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            return stripe.hot.containsKey(id) || stripe.pending.containsKey(id) || stripe.cold.containsKey(id);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /** Удаляет сессию; возвращает false, если её не было. */
+    public boolean remove(String id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            boolean removed = stripe.hot.remove(id) != null;
+            removed |= stripe.pending.remove(id) != null;
+            Long handle = stripe.cold.remove(id);
+            if (handle != null) {
+                file.free(handle);
+                removed = true;
+            }
+            return removed;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /** Сессий в куче. */
+    public int getHotCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                count += stripe.hot.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /** Вытесненных сессий (записанных и ожидающих записи). */
+    public long getColdCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                count += stripe.pending.size() + stripe.cold.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /** Сколько раз сессия была восстановлена из вытесненной формы. */
+    public long getRestoredCount() {
+        return restored.sum();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /** Вытеснений, записанных синхронно из-за заполненной очереди. */
+    public long getSyncWriteCount() {
+        return syncWrites.sum();
+    }
+
+    /** Байт в занятых слотах файла. */
+    public long getFileBytesUsed() {
+        return file.getUsedBytes();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Session store is closed");
+        }
+    }
+
+    /** Дожидается записи, останавливает фоновый поток и закрывает файл. Сессии теряются. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            writeQueue.offer(STOP);
+            try {
+                writer.join(10_000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            file.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SessionStore{hot=" + getHotCount() + ", cold=" + getColdCount() + ", evicted=" + getEvictedCount()
+                + ", restored=" + getRestoredCount() + ", fileBytes=" + getFileBytesUsed() + '}';
+    }
+
+    /** Полоса: замок, LRU горячих сессий, ожидающие записи и записанные в файл. */
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, CoreProbabilisticAutomaton> hot = new LinkedHashMap<>(16, 0.75f, true);
+        final HashMap<String, byte[]> pending = new HashMap<>();
+        final HashMap<String, Long> cold = new HashMap<>();
+        final int capacity;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class WriteTask {
+        final Stripe stripe;
+        final String id;
+        final byte[] bytes;
+
+        WriteTask(Stripe stripe, String id, byte[] bytes) {
+            this.stripe = stripe;
+            this.id = id;
+            this.bytes = bytes;
+        }
+    }
+
+    public static final class Builder {
+        private final State initialState;
+        private final Path file;
+        private int maxHotSessions = 10_000;
+        private int stripes = 64;
+        private int segmentSize = 64 << 20;
+        private int writeQueueCapacity = 4096;
+        private int outboxCapacity = Context.DEFAULT_OUTBOX_CAPACITY;
+        private TransitionListener transitionListener;
+
+        private Builder(State initialState, Path file) {
+            if (initialState == null) {
+                throw new IllegalArgumentException("initialState must not be null");
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("file must not be null");
+            }
+            this.initialState = initialState;
+            this.file = file;
+        }
+
+        /** Сколько сессий держать в куче (делится поровну между полосами). */
+        public Builder maxHotSessions(int maxHotSessions) {
+            if (maxHotSessions < 1) {
+                throw new IllegalArgumentException("maxHotSessions must be >= 1: " + maxHotSessions);
+            }
+            this.maxHotSessions = maxHotSessions;
+            return this;
+        }
+
+        /** Число полос (округляется вверх до степени двойки). */
+        public Builder stripes(int stripes) {
+            if (stripes < 1 || stripes > (1 << 16)) {
+                throw new IllegalArgumentException("stripes must be in [1, 65536]: " + stripes);
+            }
+            int size = Integer.highestOneBit(stripes);
+            this.stripes = size < stripes ? size << 1 : size;
+            return this;
+        }
+
+        /** Размер сегмента отображения файла (степень двойки); больше него сессия не сохранится. */
+        public Builder segmentSize(int segmentSize) {
+            if (segmentSize < 64 || Integer.bitCount(segmentSize) != 1) {
+                throw new IllegalArgumentException("segmentSize must be a power of two >= 64: " + segmentSize);
+            }
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /** Сколько вытесненных сессий может ждать фоновой записи. */
+        public Builder writeQueueCapacity(int writeQueueCapacity) {
+            if (writeQueueCapacity < 1) {
+                throw new IllegalArgumentException("writeQueueCapacity must be >= 1: " + writeQueueCapacity);
+            }
+            this.writeQueueCapacity = writeQueueCapacity;
+            return this;
+        }
+
+        /** Ёмкость outbox каждой сессии (округляется вверх до степени двойки). */
+        public Builder outboxCapacity(int outboxCapacity) {
+            if (outboxCapacity < 1 || outboxCapacity > (1 << 30)) {
+                throw new IllegalArgumentException("outboxCapacity must be in [1, 2^30]: " + outboxCapacity);
+            }
+            this.outboxCapacity = outboxCapacity;
+            return this;
+        }
+
+        /** Наблюдатель переходов, подключаемый к каждой сессии (например, {@code TransitionLearner}). */
+        public Builder transitionListener(TransitionListener transitionListener) {
+            this.transitionListener = transitionListener;
+            return this;
+        }
+
+        /**
+         * Создаёт хранилище; файл создаётся или очищается. Незарегистрированный граф модели
+         * регистрируется ({@link StateRegistry#registerGraph(State)}).
+         */
+        public SessionStore build() throws IOException {
+            return new SessionStore(this);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Серии независимых прогонов по скомпилированной модели с оценкой частот исходов.
+ *
+ * Прогон идёт из start до конечного состояния, тупика (исход — это состояние) или лимита шагов
+ * (прогон считается незавершённым). Прогоны раздаются рабочим потокам пакетами; после пакета
+ * поток добавляет свои счётчики в общие и проверяет {@link StoppingRule}: как только точность
+ * всех отслеживаемых исходов достигнута, потоки останавливаются после текущего пакета.
+ * Число фактически выполненных прогонов — в {@link SimulationReport#getRuns()}.
+ *
+ * Каждый пакет использует собственный генератор, зависящий только от seed и номера пакета,
+ * поэтому при фиксированном числе прогонов ({@link StoppingRule#fixedRuns(long)}) результат
+ * не зависит от числа потоков. При остановке по точности момент остановки зависит от
+ * расписания потоков.
+ */
+public final class BatchSimulator {
+
+    private final CompiledModel model;
+    private final int maxSteps;
+    private final int threads;
+
+    /** Симулятор с числом потоков по числу процессоров. */
+    public BatchSimulator(CompiledModel model, int maxSteps) {
+        this(model, maxSteps, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchSimulator(CompiledModel model, int maxSteps, int threads) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be >= 1: " + maxSteps);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: " + threads);
+        }
+        this.model = model;
+        this.maxSteps = maxSteps;
+        this.threads = threads;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /** Выполняет прогоны из start, пока правило rule не будет выполнено. */
+    public SimulationReport simulate(int start, StoppingRule rule, long seed) {
+        return simulate(start, rule, seed, 0);
+    }
+
+    /**
+     * Прогоны с номерами [fromRun, fromRun + runs) серии {@code simulate(start, fixedRuns, seed)}
+     * с размером пакета batchSize: генераторы пакетов те же, поэтому сумма отчётов по
+     * непересекающимся диапазонам совпадает с отчётом по всей серии. fromRun кратен batchSize.
+     */
+    SimulationReport simulateRange(int start, int batchSize, long seed, long fromRun, long runs) {
+        if (fromRun < 0 || fromRun % batchSize != 0) {
+            throw new IllegalArgumentException("fromRun " + fromRun + " is not a multiple of batch size " + batchSize);
+        }
+        StoppingRule rule = StoppingRule.builder().minRuns(runs).maxRuns(runs).batchSize(batchSize).build();
+        return simulate(start, rule, seed, fromRun);
+    }
+
+    private SimulationReport simulate(int start, StoppingRule rule, long seed, long fromRun) {
+        int n = model.getStateCount();
+        if (start < 0 || start >= n) {
+            throw new IllegalArgumentException("start id " + start + " out of range");
+        }
+        int[] tracked = rule.getTracked();
+        if (tracked == null) tracked = SplitMix.finalStates(model);
+        Shared shared = new Shared(n, rule, tracked, fromRun);
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                futures.add(executor.submit(() -> work(start, rule, seed, shared)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long[] counts = new long[n];
+        for (int s = 0; s < n; s++) counts[s] = shared.counts.get(s);
+        long runs = shared.runs.get();
+        return new SimulationReport(model, counts, runs, shared.unfinished.get(), shared.steps.get(),
+                shared.isMet(runs), System.nanoTime() - startTime, rule, tracked);
+    }
+
+    private void work(int start, StoppingRule rule, long seed, Shared shared) {
+        int n = model.getStateCount();
+        long[] local = new long[n];
+        int[] touched = new int[Math.min(n, rule.getBatchSize())];
+        int batch = rule.getBatchSize();
+        while (!shared.stop) {
+            long first = shared.claimed.getAndAdd(batch);
+            if (first >= shared.limit) break;
+            int size = (int) Math.min(batch, shared.limit - first);
+            SplittableRandom random = new SplittableRandom(SplitMix.seed(seed, first / batch));
+
+            int touchedCount = 0;
+            long unfinished = 0;
+            long steps = 0;
+            for (int r = 0; r < size; r++) {
+                int s = start;
+                int step = 0;
+                // Прогон до конечного состояния, тупика или лимита шагов
+                while (!model.isFinal(s) && step < maxSteps) {
+                    int e = model.sampleEdge(s, random.nextDouble());
+                    if (e < 0) break;
+                    s = model.target(e);
+                    step++;
+                }
+                steps += step;
+                if (!model.isFinal(s) && step == maxSteps) {
+                    unfinished++;
+                } else {
+                    if (local[s]++ == 0) {
+                        if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                        touched[touchedCount++] = s;
+                    }
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                int s = touched[i];
+                shared.counts.addAndGet(s, local[s]);
+                local[s] = 0;
+            }
+            shared.unfinished.addAndGet(unfinished);
+            shared.steps.addAndGet(steps);
+            long runs = shared.runs.addAndGet(size);
+            if (runs >= rule.getMaxRuns() || shared.isMet(runs)) shared.stop = true;
+        }
+    }
+
+    /** Общие счётчики серии. */
+    private static final class Shared {
+        final AtomicLongArray counts;
+        final AtomicLong claimed;
+        /** Номер прогона, следующего за последним в серии. */
+        final long limit;
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong unfinished = new AtomicLong();
+        final AtomicLong steps = new AtomicLong();
+        final StoppingRule rule;
+        final int[] tracked;
+        volatile boolean stop;
+
+        Shared(int states, StoppingRule rule, int[] tracked, long fromRun) {
+            this.counts = new AtomicLongArray(states);
+            this.claimed = new AtomicLong(fromRun);
+            this.limit = fromRun + rule.getMaxRuns();
+            this.rule = rule;
+            this.tracked = tracked;
+        }
+
+        /** Выполнены ли цели точности после runs прогонов (счётчики могут чуть отставать). */
+        boolean isMet(long runs) {
+            if (runs < rule.getMinRuns()) return false;
+            if (!rule.hasPrecisionTarget()) return runs >= rule.getMaxRuns();
+            for (int s : tracked) {
+                if (!rule.isMet(counts.get(s), runs)) return false;
+            }
+            return true;
+        }
+    }
+}
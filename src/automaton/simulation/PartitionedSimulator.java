@@ -0,0 +1,366 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+import automaton.concurrent.MpmcRingBuffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Прогоны по очень большой модели, разбитой на разделы по потокам.
+ *
+ * Состояния делятся на непрерывные диапазоны id с примерно равным числом рёбер; каждый
+ * раздел обслуживается одним потоком и читает только свой непрерывный кусок CSR-таблиц,
+ * поэтому поток работает с частью графа, помещающейся в его кэш. Прогон (walker) идёт внутри раздела,
+ * пока не выйдет за его границу; тогда он передаётся владельцу целевого состояния пакетом
+ * через lock-free очередь {@link MpmcRingBuffer}. Исход прогона учитывает раздел, в котором
+ * прогон закончился.
+ *
+ * Выигрыш тем больше, чем реже переходы пересекают границы: id состояний стоит нумеровать
+ * так, чтобы соседние по графу состояния имели близкие id (например, в порядке обхода).
+ *
+ * У каждого прогона свой генератор (SplitMix64 от seed и номера прогона), поэтому результат
+ * не зависит ни от числа разделов, ни от расписания потоков. Семантика исходов та же, что
+ * у {@link BatchSimulator}: конечное состояние или тупик — исход, лимит шагов — незавершённый
+ * прогон.
+ */
+public final class PartitionedSimulator {
+
+    /** Прогонов в пакете передачи между разделами. */
+    static final int HANDOFF_BATCH = 256;
+    /** Пакетов в очереди раздела. */
+    private static final int INBOX_CAPACITY = 1024;
+    /** Новых прогонов, добавляемых владельцем стартового состояния за раз. */
+    private static final int INJECT_CHUNK = 4096;
+
+    private final CompiledModel model;
+    private final int maxSteps;
+    private final int[] bounds;
+
+    /** Разделов по числу процессоров. */
+    public PartitionedSimulator(CompiledModel model, int maxSteps) {
+        this(model, maxSteps, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PartitionedSimulator(CompiledModel model, int maxSteps, int partitions) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be >= 1: " + maxSteps);
+        }
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be >= 1: " + partitions);
+        }
+        this.model = model;
+        this.maxSteps = maxSteps;
+        this.bounds = split(model, Math.min(partitions, model.getStateCount()));
+    }
+
+    /** Границы разделов: раздел p владеет id [bounds[p], bounds[p + 1]); вес состояния — рёбра + 1. */
+    private static int[] split(CompiledModel model, int partitions) {
+        int n = model.getStateCount();
+        long total = (long) model.getEdgeCount() + n;
+        int[] bounds = new int[partitions + 1];
+        bounds[partitions] = n;
+        long acc = 0;
+        int p = 1;
+        for (int s = 0; s < n && p < partitions; s++) {
+            acc += model.outDegree(s) + 1;
+            // Каждый раздел получает хотя бы одно состояние
+            while (p < partitions && acc * partitions >= total * p && n - (s + 1) >= partitions - p) {
+                bounds[p++] = s + 1;
+            }
+        }
+        for (; p < partitions; p++) bounds[p] = n - (partitions - p);
+        return bounds;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    public int getPartitionCount() {
+        return bounds.length - 1;
+    }
+
+    /** Первый id раздела partition (последний раздел заканчивается числом состояний). */
+    public int getPartitionStart(int partition) {
+        return bounds[partition];
+    }
+
+    int partitionOf(int state) {
+        int i = Arrays.binarySearch(bounds, state);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /** Выполняет runs прогонов из start. */
+    public SimulationReport simulate(int start, long runs, long seed) {
+        int n = model.getStateCount();
+        if (start < 0 || start >= n) {
+            throw new IllegalArgumentException("start id " + start + " out of range");
+        }
+        if (runs < 1) {
+            throw new IllegalArgumentException("runs must be >= 1: " + runs);
+        }
+        int partitions = getPartitionCount();
+        Run run = new Run(runs, start, seed, partitions);
+        Shard[] shards = new Shard[partitions];
+        for (int p = 0; p < partitions; p++) {
+            shards[p] = new Shard(p, run);
+        }
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Shard shard : shards) {
+                futures.add(executor.submit(shard::work));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            run.failed = true;
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", e);
+        } catch (ExecutionException e) {
+            run.failed = true;
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long[] counts = new long[n];
+        long unfinished = 0;
+        long steps = 0;
+        for (Shard shard : shards) {
+            System.arraycopy(shard.counts, 0, counts, shard.lo, shard.counts.length);
+            unfinished += shard.unfinished;
+            steps += shard.steps;
+        }
+        return new SimulationReport(model, counts, runs, unfinished, steps, true,
+                System.nanoTime() - startTime, StoppingRule.fixedRuns(runs), SplitMix.finalStates(model));
+    }
+
+    /** Общее состояние одного вызова simulate. */
+    private static final class Run {
+        final long runs;
+        final int start;
+        final long seed;
+        final List<MpmcRingBuffer<WalkerBatch>> inboxes;
+        final AtomicLong finished = new AtomicLong();
+        volatile boolean failed;
+
+        Run(long runs, int start, long seed, int partitions) {
+            this.runs = runs;
+            this.start = start;
+            this.seed = seed;
+            this.inboxes = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) inboxes.add(new MpmcRingBuffer<>(INBOX_CAPACITY));
+        }
+    }
+
+    /** Прогоны в структуре массивов: текущее состояние, шаги, состояние генератора. */
+    static final class WalkerBatch {
+        int[] states;
+        int[] steps;
+        long[] random;
+        int size;
+
+        WalkerBatch(int capacity) {
+            states = new int[capacity];
+            steps = new int[capacity];
+            random = new long[capacity];
+        }
+
+        void add(int state, int step, long rng) {
+            if (size == states.length) {
+                int capacity = size * 2;
+                states = Arrays.copyOf(states, capacity);
+                steps = Arrays.copyOf(steps, capacity);
+                random = Arrays.copyOf(random, capacity);
+            }
+            states[size] = state;
+            steps[size] = step;
+            random[size] = rng;
+            size++;
+        }
+
+        void addAll(WalkerBatch other) {
+            for (int i = 0; i < other.size; i++) add(other.states[i], other.steps[i], other.random[i]);
+        }
+    }
+
+    /** Раздел графа и его поток. */
+    private final class Shard {
+        final int index;
+        final int lo;
+        final int hi;
+        final boolean[] finals;
+        final long[] counts;
+        long unfinished;
+        long steps;
+
+        final Run run;
+        final WalkerBatch active = new WalkerBatch(INJECT_CHUNK);
+        final WalkerBatch[] outgoing;
+        final List<ArrayDeque<WalkerBatch>> pending;
+        long injected;
+        long finishedLocal;
+
+        Shard(int index, Run run) {
+            this.index = index;
+            this.run = run;
+            this.lo = bounds[index];
+            this.hi = bounds[index + 1];
+            int size = hi - lo;
+            this.finals = new boolean[size];
+            this.counts = new long[size];
+            for (int i = 0; i < size; i++) finals[i] = model.isFinal(lo + i);
+            int partitions = bounds.length - 1;
+            this.outgoing = new WalkerBatch[partitions];
+            this.pending = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) pending.add(new ArrayDeque<>());
+        }
+
+        void work() {
+            try {
+                loop();
+            } catch (RuntimeException | Error e) {
+                // Остальные разделы не дождутся прогонов этого — останавливаем их
+                run.failed = true;
+                throw e;
+            }
+        }
+
+        private void loop() {
+            boolean owner = partitionOf(run.start) == index;
+            int idle = 0;
+            while (!run.failed) {
+                boolean progress = false;
+                WalkerBatch batch;
+                while ((batch = run.inboxes.get(index).poll()) != null) {
+                    active.addAll(batch);
+                    progress = true;
+                }
+                if (owner && injected < run.runs && active.size < INJECT_CHUNK) {
+                    long count = Math.min(INJECT_CHUNK, run.runs - injected);
+                    for (long w = injected; w < injected + count; w++) {
+                        active.add(run.start, 0, SplitMix.seed(run.seed, w));
+                    }
+                    injected += count;
+                    progress = true;
+                }
+                while (active.size > 0) {
+                    int i = --active.size;
+                    walk(active.states[i], active.steps[i], active.random[i]);
+                }
+                progress |= flush();
+                if (finishedLocal > 0) {
+                    run.finished.addAndGet(finishedLocal);
+                    finishedLocal = 0;
+                }
+                if (progress) {
+                    idle = 0;
+                    continue;
+                }
+                if (run.finished.get() == run.runs) return;
+                // Ждём прогоны от соседей, не занимая ядро надолго
+                idle++;
+                if (idle < 64) {
+                    Thread.onSpinWait();
+                } else if (idle < 1024) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(50_000L);
+                }
+            }
+        }
+
+        /** Ведёт прогон внутри раздела до исхода, лимита шагов или выхода за границу. */
+        private void walk(int s, int step, long rng) {
+            while (true) {
+                int i = s - lo;
+                if (finals[i]) {
+                    counts[i]++;
+                    break;
+                }
+                if (step >= maxSteps) {
+                    unfinished++;
+                    break;
+                }
+                if (model.outDegree(s) == 0) {
+                    // Тупик — тоже исход
+                    counts[i]++;
+                    break;
+                }
+                rng += SplitMix.GOLDEN;
+                int t = model.target(model.sampleEdge(s, SplitMix.toUnit(SplitMix.mix64(rng))));
+                step++;
+                if (t < lo || t >= hi) {
+                    handOff(t, step, rng);
+                    return;
+                }
+                s = t;
+            }
+            steps += step;
+            finishedLocal++;
+        }
+
+        private void handOff(int state, int step, long rng) {
+            int p = partitionOf(state);
+            WalkerBatch batch = outgoing[p];
+            if (batch == null) {
+                batch = new WalkerBatch(HANDOFF_BATCH);
+                outgoing[p] = batch;
+            }
+            batch.add(state, step, rng);
+            if (batch.size == HANDOFF_BATCH) {
+                outgoing[p] = null;
+                send(p, batch);
+            }
+        }
+
+        private void send(int p, WalkerBatch batch) {
+            if (!pending.get(p).isEmpty() || !run.inboxes.get(p).offer(batch)) {
+                // Очередь соседа полна: отправим позже, сами не блокируемся
+                pending.get(p).addLast(batch);
+            }
+        }
+
+        /** Отправляет неполные пакеты и отложенные пакеты; true, если что-то ушло. */
+        private boolean flush() {
+            boolean sent = false;
+            for (int p = 0; p < outgoing.length; p++) {
+                ArrayDeque<WalkerBatch> queue = pending.get(p);
+                MpmcRingBuffer<WalkerBatch> inbox = run.inboxes.get(p);
+                while (!queue.isEmpty() && inbox.offer(queue.peekFirst())) {
+                    queue.pollFirst();
+                    sent = true;
+                }
+                WalkerBatch batch = outgoing[p];
+                if (batch != null && batch.size > 0) {
+                    outgoing[p] = null;
+                    send(p, batch);
+                    sent = true;
+                }
+            }
+            return sent;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedSimulator{states=" + model.getStateCount() + ", partitions=" + getPartitionCount()
+                + ", maxSteps=" + maxSteps + '}';
+    }
+}
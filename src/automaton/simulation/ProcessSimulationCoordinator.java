@@ -0,0 +1,258 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Серия прогонов, распределённая по нескольким JVM на одной машине.
+ *
+ * Координатор записывает модель во временный файл ({@link CompiledModel#write}), запускает
+ * рабочие процессы {@link SimulationWorker} с тем же classpath и раздаёт им непересекающиеся
+ * диапазоны пакетов серии. Сообщения идут через Unix-сокет или loopback в компактном двоичном
+ * виде ({@link WorkerProtocol}); счётчики исходов возвращаются разреженно и суммируются.
+ *
+ * Каждый пакет использует тот же генератор, что и в {@link BatchSimulator} (seed и номер
+ * пакета), поэтому итог совпадает с однопроцессным
+ * {@code simulate(start, StoppingRule.builder().minRuns(runs).maxRuns(runs).batchSize(batchSize).build(), seed)}
+ * при любом числе процессов.
+ */
+public final class ProcessSimulationCoordinator {
+
+    /** Канал между координатором и рабочими процессами. */
+    public enum Transport {
+        /** Unix-сокет во временном каталоге ({@link UnixDomainSocketAddress}). */
+        UNIX,
+        /** TCP на loopback-интерфейсе. */
+        LOOPBACK
+    }
+
+    /** Сколько ждать подключения рабочих процессов. */
+    private static final long CONNECT_TIMEOUT_MILLIS = 60_000L;
+
+    private final int workers;
+    private final Transport transport;
+    private final int threadsPerWorker;
+    private final List<String> jvmOptions;
+
+    /** workers однопоточных процессов, Unix-сокет. */
+    public ProcessSimulationCoordinator(int workers) {
+        this(workers, Transport.UNIX, 1, List.of());
+    }
+
+    /**
+     * @param threadsPerWorker потоков {@link BatchSimulator} в каждом процессе
+     * @param jvmOptions       дополнительные опции JVM рабочих процессов (например, {@code -Xmx2g})
+     */
+    public ProcessSimulationCoordinator(int workers, Transport transport, int threadsPerWorker,
+                                        List<String> jvmOptions) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be >= 1: " + workers);
+        }
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        if (threadsPerWorker < 1) {
+            throw new IllegalArgumentException("threadsPerWorker must be >= 1: " + threadsPerWorker);
+        }
+        this.workers = workers;
+        this.transport = transport;
+        this.threadsPerWorker = threadsPerWorker;
+        this.jvmOptions = List.copyOf(jvmOptions);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /** Выполняет runs прогонов из start пакетами по batchSize в рабочих процессах. */
+    public SimulationReport simulate(CompiledModel model, int start, int maxSteps, long runs, int batchSize,
+                                     long seed) throws IOException {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        if (start < 0 || start >= model.getStateCount()) {
+            throw new IllegalArgumentException("start id " + start + " out of range");
+        }
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be >= 1: " + maxSteps);
+        }
+        StoppingRule rule = StoppingRule.builder().minRuns(runs).maxRuns(runs).batchSize(batchSize).build();
+
+        // Пакеты делятся между процессами непрерывными диапазонами
+        long batches = (runs + batchSize - 1) / batchSize;
+        int processes = (int) Math.min(workers, batches);
+        List<WorkerProtocol.Job> jobs = new ArrayList<>(processes);
+
+        long startTime = System.nanoTime();
+        Path directory = Files.createTempDirectory("automaton-sim");
+        Path modelFile = directory.resolve("model.bin");
+        Path socketFile = directory.resolve("coordinator.sock");
+        List<Process> children = new ArrayList<>();
+        List<SocketChannel> channels = new ArrayList<>();
+        boolean completed = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(modelFile)))) {
+                model.write(out);
+            }
+            for (int w = 0; w < processes; w++) {
+                long fromRun = batches * w / processes * batchSize;
+                long toRun = Math.min(runs, batches * (w + 1) / processes * batchSize);
+                jobs.add(new WorkerProtocol.Job(modelFile.toString(), start, maxSteps, seed, batchSize,
+                        fromRun, toRun - fromRun, threadsPerWorker));
+            }
+
+            try (ServerSocketChannel server = openServer(socketFile)) {
+                String address = transport == Transport.UNIX
+                        ? socketFile.toString()
+                        : String.valueOf(((InetSocketAddress) server.getLocalAddress()).getPort());
+                for (int w = 0; w < processes; w++) {
+                    children.add(launch(address, w));
+                }
+                SocketChannel[] byWorker = accept(server, children);
+                for (SocketChannel channel : byWorker) channels.add(channel);
+            }
+
+            for (int w = 0; w < processes; w++) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channels.get(w))));
+                WorkerProtocol.writeJob(out, jobs.get(w));
+            }
+            WorkerProtocol.Totals totals = new WorkerProtocol.Totals(model.getStateCount());
+            for (int w = 0; w < processes; w++) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(channels.get(w))));
+                WorkerProtocol.readResult(in, w, totals);
+            }
+            if (totals.runs != runs) {
+                throw new IllegalStateException("Workers reported " + totals.runs + " runs instead of " + runs);
+            }
+            completed = true;
+            return new SimulationReport(model, totals.counts, runs, totals.unfinished, totals.steps, true,
+                    System.nanoTime() - startTime, rule, SplitMix.finalStates(model));
+        } finally {
+            for (SocketChannel channel : channels) {
+                closeQuietly(channel);
+            }
+            for (Process child : children) {
+                try {
+                    // При ошибке остальные процессы уже не нужны
+                    if (!completed || !child.waitFor(5, TimeUnit.SECONDS)) child.destroyForcibly();
+                } catch (InterruptedException e) {
+                    child.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Files.deleteIfExists(socketFile);
+            Files.deleteIfExists(modelFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private ServerSocketChannel openServer(Path socketFile) throws IOException {
+        ServerSocketChannel server;
+        if (transport == Transport.UNIX) {
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socketFile));
+        } else {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+        return server;
+    }
+
+    private Process launch(String address, int worker) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SimulationWorker.class.getName());
+        command.add(transport == Transport.UNIX ? "unix" : "loopback");
+        command.add(address);
+        command.add(String.valueOf(worker));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /** Принимает подключения всех процессов; упавший до подключения процесс — ошибка. */
+    private static SocketChannel[] accept(ServerSocketChannel server, List<Process> children) throws IOException {
+        SocketChannel[] byWorker = new SocketChannel[children.size()];
+        server.configureBlocking(false);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MILLIS);
+        int connected = 0;
+        try {
+            while (connected < byWorker.length) {
+                SocketChannel channel = server.accept();
+                if (channel == null) {
+                    for (int w = 0; w < children.size(); w++) {
+                        if (byWorker[w] == null && !children.get(w).isAlive()) {
+                            throw new IllegalStateException("Worker " + w + " exited with code "
+                                    + children.get(w).exitValue() + " before connecting");
+                        }
+                    }
+                    if (System.nanoTime() > deadline) {
+                        throw new IllegalStateException("Workers did not connect within "
+                                + CONNECT_TIMEOUT_MILLIS + " ms");
+                    }
+                    Thread.sleep(5);
+                    continue;
+                }
+                channel.configureBlocking(true);
+                int worker = WorkerProtocol.readHello(new DataInputStream(Channels.newInputStream(channel)));
+                if (worker < 0 || worker >= byWorker.length || byWorker[worker] != null) {
+                    closeQuietly(channel);
+                    throw new IOException("Unexpected worker index " + worker);
+                }
+                byWorker[worker] = channel;
+                connected++;
+            }
+            return byWorker;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for workers", e);
+        } catch (RuntimeException | IOException e) {
+            for (SocketChannel channel : byWorker) {
+                if (channel != null) closeQuietly(channel);
+            }
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // закрываем при завершении, ошибка уже не важна
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessSimulationCoordinator{workers=" + workers + ", transport=" + transport
+                + ", threadsPerWorker=" + threadsPerWorker + '}';
+    }
+}
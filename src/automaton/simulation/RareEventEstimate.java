@@ -0,0 +1,81 @@
+package automaton.simulation;
+
+/**
+ * Оценка вероятности редкого события методом выборки по значимости:
+ * среднее весов правдоподобия {@code L = prod p/q} по прогонам, достигшим цели
+ * (остальные прогоны дают 0). Неизменяема.
+ */
+public final class RareEventEstimate {
+
+    /** Квантиль нормального распределения для 95% доверительного интервала. */
+    public static final double Z_95 = 1.959963984540054;
+
+    private final long runs;
+    private final long hits;
+    private final double sum;
+    private final double sumSquares;
+
+    RareEventEstimate(long runs, long hits, double sum, double sumSquares) {
+        this.runs = runs;
+        this.hits = hits;
+        this.sum = sum;
+        this.sumSquares = sumSquares;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    /** Число прогонов, достигших цели. */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Несмещённая оценка вероятности. */
+    public double getProbability() {
+        return runs > 0 ? sum / runs : 0.0;
+    }
+
+    /** Выборочная дисперсия взвешенного индикатора. */
+    public double getVariance() {
+        if (runs < 2) return Double.POSITIVE_INFINITY;
+        double mean = sum / runs;
+        return Math.max(0.0, (sumSquares - runs * mean * mean) / (runs - 1));
+    }
+
+    public double getStandardError() {
+        return Math.sqrt(getVariance() / runs);
+    }
+
+    /** Относительная погрешность: стандартная ошибка / оценка. */
+    public double getRelativeError() {
+        double p = getProbability();
+        return p > 0.0 ? getStandardError() / p : Double.POSITIVE_INFINITY;
+    }
+
+    /** Полуширина доверительного интервала для квантиля z (например, {@link #Z_95}). */
+    public double halfWidth(double z) {
+        return z * getStandardError();
+    }
+
+    /** Нижняя граница 95% доверительного интервала (не меньше 0). */
+    public double getLowerBound() {
+        return Math.max(0.0, getProbability() - halfWidth(Z_95));
+    }
+
+    /** Верхняя граница 95% доверительного интервала. */
+    public double getUpperBound() {
+        return getProbability() + halfWidth(Z_95);
+    }
+
+    /** Эффективный размер выборки по весам попаданий: (sum L)^2 / sum L^2. */
+    public double getEffectiveSampleSize() {
+        return sumSquares > 0.0 ? sum * sum / sumSquares : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "RareEventEstimate{p=" + getProbability() + ", 95% CI=[" + getLowerBound() + ", " + getUpperBound()
+                + "], relErr=" + getRelativeError() + ", hits=" + hits + "/" + runs + '}';
+    }
+}
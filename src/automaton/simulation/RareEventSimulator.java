@@ -0,0 +1,206 @@
+package automaton.simulation;
+
+import automaton.analysis.PathSearch;
+import automaton.compiled.CompiledModel;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Оценка вероятности редкого исхода (достижения состояния target) выборкой по значимости.
+ *
+ * Прогоны идут не по вероятностям модели p, а по смещённым q, которые чаще ведут к цели;
+ * каждый прогон несёт вес правдоподобия {@code L = prod p(e) / q(e)} по пройденным рёбрам.
+ * Среднее {@code L * [цель достигнута]} — несмещённая оценка вероятности по модели, если
+ * q > 0 везде, где p > 0 (проверяется). Прогон завершается в цели, в любом другом конечном
+ * состоянии, в тупике или по лимиту шагов; обрезанный по лимиту прогон считается промахом,
+ * поэтому лимит должен быть заведомо больше типичной длины сессии.
+ *
+ * Смещение задаётся весами рёбер в порядке CSR модели: вручную (например,
+ * {@link #modelProposal()} с увеличенными весами нужных рёбер), эвристикой
+ * {@link #heuristicProposal(double)} или подстраивается методом перекрёстной энтропии
+ * {@link #tuneCrossEntropy}.
+ */
+public final class RareEventSimulator {
+
+    /** Доля вероятностей модели, подмешиваемая к эвристике и к настроенному смещению. */
+    public static final double DEFAULT_MIX = 0.05;
+
+    private final CompiledModel model;
+    private final int target;
+    private final int maxSteps;
+
+    /**
+     * @param target   id состояния, вероятность достижения которого оценивается
+     * @param maxSteps лимит шагов одного прогона
+     */
+    public RareEventSimulator(CompiledModel model, int target, int maxSteps) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        if (target < 0 || target >= model.getStateCount()) {
+            throw new IllegalArgumentException("target id " + target + " out of range");
+        }
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be >= 1: " + maxSteps);
+        }
+        this.model = model;
+        this.target = target;
+        this.maxSteps = maxSteps;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    /** Вероятности модели как веса смещения (копия) — основа для ручной настройки. */
+    public double[] modelProposal() {
+        return model.probabilitiesCopy();
+    }
+
+    /**
+     * Эвристическое смещение, близкое к оптимальному (с нулевой дисперсией) {@code q ∝ p(e) h(t)},
+     * где h(t) — вероятность попасть в цель из t. Вместо h берётся вероятность самого вероятного
+     * пути от t до цели ({@link PathSearch#bestPathProbabilitiesTo(int)}); к результату
+     * подмешивается доля mix вероятностей модели, чтобы сохранить носитель.
+     */
+    public double[] heuristicProposal(double mix) {
+        checkMix(mix);
+        int n = model.getStateCount();
+        double[] h = new PathSearch(model).bestPathProbabilitiesTo(target);
+        double[] q = new double[model.getEdgeCount()];
+        for (int s = 0; s < n; s++) {
+            int from = model.rowStart(s);
+            int to = model.rowEnd(s);
+            double total = 0.0;
+            for (int e = from; e < to; e++) total += model.probability(e) * h[model.target(e)];
+            for (int e = from; e < to; e++) {
+                double guided = total > 0.0 ? model.probability(e) * h[model.target(e)] / total : model.probability(e);
+                q[e] = (1.0 - mix) * guided + mix * model.probability(e);
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Подстраивает смещение методом перекрёстной энтропии: на каждой итерации
+     * {@code q(e) ∝ sum L * (число проходов e)} по прогонам, достигшим цели.
+     * Строки без данных сохраняют прежнее смещение; к результату подмешивается
+     * {@link #DEFAULT_MIX} вероятностей модели.
+     *
+     * @param initial начальное смещение (например, {@link #heuristicProposal(double)})
+     */
+    public double[] tuneCrossEntropy(int start, double[] initial, int iterations, int runsPerIteration, long seed) {
+        checkProposal(initial);
+        double[] q = initial.clone();
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] weighted = new double[q.length];
+        int[] path = new int[maxSteps];
+        for (int it = 0; it < iterations; it++) {
+            Arrays.fill(weighted, 0.0);
+            Sampler sampler = new Sampler(q);
+            boolean anyHit = false;
+            for (int r = 0; r < runsPerIteration; r++) {
+                double likelihood = sampler.run(start, random, path);
+                if (likelihood > 0.0) {
+                    anyHit = true;
+                    for (int i = 0; i < sampler.pathLength; i++) weighted[path[i]] += likelihood;
+                }
+            }
+            if (!anyHit) continue;
+            for (int s = 0; s < model.getStateCount(); s++) {
+                int from = model.rowStart(s);
+                int to = model.rowEnd(s);
+                double total = 0.0;
+                for (int e = from; e < to; e++) total += weighted[e];
+                if (total <= 0.0) continue;
+                for (int e = from; e < to; e++) {
+                    q[e] = (1.0 - DEFAULT_MIX) * weighted[e] / total + DEFAULT_MIX * model.probability(e);
+                }
+            }
+        }
+        return q;
+    }
+
+    /** Оценка по runs прогонам из start со смещением proposal (веса рёбер в порядке CSR). */
+    public RareEventEstimate estimate(int start, double[] proposal, long runs, long seed) {
+        checkProposal(proposal);
+        if (runs < 1) {
+            throw new IllegalArgumentException("runs must be >= 1: " + runs);
+        }
+        Sampler sampler = new Sampler(proposal);
+        SplittableRandom random = new SplittableRandom(seed);
+        long hits = 0;
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        for (long r = 0; r < runs; r++) {
+            double likelihood = sampler.run(start, random, null);
+            if (likelihood > 0.0) {
+                hits++;
+                sum += likelihood;
+                sumSquares += likelihood * likelihood;
+            }
+        }
+        return new RareEventEstimate(runs, hits, sum, sumSquares);
+    }
+
+    private void checkMix(double mix) {
+        if (!(mix >= 0.0 && mix <= 1.0)) {
+            throw new IllegalArgumentException("mix must be in [0, 1]: " + mix);
+        }
+    }
+
+    private void checkProposal(double[] proposal) {
+        if (proposal.length != model.getEdgeCount()) {
+            throw new IllegalArgumentException("Expected " + model.getEdgeCount() + " proposal weights but got "
+                    + proposal.length);
+        }
+        for (int s = 0; s < model.getStateCount(); s++) {
+            double total = 0.0;
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) total += Math.max(0.0, proposal[e]);
+            for (int e = model.rowStart(s); e < model.rowEnd(s); e++) {
+                // Без носителя на ребре с p > 0 оценка была бы смещённой
+                if (model.probability(e) > 0.0 && total > 0.0 && !(proposal[e] > 0.0)) {
+                    throw new IllegalArgumentException("Proposal weight of edge " + model.getStateName(s) + " -> "
+                            + model.getStateName(model.target(e)) + " must be > 0 where the model probability is > 0");
+                }
+            }
+        }
+    }
+
+    /** Прогоны по смещённой модели с накоплением log(p/q). */
+    private final class Sampler {
+        private final CompiledModel biased;
+        private final double[] logRatio;
+        int pathLength;
+
+        Sampler(double[] proposal) {
+            this.biased = model.withProbabilities(proposal);
+            this.logRatio = new double[proposal.length];
+            for (int e = 0; e < logRatio.length; e++) {
+                logRatio[e] = Math.log(model.probability(e)) - Math.log(biased.probability(e));
+            }
+        }
+
+        /** Вес правдоподобия прогона, достигшего цели, или 0; рёбра пути пишутся в path (если не null). */
+        double run(int start, SplittableRandom random, int[] path) {
+            int s = start;
+            double logL = 0.0;
+            pathLength = 0;
+            for (int step = 0; step < maxSteps; step++) {
+                if (s == target) return Math.exp(logL);
+                if (model.isFinal(s)) return 0.0;
+                int e = biased.sampleEdge(s, random.nextDouble());
+                if (e < 0) return 0.0;
+                logL += logRatio[e];
+                if (path != null) path[pathLength++] = e;
+                s = model.target(e);
+            }
+            return s == target ? Math.exp(logL) : 0.0;
+        }
+    }
+}
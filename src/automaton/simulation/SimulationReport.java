@@ -0,0 +1,99 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+
+/**
+ * Итог серии прогонов {@link BatchSimulator} или {@link PartitionedSimulator}: сколько прогонов закончилось в каждом
+ * состоянии, оценки частот с доверительными интервалами и сколько прогонов понадобилось.
+ * Неизменяем.
+ */
+public final class SimulationReport {
+
+    private final CompiledModel model;
+    private final long[] counts;
+    private final long runs;
+    private final long unfinished;
+    private final long totalSteps;
+    private final boolean targetMet;
+    private final long elapsedNanos;
+    private final StoppingRule rule;
+    private final int[] tracked;
+
+    SimulationReport(CompiledModel model, long[] counts, long runs, long unfinished, long totalSteps,
+                     boolean targetMet, long elapsedNanos, StoppingRule rule, int[] tracked) {
+        this.model = model;
+        this.counts = counts;
+        this.runs = runs;
+        this.unfinished = unfinished;
+        this.totalSteps = totalSteps;
+        this.targetMet = targetMet;
+        this.elapsedNanos = elapsedNanos;
+        this.rule = rule;
+        this.tracked = tracked;
+    }
+
+    /** Число фактически выполненных прогонов. */
+    public long getRuns() {
+        return runs;
+    }
+
+    /** Число прогонов, закончившихся в состоянии state. */
+    public long getCount(int state) {
+        return counts[state];
+    }
+
+    /** Оценка вероятности закончить прогон в состоянии state. */
+    public double getFrequency(int state) {
+        return runs > 0 ? (double) counts[state] / runs : 0.0;
+    }
+
+    /** Полуширина доверительного интервала частоты (тот же квантиль, что в правиле). */
+    public double getHalfWidth(int state) {
+        return StoppingRule.halfWidth(counts[state], runs, rule.getZ());
+    }
+
+    /** Относительная полуширина; бесконечность, если исход не встречался. */
+    public double getRelativeError(int state) {
+        return counts[state] > 0 ? getHalfWidth(state) / getFrequency(state) : Double.POSITIVE_INFINITY;
+    }
+
+    /** Прогоны, обрезанные лимитом шагов. */
+    public long getUnfinishedCount() {
+        return unfinished;
+    }
+
+    /** Сумма шагов всех прогонов. */
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    public double getMeanSteps() {
+        return runs > 0 ? (double) totalSteps / runs : 0.0;
+    }
+
+    /** Достигнута ли точность правила (false — остановились по maxRuns). */
+    public boolean isTargetMet() {
+        return targetMet;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public StoppingRule getRule() {
+        return rule;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SimulationReport{runs=").append(runs)
+                .append(", targetMet=").append(targetMet)
+                .append(", meanSteps=").append(getMeanSteps());
+        for (int s : tracked) {
+            sb.append(", ").append(model.getStateName(s)).append('=').append(getFrequency(s))
+                    .append("±").append(getHalfWidth(s));
+        }
+        if (unfinished > 0) sb.append(", unfinished=").append(unfinished);
+        return sb.append('}').toString();
+    }
+}
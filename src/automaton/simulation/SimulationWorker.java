@@ -0,0 +1,65 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Рабочий процесс {@link ProcessSimulationCoordinator}: подключается к координатору,
+ * получает задание, читает модель из файла, выполняет свой диапазон прогонов
+ * {@link BatchSimulator} и отправляет счётчики обратно.
+ *
+ * Запуск: {@code java -cp ... automaton.simulation.SimulationWorker unix <путь сокета> <номер>}
+ * или {@code ... loopback <порт> <номер>}.
+ */
+public final class SimulationWorker {
+
+    private SimulationWorker() {
+        // Точка входа процесса
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: SimulationWorker unix|loopback <socket path|port> <worker index>");
+            System.exit(2);
+        }
+        SocketAddress address = "unix".equals(args[0])
+                ? UnixDomainSocketAddress.of(args[1])
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[1]));
+        int worker = Integer.parseInt(args[2]);
+
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            WorkerProtocol.writeHello(out, worker);
+            WorkerProtocol.Job job = WorkerProtocol.readJob(in);
+            SimulationReport report;
+            CompiledModel model;
+            try {
+                try (DataInputStream modelIn = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(Path.of(job.modelPath))))) {
+                    model = CompiledModel.read(modelIn);
+                }
+                report = new BatchSimulator(model, job.maxSteps, job.threads)
+                        .simulateRange(job.start, job.batchSize, job.seed, job.fromRun, job.runs);
+            } catch (RuntimeException | IOException e) {
+                WorkerProtocol.writeError(out, e.toString());
+                System.exit(1);
+                return;
+            }
+            WorkerProtocol.writeResult(out, report, model.getStateCount());
+        }
+    }
+}
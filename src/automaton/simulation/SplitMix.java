@@ -0,0 +1,48 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+
+/**
+ * Общие помощники симуляторов пакета: генератор SplitMix64 в виде одного long на прогон
+ * и список конечных состояний для отчёта.
+ *
+ * Прогон хранит состояние генератора как long: очередное число — {@code mix64(state += GOLDEN)}.
+ * Так генератор помещается в массив структуры массивов и передаётся между потоками и процессами
+ * без объектов.
+ */
+final class SplitMix {
+
+    /** Приращение состояния SplitMix64. */
+    static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private SplitMix() {
+        // Утилитарный класс
+    }
+
+    /** Начальное состояние генератора пакета или прогона с номером index. */
+    static long seed(long seed, long index) {
+        return mix64(seed + (index + 1) * GOLDEN);
+    }
+
+    /** Финализатор SplitMix64. */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Равномерное число из [0, 1) по 53 старшим битам. */
+    static double toUnit(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    /** id конечных состояний модели по возрастанию — исходы, отслеживаемые в отчёте. */
+    static int[] finalStates(CompiledModel model) {
+        int n = model.getStateCount();
+        int count = 0;
+        for (int s = 0; s < n; s++) if (model.isFinal(s)) count++;
+        int[] tracked = new int[count];
+        for (int s = 0, i = 0; s < n; s++) if (model.isFinal(s)) tracked[i++] = s;
+        return tracked;
+    }
+}
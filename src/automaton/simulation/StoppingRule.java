@@ -0,0 +1,181 @@
+package automaton.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Правило остановки серии прогонов: требуемая точность оценок частот исходов.
+ *
+ * Для каждого отслеживаемого исхода (по умолчанию — всех конечных состояний) считается
+ * полуширина доверительного интервала Агрести — Коулла
+ * {@code z * sqrt(p~(1 - p~) / (n + 4))}, {@code p~ = (c + 2) / (n + 4)}: в отличие от
+ * нормального приближения она не обращается в ноль у ещё не встреченных исходов.
+ * Серия останавливается, когда у всех отслеживаемых исходов полуширина не больше заданной
+ * и/или относительная полуширина (полуширина / частота) не больше заданной, но не раньше
+ * minRuns и не позже maxRuns прогонов. Неизменяемо.
+ */
+public final class StoppingRule {
+
+    private final double halfWidth;
+    private final double relativeError;
+    private final double z;
+    private final long minRuns;
+    private final long maxRuns;
+    private final int batchSize;
+    private final int[] tracked;
+
+    private StoppingRule(Builder b) {
+        this.halfWidth = b.halfWidth;
+        this.relativeError = b.relativeError;
+        this.z = b.z;
+        this.minRuns = b.minRuns;
+        this.maxRuns = b.maxRuns;
+        this.batchSize = b.batchSize;
+        this.tracked = b.tracked;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Правило «ровно runs прогонов» без проверки точности. */
+    public static StoppingRule fixedRuns(long runs) {
+        return builder().minRuns(runs).maxRuns(runs).build();
+    }
+
+    public double getHalfWidth() {
+        return halfWidth;
+    }
+
+    public double getRelativeError() {
+        return relativeError;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public long getMinRuns() {
+        return minRuns;
+    }
+
+    public long getMaxRuns() {
+        return maxRuns;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /** id отслеживаемых исходов или null — все конечные состояния. */
+    public int[] getTracked() {
+        return tracked != null ? tracked.clone() : null;
+    }
+
+    /** Полуширина интервала Агрести — Коулла для count исходов из runs. */
+    public static double halfWidth(long count, long runs, double z) {
+        double n = runs + 4.0;
+        double p = (count + 2.0) / n;
+        return z * Math.sqrt(p * (1.0 - p) / n);
+    }
+
+    /** Достигнута ли точность для исхода с count попаданиями из runs. */
+    boolean isMet(long count, long runs) {
+        double hw = halfWidth(count, runs, z);
+        if (!Double.isNaN(halfWidth) && hw > halfWidth) return false;
+        if (!Double.isNaN(relativeError)) {
+            if (count == 0) return false;
+            return hw / ((double) count / runs) <= relativeError;
+        }
+        return true;
+    }
+
+    /** Задана ли хотя бы одна цель точности. */
+    boolean hasPrecisionTarget() {
+        return !Double.isNaN(halfWidth) || !Double.isNaN(relativeError);
+    }
+
+    @Override
+    public String toString() {
+        return "StoppingRule{halfWidth=" + halfWidth + ", relativeError=" + relativeError + ", z=" + z
+                + ", runs=[" + minRuns + ", " + maxRuns + "], batch=" + batchSize
+                + (tracked != null ? ", tracked=" + Arrays.toString(tracked) : "") + '}';
+    }
+
+    public static final class Builder {
+        private double halfWidth = Double.NaN;
+        private double relativeError = Double.NaN;
+        private double z = RareEventEstimate.Z_95;
+        private long minRuns = 1_000;
+        private long maxRuns = 100_000_000L;
+        private int batchSize = 1_000;
+        private int[] tracked;
+
+        private Builder() {
+        }
+
+        /** Максимальная полуширина доверительного интервала частоты каждого исхода. */
+        public Builder halfWidth(double halfWidth) {
+            if (!(halfWidth > 0.0)) {
+                throw new IllegalArgumentException("halfWidth must be > 0: " + halfWidth);
+            }
+            this.halfWidth = halfWidth;
+            return this;
+        }
+
+        /** Максимальная относительная полуширина (полуширина / частота) каждого исхода. */
+        public Builder relativeError(double relativeError) {
+            if (!(relativeError > 0.0)) {
+                throw new IllegalArgumentException("relativeError must be > 0: " + relativeError);
+            }
+            this.relativeError = relativeError;
+            return this;
+        }
+
+        /** Квантиль нормального распределения (по умолчанию 1.96 — 95%). */
+        public Builder z(double z) {
+            if (!(z > 0.0)) {
+                throw new IllegalArgumentException("z must be > 0: " + z);
+            }
+            this.z = z;
+            return this;
+        }
+
+        public Builder minRuns(long minRuns) {
+            if (minRuns < 1) {
+                throw new IllegalArgumentException("minRuns must be >= 1: " + minRuns);
+            }
+            this.minRuns = minRuns;
+            return this;
+        }
+
+        public Builder maxRuns(long maxRuns) {
+            if (maxRuns < 1) {
+                throw new IllegalArgumentException("maxRuns must be >= 1: " + maxRuns);
+            }
+            this.maxRuns = maxRuns;
+            return this;
+        }
+
+        /** Прогонов в пакете: после каждого пакета поток публикует счётчики и проверяет правило. */
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be >= 1: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /** Отслеживать только эти исходы (id состояний). */
+        public Builder track(int... stateIds) {
+            this.tracked = stateIds.clone();
+            return this;
+        }
+
+        public StoppingRule build() {
+            if (minRuns > maxRuns) {
+                throw new IllegalArgumentException("minRuns " + minRuns + " exceeds maxRuns " + maxRuns);
+            }
+            return new StoppingRule(this);
+        }
+    }
+}
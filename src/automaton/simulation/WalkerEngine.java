@@ -0,0 +1,244 @@
+package automaton.simulation;
+
+import automaton.compiled.CompiledModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Массовые независимые прогоны в структуре массивов.
+ *
+ * Прогоны обрабатываются блоками по {@link #CHUNK} штук: текущее состояние и состояние
+ * генератора (SplitMix64) каждого прогона лежат в примитивных массивах, и весь блок
+ * продвигается на один шаг за проход. Все прогоны блока стартуют одновременно, поэтому
+ * число шагов — общий номер прохода. После прохода завершившиеся прогоны (конечное состояние
+ * или тупик — исход, лимит шагов — незавершённый прогон) учитываются и убираются из блока
+ * сдвигом, так что следующий проход идёт только по активным.
+ *
+ * Переход выбирается по таблице псевдонимов (метод Уолкера — Воуза) за O(1) независимо
+ * от степени состояния: одно равномерное число даёт и столбец, и сравнение с порогом.
+ * Распределение исходов то же, что у {@link BatchSimulator}, но конкретные траектории при
+ * том же seed другие. У каждого прогона свой генератор (seed и номер прогона), поэтому
+ * результат не зависит от числа потоков.
+ */
+public final class WalkerEngine {
+
+    /** Прогонов в блоке: состояние блока (~12 байт на прогон) помещается в L2. */
+    static final int CHUNK = 1 << 16;
+
+    private final CompiledModel model;
+    private final int maxSteps;
+    private final int threads;
+
+    /** Копия смещений строк. */
+    private final int[] offsets;
+    private final int[] targets;
+    /** Порог столбца таблицы псевдонимов (по ребру). */
+    private final double[] threshold;
+    /** Ребро-псевдоним столбца (абсолютный индекс). */
+    private final int[] alias;
+    /** Прогон в этом состоянии завершается: конечное состояние или тупик. */
+    private final boolean[] terminal;
+
+    /** Однопоточный движок. */
+    public WalkerEngine(CompiledModel model, int maxSteps) {
+        this(model, maxSteps, 1);
+    }
+
+    public WalkerEngine(CompiledModel model, int maxSteps, int threads) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be >= 1: " + maxSteps);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: " + threads);
+        }
+        this.model = model;
+        this.maxSteps = maxSteps;
+        this.threads = threads;
+        int n = model.getStateCount();
+        int m = model.getEdgeCount();
+        this.offsets = new int[n + 1];
+        this.targets = new int[m];
+        this.threshold = new double[m];
+        this.alias = new int[m];
+        this.terminal = new boolean[n];
+        int[] small = new int[16];
+        int[] large = new int[16];
+        for (int s = 0; s < n; s++) {
+            int from = model.rowStart(s);
+            int to = model.rowEnd(s);
+            offsets[s + 1] = to;
+            terminal[s] = model.isFinal(s) || from == to;
+            for (int e = from; e < to; e++) targets[e] = model.target(e);
+            if (to - from > small.length) {
+                small = new int[to - from];
+                large = new int[to - from];
+            }
+            buildAlias(from, to, small, large);
+        }
+    }
+
+    /** Таблица псевдонимов строки [from, to) по алгоритму Воуза. */
+    private void buildAlias(int from, int to, int[] small, int[] large) {
+        int degree = to - from;
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int e = from; e < to; e++) {
+            threshold[e] = model.probability(e) * degree;
+            alias[e] = e;
+            if (threshold[e] < 1.0) small[smallCount++] = e;
+            else large[largeCount++] = e;
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            alias[less] = more;
+            threshold[more] -= 1.0 - threshold[less];
+            if (threshold[more] < 1.0) small[smallCount++] = more;
+            else large[largeCount++] = more;
+        }
+        // Остатки из-за округления — столбцы без псевдонима
+        while (largeCount > 0) threshold[large[--largeCount]] = 1.0;
+        while (smallCount > 0) threshold[small[--smallCount]] = 1.0;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /** Выполняет walkers прогонов из start. */
+    public SimulationReport simulate(int start, long walkers, long seed) {
+        int n = model.getStateCount();
+        if (start < 0 || start >= n) {
+            throw new IllegalArgumentException("start id " + start + " out of range");
+        }
+        if (walkers < 1) {
+            throw new IllegalArgumentException("walkers must be >= 1: " + walkers);
+        }
+        long chunks = (walkers + CHUNK - 1) / CHUNK;
+        int workers = (int) Math.min(threads, chunks);
+        AtomicLong nextChunk = new AtomicLong();
+        Tally[] tallies = new Tally[workers];
+        for (int w = 0; w < workers; w++) tallies[w] = new Tally(n);
+
+        long startTime = System.nanoTime();
+        if (workers == 1) {
+            work(start, walkers, seed, nextChunk, tallies[0]);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Tally tally : tallies) {
+                    futures.add(executor.submit(() -> work(start, walkers, seed, nextChunk, tally)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Simulation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Simulation failed", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        long[] counts = new long[n];
+        long unfinished = 0;
+        long steps = 0;
+        for (Tally tally : tallies) {
+            for (int s = 0; s < n; s++) counts[s] += tally.counts[s];
+            unfinished += tally.unfinished;
+            steps += tally.steps;
+        }
+        return new SimulationReport(model, counts, walkers, unfinished, steps, true,
+                System.nanoTime() - startTime, StoppingRule.fixedRuns(walkers), SplitMix.finalStates(model));
+    }
+
+    private void work(int start, long walkers, long seed, AtomicLong nextChunk, Tally tally) {
+        int[] state = new int[CHUNK];
+        long[] random = new long[CHUNK];
+        long chunk;
+        while ((chunk = nextChunk.getAndIncrement()) * CHUNK < walkers) {
+            long first = chunk * CHUNK;
+            int size = (int) Math.min(CHUNK, walkers - first);
+            if (terminal[start]) {
+                tally.counts[start] += size;
+                continue;
+            }
+            for (int i = 0; i < size; i++) {
+                state[i] = start;
+                random[i] = SplitMix.seed(seed, first + i);
+            }
+            runChunk(state, random, size, tally);
+        }
+    }
+
+    /** Продвигает блок из active прогонов проход за проходом до завершения всех. */
+    private void runChunk(int[] state, long[] random, int active, Tally tally) {
+        int[] offsets = this.offsets;
+        int[] targets = this.targets;
+        double[] threshold = this.threshold;
+        int[] alias = this.alias;
+        boolean[] terminal = this.terminal;
+        long[] counts = tally.counts;
+
+        for (int step = 1; active > 0; step++) {
+            // Шаг всех активных прогонов
+            for (int i = 0; i < active; i++) {
+                int s = state[i];
+                int from = offsets[s];
+                int degree = offsets[s + 1] - from;
+                long r = random[i] + SplitMix.GOLDEN;
+                random[i] = r;
+                double x = SplitMix.toUnit(SplitMix.mix64(r)) * degree;
+                int column = Math.min((int) x, degree - 1);
+                int e = from + column;
+                state[i] = targets[x - column < threshold[e] ? e : alias[e]];
+            }
+            // Учёт завершившихся и сдвиг активных к началу блока
+            boolean last = step == maxSteps;
+            int kept = 0;
+            for (int i = 0; i < active; i++) {
+                int s = state[i];
+                if (terminal[s]) {
+                    counts[s]++;
+                    tally.steps += step;
+                } else if (last) {
+                    tally.unfinished++;
+                    tally.steps += step;
+                } else {
+                    state[kept] = s;
+                    random[kept] = random[i];
+                    kept++;
+                }
+            }
+            active = kept;
+        }
+    }
+
+    /** Счётчики одного потока. */
+    private static final class Tally {
+        final long[] counts;
+        long unfinished;
+        long steps;
+
+        Tally(int states) {
+            this.counts = new long[states];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WalkerEngine{states=" + model.getStateCount() + ", maxSteps=" + maxSteps + ", threads=" + threads + '}';
+    }
+}
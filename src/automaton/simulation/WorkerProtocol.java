@@ -0,0 +1,151 @@
+package automaton.simulation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Двоичный протокол между {@link ProcessSimulationCoordinator} и {@link SimulationWorker}.
+ *
+ * Все числа — в порядке big-endian ({@link DataOutputStream}). Рабочий процесс после
+ * подключения присылает HELLO (сигнатура, номер рабочего), координатор отвечает JOB,
+ * рабочий — RESULT или ERROR. Счётчики исходов передаются разреженно: только ненулевые
+ * пары (id состояния, число прогонов).
+ */
+final class WorkerProtocol {
+
+    /** Сигнатура протокола: "PAWK". */
+    static final int MAGIC = 0x5041574B;
+    static final int VERSION = 1;
+
+    static final byte JOB = 1;
+    static final byte RESULT = 2;
+    static final byte ERROR = 3;
+
+    private WorkerProtocol() {
+        // Утилитарный класс
+    }
+
+    /** Задание рабочему процессу: прогоны [fromRun, fromRun + runs) серии. */
+    static final class Job {
+        final String modelPath;
+        final int start;
+        final int maxSteps;
+        final long seed;
+        final int batchSize;
+        final long fromRun;
+        final long runs;
+        final int threads;
+
+        Job(String modelPath, int start, int maxSteps, long seed, int batchSize, long fromRun, long runs,
+            int threads) {
+            this.modelPath = modelPath;
+            this.start = start;
+            this.maxSteps = maxSteps;
+            this.seed = seed;
+            this.batchSize = batchSize;
+            this.fromRun = fromRun;
+            this.runs = runs;
+            this.threads = threads;
+        }
+    }
+
+    static void writeHello(DataOutputStream out, int worker) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(worker);
+        out.flush();
+    }
+
+    /** Читает HELLO и возвращает номер рабочего. */
+    static int readHello(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Unexpected peer: bad protocol signature");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported worker protocol version: " + version);
+        }
+        return in.readInt();
+    }
+
+    static void writeJob(DataOutputStream out, Job job) throws IOException {
+        out.writeByte(JOB);
+        out.writeUTF(job.modelPath);
+        out.writeInt(job.start);
+        out.writeInt(job.maxSteps);
+        out.writeLong(job.seed);
+        out.writeInt(job.batchSize);
+        out.writeLong(job.fromRun);
+        out.writeLong(job.runs);
+        out.writeInt(job.threads);
+        out.flush();
+    }
+
+    static Job readJob(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type != JOB) {
+            throw new IOException("Expected job message but got type " + type);
+        }
+        return new Job(in.readUTF(), in.readInt(), in.readInt(), in.readLong(), in.readInt(),
+                in.readLong(), in.readLong(), in.readInt());
+    }
+
+    static void writeResult(DataOutputStream out, SimulationReport report, int states) throws IOException {
+        out.writeByte(RESULT);
+        out.writeLong(report.getRuns());
+        out.writeLong(report.getUnfinishedCount());
+        out.writeLong(report.getTotalSteps());
+        int nonZero = 0;
+        for (int s = 0; s < states; s++) if (report.getCount(s) != 0) nonZero++;
+        out.writeInt(nonZero);
+        for (int s = 0; s < states; s++) {
+            long count = report.getCount(s);
+            if (count != 0) {
+                out.writeInt(s);
+                out.writeLong(count);
+            }
+        }
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(message != null ? message : "unknown error");
+        out.flush();
+    }
+
+    /** Итог рабочего процесса, прибавленный к общим счётчикам. */
+    static final class Totals {
+        final long[] counts;
+        long runs;
+        long unfinished;
+        long steps;
+
+        Totals(int states) {
+            this.counts = new long[states];
+        }
+    }
+
+    /** Читает RESULT и прибавляет его к totals; ERROR превращается в IllegalStateException. */
+    static void readResult(DataInputStream in, int worker, Totals totals) throws IOException {
+        byte type = in.readByte();
+        if (type == ERROR) {
+            throw new IllegalStateException("Worker " + worker + " failed: " + in.readUTF());
+        }
+        if (type != RESULT) {
+            throw new IOException("Expected result message from worker " + worker + " but got type " + type);
+        }
+        totals.runs += in.readLong();
+        totals.unfinished += in.readLong();
+        totals.steps += in.readLong();
+        int nonZero = in.readInt();
+        for (int i = 0; i < nonZero; i++) {
+            int state = in.readInt();
+            if (state < 0 || state >= totals.counts.length) {
+                throw new IOException("State id " + state + " out of range in result of worker " + worker);
+            }
+            totals.counts[state] += in.readLong();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package automaton.state;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Глобальная таблица целочисленных дескрипторов (handle) алгоритмов.
+ *
+ * Имя алгоритма разрешается в handle один раз, после чего состояние находит команды
+ * по индексу массива, без поиска строки в HashMap на каждом шаге.
+ * Один и тот же handle означает одно и то же имя во всех состояниях и моделях.
+ *
+ * Таблица только растёт, поэтому новые имена заводит лишь объявление алгоритма
+ * ({@link State#addAlgorithm}); поиск по имени из запроса идёт через {@link #find(String)}.
+ */
+public final class AlgorithmHandles {
+
+    private static final Map<String, Integer> HANDLES = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    private AlgorithmHandles() {
+        // Утилитарный класс
+    }
+
+    /** Возвращает handle алгоритма, заводя новый при первом обращении к имени. */
+    public static int handleOf(String algorithmName) {
+        Objects.requireNonNull(algorithmName, "algorithmName");
+        Integer handle = HANDLES.get(algorithmName);
+        if (handle != null) return handle;
+        synchronized (AlgorithmHandles.class) {
+            handle = HANDLES.get(algorithmName);
+            if (handle != null) return handle;
+            String[] current = names;
+            int next = current.length;
+            String[] grown = Arrays.copyOf(current, next + 1);
+            grown[next] = algorithmName;
+            names = grown;
+            HANDLES.put(algorithmName, next);
+            return next;
+        }
+    }
+
+    /** handle существующего имени или -1, если такого алгоритма никто не объявлял; имя не заводится. */
+    public static int find(String algorithmName) {
+        Integer handle = algorithmName != null ? HANDLES.get(algorithmName) : null;
+        return handle != null ? handle : -1;
+    }
+
+    /** Сколько имён заведено в таблице. */
+    public static int size() {
+        return names.length;
+    }
+
+    /** Имя алгоритма по handle. */
+    public static String nameOf(int handle) {
+        String[] current = names;
+        if (handle < 0 || handle >= current.length) {
+            throw new IllegalArgumentException("Unknown algorithm handle: " + handle);
+        }
+        return current[handle];
+    }
+}
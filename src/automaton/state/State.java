@@ -2,19 +2,80 @@ package automaton.state;
 
 import automaton.context.Context;
 import automaton.commands.Command;
+import automaton.core.AutomatonLog;
+import automaton.probability.TransitionDistribution;
 import automaton.random.RandomProvider;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class State {
     private final String name;
     private final boolean isFinal;
+
+    /** Хеш имени, вычисленный один раз (hashCode вызывается на каждом поиске в HashMap). */
+    private final int nameHash;
+
+    /**
+     * Реестр модели и плотный id в нём; -1, пока состояние не зарегистрировано.
+     * id записывается раньше volatile-ссылки на реестр, поэтому увидевший реестр видит и id.
+     */
+    private volatile StateRegistry registry;
+    private int id = -1;
+
     private final List<State> nextStates = new ArrayList<>();
-    private final List<Double> transitionProbabilities = new ArrayList<>();
+    private final List<State> nextStatesView = Collections.unmodifiableList(nextStates);
     private final Map<String, List<Command>> algorithms = new HashMap<>();
 
+    /**
+     * Команды алгоритмов в плоских массивах, индекс — handle из {@link AlgorithmHandles}.
+     * Шаг находит алгоритм по индексу, без поиска строки и без итератора.
+     */
+    private Command[][] commandsByHandle = new Command[0][];
+
+    /** handle алгоритмов этого состояния — для случайного выбора без выделения памяти. */
+    private int[] algorithmHandles = new int[0];
+
+    /**
+     * Веса переходов (параллельно nextStates); хранятся без упаковки в Double.
+     * Это рабочий массив построения графа: после {@link #publishWeights(double[])}
+     * действующие веса лежат в таблице, и следующее изменение переходов начинает с них.
+     */
+    private volatile double[] weights = new double[4];
+
+    /**
+     * Таблица для выборки: неизменяемый снимок целей, весов и накопленных нормализованных вероятностей.
+     * Изменение переходов сбрасывает её в null; шагающий поток строит новую в свежих массивах
+     * и устанавливает через CAS, поэтому массив, который кто-то уже читает, никогда
+     * не перезаписывается. Пока переходы меняются перед каждой выборкой (clear + add на шаге),
+     * таблица не строится: выборка идёт прямым проходом по весам без выделения памяти.
+     */
+    private volatile Transitions table;
+    private static final AtomicReferenceFieldUpdater<State, Transitions> TABLE =
+            AtomicReferenceFieldUpdater.newUpdater(State.class, Transitions.class, "table");
+
+    /** Выборок без таблицы с последнего изменения переходов (подсказка, гонки допустимы). */
+    private int uncachedSamples;
+
     public State(String name, boolean isFinal) {
         this.name = name;
         this.isFinal = isFinal;
+        this.nameHash = Objects.hash(name);
+    }
+
+    /** Вызывается реестром при регистрации. */
+    void assignId(StateRegistry registry, int id) {
+        this.id = id;
+        this.registry = registry;
+    }
+
+    /** Плотный id состояния в реестре модели или -1, если состояние не зарегистрировано. */
+    public int getId() {
+        return id;
+    }
+
+    /** Реестр модели, в котором зарегистрировано состояние (может быть null). */
+    public StateRegistry getRegistry() {
+        return registry;
     }
 
     /**
@@ -27,8 +88,17 @@ public class State {
      */
     public void addNextState(State state, double probability) {
         if (!nextStates.contains(state)) {
+            int n = nextStates.size();
+            Transitions t = table;
+            if (t != null) {
+                // Действующие веса — в таблице (их могли опубликовать); массив снимка не трогаем
+                weights = Arrays.copyOf(t.weights, Math.max(4, n * 2));
+            } else if (n == weights.length) {
+                weights = Arrays.copyOf(weights, n * 2);
+            }
+            weights[n] = probability;
             nextStates.add(state);
-            transitionProbabilities.add(probability);
+            invalidateTable();
         }
     }
 
@@ -36,20 +106,23 @@ public class State {
         addNextState(state, 1.0); // Вероятность по умолчанию
     }
 
-    private double sumPositiveWeights() {
+    private static double sumPositiveWeights(double[] weights, int n) {
         double sum = 0.0;
-        for (double w : transitionProbabilities) {
+        for (int i = 0; i < n; i++) {
+            double w = weights[i];
             if (w > 0.0) sum += w;
         }
         return sum;
     }
 
     private double[] normalisedProbabilitiesOrUniform() {
-        int n = transitionProbabilities.size();
+        int n = nextStates.size();
         double[] probs = new double[n];
         if (n == 0) return probs;
 
-        double sum = sumPositiveWeights();
+        Transitions t = table;
+        double[] w = t != null ? t.weights : weights;
+        double sum = sumPositiveWeights(w, n);
         if (sum <= 0.0) {
             // Если все веса <= 0, используем равномерное распределение
             double p = 1.0 / n;
@@ -58,11 +131,79 @@ public class State {
         }
 
         for (int i = 0; i < n; i++) {
-            probs[i] = Math.max(0.0, transitionProbabilities.get(i)) / sum;
+            probs[i] = Math.max(0.0, w[i]) / sum;
         }
         return probs;
     }
 
+    private void invalidateTable() {
+        table = null;
+        uncachedSamples = 0;
+    }
+
+    /** Строит таблицу выборки в новых массивах; построенная таблица больше не меняется. */
+    private Transitions buildTable(double[] w) {
+        int n = nextStates.size();
+        State[] targets = nextStates.toArray(new State[0]);
+        double[] c = new double[n];
+        if (n > 0) fillCumulative(w, n, c);
+        return new Transitions(targets, Arrays.copyOf(w, n), c);
+    }
+
+    /**
+     * Индекс перехода по u прямым проходом по весам — с теми же накопленными суммами
+     * и тем же выбором, что бинарный поиск по таблице.
+     */
+    private static int sampleIndexDirect(double[] weights, int n, double u) {
+        double sum = sumPositiveWeights(weights, n);
+        double uniform = 1.0 / n;
+        double acc = 0.0;
+        for (int i = 0; i < n; i++) {
+            acc += sum <= 0.0 ? uniform : Math.max(0.0, weights[i]) / sum;
+            if (u <= acc) return i;
+        }
+        return n - 1;
+    }
+
+    private static void fillCumulative(double[] weights, int n, double[] cumulative) {
+        double sum = sumPositiveWeights(weights, n);
+        double acc = 0.0;
+        if (sum <= 0.0) {
+            // Если все веса <= 0, используем равномерное распределение
+            double p = 1.0 / n;
+            for (int i = 0; i < n; i++) {
+                acc += p;
+                cumulative[i] = acc;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                acc += Math.max(0.0, weights[i]) / sum;
+                cumulative[i] = acc;
+            }
+        }
+    }
+
+    /**
+     * Атомарно заменяет веса существующих переходов (например, выученными вероятностями).
+     *
+     * Новые веса и накопленные вероятности строятся в новом снимке, который публикуется одной
+     * volatile-записью ссылки; выборка читает ссылку один раз, поэтому видит либо старые, либо
+     * новые веса целиком. Ленивая сборка таблицы в другом потоке ставит свою через CAS
+     * и не может затереть опубликованную. Вызов не блокирует шагающие потоки.
+     * Набор переходов не меняется.
+     *
+     * @param newWeights веса в порядке {@link #nextStatesView()}
+     * @throws IllegalArgumentException если длина не совпадает с числом переходов
+     */
+    public void publishWeights(double[] newWeights) {
+        int n = nextStates.size();
+        if (newWeights.length != n) {
+            throw new IllegalArgumentException("Expected " + n + " weights for state " + name
+                    + " but got " + newWeights.length);
+        }
+        table = buildTable(newWeights);
+    }
+
     public State selectNextState(Random random) {
         if (nextStates.isEmpty()) return this;
 
@@ -71,29 +212,79 @@ public class State {
 
     public void clearNextStates() {
         nextStates.clear();
-        transitionProbabilities.clear();
+        invalidateTable();
     }
 
     public void addAlgorithm(String algorithmName, List<Command> commands) {
-        algorithms.put(algorithmName, new ArrayList<>(commands));
+        List<Command> copy = new ArrayList<>(commands);
+        algorithms.put(algorithmName, copy);
+
+        int handle = AlgorithmHandles.handleOf(algorithmName);
+        if (handle >= commandsByHandle.length) {
+            commandsByHandle = Arrays.copyOf(commandsByHandle, handle + 1);
+        }
+        if (commandsByHandle[handle] == null) {
+            algorithmHandles = Arrays.copyOf(algorithmHandles, algorithmHandles.length + 1);
+            algorithmHandles[algorithmHandles.length - 1] = handle;
+        }
+        commandsByHandle[handle] = copy.toArray(new Command[0]);
     }
 
     public void removeAlgorithm(String algorithmName) {
-        algorithms.remove(algorithmName);
+        if (algorithms.remove(algorithmName) == null) return;
+
+        int handle = AlgorithmHandles.find(algorithmName);
+        commandsByHandle[handle] = null;
+        int[] remaining = new int[algorithmHandles.length - 1];
+        int j = 0;
+        for (int h : algorithmHandles) {
+            if (h != handle) remaining[j++] = h;
+        }
+        algorithmHandles = remaining;
     }
 
     public void executeAlgorithm(Context context, String algorithmName) {
-        List<Command> commands = algorithms.get(algorithmName);
+        int handle = AlgorithmHandles.find(algorithmName);
+        if (handle < 0) {
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("Algorithm '" + algorithmName + "' not found in state " + name);
+            }
+            return;
+        }
+        executeAlgorithm(context, handle);
+    }
+
+    /** Выполняет алгоритм по handle, полученному из {@link AlgorithmHandles#handleOf(String)}. */
+    public void executeAlgorithm(Context context, int handle) {
+        Command[] commands = handle >= 0 && handle < commandsByHandle.length ? commandsByHandle[handle] : null;
         if (commands != null) {
-            System.out.println("State " + name + ": executing algorithm '" + algorithmName + "'");
-            for (Command command : commands) {
-                command.execute(context, this);
+            if (AutomatonLog.isEnabled()) {
+                System.out.println("State " + name + ": executing algorithm '"
+                        + AlgorithmHandles.nameOf(handle) + "'");
             }
-        } else {
-            System.out.println("Algorithm '" + algorithmName + "' not found in state " + name);
+            for (int i = 0; i < commands.length; i++) {
+                commands[i].execute(context, this);
+            }
+        } else if (AutomatonLog.isEnabled()) {
+            System.out.println("Algorithm #" + handle + " not found in state " + name);
         }
     }
 
+    /** Есть ли у состояния алгоритм с данным handle. */
+    public boolean hasAlgorithm(int handle) {
+        return handle >= 0 && handle < commandsByHandle.length && commandsByHandle[handle] != null;
+    }
+
+    /** Количество алгоритмов состояния. */
+    public int getAlgorithmCount() {
+        return algorithmHandles.length;
+    }
+
+    /** handle i-го алгоритма состояния (порядок — порядок добавления). */
+    public int getAlgorithmHandle(int index) {
+        return algorithmHandles[index];
+    }
+
     public String getName() {
         return name;
     }
@@ -102,24 +293,61 @@ public class State {
         return isFinal;
     }
 
+    /** Возвращает копию списка следующих состояний. */
     public List<State> getNextStates() {
         return new ArrayList<>(nextStates);
     }
 
+    /** Только для чтения: живое представление следующих состояний (без копирования). */
+    public List<State> nextStatesView() {
+        return nextStatesView;
+    }
+
+    /** Количество следующих состояний. */
+    public int getNextStateCount() {
+        return nextStates.size();
+    }
+
+    /** Следующее состояние по индексу. */
+    public State getNextState(int index) {
+        return nextStates.get(index);
+    }
+
+    /** Вес (ненормализованный) перехода по индексу. */
+    public double getNextStateWeight(int index) {
+        if (index < 0 || index >= nextStates.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + nextStates.size() + " next states");
+        }
+        Transitions t = table;
+        return t != null ? t.weights[index] : weights[index];
+    }
+
     public Set<String> getAlgorithmNames() {
         return algorithms.keySet();
     }
 
-    public State selectNextState(double u) {
-        if (nextStates.isEmpty()) return this;
-        double[] probs = normalisedProbabilitiesOrUniform();
+    /** Только для чтения: команды алгоритма или null, если алгоритма нет. */
+    public List<Command> getAlgorithm(String algorithmName) {
+        List<Command> commands = algorithms.get(algorithmName);
+        return commands != null ? Collections.unmodifiableList(commands) : null;
+    }
 
-        double cumulative = 0.0;
-        for (int i = 0; i < nextStates.size(); i++) {
-            cumulative += probs[i];
-            if (u <= cumulative) return nextStates.get(i);
+    public State selectNextState(double u) {
+        Transitions t = table;
+        if (t == null) {
+            int n = nextStates.size();
+            if (n == 0) return this;
+            if (++uncachedSamples == 1) {
+                // Первая выборка после изменения: возможно, переходы снова изменятся до следующей
+                return nextStates.get(sampleIndexDirect(weights, n, u));
+            }
+            TABLE.compareAndSet(this, null, buildTable(weights));
+            t = table;
+            if (t == null) return nextStates.get(sampleIndexDirect(weights, n, u));
         }
-        return nextStates.get(nextStates.size() - 1);
+        State[] targets = t.targets;
+        if (targets.length == 0) return this;
+        return targets[TransitionDistribution.sampleIndex(t.cumulative, targets.length, u)];
     }
 
     public State selectNextState(automaton.random.RandomProvider provider) {
@@ -135,17 +363,32 @@ public class State {
         return probabilities;
     }
 
+    /** Неизменяемая таблица выборки: цели, веса и накопленные вероятности. */
+    private static final class Transitions {
+        final State[] targets;
+        final double[] weights;
+        final double[] cumulative;
+
+        Transitions(State[] targets, double[] weights, double[] cumulative) {
+            this.targets = targets;
+            this.weights = weights;
+            this.cumulative = cumulative;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         State state = (State) obj;
-        return Objects.equals(name, state.name);
+        // Внутри одной модели — сравнение по id; иначе — по имени, как раньше
+        if (registry != null && registry == state.registry) return id == state.id;
+        return nameHash == state.nameHash && Objects.equals(name, state.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name);
+        return nameHash;
     }
 
     @Override
@@ -153,4 +396,3 @@ public class State {
         return name + (isFinal ? " (final)" : "");
     }
 }
-
@@ -0,0 +1,155 @@
+package automaton.state;
+
+import automaton.commands.AddExistingStateWithProbabilityCommand;
+import automaton.commands.AddOverlayTransitionCommand;
+import automaton.commands.Command;
+import automaton.commands.TransitionTemplateCommand;
+import automaton.probability.TransitionDistribution;
+
+import java.util.*;
+
+/**
+ * Реестр состояний модели: выдаёт каждому состоянию плотный целочисленный id (0, 1, 2, ...).
+ *
+ * Внутри одного реестра состояния сравниваются и ищутся по id, а не по имени,
+ * а id можно использовать как индекс массивов — для статистики, аналитики
+ * и скомпилированных таблиц переходов.
+ *
+ * Если регистрируется другой объект с уже известным именем, он получает тот же id
+ * (так сохраняется прежняя семантика «состояния равны, если равны имена»),
+ * а каноническим остаётся первый зарегистрированный объект.
+ *
+ * Регистрация — явный шаг построения модели, до начала шагов: её выполняет владелец модели
+ * ({@link automaton.config.JsonAutomatonLoader}, построитель хранилища сессий) или код,
+ * собравший граф вручную, через {@link #registerGraph(State)}. Автомат сам состояния
+ * не регистрирует. Состояния, добавленные в граф после регистрации, в реестр не попадают,
+ * пока их не зарегистрируют явно ({@link #registerReachable(State)}).
+ */
+public class StateRegistry {
+
+    private final List<State> states = new ArrayList<>();
+    private final Map<String, State> byName = new HashMap<>();
+
+    /**
+     * Регистрирует состояние и возвращает его id.
+     *
+     * @throws IllegalStateException если состояние уже принадлежит другому реестру
+     */
+    public synchronized int register(State state) {
+        Objects.requireNonNull(state, "state");
+        if (state.getRegistry() == this) {
+            return state.getId();
+        }
+        if (state.getRegistry() != null) {
+            throw new IllegalStateException("State " + state.getName() + " is already registered in another model");
+        }
+        State canonical = byName.get(state.getName());
+        int id;
+        if (canonical != null) {
+            id = canonical.getId();
+        } else {
+            id = states.size();
+            states.add(state);
+            byName.put(state.getName(), state);
+        }
+        state.assignId(this, id);
+        return id;
+    }
+
+    /**
+     * Регистрирует все состояния, достижимые из start: через уже заданные переходы
+     * и через команды алгоритмов, ссылающиеся на существующие состояния.
+     * Состояния из других реестров пропускаются.
+     *
+     * @return количество состояний в реестре после регистрации
+     */
+    public synchronized int registerReachable(State start) {
+        Deque<State> queue = new ArrayDeque<>();
+        Set<State> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        queue.add(start);
+        seen.add(start);
+        while (!queue.isEmpty()) {
+            State s = queue.poll();
+            if (s.getRegistry() != null && s.getRegistry() != this) continue;
+            register(s);
+            addSuccessors(s, seen, queue);
+        }
+        return states.size();
+    }
+
+    /** Общий замок регистрации графов: проверка «уже зарегистрирован?» и регистрация — одно действие. */
+    private static final Object GRAPH_LOCK = new Object();
+
+    /**
+     * Явный шаг построения модели для графа, собранного вручную: возвращает реестр root,
+     * а если root ещё не зарегистрирован — заводит новый реестр и регистрирует в нём root
+     * и все достижимые состояния, которые не принадлежат другой модели.
+     *
+     * Чужие состояния не переносятся и не мешают регистрации: переходы в них остаются
+     * вне реестра ({@link automaton.compiled.CompiledModel} помечает такие строки).
+     * Вызовы из разных потоков для одного графа дают один реестр.
+     */
+    public static StateRegistry registerGraph(State root) {
+        Objects.requireNonNull(root, "root");
+        StateRegistry registry = root.getRegistry();
+        if (registry != null) return registry;
+        synchronized (GRAPH_LOCK) {
+            registry = root.getRegistry();
+            if (registry != null) return registry;
+            registry = new StateRegistry();
+            registry.registerReachable(root);
+            return registry;
+        }
+    }
+
+    /** Добавляет в очередь ещё не встреченные цели переходов и команд алгоритмов состояния s. */
+    private static void addSuccessors(State s, Set<State> seen, Deque<State> queue) {
+        for (State next : s.nextStatesView()) {
+            if (seen.add(next)) queue.add(next);
+        }
+        for (String algorithm : s.getAlgorithmNames()) {
+            for (Command command : s.getAlgorithm(algorithm)) {
+                State next = null;
+                if (command instanceof AddExistingStateWithProbabilityCommand) {
+                    next = ((AddExistingStateWithProbabilityCommand) command).getTargetState();
+                } else if (command instanceof AddOverlayTransitionCommand) {
+                    next = ((AddOverlayTransitionCommand) command).getTargetState();
+                }
+                if (next != null && seen.add(next)) queue.add(next);
+                if (command instanceof TransitionTemplateCommand) {
+                    for (TransitionDistribution template : ((TransitionTemplateCommand) command).getTemplates()) {
+                        for (State target : template.getTargets()) {
+                            if (seen.add(target)) queue.add(target);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Количество различных состояний (максимальный id + 1). */
+    public synchronized int size() {
+        return states.size();
+    }
+
+    /** Каноническое состояние по id. */
+    public synchronized State get(int id) {
+        return states.get(id);
+    }
+
+    /** Состояние по имени или null. */
+    public synchronized State find(String name) {
+        return byName.get(name);
+    }
+
+    /** id состояния по имени или -1, если имя не зарегистрировано. */
+    public synchronized int idOf(String name) {
+        State s = byName.get(name);
+        return s != null ? s.getId() : -1;
+    }
+
+    /** Снимок канонических состояний в порядке id. */
+    public synchronized List<State> getStates() {
+        return Collections.unmodifiableList(new ArrayList<>(states));
+    }
+}
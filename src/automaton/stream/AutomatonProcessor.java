@@ -0,0 +1,337 @@
+package automaton.stream;
+
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.input.InputMessage;
+import automaton.output.OutputMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Адаптер автомата к реактивным потокам {@link java.util.concurrent.Flow}.
+ *
+ * Подписывается на издателя входных сообщений, маршрутизирует каждое сообщение
+ * в сессию (отдельный экземпляр автомата), выполняет один шаг и публикует
+ * выходные сообщения из outbox подписчику.
+ *
+ * Противодавление: новые входные сообщения запрашиваются у источника только тогда,
+ * когда у подписчика есть неудовлетворённый спрос, а буфер готовых выходных сообщений
+ * не заполнен. Медленный потребитель UI_CLICK/REPORT тормозит приём входа,
+ * а не раздувает outbox.
+ *
+ * Сессии живут в процессоре, пока их не закроют: {@link #closeSession(String)} удаляет
+ * завершённую сессию. Чтобы число сессий не росло без предела, задайте maxSessions —
+ * при превышении вытесняется сессия, дольше всех не получавшая сообщений; следующее
+ * сообщение с её ключом начнёт новую сессию. По умолчанию предела нет, и закрывать
+ * сессии должен вызывающий.
+ *
+ * Поддерживается ровно один подписчик.
+ */
+public class AutomatonProcessor implements Flow.Processor<InputMessage, OutputMessage> {
+
+    /** Размер буфера выходных сообщений по умолчанию. */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /** Сколько входных сообщений запрашивать у источника за раз по умолчанию. */
+    public static final int DEFAULT_PREFETCH = 16;
+
+    /** Предел числа сессий по умолчанию — без ограничения. */
+    public static final int UNBOUNDED_SESSIONS = Integer.MAX_VALUE;
+
+    private final String algorithmName;
+    private final Function<InputMessage, String> sessionKey;
+    private final Function<String, CoreProbabilisticAutomaton> sessionFactory;
+    private final int bufferSize;
+    private final int prefetch;
+    private final int maxSessions;
+
+    /** Сессии в порядке обращения (LRU); доступ под блокировкой самой карты. */
+    private final Map<String, CoreProbabilisticAutomaton> sessions;
+    private final AtomicLong evictedSessions = new AtomicLong();
+
+    /** Готовые к отправке выходные сообщения. */
+    private final Queue<OutputMessage> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /** Неудовлетворённый спрос подписчика (Long.MAX_VALUE — неограниченный). */
+    private final AtomicLong demand = new AtomicLong();
+
+    /** Запрошено у источника, но ещё не получено. */
+    private final AtomicLong upstreamOutstanding = new AtomicLong();
+
+    /** Счётчик для сериализации цикла отправки (work-in-progress). */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super OutputMessage> downstream;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    /**
+     * Создаёт процессор с параметрами буферизации по умолчанию.
+     *
+     * @param algorithmName  имя алгоритма, выполняемого на каждом шаге
+     * @param sessionKey     функция, определяющая сессию по входному сообщению
+     * @param sessionFactory создаёт автомат для новой сессии
+     */
+    public AutomatonProcessor(String algorithmName,
+                              Function<InputMessage, String> sessionKey,
+                              Function<String, CoreProbabilisticAutomaton> sessionFactory) {
+        this(algorithmName, sessionKey, sessionFactory, DEFAULT_BUFFER_SIZE, DEFAULT_PREFETCH, UNBOUNDED_SESSIONS);
+    }
+
+    /**
+     * @param bufferSize сколько выходных сообщений может ждать подписчика,
+     *                   прежде чем процессор перестанет запрашивать вход
+     *                   (один шаг может добавить несколько сообщений сверх лимита)
+     * @param prefetch   сколько входных сообщений запрашивать у источника за раз
+     */
+    public AutomatonProcessor(String algorithmName,
+                              Function<InputMessage, String> sessionKey,
+                              Function<String, CoreProbabilisticAutomaton> sessionFactory,
+                              int bufferSize,
+                              int prefetch) {
+        this(algorithmName, sessionKey, sessionFactory, bufferSize, prefetch, UNBOUNDED_SESSIONS);
+    }
+
+    /**
+     * @param maxSessions сколько сессий хранить одновременно; при превышении вытесняется
+     *                    сессия, дольше всех не получавшая сообщений
+     */
+    public AutomatonProcessor(String algorithmName,
+                              Function<InputMessage, String> sessionKey,
+                              Function<String, CoreProbabilisticAutomaton> sessionFactory,
+                              int bufferSize,
+                              int prefetch,
+                              int maxSessions) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        }
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+        }
+        this.algorithmName = Objects.requireNonNull(algorithmName, "algorithmName");
+        this.sessionKey = Objects.requireNonNull(sessionKey, "sessionKey");
+        this.sessionFactory = Objects.requireNonNull(sessionFactory, "sessionFactory");
+        this.bufferSize = bufferSize;
+        this.prefetch = prefetch;
+        this.maxSessions = maxSessions;
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CoreProbabilisticAutomaton> eldest) {
+                if (size() <= AutomatonProcessor.this.maxSessions) return false;
+                evictedSessions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    // ---- Подписчик входных сообщений ----
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription");
+        if (upstream != null || cancelled.get()) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(InputMessage item) {
+        if (done || cancelled.get()) return;
+        upstreamOutstanding.decrementAndGet();
+        try {
+            String key = sessionKey.apply(item);
+            CoreProbabilisticAutomaton session;
+            synchronized (sessions) {
+                session = sessions.computeIfAbsent(key, sessionFactory);
+            }
+            session.step(algorithmName, item);
+            session.drainOutbox(this::enqueue);
+        } catch (RuntimeException e) {
+            cancelUpstream();
+            onError(e);
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (done) return;
+        error = Objects.requireNonNull(throwable, "throwable");
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        if (done) return;
+        done = true;
+        drain();
+    }
+
+    // ---- Издатель выходных сообщений ----
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super OutputMessage> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("AutomatonProcessor supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new OutputSubscription());
+        downstream = subscriber;
+        drain();
+    }
+
+    /** Возвращает автомат сессии или null, если сессия не создавалась, закрыта или вытеснена. */
+    public CoreProbabilisticAutomaton getSession(String key) {
+        synchronized (sessions) {
+            return sessions.get(key);
+        }
+    }
+
+    /**
+     * Закрывает сессию: процессор забывает её автомат, следующее сообщение с этим ключом
+     * начнёт новую сессию. Возвращает закрытый автомат или null, если сессии не было.
+     */
+    public CoreProbabilisticAutomaton closeSession(String key) {
+        synchronized (sessions) {
+            return sessions.remove(key);
+        }
+    }
+
+    /** Количество активных сессий. */
+    public int getSessionCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    /** Сколько сессий вытеснено из-за предела maxSessions. */
+    public long getEvictedSessionCount() {
+        return evictedSessions.get();
+    }
+
+    /** Количество выходных сообщений, ожидающих спроса подписчика. */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    private final class OutputSubscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // Правило 3.9 спецификации Reactive Streams: завершаем поток ошибкой
+                cancelUpstream();
+                pending.clear();
+                pendingCount.set(0);
+                error = new IllegalArgumentException("non-positive request: " + n);
+                done = true;
+                drain();
+                return;
+            }
+            addDemand(n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                cancelUpstream();
+            }
+        }
+    }
+
+    private void enqueue(OutputMessage out) {
+        pending.offer(out);
+        pendingCount.incrementAndGet();
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription s = upstream;
+        if (s != null) s.cancel();
+    }
+
+    private void addDemand(long n) {
+        for (;;) {
+            long current = demand.get();
+            if (current == Long.MAX_VALUE) return;
+            long next = current + n;
+            if (next < 0) next = Long.MAX_VALUE;
+            if (demand.compareAndSet(current, next)) return;
+        }
+    }
+
+    /**
+     * Цикл отправки: отдаёт подписчику столько сообщений, сколько он запросил,
+     * завершает поток после исчерпания буфера и дозапрашивает вход у источника.
+     * Одновременно выполняется не более чем в одном потоке.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        for (;;) {
+            Flow.Subscriber<? super OutputMessage> s = downstream;
+            if (s != null && !cancelled.get()) {
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested && !cancelled.get()) {
+                    OutputMessage out = pending.poll();
+                    if (out == null) break;
+                    pendingCount.decrementAndGet();
+                    s.onNext(out);
+                    emitted++;
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+
+                if (done && pending.isEmpty() && !cancelled.get()) {
+                    cancelled.set(true);
+                    Throwable e = error;
+                    if (e != null) s.onError(e);
+                    else s.onComplete();
+                    return;
+                }
+
+                requestUpstreamIfNeeded();
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) return;
+        }
+    }
+
+    private void requestUpstreamIfNeeded() {
+        Flow.Subscription s = upstream;
+        if (s == null || done) return;
+        if (demand.get() == 0) return;
+        if (pendingCount.get() >= bufferSize) return;
+        if (upstreamOutstanding.get() > 0) return;
+        upstreamOutstanding.addAndGet(prefetch);
+        s.request(prefetch);
+    }
+}
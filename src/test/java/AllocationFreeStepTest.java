@@ -0,0 +1,231 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.Command;
+import automaton.context.Context;
+import automaton.core.AutomatonLog;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.core.StepResult;
+import automaton.input.InputMessage;
+import automaton.input.SimpleInputMessage;
+import automaton.output.OutputMessage;
+import automaton.output.SimpleOutputMessage;
+import automaton.probability.HistoryProbabilityProvider;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Проверяет, что установившийся шаг автомата не выделяет память:
+ * ни при статических переходах, ни при пересборке переходов
+ * (clear + add + probabilistic / history-based).
+ */
+public class AllocationFreeStepTest {
+
+    /** Детерминированный ГСЧ без выделения памяти (линейный конгруэнтный генератор). */
+    static class LcgRandomProvider implements RandomProvider {
+        private long seed = 42;
+        @Override public double nextUnit() {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return (seed >>> 11) * 0x1.0p-53;
+        }
+    }
+
+    /** Провайдер истории, переиспользующий буфер весов. */
+    static class ReusingHistoryProvider implements HistoryProbabilityProvider {
+        private double[] buffer = new double[0];
+        @Override
+        public double[] computeProbabilities(List<State> history, InputMessage input, List<State> nextStates) {
+            if (buffer.length != nextStates.size()) buffer = new double[nextStates.size()];
+            State prev = history.size() >= 2 ? history.get(history.size() - 2) : null;
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = nextStates.get(i) == prev ? 0.2 : 1.0;
+            }
+            return buffer;
+        }
+    }
+
+    private static CoreProbabilisticAutomaton build() {
+        RandomProvider rnd = new LcgRandomProvider();
+        State a = new State("A", false);
+        State b = new State("B", false);
+        State c = new State("C", false);
+
+        // A: статические переходы, собранные один раз
+        a.addNextState(b, 0.7);
+        a.addNextState(c, 0.3);
+        a.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .probabilisticTransition(rnd)
+                .build());
+
+        // B: динамическая пересборка переходов на каждом шаге
+        b.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .clearNextStates()
+                .addExistingState(a, false, 2.0)
+                .addExistingState(c, false, 1.0)
+                .probabilisticTransition(rnd)
+                .build());
+
+        // C: переход на основе истории
+        c.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .clearNextStates()
+                .addExistingState(a, false, 1.0)
+                .addExistingState(b, false, 1.0)
+                .historyBasedTransition(new ReusingHistoryProvider(), rnd)
+                .build());
+
+        return new CoreProbabilisticAutomaton(a);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Прогревает шаг, затем несколько раз измеряет выделенную память на серии шагов
+     * и возвращает минимум (разовые всплески от JIT-деоптимизации не считаются).
+     */
+    private static long measureAllocatedBytes(Runnable step, int warmup, int measured) {
+        for (int i = 0; i < warmup; i++) step.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            // Погрешность самого измерения
+            long overhead = -allocatedBytes() + allocatedBytes();
+            long before = allocatedBytes();
+            for (int i = 0; i < measured; i++) step.run();
+            best = Math.min(best, allocatedBytes() - before - overhead);
+        }
+        return best;
+    }
+
+    @Test
+    void steadyStateStepAllocatesNothing() {
+        boolean logWas = AutomatonLog.isEnabled();
+        AutomatonLog.setEnabled(false);
+        try {
+            int warmup = 50_000;
+            int measured = 20_000;
+            CoreProbabilisticAutomaton automaton = build();
+            automaton.ensureHistoryCapacity(warmup + 3 * measured + 1);
+
+            StepResult result = new StepResult();
+            InputMessage msg = SimpleInputMessage.of("tick");
+            long[] drained = {0};
+            Consumer<OutputMessage> sink = m -> drained[0]++;
+            Runnable step = () -> {
+                automaton.step("tick", msg, result);
+                automaton.drainOutbox(sink);
+            };
+
+            long allocated = measureAllocatedBytes(step, warmup, measured);
+
+            Assertions.assertTrue(allocated <= 0,
+                    "steady-state step allocated " + allocated + " bytes over " + measured + " steps");
+            Assertions.assertEquals(warmup + 3 * measured + 1, result.getHistorySize());
+        } finally {
+            AutomatonLog.setEnabled(logWas);
+        }
+    }
+
+    @Test
+    void emittingStepDrainsWithoutCopy() {
+        // Сообщения создаёт сама команда; движок и outbox поверх этого ничего не выделяют
+        State a = new State("A", false);
+        OutputMessage click = new SimpleOutputMessage("UI_CLICK", Map.of());
+        a.addAlgorithm("tick", List.of(new Command() {
+            @Override public void execute(Context context, State currentState) {
+                context.emit(click);
+            }
+            @Override public String getName() { return "emit"; }
+        }));
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a, 4);
+        boolean logWas = AutomatonLog.isEnabled();
+        AutomatonLog.setEnabled(false);
+        try {
+            StepResult result = new StepResult();
+            int[] count = {0};
+            Consumer<OutputMessage> sink = m -> count[0]++;
+            Runnable step = () -> {
+                automaton.step("tick", null, result);
+                automaton.drainOutbox(sink);
+            };
+
+            long allocated = measureAllocatedBytes(step, 50_000, 20_000);
+
+            Assertions.assertTrue(allocated <= 0, "emitting step allocated " + allocated + " bytes");
+            Assertions.assertEquals(110_000, count[0]);
+        } finally {
+            AutomatonLog.setEnabled(logWas);
+        }
+    }
+
+    @Test
+    void handleDispatchAndRandomSelectionAllocateNothing() {
+        RandomProvider rnd = new LcgRandomProvider();
+        State a = new State("A", false);
+        State b = new State("B", false);
+        a.addNextState(b, 1.0);
+        b.addNextState(a, 1.0);
+        for (State s : List.of(a, b)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").probabilisticTransition(rnd).build());
+            s.addAlgorithm("tock", new AlgorithmBuilder("tock").transitionToFirst().build());
+        }
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+        int tick = CoreProbabilisticAutomaton.resolveAlgorithm("tick");
+        Assertions.assertEquals(tick, CoreProbabilisticAutomaton.resolveAlgorithm("tick"));
+        Assertions.assertTrue(a.hasAlgorithm(tick));
+        Assertions.assertEquals(2, a.getAlgorithmCount());
+
+        boolean logWas = AutomatonLog.isEnabled();
+        AutomatonLog.setEnabled(false);
+        try {
+            automaton.ensureHistoryCapacity(200_001);
+            StepResult result = new StepResult();
+            Runnable step = () -> {
+                automaton.step(tick, null, result);
+                // Неизвестное имя: алгоритм выбирается случайно среди handle состояния
+                automaton.processInput("unknown");
+            };
+
+            long allocated = measureAllocatedBytes(step, 50_000, 15_000);
+
+            Assertions.assertTrue(allocated <= 0, "handle dispatch allocated " + allocated + " bytes");
+            Assertions.assertEquals(95_000, automaton.getStepCount());
+        } finally {
+            AutomatonLog.setEnabled(logWas);
+        }
+
+        // Удалённый алгоритм больше не выбирается
+        a.removeAlgorithm("tock");
+        Assertions.assertEquals(1, a.getAlgorithmCount());
+        Assertions.assertEquals(tick, a.getAlgorithmHandle(0));
+        Assertions.assertNull(a.getAlgorithm("tock"));
+    }
+
+    @Test
+    void directAndTabulatedSelectionAgree() {
+        State from = new State("FROM", false);
+        State[] to = new State[5];
+        double[] weights = {0.1, 0.0, 2.5, 1.0, 0.4};
+        for (int i = 0; i < to.length; i++) {
+            to[i] = new State("T" + i, false);
+            from.addNextState(to[i], weights[i]);
+        }
+        // Первая выборка после изменения идёт прямым проходом, следующие — по таблице
+        for (int k = 0; k <= 1000; k++) {
+            double u = k / 1000.0;
+            State direct = from.selectNextState(u);
+            from.clearNextStates();
+            for (int i = 0; i < to.length; i++) from.addNextState(to[i], weights[i]);
+            from.selectNextState(0.5);
+            Assertions.assertSame(direct, from.selectNextState(u), "u=" + u);
+            from.clearNextStates();
+            for (int i = 0; i < to.length; i++) from.addNextState(to[i], weights[i]);
+        }
+    }
+}
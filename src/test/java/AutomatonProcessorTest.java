@@ -0,0 +1,195 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.Command;
+import automaton.context.Context;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.input.InputMessage;
+import automaton.input.SimpleInputMessage;
+import automaton.output.OutputMessage;
+import automaton.output.SimpleOutputMessage;
+import automaton.state.State;
+import automaton.stream.AutomatonProcessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.Flow;
+
+/**
+ * Тесты реактивного адаптера: маршрутизация по сессиям и противодавление.
+ */
+public class AutomatonProcessorTest {
+
+    /** Синхронный источник: отдаёт сообщения только по запросу и считает выданные. */
+    static class ListPublisher implements Flow.Publisher<InputMessage> {
+        private final List<InputMessage> items;
+        int delivered = 0;
+        boolean completed = false;
+
+        ListPublisher(List<InputMessage> items) { this.items = items; }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super InputMessage> s) {
+            s.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) {
+                    for (long k = 0; k < n && delivered < items.size(); k++) {
+                        s.onNext(items.get(delivered++));
+                    }
+                    if (delivered == items.size() && !completed) {
+                        completed = true;
+                        s.onComplete();
+                    }
+                }
+                @Override public void cancel() { }
+            });
+        }
+    }
+
+    /** Подписчик, который запрашивает сообщения только вручную. */
+    static class ManualSubscriber implements Flow.Subscriber<OutputMessage> {
+        Flow.Subscription subscription;
+        final List<OutputMessage> received = new ArrayList<>();
+        boolean completed = false;
+        Throwable error;
+
+        @Override public void onSubscribe(Flow.Subscription s) { this.subscription = s; }
+        @Override public void onNext(OutputMessage item) { received.add(item); }
+        @Override public void onError(Throwable t) { error = t; }
+        @Override public void onComplete() { completed = true; }
+    }
+
+    /** Отправляет UI_CLICK с именем сессии из входного сообщения. */
+    static class ClickCommand implements Command {
+        @Override public void execute(Context context, State currentState) {
+            Map<String, Object> attrs = new HashMap<>();
+            attrs.put("session", context.getInputMessage().getAttributes().get("session"));
+            attrs.put("state", currentState.getName());
+            context.emit(new SimpleOutputMessage("UI_CLICK", attrs));
+        }
+        @Override public String getName() { return "click"; }
+    }
+
+    private static CoreProbabilisticAutomaton newSession(String key) {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        a.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .addCommand(new ClickCommand())
+                .clearNextStates()
+                .addExistingState(b, false, 1.0)
+                .probabilisticTransition()
+                .build());
+        b.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .addCommand(new ClickCommand())
+                .clearNextStates()
+                .addExistingState(a, false, 1.0)
+                .probabilisticTransition()
+                .build());
+        return new CoreProbabilisticAutomaton(a);
+    }
+
+    private static InputMessage msg(String session) {
+        return new SimpleInputMessage("tick", Map.of("session", session));
+    }
+
+    private static AutomatonProcessor newProcessor(int bufferSize, int prefetch) {
+        return new AutomatonProcessor("tick",
+                m -> (String) m.getAttributes().get("session"),
+                AutomatonProcessorTest::newSession,
+                bufferSize, prefetch);
+    }
+
+    @Test
+    void routesMessagesToSessions() {
+        ListPublisher source = new ListPublisher(List.of(msg("s1"), msg("s2"), msg("s1")));
+        AutomatonProcessor processor = newProcessor(8, 4);
+        ManualSubscriber sink = new ManualSubscriber();
+
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.subscription.request(Long.MAX_VALUE);
+
+        Assertions.assertEquals(3, sink.received.size());
+        Assertions.assertTrue(sink.completed);
+        Assertions.assertEquals(2, processor.getSessionCount());
+        // s1 сделал два шага (A -> B -> A), s2 — один
+        Assertions.assertEquals("A", processor.getSession("s1").getCurrentStateName());
+        Assertions.assertEquals("B", processor.getSession("s2").getCurrentStateName());
+        Assertions.assertEquals("B", sink.received.get(2).getAttributes().get("state"));
+    }
+
+    @Test
+    void slowSubscriberThrottlesIntake() {
+        List<InputMessage> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) items.add(msg("s" + (i % 3)));
+        ListPublisher source = new ListPublisher(items);
+        AutomatonProcessor processor = newProcessor(2, 2);
+        ManualSubscriber sink = new ManualSubscriber();
+
+        processor.subscribe(sink);
+        source.subscribe(processor);
+
+        // Без спроса подписчика вход не запрашивается
+        Assertions.assertEquals(0, source.delivered);
+
+        sink.subscription.request(1);
+        Assertions.assertEquals(1, sink.received.size());
+        Assertions.assertTrue(source.delivered <= 2, "intake must be bounded by prefetch");
+        Assertions.assertTrue(processor.getPendingCount() <= 2, "buffer must stay bounded");
+
+        sink.subscription.request(10);
+        Assertions.assertEquals(11, sink.received.size());
+        Assertions.assertTrue(source.delivered <= 12);
+        Assertions.assertFalse(sink.completed);
+
+        sink.subscription.request(Long.MAX_VALUE);
+        Assertions.assertEquals(100, sink.received.size());
+        Assertions.assertTrue(sink.completed);
+    }
+
+    @Test
+    void nonPositiveRequestSignalsError() {
+        ListPublisher source = new ListPublisher(List.of(msg("s1")));
+        AutomatonProcessor processor = newProcessor(8, 4);
+        ManualSubscriber sink = new ManualSubscriber();
+
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.subscription.request(0);
+
+        Assertions.assertTrue(sink.error instanceof IllegalArgumentException);
+        Assertions.assertEquals(0, sink.received.size());
+    }
+
+    @Test
+    void sessionsAreBoundedAndCanBeClosed() {
+        List<InputMessage> items = new ArrayList<>();
+        for (String key : List.of("s1", "s2", "s1", "s3", "s4")) items.add(msg(key));
+        ListPublisher source = new ListPublisher(items);
+        AutomatonProcessor processor = new AutomatonProcessor("tick",
+                m -> (String) m.getAttributes().get("session"),
+                AutomatonProcessorTest::newSession,
+                8, 4, 2);
+        ManualSubscriber sink = new ManualSubscriber();
+
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.subscription.request(Long.MAX_VALUE);
+
+        // s1 получал сообщение позже s2, поэтому первыми вытеснены s2, затем s1
+        Assertions.assertEquals(5, sink.received.size());
+        Assertions.assertEquals(2, processor.getSessionCount());
+        Assertions.assertEquals(2, processor.getEvictedSessionCount());
+        Assertions.assertNull(processor.getSession("s1"));
+        Assertions.assertNull(processor.getSession("s2"));
+
+        CoreProbabilisticAutomaton closed = processor.closeSession("s3");
+        Assertions.assertNotNull(closed);
+        Assertions.assertNull(processor.getSession("s3"));
+        Assertions.assertNull(processor.closeSession("s3"));
+        Assertions.assertEquals(1, processor.getSessionCount());
+        Assertions.assertEquals(2, processor.getEvictedSessionCount());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AutomatonProcessor("tick",
+                m -> "s", AutomatonProcessorTest::newSession, 8, 4, 0));
+    }
+}
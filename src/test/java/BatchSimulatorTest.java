@@ -0,0 +1,73 @@
+import automaton.compiled.CompiledModel;
+import automaton.simulation.BatchSimulator;
+import automaton.simulation.SimulationReport;
+import automaton.simulation.StoppingRule;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Серии прогонов с остановкой по достигнутой точности.
+ */
+public class BatchSimulatorTest {
+
+    /**
+     * START -> {OK:0.5, RETRY:0.3, FAIL:0.2}, RETRY -> {START:0.9, RARE:0.001, STUCK:0.099};
+     * OK, FAIL, RARE конечные, STUCK — тупик.
+     */
+    private static CompiledModel model() {
+        return CompiledModel.of(null,
+                new String[]{"START", "RETRY", "OK", "FAIL", "RARE", "STUCK"},
+                new boolean[]{false, false, true, true, true, false},
+                new int[]{0, 3, 6, 6, 6, 6, 6},
+                new int[]{2, 1, 3, 0, 4, 5},
+                new double[]{0.5, 0.3, 0.2, 0.9, 0.001, 0.099});
+    }
+
+    @Test
+    void stopsAsSoonAsHalfWidthIsReached() {
+        CompiledModel model = model();
+        StoppingRule rule = StoppingRule.builder().halfWidth(0.01).batchSize(500).build();
+        SimulationReport report = new BatchSimulator(model, 1_000, 2).simulate(0, rule, 11L);
+
+        Assertions.assertTrue(report.isTargetMet(), report.toString());
+        // Для частоты около 0.55 нужно ~9 500 прогонов; больше пары лишних пакетов не делаем
+        Assertions.assertTrue(report.getRuns() >= 8_000 && report.getRuns() <= 12_000, report.toString());
+        for (int s : new int[]{2, 3, 4}) {
+            Assertions.assertTrue(report.getHalfWidth(s) <= 0.01, report.toString());
+        }
+        // Точная вероятность OK: 0.5 / (1 - 0.3 * 0.9)
+        Assertions.assertEquals(0.5 / 0.73, report.getFrequency(2), 3 * report.getHalfWidth(2));
+        Assertions.assertTrue(report.getCount(5) > 0, "dead end STUCK is an outcome");
+        long total = 0;
+        for (int s = 0; s < 6; s++) total += report.getCount(s);
+        Assertions.assertEquals(report.getRuns(), total + report.getUnfinishedCount());
+    }
+
+    @Test
+    void unreachableRelativeErrorStopsAtMaxRuns() {
+        CompiledModel model = model();
+        StoppingRule rule = StoppingRule.builder().relativeError(0.01).track(4).maxRuns(20_000).build();
+        SimulationReport report = new BatchSimulator(model, 1_000, 3).simulate(0, rule, 5L);
+
+        Assertions.assertFalse(report.isTargetMet());
+        Assertions.assertEquals(20_000, report.getRuns());
+        Assertions.assertTrue(report.getRelativeError(4) > 0.01);
+    }
+
+    @Test
+    void fixedRunsAreReproducibleAcrossThreadCounts() {
+        CompiledModel model = model();
+        StoppingRule rule = StoppingRule.builder().minRuns(10_001).maxRuns(10_001).batchSize(256).build();
+        SimulationReport one = new BatchSimulator(model, 3, 1).simulate(0, rule, 99L);
+        SimulationReport four = new BatchSimulator(model, 3, 4).simulate(0, rule, 99L);
+
+        Assertions.assertEquals(10_001, one.getRuns());
+        for (int s = 0; s < model.getStateCount(); s++) {
+            Assertions.assertEquals(one.getCount(s), four.getCount(s), model.getStateName(s));
+        }
+        // Лимит 3 шага: часть прогонов через RETRY -> START обрезается
+        Assertions.assertTrue(one.getUnfinishedCount() > 0);
+        Assertions.assertEquals(one.getUnfinishedCount(), four.getUnfinishedCount());
+    }
+}
@@ -0,0 +1,143 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.input.InputMessage;
+import automaton.input.SimpleInputMessage;
+import automaton.probability.CachingHistoryProbabilityProvider;
+import automaton.probability.HistoryProbabilityProvider;
+import automaton.probability.TransitionDistribution;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Кэширующий декоратор провайдера вероятностей на основе истории.
+ */
+public class CachingHistoryProbabilityProviderTest {
+
+    static class SequenceRandomProvider implements RandomProvider {
+        private final double[] seq;
+        private int i = 0;
+        SequenceRandomProvider(double... seq) { this.seq = seq; }
+        @Override public double nextUnit() {
+            double v = seq[i % seq.length];
+            i++;
+            return v;
+        }
+    }
+
+    /** Предпочитает кандидата, совпадающего с предпоследним состоянием; считает вызовы. */
+    static class CountingProvider implements HistoryProbabilityProvider {
+        int calls;
+        @Override
+        public double[] computeProbabilities(List<State> history, InputMessage input, List<State> nextStates) {
+            calls++;
+            State prev = history.size() >= 2 ? history.get(history.size() - 2) : null;
+            boolean urgent = input != null && "urgent".equals(input.getRaw());
+            double[] w = new double[nextStates.size()];
+            for (int i = 0; i < w.length; i++) {
+                w[i] = nextStates.get(i).equals(prev) ? 3.0 : 1.0;
+                if (urgent && i == 0) w[i] += 4.0;
+            }
+            return w;
+        }
+    }
+
+    private final State a = new State("A", false);
+    private final State b = new State("B", false);
+    private final State c = new State("C", false);
+
+    @Test
+    void repeatedWindowIsServedFromCache() {
+        CountingProvider delegate = new CountingProvider();
+        CachingHistoryProbabilityProvider cache = new CachingHistoryProbabilityProvider(delegate, 2);
+
+        List<State> candidates = List.of(b, c);
+        TransitionDistribution first = cache.samplerFor(List.of(c, a), null, candidates);
+        // Другая, более длинная история с тем же окном из двух последних состояний
+        TransitionDistribution second = cache.samplerFor(List.of(b, b, c, a), null, candidates);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, delegate.calls);
+        Assertions.assertEquals(1, cache.getHitCount());
+        Assertions.assertEquals(1, cache.getMissCount());
+        Assertions.assertEquals(0.5, cache.getHitRate(), 1e-12);
+        Assertions.assertEquals(0.25, first.getProbability(0), 1e-12);
+        Assertions.assertEquals(0.75, first.getProbability(1), 1e-12);
+
+        // Другое окно или другие кандидаты — промах
+        cache.samplerFor(List.of(b, a), null, candidates);
+        cache.samplerFor(List.of(c, a), null, List.of(c, b));
+        Assertions.assertEquals(3, delegate.calls);
+        Assertions.assertEquals(3, cache.size());
+    }
+
+    @Test
+    void inputFeatureIsPartOfKey() {
+        CountingProvider delegate = new CountingProvider();
+        CachingHistoryProbabilityProvider cache = new CachingHistoryProbabilityProvider(
+                delegate, 1, input -> input != null ? input.getRaw() : null);
+
+        List<State> history = List.of(a);
+        List<State> candidates = List.of(b, c);
+        TransitionDistribution normal = cache.samplerFor(history, SimpleInputMessage.of("normal"), candidates);
+        TransitionDistribution urgent = cache.samplerFor(history, SimpleInputMessage.of("urgent"), candidates);
+        TransitionDistribution urgentAgain = cache.samplerFor(history, SimpleInputMessage.of("urgent"), candidates);
+
+        Assertions.assertNotSame(normal, urgent);
+        Assertions.assertSame(urgent, urgentAgain);
+        Assertions.assertEquals(2, delegate.calls);
+        Assertions.assertEquals(5.0 / 6.0, urgent.getProbability(0), 1e-12);
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        CountingProvider delegate = new CountingProvider();
+        CachingHistoryProbabilityProvider cache = new CachingHistoryProbabilityProvider(delegate, 1, null, 2);
+        List<State> candidates = List.of(a, b, c);
+
+        cache.samplerFor(List.of(a), null, candidates);
+        cache.samplerFor(List.of(b), null, candidates);
+        cache.samplerFor(List.of(a), null, candidates); // A снова свежий
+        cache.samplerFor(List.of(c), null, candidates); // вытесняет B
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        cache.samplerFor(List.of(a), null, candidates);
+        Assertions.assertEquals(3, delegate.calls);
+        cache.samplerFor(List.of(b), null, candidates);
+        Assertions.assertEquals(4, delegate.calls);
+    }
+
+    @Test
+    void historyBasedTransitionUsesCachedSampler() {
+        CountingProvider delegate = new CountingProvider();
+        CachingHistoryProbabilityProvider cache = new CachingHistoryProbabilityProvider(delegate, 2);
+        RandomProvider rnd = new SequenceRandomProvider(0.2, 0.8);
+
+        // A -> {B, C}, B -> A, C -> A
+        a.addNextState(b, 1.0);
+        a.addNextState(c, 1.0);
+        b.addNextState(a, 1.0);
+        c.addNextState(a, 1.0);
+        for (State s : List.of(a, b, c)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").historyBasedTransition(cache, rnd).build());
+        }
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+
+        // Из A после B: веса {B:3, C:1}; u=0.2 -> B, u=0.8 -> C
+        automaton.step("tick", null); // A -> B (история [A]: веса {1,1}, u=0.2)
+        automaton.step("tick", null); // B -> A
+        automaton.step("tick", null); // A -> B (окно [B, A], u=0.2)
+        Assertions.assertEquals("B", automaton.getCurrentStateName());
+        automaton.step("tick", null); // B -> A
+        automaton.step("tick", null); // A, окно [B, A] уже в кэше, u=0.2 -> B
+        Assertions.assertEquals("B", automaton.getCurrentStateName());
+
+        Assertions.assertTrue(cache.getHitCount() >= 2, cache.toString());
+        Assertions.assertEquals(cache.getMissCount(), delegate.calls);
+    }
+}
@@ -0,0 +1,57 @@
+import automaton.context.Context;
+import automaton.context.MemoryKey;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+/**
+ * Тесты рабочей памяти контекста: строковые ключи и типизированные слоты.
+ */
+public class ContextMemoryTest {
+
+    static final MemoryKey<Long> SCAN_COUNT = MemoryKey.ofLong("test.scanCount");
+    static final MemoryKey<Double> SCORE = MemoryKey.ofDouble("test.score");
+    static final MemoryKey<String> TARGET = MemoryKey.of("test.target", String.class);
+
+    @Test
+    void typedSlotsAreIndependentFromStringMemoryAndClearedOnReset() {
+        State start = new State("START", false);
+        Context context = new Context(start);
+
+        context.put("scanCount", 7);
+        Assertions.assertEquals(0L, context.getLong(SCAN_COUNT));
+
+        Assertions.assertEquals(1L, context.addLong(SCAN_COUNT, 1));
+        Assertions.assertEquals(3L, context.addLong(SCAN_COUNT, 2));
+        context.putDouble(SCORE, 0.25);
+        context.put(TARGET, "button#ok");
+
+        Assertions.assertEquals(3L, context.getLong(SCAN_COUNT));
+        Assertions.assertEquals(0.25, context.getDouble(SCORE), 0.0);
+        Assertions.assertEquals("button#ok", context.get(TARGET));
+        Assertions.assertEquals(Map.of("scanCount", 7), context.memoryView());
+
+        context.reset(start);
+        Assertions.assertEquals(0L, context.getLong(SCAN_COUNT));
+        Assertions.assertEquals(0.0, context.getDouble(SCORE), 0.0);
+        Assertions.assertNull(context.get(TARGET));
+        Assertions.assertTrue(context.memoryView().isEmpty());
+    }
+
+    @Test
+    void keysAreResolvedOncePerNameAndKind() {
+        Assertions.assertSame(SCAN_COUNT, MemoryKey.ofLong("test.scanCount"));
+        Assertions.assertNotSame(SCAN_COUNT, MemoryKey.ofDouble("test.scanCount"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> MemoryKey.of("test.target", Integer.class));
+
+        // Ключ, объявленный после создания контекста, тоже работает
+        Context context = new Context(new State("A", false));
+        MemoryKey<Long> late = MemoryKey.ofLong("test.lateCounter");
+        context.putLong(late, 42);
+        Assertions.assertEquals(42L, context.getLong(late));
+    }
+}
@@ -0,0 +1,76 @@
+import automaton.analysis.DistributionPropagator;
+import automaton.compiled.CompiledModel;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Распространение распределения по состояниям на k шагов.
+ */
+public class DistributionPropagatorTest {
+
+    /**
+     * START -> {SCAN:0.5, WAIT:0.5}, WAIT -> SCAN, SCAN -> {SCAN:0.5, REPORT:0.25, STUCK:0.25};
+     * REPORT конечное, STUCK — тупик.
+     */
+    private static CompiledModel model() {
+        return CompiledModel.of(null,
+                new String[]{"START", "WAIT", "SCAN", "REPORT", "STUCK"},
+                new boolean[]{false, false, false, true, false},
+                new int[]{0, 2, 3, 6, 6, 6},
+                new int[]{2, 1, 2, 2, 3, 4},
+                new double[]{1, 1, 1, 2, 1, 1});
+    }
+
+    @Test
+    void exactDistributionWithAbsorbingStates() {
+        DistributionPropagator propagator = new DistributionPropagator(model(), false);
+
+        Assertions.assertArrayEquals(new double[]{1, 0, 0, 0, 0}, propagator.propagate(0, 0), 0.0);
+        Assertions.assertArrayEquals(new double[]{0, 0.5, 0.5, 0, 0}, propagator.propagate(0, 1), 1e-15);
+        // Шаг 2: SCAN = 0.5 (из WAIT) + 0.25 (петля), REPORT = STUCK = 0.125
+        double[] two = propagator.propagate(0, 2);
+        Assertions.assertArrayEquals(new double[]{0, 0, 0.75, 0.125, 0.125}, two, 1e-15);
+        Assertions.assertEquals(0.125, propagator.finalMass(two), 1e-15);
+
+        // Масса сохраняется, в пределе делится поровну между REPORT и тупиком STUCK
+        double[] far = propagator.propagate(0, 200);
+        double total = 0;
+        for (double p : far) total += p;
+        Assertions.assertEquals(1.0, total, 1e-12);
+        Assertions.assertEquals(0.5, far[3], 1e-12);
+        Assertions.assertEquals(0.5, far[4], 1e-12);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> propagator.propagate(new double[2], 1));
+    }
+
+    @Test
+    void parallelBlocksMatchSequentialOnLargeModel() {
+        // Кольцо из 100 000 состояний с прыжками: s -> {s+1, s+7, s*3 mod n}
+        int n = 100_000;
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[3 * n];
+        double[] weights = new double[3 * n];
+        for (int s = 0; s < n; s++) {
+            names[s] = "S" + s;
+            finals[s] = s % 1000 == 999;
+            offsets[s + 1] = 3 * (s + 1);
+            targets[3 * s] = (s + 1) % n;
+            targets[3 * s + 1] = (s + 7) % n;
+            targets[3 * s + 2] = (int) ((3L * s) % n);
+            weights[3 * s] = 2;
+            weights[3 * s + 1] = 1;
+            weights[3 * s + 2] = 1;
+        }
+        CompiledModel model = CompiledModel.of(null, names, finals, offsets, targets, weights);
+
+        double[] sequential = new DistributionPropagator(model, false).propagate(1, 50);
+        double[] parallel = new DistributionPropagator(model, true).propagate(1, 50);
+        Assertions.assertArrayEquals(sequential, parallel, 0.0);
+        double total = 0;
+        for (double p : parallel) total += p;
+        Assertions.assertEquals(1.0, total, 1e-9);
+    }
+}
@@ -0,0 +1,167 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.config.JsonMarkovTableLoader;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.probability.LongIntHashMap;
+import automaton.probability.MarkovHistoryProbabilityProvider;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Провайдер k-го порядка: таблицы по хешу последних k состояний.
+ */
+public class MarkovHistoryProbabilityProviderTest {
+
+    static class SequenceRandomProvider implements RandomProvider {
+        private final double[] seq;
+        private int i = 0;
+        SequenceRandomProvider(double... seq) { this.seq = seq; }
+        @Override public double nextUnit() {
+            double v = seq[i % seq.length];
+            i++;
+            return v;
+        }
+    }
+
+    private final State a = new State("A", false);
+    private final State b = new State("B", false);
+    private final State c = new State("C", false);
+    private final State d = new State("D", false);
+    private final State e = new State("E", true);
+    private final State f = new State("F", true);
+
+    /** A -> {B, C} -> D -> {E, F}; из D провайдер выбирает по тому, откуда пришли. */
+    private CoreProbabilisticAutomaton build(MarkovHistoryProbabilityProvider[] provider, RandomProvider rnd) {
+        a.addNextState(b, 1.0);
+        a.addNextState(c, 1.0);
+        b.addNextState(d, 1.0);
+        c.addNextState(d, 1.0);
+        d.addNextState(e, 1.0);
+        d.addNextState(f, 1.0);
+        for (State s : List.of(a, b, c)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").probabilisticTransition(rnd).build());
+        }
+        // Провайдер подставляется позже, когда состояния уже получили id
+        d.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .historyBasedTransition((history, input, next) ->
+                        provider[0].computeProbabilities(history, input, next), rnd)
+                .build());
+        StateRegistry.registerGraph(a);
+        return new CoreProbabilisticAutomaton(a);
+    }
+
+    @Test
+    void learnedSecondOrderTableRoutesByPreviousState() {
+        MarkovHistoryProbabilityProvider[] provider = new MarkovHistoryProbabilityProvider[1];
+        CoreProbabilisticAutomaton automaton = build(provider, new SequenceRandomProvider(0.9, 0.5, 0.99));
+
+        provider[0] = MarkovHistoryProbabilityProvider.builder(2)
+                .observe(List.of(a, b, d, e))
+                .observe(List.of(a, c, d, f))
+                .observe(List.of(a, c, d, f))
+                .build();
+        Assertions.assertEquals(2, provider[0].getOrder());
+        // Контексты: [START, A], [A, B], [A, C], [B, D], [C, D]
+        Assertions.assertEquals(5, provider[0].getContextCount());
+        Assertions.assertEquals(2.0, provider[0].weight(new int[]{c.getId(), d.getId()}, f.getId()), 0.0);
+        Assertions.assertTrue(Double.isNaN(provider[0].weight(new int[]{c.getId(), d.getId()}, e.getId())));
+
+        // u = 0.9 -> C; u = 0.5 -> D; u = 0.99: после C из D возможен только F
+        while (!automaton.isInFinalState()) automaton.step("tick", null);
+        Assertions.assertEquals("F", automaton.getCurrentStateName());
+
+        double[] p = provider[0].computeProbabilities(List.of(a, b, d), null, List.of(e, f));
+        Assertions.assertArrayEquals(new double[]{1.0, 0.0}, p, 0.0);
+    }
+
+    @Test
+    void shortHistoryIsPaddedWithStartAndUnknownContextFallsBack() {
+        CoreProbabilisticAutomaton automaton = build(new MarkovHistoryProbabilityProvider[1], null);
+        MarkovHistoryProbabilityProvider provider = MarkovHistoryProbabilityProvider.builder(3)
+                .add(List.of(a), b, 3.0)
+                .add(new int[]{MarkovHistoryProbabilityProvider.START, MarkovHistoryProbabilityProvider.START, a.getId()},
+                        c.getId(), 1.0)
+                .unseenWeight(0.5)
+                .build();
+
+        Assertions.assertEquals(MarkovHistoryProbabilityProvider.contextHash(3, List.of(a)),
+                MarkovHistoryProbabilityProvider.contextHash(3, new int[]{a.getId()}));
+        Assertions.assertArrayEquals(new double[]{3.0, 1.0, 0.5},
+                provider.computeProbabilities(List.of(a), null, List.of(b, c, d)), 0.0);
+        // Нет строки — равные веса
+        Assertions.assertArrayEquals(new double[]{1.0, 1.0},
+                provider.computeProbabilities(List.of(a, b), null, List.of(c, d)), 0.0);
+        Assertions.assertNotNull(automaton.getRegistry());
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> provider.computeProbabilities(List.of(new State("X", false)), null, List.of(a)));
+    }
+
+    @Test
+    void tablesLoadFromJson() throws Exception {
+        StateRegistry registry = new StateRegistry();
+        for (State s : List.of(a, b, c, d, e, f)) registry.register(s);
+        String json = "{ \"order\": 2, \"unseenWeight\": 0.1, \"contexts\": ["
+                + "{ \"history\": [\"B\", \"D\"], \"next\": { \"E\": 0.9, \"F\": 0.1 } },"
+                + "{ \"history\": [\"C\", \"D\"], \"next\": { \"F\": 1.0 } } ] }";
+
+        MarkovHistoryProbabilityProvider provider = new JsonMarkovTableLoader()
+                .load(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), registry);
+
+        Assertions.assertEquals(2, provider.getContextCount());
+        Assertions.assertEquals(3, provider.getEntryCount());
+        Assertions.assertArrayEquals(new double[]{0.9, 0.1},
+                provider.computeProbabilities(List.of(a, b, d), null, List.of(e, f)), 0.0);
+        Assertions.assertArrayEquals(new double[]{0.1, 1.0},
+                provider.computeProbabilities(List.of(c, d), null, List.of(e, f)), 0.0);
+
+        String unknown = "{ \"order\": 1, \"contexts\": [ { \"history\": [\"Z\"], \"next\": { \"E\": 1 } } ] }";
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new JsonMarkovTableLoader()
+                .load(new ByteArrayInputStream(unknown.getBytes(StandardCharsets.UTF_8)), registry));
+    }
+
+    @Test
+    void millionContextTable() {
+        int states = 200;
+        int contexts = 1_000_000;
+        MarkovHistoryProbabilityProvider.Builder builder = MarkovHistoryProbabilityProvider.builder(3);
+        int[] context = new int[3];
+        for (int i = 0; i < contexts; i++) {
+            context[0] = i / (states * states);
+            context[1] = (i / states) % states;
+            context[2] = i % states;
+            builder.add(context, (i * 7) % states, 1.0 + (i % 5));
+        }
+        MarkovHistoryProbabilityProvider provider = builder.build();
+
+        Assertions.assertEquals(contexts, provider.getContextCount());
+        for (int i = 0; i < contexts; i += 9973) {
+            int[] ctx = {i / (states * states), (i / states) % states, i % states};
+            Assertions.assertEquals(1.0 + (i % 5), provider.weight(ctx, (i * 7) % states), 0.0);
+        }
+    }
+
+    @Test
+    void longIntHashMapHandlesZeroKeyAndGrowth() {
+        LongIntHashMap map = new LongIntHashMap(2);
+        Assertions.assertEquals(-1, map.get(0L, -1));
+        map.put(0L, 7, -1);
+        for (long k = 1; k <= 10_000; k++) map.put(k * 0x10000L, (int) k, -1);
+        map.addTo(5 * 0x10000L, 10);
+
+        Assertions.assertEquals(10_001, map.size());
+        Assertions.assertEquals(7, map.get(0L, -1));
+        Assertions.assertEquals(15, map.get(5 * 0x10000L, -1));
+        Assertions.assertEquals(10_000, map.get(10_000 * 0x10000L, -1));
+        Assertions.assertFalse(map.containsKey(3L));
+        long[] sum = {0};
+        map.forEach((k, v) -> sum[0] += v);
+        Assertions.assertEquals(7 + 10_000L * 10_001 / 2 + 10, sum[0]);
+    }
+}
@@ -0,0 +1,106 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.Command;
+import automaton.concurrent.MpmcRingBuffer;
+import automaton.context.Context;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.output.OutputMessage;
+import automaton.output.SimpleOutputMessage;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+/**
+ * Тесты lock-free буфера outbox.
+ */
+public class MpmcRingBufferTest {
+
+    @Test
+    void boundedCapacityAndFifoOrder() {
+        MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(3);
+        Assertions.assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) Assertions.assertTrue(ring.offer(i));
+        Assertions.assertFalse(ring.offer(99));
+
+        List<Integer> out = new ArrayList<>();
+        Assertions.assertEquals(4, ring.drain(out::add));
+        Assertions.assertEquals(List.of(0, 1, 2, 3), out);
+        Assertions.assertNull(ring.poll());
+        Assertions.assertTrue(ring.offer(5));
+    }
+
+    @Test
+    void concurrentProducersAndConsumerExchangeEveryMessageOnce() throws Exception {
+        MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 20_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) Thread.onSpinWait();
+                }
+            });
+            threads[p].start();
+        }
+
+        BitSet seen = new BitSet(producers * perProducer);
+        int[] count = {0};
+        while (count[0] < producers * perProducer) {
+            ring.drain(v -> {
+                Assertions.assertFalse(seen.get(v), "duplicate " + v);
+                seen.set(v);
+                count[0]++;
+            });
+        }
+        for (Thread t : threads) t.join();
+        Assertions.assertEquals(producers * perProducer, seen.cardinality());
+    }
+
+    @Test
+    void contextDrainsOutboxThroughCallbackAndDropsOverflow() {
+        Context context = new Context(new State("A", false), 2);
+        Assertions.assertTrue(context.emit(new SimpleOutputMessage("LOG", Map.of())));
+        Assertions.assertTrue(context.emit(new SimpleOutputMessage("REPORT", Map.of())));
+        Assertions.assertFalse(context.emit(new SimpleOutputMessage("LOG", Map.of())));
+        Assertions.assertEquals(1, context.getDroppedMessageCount());
+
+        List<String> types = new ArrayList<>();
+        Assertions.assertEquals(2, context.drainOutbox((OutputMessage m) -> types.add(m.getType())));
+        Assertions.assertEquals(List.of("LOG", "REPORT"), types);
+        Assertions.assertTrue(context.drainOutbox().isEmpty());
+    }
+
+    @Test
+    void undrainedOutboxNeverBreaksAStep() {
+        // Цикл A <-> B, каждый шаг: сообщение, затем счётчик в памяти и переход
+        State a = new State("A", false);
+        State b = new State("B", false);
+        a.addNextState(b, 1.0);
+        b.addNextState(a, 1.0);
+        Command emitThenCount = new Command() {
+            @Override public void execute(Context context, State currentState) {
+                context.emit(new SimpleOutputMessage("LOG", Map.of()));
+                context.put("after", context.get("after") == null ? 1 : (Integer) context.get("after") + 1);
+            }
+            @Override public String getName() { return "emitThenCount"; }
+        };
+        for (State s : List.of(a, b)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").addCommand(emitThenCount).transitionToFirst().build());
+        }
+
+        int steps = 3 * Context.DEFAULT_OUTBOX_CAPACITY;
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+        for (int i = 0; i < steps; i++) automaton.step("tick", null);
+
+        Assertions.assertEquals(steps, automaton.getStepCount());
+        Assertions.assertEquals(steps, automaton.get("after"));
+        Assertions.assertEquals(steps - Context.DEFAULT_OUTBOX_CAPACITY, automaton.getDroppedMessageCount());
+        Assertions.assertEquals(Context.DEFAULT_OUTBOX_CAPACITY, automaton.drainOutbox().size());
+        automaton.step("tick", null);
+        Assertions.assertEquals(1, automaton.drainOutbox().size());
+    }
+}
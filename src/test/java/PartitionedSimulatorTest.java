@@ -0,0 +1,94 @@
+import automaton.compiled.CompiledModel;
+import automaton.simulation.PartitionedSimulator;
+import automaton.simulation.SimulationReport;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Прогоны по модели, разбитой на разделы с передачей прогонов между потоками.
+ */
+public class PartitionedSimulatorTest {
+
+    /** Та же модель, что в BatchSimulatorTest: START -> {OK, RETRY, FAIL}, RETRY -> {START, RARE, STUCK}. */
+    private static CompiledModel smallModel() {
+        return CompiledModel.of(null,
+                new String[]{"START", "RETRY", "OK", "FAIL", "RARE", "STUCK"},
+                new boolean[]{false, false, true, true, true, false},
+                new int[]{0, 3, 6, 6, 6, 6, 6},
+                new int[]{2, 1, 3, 0, 4, 5},
+                new double[]{0.5, 0.3, 0.2, 0.9, 0.001, 0.099});
+    }
+
+    /** Кольцо из n состояний с переходами вперёд, назад и в случайное состояние; каждое сотое — конечное. */
+    private static CompiledModel ringModel(int n) {
+        SplittableRandom random = new SplittableRandom(3);
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[3 * n];
+        double[] weights = new double[3 * n];
+        int e = 0;
+        for (int s = 0; s < n; s++) {
+            names[s] = "S" + s;
+            finals[s] = s % 100 == 99;
+            if (!finals[s]) {
+                targets[e] = (s + 1) % n;
+                weights[e++] = 0.6;
+                targets[e] = (s + n - 1) % n;
+                weights[e++] = 0.3;
+                targets[e] = random.nextInt(n);
+                weights[e++] = 0.1;
+            }
+            offsets[s + 1] = e;
+        }
+        return CompiledModel.of(null, names, finals, offsets,
+                Arrays.copyOf(targets, e), Arrays.copyOf(weights, e));
+    }
+
+    @Test
+    void frequenciesMatchExactProbabilities() {
+        CompiledModel model = smallModel();
+        SimulationReport report = new PartitionedSimulator(model, 1_000, 3).simulate(0, 200_000, 7L);
+
+        Assertions.assertEquals(200_000, report.getRuns());
+        Assertions.assertEquals(0.5 / 0.73, report.getFrequency(2), 3 * report.getHalfWidth(2));
+        Assertions.assertEquals(0.2 / 0.73, report.getFrequency(3), 3 * report.getHalfWidth(3));
+        Assertions.assertTrue(report.getCount(5) > 0, "dead end STUCK is an outcome");
+        long total = 0;
+        for (int s = 0; s < 6; s++) total += report.getCount(s);
+        Assertions.assertEquals(report.getRuns(), total + report.getUnfinishedCount());
+    }
+
+    @Test
+    void resultDoesNotDependOnPartitionCount() {
+        CompiledModel model = ringModel(50_000);
+        PartitionedSimulator single = new PartitionedSimulator(model, 500, 1);
+        PartitionedSimulator split = new PartitionedSimulator(model, 500, 4);
+        Assertions.assertEquals(4, split.getPartitionCount());
+        Assertions.assertEquals(0, split.getPartitionStart(0));
+
+        SimulationReport a = single.simulate(12_345, 30_000, 99L);
+        SimulationReport b = split.simulate(12_345, 30_000, 99L);
+        for (int s = 0; s < model.getStateCount(); s++) {
+            Assertions.assertEquals(a.getCount(s), b.getCount(s), "state " + s);
+        }
+        Assertions.assertEquals(a.getUnfinishedCount(), b.getUnfinishedCount());
+        Assertions.assertEquals(a.getMeanSteps(), b.getMeanSteps(), 0.0);
+        Assertions.assertTrue(a.getUnfinishedCount() < a.getRuns());
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        CompiledModel model = smallModel();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PartitionedSimulator(model, 0, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PartitionedSimulator(model, 10, 0));
+        // Разделов не больше, чем состояний
+        Assertions.assertEquals(6, new PartitionedSimulator(model, 10, 16).getPartitionCount());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new PartitionedSimulator(model, 10, 2).simulate(6, 10, 1L));
+    }
+}
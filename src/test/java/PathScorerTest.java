@@ -0,0 +1,126 @@
+import automaton.analysis.PathScorer;
+import automaton.compiled.CompiledModel;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Оценка правдоподобия путей в логарифмической шкале.
+ */
+public class PathScorerTest {
+
+    /** START -> {SCAN:0.8, REPORT:0.2}, SCAN -> {SCAN:0.5, REPORT:0.5}. */
+    private static CompiledModel model() {
+        return CompiledModel.of(null,
+                new String[]{"START", "SCAN", "REPORT"},
+                new boolean[]{false, false, true},
+                new int[]{0, 2, 4, 4},
+                new int[]{1, 2, 1, 2},
+                new double[]{4.0, 1.0, 1.0, 1.0});
+    }
+
+    @Test
+    void scoresIdsAndNamesInLogSpace() {
+        PathScorer scorer = new PathScorer(model());
+
+        double expected = Math.log(0.8) + Math.log(0.5) + Math.log(0.5);
+        Assertions.assertEquals(expected, scorer.logLikelihood(new int[]{0, 1, 1, 2}), 1e-12);
+        Assertions.assertEquals(expected, scorer.logLikelihood(List.of("START", "SCAN", "SCAN", "REPORT")), 1e-12);
+        Assertions.assertEquals(0.0, scorer.logLikelihood(new int[]{1}), 0.0);
+        Assertions.assertEquals(Math.log(0.8), scorer.logLikelihood(new int[]{2, 0, 1, 2}, 1, 3), 1e-12);
+
+        // Перехода REPORT -> START нет, состояния X нет
+        Assertions.assertEquals(Double.NEGATIVE_INFINITY, scorer.logLikelihood(new int[]{0, 2, 0}), 0.0);
+        Assertions.assertEquals(Double.NEGATIVE_INFINITY, scorer.logLikelihood(List.of("START", "X")), 0.0);
+
+        // Длинная сессия: произведение вероятностей ушло бы в 0, сумма логарифмов — нет
+        int[] longPath = new int[5000];
+        longPath[0] = 0;
+        for (int i = 1; i < longPath.length; i++) longPath[i] = 1;
+        Assertions.assertEquals(Math.log(0.8) + 4998 * Math.log(0.5), scorer.logLikelihood(longPath), 1e-6);
+    }
+
+    @Test
+    void namesResolveWithoutRegistryAfterRoundTrip() throws Exception {
+        // Модель без реестра, как после чтения из файла: имена ищутся по индексу, а не перебором
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model().write(new DataOutputStream(bytes));
+        CompiledModel read = CompiledModel.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(2, read.stateId("REPORT"));
+        Assertions.assertEquals(-1, read.stateId("X"));
+        Assertions.assertEquals(1, read.withProbabilities(read.probabilitiesCopy()).stateId("SCAN"));
+
+        double expected = Math.log(0.8) + Math.log(0.5);
+        Assertions.assertEquals(expected, new PathScorer(read).logLikelihood(List.of("START", "SCAN", "REPORT")), 1e-12);
+    }
+
+    @Test
+    void batchAndFileScoringAgreeWithSingleScores() throws Exception {
+        State start = new State("START", false);
+        State scan = new State("SCAN", false);
+        State report = new State("REPORT", true);
+        start.addNextState(scan, 3.0);
+        start.addNextState(report, 1.0);
+        scan.addNextState(report, 1.0);
+        scan.addNextState(scan, 1.0);
+        PathScorer scorer = new PathScorer(CompiledModel.compile(StateRegistry.registerGraph(start)));
+
+        int s = start.getId();
+        int c = scan.getId();
+        int r = report.getId();
+        int[][] paths = new int[1000][];
+        StringBuilder file = new StringBuilder("# sessions\n");
+        String[] names = {"START", "SCAN", "REPORT"};
+        for (int i = 0; i < paths.length; i++) {
+            int loops = i % 7;
+            paths[i] = new int[loops + 3];
+            paths[i][0] = s;
+            for (int j = 1; j <= loops + 1; j++) paths[i][j] = c;
+            paths[i][loops + 2] = i % 11 == 0 ? s : r; // часть путей невозможна
+            StringBuilder line = new StringBuilder();
+            for (int id : paths[i]) line.append(names[id]).append(' ');
+            file.append(line.toString().trim()).append('\n');
+        }
+        Path traces = Files.createTempFile("paths", ".txt");
+        traces.toFile().deleteOnExit();
+        Files.write(traces, file.toString().getBytes(StandardCharsets.UTF_8));
+
+        double[] sequential = scorer.scoreAll(paths);
+        Assertions.assertArrayEquals(sequential, scorer.scoreAllParallel(paths), 0.0);
+        Assertions.assertArrayEquals(sequential, scorer.scoreFiles(List.of(traces), 3, 333), 0.0);
+        Assertions.assertEquals(Math.log(0.75) + 2 * Math.log(0.5), sequential[1], 1e-12); // START SCAN SCAN REPORT
+        Assertions.assertEquals(Double.NEGATIVE_INFINITY, sequential[11], 0.0);
+    }
+
+    @Test
+    void duplicateNamesResolveToTheFirstStateInFiles() throws Exception {
+        // Два состояния SCAN: первое ведёт в REPORT, второе — только обратно в START
+        CompiledModel model = CompiledModel.of(null,
+                new String[]{"START", "SCAN", "SCAN", "REPORT"},
+                new boolean[]{false, false, false, true},
+                new int[]{0, 2, 3, 4, 4},
+                new int[]{1, 3, 3, 0},
+                new double[]{1.0, 1.0, 1.0, 1.0});
+        PathScorer scorer = new PathScorer(model);
+        Assertions.assertEquals(1, model.stateId("SCAN"));
+
+        Path traces = Files.createTempFile("duplicates", ".txt");
+        traces.toFile().deleteOnExit();
+        Files.write(traces, "START SCAN REPORT\n".getBytes(StandardCharsets.UTF_8));
+        double expected = scorer.logLikelihood(List.of("START", "SCAN", "REPORT"));
+        Assertions.assertEquals(Math.log(0.5), expected, 1e-12);
+        Assertions.assertArrayEquals(new double[]{expected}, scorer.scoreFiles(List.of(traces), 1, 1 << 16), 0.0);
+    }
+}
@@ -0,0 +1,103 @@
+import automaton.analysis.PathSearch;
+import automaton.analysis.ScoredPath;
+import automaton.compiled.CompiledModel;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Поиск наиболее вероятных путей (Дейкстра по -log p и k лучших путей).
+ */
+public class PathSearchTest {
+
+    private final State start = new State("START", false);
+    private final State a = new State("A", false);
+    private final State b = new State("B", false);
+    private final State orphan = new State("ORPHAN", false);
+    private final State end = new State("END", true);
+
+    /** START -> {A:0.6, B:0.4}, A -> {A:0.5, END:0.5}, B -> END, ORPHAN -> START (недостижимо). */
+    private PathSearch search() {
+        start.addNextState(a, 0.6);
+        start.addNextState(b, 0.4);
+        a.addNextState(a, 0.5);
+        a.addNextState(end, 0.5);
+        b.addNextState(end, 1.0);
+        orphan.addNextState(start, 1.0);
+        StateRegistry registry = StateRegistry.registerGraph(start);
+        registry.register(orphan);
+        return new PathSearch(CompiledModel.compile(registry));
+    }
+
+    @Test
+    void mostLikelyPathPrefersProductOfProbabilities() {
+        PathSearch search = search();
+
+        // START -> B -> END (0.4) вероятнее, чем START -> A -> END (0.3), хотя первый шаг хуже
+        ScoredPath best = search.mostLikelyPath(start);
+        Assertions.assertEquals(List.of("START", "B", "END"), best.getStateNames());
+        Assertions.assertEquals(0.4, best.getProbability(), 1e-12);
+        Assertions.assertEquals(2, best.length());
+
+        ScoredPath toA = search.mostLikelyPath(start, a);
+        Assertions.assertEquals(List.of("START", "A"), toA.getStateNames());
+        Assertions.assertEquals(Math.log(0.6), toA.getLogProbability(), 1e-12);
+
+        Assertions.assertNull(search.mostLikelyPath(start, orphan));
+        Assertions.assertEquals(List.of("END"), search.mostLikelyPath(end).getStateNames());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> search.mostLikelyPath(new State("X", false)));
+    }
+
+    @Test
+    void kBestPathsAreOrderedAndIncludeLoops() {
+        PathSearch search = search();
+
+        List<ScoredPath> top = search.mostLikelyPaths(start, 4);
+        Assertions.assertEquals(4, top.size());
+        Assertions.assertEquals(List.of("START", "B", "END"), top.get(0).getStateNames());
+        Assertions.assertEquals(List.of("START", "A", "END"), top.get(1).getStateNames());
+        Assertions.assertEquals(List.of("START", "A", "A", "END"), top.get(2).getStateNames());
+        Assertions.assertEquals(0.15, top.get(2).getProbability(), 1e-12);
+        Assertions.assertEquals(0.075, top.get(3).getProbability(), 1e-12);
+
+        // Без циклов к B есть только один путь
+        List<ScoredPath> toB = search.mostLikelyPaths(start.getId(), b.getId(), 3);
+        Assertions.assertEquals(1, toB.size());
+        Assertions.assertEquals(search.mostLikelyPath(start, b), toB.get(0));
+    }
+
+    @Test
+    void largeGridSearch() {
+        // Решётка 500 x 500: вправо с вероятностью 0.9 во второй половине строки, иначе 0.5
+        int side = 500;
+        int n = side * side;
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[2 * n];
+        double[] weights = new double[2 * n];
+        int edges = 0;
+        for (int s = 0; s < n; s++) {
+            int row = s / side;
+            int col = s % side;
+            names[s] = "G" + s;
+            finals[s] = s == n - 1;
+            double right = col >= side / 2 ? 0.9 : 0.5;
+            if (col + 1 < side) { targets[edges] = s + 1; weights[edges++] = right; }
+            if (row + 1 < side) { targets[edges] = s + side; weights[edges++] = 1.0 - right; }
+            offsets[s + 1] = edges;
+        }
+        CompiledModel model = CompiledModel.of(null, names, finals,
+                offsets, java.util.Arrays.copyOf(targets, edges), java.util.Arrays.copyOf(weights, edges));
+
+        ScoredPath best = new PathSearch(model).mostLikelyPath(0, PathSearch.ANY_FINAL);
+        Assertions.assertEquals(2 * (side - 1), best.length());
+        Assertions.assertEquals(n - 1, best.getStates()[best.length()]);
+        Assertions.assertEquals(3, new PathSearch(model).mostLikelyPaths(0, PathSearch.ANY_FINAL, 3).size());
+    }
+}
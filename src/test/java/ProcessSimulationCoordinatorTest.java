@@ -0,0 +1,80 @@
+import automaton.compiled.CompiledModel;
+import automaton.simulation.BatchSimulator;
+import automaton.simulation.ProcessSimulationCoordinator;
+import automaton.simulation.SimulationReport;
+import automaton.simulation.StoppingRule;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Серия прогонов в нескольких рабочих JVM и двоичный формат скомпилированной модели.
+ */
+public class ProcessSimulationCoordinatorTest {
+
+    private static CompiledModel model() {
+        return CompiledModel.of(null,
+                new String[]{"START", "RETRY", "OK", "FAIL", "RARE", "STUCK"},
+                new boolean[]{false, false, true, true, true, false},
+                new int[]{0, 3, 6, 6, 6, 6, 6},
+                new int[]{2, 1, 3, 0, 4, 5},
+                new double[]{0.5, 0.3, 0.2, 0.9, 0.001, 0.099});
+    }
+
+    @Test
+    void binaryModelRoundTripKeepsSampling() throws IOException {
+        CompiledModel model = model().withProbabilities(new double[]{1, 1, 1, 7, 3, 1});
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        model.write(new DataOutputStream(bytes));
+        CompiledModel copy = CompiledModel.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assertions.assertEquals(model.getStateCount(), copy.getStateCount());
+        Assertions.assertEquals(model.getEdgeCount(), copy.getEdgeCount());
+        for (int s = 0; s < model.getStateCount(); s++) {
+            Assertions.assertEquals(model.getStateName(s), copy.getStateName(s));
+            Assertions.assertEquals(model.isFinal(s), copy.isFinal(s));
+        }
+        for (int e = 0; e < model.getEdgeCount(); e++) {
+            Assertions.assertEquals(model.target(e), copy.target(e));
+            Assertions.assertEquals(model.probability(e), copy.probability(e), 0.0);
+        }
+
+        byte[] corrupted = bytes.toByteArray();
+        corrupted[0] = 0;
+        Assertions.assertThrows(IOException.class,
+                () -> CompiledModel.read(new DataInputStream(new ByteArrayInputStream(corrupted))));
+    }
+
+    private static void assertSameAsSingleProcess(ProcessSimulationCoordinator coordinator) throws IOException {
+        CompiledModel model = model();
+        long runs = 25_500;
+        SimulationReport distributed = coordinator.simulate(model, 0, 1_000, runs, 1_000, 42L);
+        SimulationReport single = new BatchSimulator(model, 1_000, 1).simulate(0,
+                StoppingRule.builder().minRuns(runs).maxRuns(runs).batchSize(1_000).build(), 42L);
+
+        Assertions.assertEquals(runs, distributed.getRuns());
+        for (int s = 0; s < model.getStateCount(); s++) {
+            Assertions.assertEquals(single.getCount(s), distributed.getCount(s), "state " + s);
+        }
+        Assertions.assertEquals(single.getUnfinishedCount(), distributed.getUnfinishedCount());
+        Assertions.assertEquals(single.getTotalSteps(), distributed.getTotalSteps());
+    }
+
+    @Test
+    void unixSocketWorkersMatchSingleProcessRun() throws IOException {
+        assertSameAsSingleProcess(new ProcessSimulationCoordinator(3));
+    }
+
+    @Test
+    void loopbackWorkersMatchSingleProcessRun() throws IOException {
+        assertSameAsSingleProcess(new ProcessSimulationCoordinator(2,
+                ProcessSimulationCoordinator.Transport.LOOPBACK, 2, List.of("-Xmx64m")));
+    }
+}
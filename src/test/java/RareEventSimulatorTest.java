@@ -0,0 +1,90 @@
+import automaton.compiled.CompiledModel;
+import automaton.simulation.RareEventEstimate;
+import automaton.simulation.RareEventSimulator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Выборка по значимости для редких конечных состояний.
+ */
+public class RareEventSimulatorTest {
+
+    /**
+     * Случайное блуждание 0..n: из i вверх с вероятностью up, вниз — с 1 - up;
+     * 0 (FAIL) и n (REPORT) конечные.
+     */
+    private static CompiledModel walk(int n, double up) {
+        String[] names = new String[n + 1];
+        boolean[] finals = new boolean[n + 1];
+        int[] offsets = new int[n + 2];
+        int[] targets = new int[2 * (n - 1)];
+        double[] weights = new double[2 * (n - 1)];
+        int e = 0;
+        for (int i = 0; i <= n; i++) {
+            names[i] = i == 0 ? "FAIL" : i == n ? "REPORT" : "S" + i;
+            finals[i] = i == 0 || i == n;
+            if (!finals[i]) {
+                targets[e] = i - 1;
+                weights[e++] = 1.0 - up;
+                targets[e] = i + 1;
+                weights[e++] = up;
+            }
+            offsets[i + 1] = e;
+        }
+        return CompiledModel.of(null, names, finals, offsets, targets, weights);
+    }
+
+    /** Вероятность разорения игрока: дойти из 1 до n раньше, чем до 0. */
+    private static double exact(int n, double up) {
+        double r = (1.0 - up) / up;
+        return (r - 1.0) / (Math.pow(r, n) - 1.0);
+    }
+
+    @Test
+    void heuristicProposalEstimatesBillionToOneEvent() {
+        int n = 15;
+        CompiledModel model = walk(n, 0.2);
+        RareEventSimulator simulator = new RareEventSimulator(model, n, 10_000);
+        double p = exact(n, 0.2); // ~2.8e-9: обычной выборкой недостижимо
+
+        RareEventEstimate estimate = simulator.estimate(1, simulator.heuristicProposal(RareEventSimulator.DEFAULT_MIX),
+                20_000, 7L);
+        Assertions.assertTrue(estimate.getHits() > 1000, estimate.toString());
+        Assertions.assertEquals(p, estimate.getProbability(), 4 * estimate.getStandardError(), estimate.toString());
+        Assertions.assertTrue(estimate.getRelativeError() < 0.1, estimate.toString());
+        Assertions.assertTrue(estimate.getLowerBound() <= estimate.getProbability());
+
+        // Без смещения за то же число прогонов событие не встречается ни разу
+        RareEventEstimate plain = simulator.estimate(1, simulator.modelProposal(), 20_000, 7L);
+        Assertions.assertEquals(0, plain.getHits());
+    }
+
+    @Test
+    void crossEntropyTuningReducesVariance() {
+        int n = 12;
+        CompiledModel model = walk(n, 0.3);
+        RareEventSimulator simulator = new RareEventSimulator(model, n, 10_000);
+        double p = exact(n, 0.3);
+
+        double[] start = simulator.heuristicProposal(0.5);
+        double[] tuned = simulator.tuneCrossEntropy(1, start, 5, 5_000, 1L);
+        RareEventEstimate before = simulator.estimate(1, start, 10_000, 3L);
+        RareEventEstimate after = simulator.estimate(1, tuned, 10_000, 3L);
+
+        Assertions.assertEquals(p, after.getProbability(), 4 * after.getStandardError(), after.toString());
+        Assertions.assertTrue(after.getRelativeError() < before.getRelativeError(), before + " vs " + after);
+        // Оптимальное смещение для блуждания — поменять вероятности местами: вверх ~0.7
+        int mid = model.edgeIndex(n / 2, n / 2 + 1);
+        Assertions.assertEquals(0.7, model.withProbabilities(tuned).probability(mid), 0.1);
+    }
+
+    @Test
+    void proposalWithoutSupportIsRejected() {
+        CompiledModel model = walk(5, 0.5);
+        RareEventSimulator simulator = new RareEventSimulator(model, 5, 100);
+        double[] q = simulator.modelProposal();
+        q[model.edgeIndex(2, 1)] = 0.0;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> simulator.estimate(1, q, 10, 1L));
+    }
+}
@@ -0,0 +1,98 @@
+import automaton.analysis.ReachabilityAnalyzer;
+import automaton.analysis.ReachabilityReport;
+import automaton.compiled.CompiledModel;
+import automaton.config.JsonAutomatonLoader;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Достижимость, компоненты сильной связности и проверка графа при загрузке из JSON.
+ */
+public class ReachabilityAnalyzerTest {
+
+    /**
+     * 0 START -> {1 A, 2 LOOP1}, 1 A -> 4 END, 2 LOOP1 <-> 3 LOOP2 (ловушка),
+     * 5 STUCK — тупик, 6 ORPHAN -> 5 (недостижимы).
+     */
+    private static CompiledModel model() {
+        String[] names = {"START", "A", "LOOP1", "LOOP2", "END", "STUCK", "ORPHAN"};
+        boolean[] finals = {false, false, false, false, true, false, false};
+        int[] offsets = {0, 2, 3, 4, 5, 5, 5, 6};
+        int[] targets = {1, 2, 4, 3, 2, 5};
+        double[] weights = {1, 1, 1, 1, 1, 1};
+        return CompiledModel.of(null, names, finals, offsets, targets, weights);
+    }
+
+    @Test
+    void reportsUnreachableDeadEndsAndTraps() {
+        ReachabilityReport report = ReachabilityAnalyzer.analyze(model(), 0);
+
+        Assertions.assertEquals(5, report.getReachableCount());
+        Assertions.assertEquals(List.of("STUCK", "ORPHAN"), report.getUnreachableNames());
+        Assertions.assertEquals(List.of("STUCK"), report.getDeadEndNames());
+        Assertions.assertEquals(List.of(List.of("LOOP1", "LOOP2")), report.getTrappingClassNames());
+        Assertions.assertEquals(report.componentOf(2), report.componentOf(3));
+        Assertions.assertNotEquals(report.componentOf(0), report.componentOf(1));
+        Assertions.assertEquals(6, report.getComponentCount());
+        Assertions.assertFalse(report.isClean());
+        Assertions.assertEquals(3, report.getProblems().size());
+
+        // Из ORPHAN тупик достижим и становится ловушкой, LOOP — нет
+        ReachabilityReport fromOrphan = ReachabilityAnalyzer.analyze(model(), 6);
+        Assertions.assertEquals(List.of(List.of("STUCK")), fromOrphan.getTrappingClassNames());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReachabilityAnalyzer.analyze(model(), 7));
+    }
+
+    @Test
+    void handlesMillionStateChainWithoutRecursion() {
+        int n = 1_000_000;
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[n];
+        double[] weights = new double[n];
+        // Цепочка 0 -> 1 -> ... -> n-1 -> 0: одна компонента глубины n
+        for (int s = 0; s < n; s++) {
+            names[s] = "S" + s;
+            offsets[s + 1] = s + 1;
+            targets[s] = (s + 1) % n;
+            weights[s] = 1.0;
+        }
+        CompiledModel cycle = CompiledModel.of(null, names, finals, offsets, targets, weights);
+        ReachabilityReport report = ReachabilityAnalyzer.analyze(cycle, 0);
+        Assertions.assertEquals(n, report.getReachableCount());
+        Assertions.assertEquals(1, report.getComponentCount());
+        Assertions.assertEquals(1, report.getTrappingClasses().size());
+        Assertions.assertEquals(n, report.getTrappingClasses().get(0).length);
+
+        // Последнее состояние конечное: цикл разрывается, ловушек нет
+        finals[n - 1] = true;
+        CompiledModel chain = CompiledModel.of(null, names, finals, offsets, targets, weights);
+        ReachabilityReport chainReport = ReachabilityAnalyzer.analyze(chain, 0);
+        Assertions.assertEquals(n, chainReport.getComponentCount());
+        Assertions.assertTrue(chainReport.isClean());
+    }
+
+    private static final String JSON = "{\"initialState\":\"START\",\"states\":["
+            + "{\"name\":\"START\",\"algorithms\":{\"go\":[{\"type\":\"add_state\",\"target\":\"END\"},"
+            + "{\"type\":\"add_state\",\"target\":\"STUCK\"},{\"type\":\"transition\",\"target\":\"first\"}]}},"
+            + "{\"name\":\"STUCK\"},"
+            + "{\"name\":\"END\",\"finalState\":true}]}";
+
+    @Test
+    void loaderValidatesGraph() throws Exception {
+        JsonAutomatonLoader loader = new JsonAutomatonLoader();
+        loader.load(new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(List.of("STUCK"), loader.getLastReport().getDeadEndNames());
+
+        JsonAutomatonLoader strict = new JsonAutomatonLoader(true);
+        IllegalArgumentException error = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> strict.load(new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertTrue(error.getMessage().contains("STUCK"));
+    }
+}
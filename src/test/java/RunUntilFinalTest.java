@@ -0,0 +1,137 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.Command;
+import automaton.context.Context;
+import automaton.core.AutomatonLog;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.core.RunSummary;
+import automaton.input.InputMessage;
+import automaton.input.SimpleInputMessage;
+import automaton.output.OutputMessage;
+import automaton.output.SimpleOutputMessage;
+import automaton.state.AlgorithmHandles;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Цикл агента внутри движка: runUntilFinal с бюджетом шагов и потребителем outbox.
+ */
+public class RunUntilFinalTest {
+
+    /** Команда, отправляющая одно сообщение за шаг. */
+    private static Command emit(OutputMessage message) {
+        return new Command() {
+            @Override public void execute(Context context, State currentState) {
+                context.emit(message);
+            }
+            @Override public String getName() { return "emit"; }
+        };
+    }
+
+    @Test
+    void runsToFinalStateAndForwardsOutputs() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        State end = new State("END", true);
+        OutputMessage click = new SimpleOutputMessage("UI_CLICK", Map.of());
+        List<Command> toB = new ArrayList<>(new AlgorithmBuilder("go").clearNextStates()
+                .addExistingState(b, false, 1.0).transitionToFirst().build());
+        toB.add(0, emit(click));
+        a.addAlgorithm("go", toB);
+        b.addAlgorithm("go", new AlgorithmBuilder("go").clearNextStates()
+                .addExistingState(end, true, 1.0).transitionToFirst().build());
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+
+        List<OutputMessage> received = new ArrayList<>();
+        int[] inputs = {0};
+        RunSummary summary = automaton.runUntilFinal("go",
+                () -> SimpleInputMessage.of("step-" + inputs[0]++), 100, received::add);
+
+        Assertions.assertEquals(RunSummary.StopReason.FINAL, summary.getStopReason());
+        Assertions.assertTrue(summary.isInFinalState());
+        Assertions.assertSame(end, summary.getState());
+        Assertions.assertEquals(2, summary.getSteps());
+        Assertions.assertEquals(2, summary.getTotalStepCount());
+        Assertions.assertEquals(1, summary.getOutputCount());
+        Assertions.assertEquals(List.of(click), received);
+        Assertions.assertEquals(2, inputs[0]);
+        Assertions.assertEquals("step-1", summary.getLastInput().getRaw());
+
+        // Уже в конечном состоянии: ни одного шага
+        RunSummary again = automaton.runUntilFinal("go", null, 100);
+        Assertions.assertEquals(0, again.getSteps());
+        Assertions.assertEquals(RunSummary.StopReason.FINAL, again.getStopReason());
+    }
+
+    @Test
+    void stopsOnStepBudgetOrMissingAlgorithm() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        a.addNextState(b, 1.0);
+        b.addNextState(a, 1.0);
+        a.addAlgorithm("tick", new AlgorithmBuilder("tick").transitionToFirst().build());
+        b.addAlgorithm("tick", new AlgorithmBuilder("tick").transitionToFirst().build());
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+
+        RunSummary limited = automaton.runUntilFinal("tick", null, 5);
+        Assertions.assertEquals(RunSummary.StopReason.STEP_LIMIT, limited.getStopReason());
+        Assertions.assertEquals(5, limited.getSteps());
+        Assertions.assertSame(b, limited.getState());
+        Assertions.assertNull(limited.getLastInput());
+
+        int known = AlgorithmHandles.size();
+        RunSummary missing = automaton.runUntilFinal("unknown-" + System.nanoTime(), null, 5);
+        Assertions.assertEquals(RunSummary.StopReason.NO_ALGORITHM, missing.getStopReason());
+        Assertions.assertEquals(0, missing.getSteps());
+        // Неизвестное имя не заводится в глобальной таблице
+        Assertions.assertEquals(known, AlgorithmHandles.size());
+        Assertions.assertEquals(-1, CoreProbabilisticAutomaton.resolveAlgorithm("unknown-" + System.nanoTime()));
+        Assertions.assertEquals(known, AlgorithmHandles.size());
+        Assertions.assertEquals(5, automaton.getStepCount());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> automaton.runUntilFinal("tick", null, -1));
+    }
+
+    @Test
+    void loopAllocatesOnlyTheSummary() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        a.addNextState(b, 1.0);
+        b.addNextState(a, 1.0);
+        OutputMessage ping = new SimpleOutputMessage("PING", Map.of());
+        List<Command> tick = new ArrayList<>(new AlgorithmBuilder("tick").transitionToFirst().build());
+        tick.add(emit(ping));
+        a.addAlgorithm("tick", tick);
+        b.addAlgorithm("tick", tick);
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a, 4);
+        int handle = CoreProbabilisticAutomaton.resolveAlgorithm("tick");
+        InputMessage input = SimpleInputMessage.of("tick");
+
+        boolean logWas = AutomatonLog.isEnabled();
+        AutomatonLog.setEnabled(false);
+        try {
+            automaton.ensureHistoryCapacity(400_001);
+            long[] seen = {0};
+            automaton.runUntilFinal(handle, () -> input, 100_000, m -> seen[0]++);
+
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long before = threads.getCurrentThreadAllocatedBytes();
+                automaton.runUntilFinal(handle, () -> input, 100_000, m -> seen[0]++);
+                best = Math.min(best, threads.getCurrentThreadAllocatedBytes() - before);
+            }
+            // Итог, лямбды и погрешность измерения — но ничего, растущего с числом шагов
+            Assertions.assertTrue(best < 1_000, "100000 steps allocated " + best + " bytes");
+            Assertions.assertEquals(400_000, seen[0]);
+        } finally {
+            AutomatonLog.setEnabled(logWas);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import automaton.compiled.CompiledModel;
+import automaton.session.SessionArena;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Сессии вне кучи: кольцо истории, слоты, outbox, список свободных записей и отсутствие
+ * выделений в куче на шагах.
+ */
+public class SessionArenaTest {
+
+    /** Цикл A -> B -> C -> A и отдельное конечное состояние END. */
+    private static CompiledModel cycle() {
+        return CompiledModel.of(null,
+                new String[]{"A", "B", "C", "END"},
+                new boolean[]{false, false, false, true},
+                new int[]{0, 1, 2, 3, 3},
+                new int[]{1, 2, 0},
+                new double[]{1.0, 1.0, 1.0});
+    }
+
+    @Test
+    void historyRingKeepsLastStates() {
+        SessionArena arena = SessionArena.builder(cycle()).historyCapacity(4).build();
+        int session = arena.allocate();
+        Assertions.assertEquals(0, arena.getState(session));
+        Assertions.assertEquals(1, arena.getHistoryLength(session));
+
+        for (int i = 0; i < 5; i++) arena.step(session, 0.5);
+        Assertions.assertEquals(2, arena.getState(session));
+        Assertions.assertEquals(5, arena.getStepCount(session));
+        Assertions.assertEquals(4, arena.getHistoryLength(session));
+        int[] history = new int[4];
+        Assertions.assertEquals(4, arena.copyHistory(session, history));
+        Assertions.assertArrayEquals(new int[]{2, 0, 1, 2}, history);
+        Assertions.assertEquals(1, arena.getHistoryState(session, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> arena.getHistoryState(session, 4));
+
+        arena.moveTo(session, 3);
+        Assertions.assertTrue(arena.isInFinalState(session));
+        Assertions.assertEquals(0, arena.runUntilFinal(session, 10, () -> 0.5));
+        Assertions.assertEquals(3, arena.getHistoryState(session, 0));
+        Assertions.assertEquals(2, arena.getHistoryState(session, 1));
+    }
+
+    @Test
+    void slotsOutboxAndFreeListReuse() {
+        SessionArena arena = SessionArena.builder(cycle())
+                .slots(2, 1).outboxCapacity(2).sessionsPerChunk(2).maxSessions(3).build();
+        int a = arena.allocate();
+        int b = arena.allocate(1);
+        int c = arena.allocate();
+        Assertions.assertEquals(1, arena.getState(b));
+        Assertions.assertEquals(3, arena.getSessionCount());
+        Assertions.assertThrows(IllegalStateException.class, arena::allocate);
+
+        arena.setLong(b, 1, 42L);
+        arena.setDouble(b, 0, 0.25);
+        Assertions.assertEquals(42L, arena.getLong(b, 1));
+        Assertions.assertEquals(0L, arena.getLong(a, 1));
+        Assertions.assertEquals(0.25, arena.getDouble(b, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> arena.getLong(b, 2));
+
+        Assertions.assertTrue(arena.emit(b, 7));
+        Assertions.assertTrue(arena.emit(b, 9));
+        Assertions.assertFalse(arena.emit(b, 11));
+        List<Integer> drained = new ArrayList<>();
+        Assertions.assertEquals(2, arena.drainOutbox(b, drained::add));
+        Assertions.assertEquals(List.of(7, 9), drained);
+        Assertions.assertEquals(0, arena.getOutboxSize(b));
+
+        // Освобождённая запись переиспользуется и приходит чистой
+        arena.free(b);
+        Assertions.assertFalse(arena.isLive(b));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> arena.getState(b));
+        int reused = arena.allocate();
+        Assertions.assertEquals(b, reused);
+        Assertions.assertEquals(0, arena.getState(reused));
+        Assertions.assertEquals(0L, arena.getLong(reused, 1));
+        Assertions.assertEquals(0.0, arena.getDouble(reused, 0));
+        Assertions.assertEquals(3, arena.getSessionCount());
+        Assertions.assertEquals(2L * 2 * arena.getRecordSize(), arena.getReservedBytes());
+        Assertions.assertTrue(arena.isLive(c));
+    }
+
+    @Test
+    void manySessionsRunWithoutHeapAllocation() {
+        CompiledModel model = CompiledModel.of(null,
+                new String[]{"START", "RETRY", "OK", "FAIL"},
+                new boolean[]{false, false, true, true},
+                new int[]{0, 3, 5, 5, 5},
+                new int[]{2, 1, 3, 0, 3},
+                new double[]{0.5, 0.3, 0.2, 0.9, 0.1});
+        int sessions = 200_000;
+        SessionArena arena = SessionArena.builder(model)
+                .historyCapacity(4).slots(1, 1).outboxCapacity(2).sessionsPerChunk(1 << 14).build();
+        for (int i = 0; i < sessions; i++) arena.allocate();
+        Assertions.assertEquals(((sessions + (1 << 14) - 1) >> 14) * (1L << 14) * arena.getRecordSize(),
+                arena.getReservedBytes());
+
+        SplittableRandom random = new SplittableRandom(5L);
+        DoubleSupplier uniforms = random::nextDouble;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // Прогрев, чтобы измерялся скомпилированный код
+        for (int i = 0; i < 1_000; i++) arena.runUntilFinal(i, 1_000, uniforms);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long steps = 0;
+        int ok = 0;
+        for (int i = 1_000; i < sessions; i++) {
+            steps += arena.runUntilFinal(i, 1_000, uniforms);
+            if (arena.getState(i) == 2) ok++;
+            arena.setLong(i, 0, steps);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        Assertions.assertTrue(allocated < 1_000, sessions + " sessions allocated " + allocated + " bytes");
+
+        // P(OK) = 0.5 / (1 - 0.3 * 0.9)
+        double expected = 0.5 / 0.73;
+        Assertions.assertEquals(expected, ok / (double) (sessions - 1_000), 0.01);
+        Assertions.assertTrue(steps > sessions - 1_000);
+    }
+}
@@ -0,0 +1,223 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.core.ResultMode;
+import automaton.session.SessionStore;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хранилище сессий: вытеснение в файл, восстановление без потерь, закреплённые сессии
+ * и параллельный доступ.
+ */
+public class SessionStoreTest {
+
+    /** Цикл A -> B -> C -> A по алгоритму "tick". */
+    private static State cycle() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        State c = new State("C", false);
+        a.addNextState(b, 1.0);
+        b.addNextState(c, 1.0);
+        c.addNextState(a, 1.0);
+        for (State s : List.of(a, b, c)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").transitionToFirst().build());
+        }
+        return a;
+    }
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("sessions", ".bin");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    @Test
+    void evictedSessionsAreRestoredWithoutLoss() throws Exception {
+        try (SessionStore store = SessionStore.builder(cycle(), tempFile())
+                .maxHotSessions(4).stripes(1).build()) {
+            for (int i = 0; i < 50; i++) {
+                int steps = i % 7;
+                String id = "s" + i;
+                store.withSession(id, session -> {
+                    for (int k = 0; k < steps; k++) session.step("tick", null);
+                    session.put("user", id);
+                    session.put("n", steps);
+                    session.put("ratio", steps / 2.0);
+                    return null;
+                });
+            }
+            store.flush();
+            Assertions.assertEquals(4, store.getHotCount());
+            Assertions.assertEquals(46, store.getColdCount());
+            Assertions.assertTrue(store.getFileBytesUsed() > 0);
+
+            for (int i = 0; i < 50; i++) {
+                int steps = i % 7;
+                String id = "s" + i;
+                store.withSession(id, session -> {
+                    Assertions.assertEquals(steps, session.getStepCount());
+                    Assertions.assertEquals(List.of("A", "B", "C").get(steps % 3), session.getCurrentStateName());
+                    Assertions.assertEquals(id, session.get("user"));
+                    Assertions.assertEquals(steps, session.get("n"));
+                    Assertions.assertEquals(steps / 2.0, session.get("ratio"));
+                    // История тоже восстановлена: после шага в ней начальное состояние и steps + 1 переходов
+                    Assertions.assertEquals(steps + 2, session.step("tick", null).getVisitedStates().size());
+                    return null;
+                });
+            }
+            Assertions.assertEquals(50, store.getCreatedCount());
+            Assertions.assertTrue(store.getRestoredCount() >= 46);
+
+            Assertions.assertTrue(store.remove("s0"));
+            Assertions.assertFalse(store.contains("s0"));
+            Assertions.assertTrue(store.contains("s1"));
+        }
+    }
+
+    @Test
+    void sessionsWithObjectsStayHot() throws Exception {
+        try (SessionStore store = SessionStore.builder(cycle(), tempFile())
+                .maxHotSessions(2).stripes(1).build()) {
+            Object payload = new Object();
+            store.withSession("pinned", session -> {
+                session.put("payload", payload);
+                return null;
+            });
+            for (int i = 0; i < 10; i++) {
+                store.withSession("s" + i, session -> session.step("tick", null));
+            }
+            store.flush();
+            Assertions.assertSame(payload, store.withSession("pinned", session -> session.get("payload")));
+            Assertions.assertEquals(0, store.getRestoredCount());
+        }
+    }
+
+    @Test
+    void longStringsSurviveEvictionAndOversizedSessionsStayHot() throws Exception {
+        String longValue = "ж".repeat(35_000) + "\uD83D\uDE00"; // больше 64 КБ в UTF-8
+        try (SessionStore store = SessionStore.builder(cycle(), tempFile())
+                .maxHotSessions(1).stripes(1).segmentSize(1 << 17).build()) {
+            store.withSession("long", session -> {
+                session.put("text", longValue);
+                return null;
+            });
+            Assertions.assertEquals("done", store.withSession("other", session -> "done"));
+            store.flush();
+            Assertions.assertTrue(store.getRestoredCount() == 0 && store.getColdCount() == 1);
+            Assertions.assertEquals(longValue, store.withSession("long", session -> session.get("text")));
+
+            // Не помещается в сегмент: вытеснение пропускает сессию, вызывающий получает результат
+            store.withSession("huge", session -> {
+                session.put("text", longValue + longValue);
+                return null;
+            });
+            for (int i = 0; i < 3; i++) {
+                String id = "s" + i;
+                Assertions.assertEquals(id, store.withSession(id, session -> id));
+            }
+            Assertions.assertEquals(longValue + longValue, store.withSession("huge", session -> session.get("text")));
+            store.flush();
+        }
+    }
+
+    @Test
+    void concurrentAccessKeepsEverySessionConsistent() throws Exception {
+        int threads = 4;
+        int sessions = 200;
+        int rounds = 20;
+        try (SessionStore store = SessionStore.builder(cycle(), tempFile())
+                .maxHotSessions(32).stripes(8).writeQueueCapacity(4).build()) {
+            List<Thread> workers = new ArrayList<>();
+            List<Throwable> failures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                Thread worker = new Thread(() -> {
+                    try {
+                        for (int r = 0; r < rounds; r++) {
+                            for (int s = 0; s < sessions; s++) {
+                                store.withSession("s" + ((s + offset * 37) % sessions),
+                                        session -> session.step("tick", null));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) worker.join();
+            Assertions.assertEquals(List.of(), failures);
+            store.flush();
+
+            for (int s = 0; s < sessions; s++) {
+                long steps = store.withSession("s" + s, CoreProbabilisticAutomaton::getStepCount);
+                Assertions.assertEquals((long) threads * rounds, steps, "session s" + s);
+            }
+            Assertions.assertEquals(sessions, store.getCreatedCount());
+            Assertions.assertTrue(store.getEvictedCount() > 0);
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> {
+            SessionStore closed = SessionStore.builder(cycle(), tempFile()).build();
+            closed.close();
+            closed.withSession("x", session -> null);
+        });
+    }
+
+    @Test
+    void failedRestoreKeepsTheStoredSessionAndModeSurvivesEviction() throws Exception {
+        Path file = tempFile();
+        try (SessionStore store = SessionStore.builder(cycle(), file)
+                .maxHotSessions(1).stripes(1).segmentSize(1 << 12).build()) {
+            store.withSession("light", session -> {
+                session.setResultMode(ResultMode.LIGHTWEIGHT);
+                return session.step("tick", null);
+            });
+            store.withSession("other", session -> null);
+            store.flush();
+            Assertions.assertEquals(1, store.getColdCount());
+
+            // Портим файл: восстановление падает, но слот сессии не освобождается
+            byte[] saved = Files.readAllBytes(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(saved.length), 0);
+            }
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> store.withSession("light", CoreProbabilisticAutomaton::getStepCount));
+            Assertions.assertTrue(store.contains("light"));
+            Assertions.assertEquals(1, store.getColdCount());
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(saved), 0);
+            }
+            Assertions.assertEquals(ResultMode.LIGHTWEIGHT, store.withSession("light", session -> {
+                Assertions.assertEquals(1, session.getStepCount());
+                return session.getResultMode();
+            }));
+            Assertions.assertEquals(1, store.getRestoredCount());
+        }
+    }
+
+    @Test
+    void builderRejectsInvalidSizes() throws Exception {
+        SessionStore.Builder builder = SessionStore.builder(cycle(), tempFile());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.segmentSize(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.segmentSize(-64));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.segmentSize(1000));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.outboxCapacity(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.outboxCapacity(-1));
+    }
+}
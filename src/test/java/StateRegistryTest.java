@@ -0,0 +1,164 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.compiled.CompiledModel;
+import automaton.context.Context;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Тесты целочисленной идентичности состояний.
+ */
+public class StateRegistryTest {
+
+    @Test
+    void registerGraphAssignsDenseIdsToReachableStates() {
+        State scan = new State("SCAN", false);
+        State click = new State("CLICK", false);
+        State report = new State("REPORT", true);
+        State orphan = new State("ORPHAN", false);
+
+        scan.addNextState(click, 1.0);
+        // Переход, который появится только при выполнении алгоритма
+        click.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .clearNextStates()
+                .addExistingState(report, true, 1.0)
+                .probabilisticTransition()
+                .build());
+
+        // Автомат сам граф не регистрирует
+        Assertions.assertNull(new CoreProbabilisticAutomaton(scan).getRegistry());
+        Assertions.assertEquals(-1, scan.getId());
+
+        StateRegistry registry = StateRegistry.registerGraph(scan);
+        Assertions.assertEquals(3, registry.size());
+        Assertions.assertEquals(0, scan.getId());
+        Assertions.assertEquals(1, click.getId());
+        Assertions.assertEquals(2, report.getId());
+        Assertions.assertEquals(-1, orphan.getId());
+        Assertions.assertSame(report, registry.get(registry.idOf("REPORT")));
+
+        // Сессии модели и повторная регистрация используют тот же реестр
+        Assertions.assertSame(registry, new CoreProbabilisticAutomaton(scan).getRegistry());
+        Assertions.assertSame(registry, StateRegistry.registerGraph(scan));
+    }
+
+    @Test
+    void equalityFollowsIdsInsideModelAndNamesOutside() {
+        StateRegistry registry = new StateRegistry();
+        State a = new State("A", false);
+        State aliasOfA = new State("A", false);
+        State b = new State("B", false);
+        registry.register(a);
+        registry.register(b);
+        registry.register(aliasOfA);
+
+        // Другой объект с тем же именем получает тот же id
+        Assertions.assertEquals(a.getId(), aliasOfA.getId());
+        Assertions.assertEquals(a, aliasOfA);
+        Assertions.assertEquals(a.hashCode(), aliasOfA.hashCode());
+        Assertions.assertNotEquals(a, b);
+
+        // Незарегистрированные состояния по-прежнему сравниваются по имени
+        State unregisteredA = new State("A", false);
+        Assertions.assertEquals(a, unregisteredA);
+        Assertions.assertEquals(a.hashCode(), unregisteredA.hashCode());
+
+        StateRegistry other = new StateRegistry();
+        Assertions.assertThrows(IllegalStateException.class, () -> other.register(a));
+    }
+
+    @Test
+    void contextTracksVisitedStatesById() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        a.addNextState(b);
+        new StateRegistry().registerReachable(a);
+
+        Context context = new Context(a);
+        Assertions.assertFalse(context.containsState(b));
+        context.setState(b);
+        Assertions.assertTrue(context.containsState(b));
+        Assertions.assertTrue(context.containsState(new State("B", false)));
+        Assertions.assertEquals(List.of(a, b), context.getAllStates());
+    }
+
+    @Test
+    void concurrentRegistrationOfOneGraphGivesOneRegistry() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            // Цепочка S0 -> S1 -> ... -> S19 регистрируется из нескольких потоков сразу
+            State[] chain = new State[20];
+            for (int i = chain.length - 1; i >= 0; i--) {
+                chain[i] = new State("S" + i, i == chain.length - 1);
+                if (i < chain.length - 1) chain[i].addNextState(chain[i + 1], 1.0);
+            }
+            int threads = 8;
+            StateRegistry[] registries = new StateRegistry[threads];
+            Throwable[] failures = new Throwable[threads];
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int index = t;
+                workers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                        registries[index] = StateRegistry.registerGraph(chain[0]);
+                    } catch (Throwable e) {
+                        failures[index] = e;
+                    }
+                });
+                workers[t].start();
+            }
+            start.countDown();
+            for (Thread worker : workers) worker.join();
+
+            for (int t = 0; t < threads; t++) {
+                Assertions.assertNull(failures[t], "round " + round);
+                Assertions.assertSame(registries[0], registries[t], "round " + round);
+            }
+            Assertions.assertEquals(chain.length, registries[0].size());
+            Set<Integer> ids = new HashSet<>();
+            for (State s : chain) {
+                Assertions.assertSame(registries[0], s.getRegistry());
+                ids.add(s.getId());
+            }
+            Assertions.assertEquals(chain.length, ids.size());
+        }
+    }
+
+    @Test
+    void graphReachingAnotherModelGetsItsOwnRegistry() {
+        State mid = new State("MID", false);
+        State end = new State("END", true);
+        mid.addNextState(end, 1.0);
+        StateRegistry registry = StateRegistry.registerGraph(mid);
+
+        // Состояние выше по графу не переносит чужие состояния и не склеивается с их моделью
+        State entry = new State("ENTRY", false);
+        entry.addNextState(mid, 1.0);
+        entry.addAlgorithm("tick", new AlgorithmBuilder("tick").probabilisticTransition().build());
+        StateRegistry own = StateRegistry.registerGraph(entry);
+        Assertions.assertNotSame(registry, own);
+        Assertions.assertEquals(1, own.size());
+        Assertions.assertSame(registry, mid.getRegistry());
+        Assertions.assertEquals(0, mid.getId());
+
+        // Граф, связывающий две модели, регистрируется без ошибки; переходы в чужие
+        // состояния не попадают в скомпилированную строку, и она помечена
+        State other = new State("OTHER", false);
+        new StateRegistry().register(other);
+        State bridge = new State("BRIDGE", false);
+        bridge.addNextState(mid, 1.0);
+        bridge.addNextState(other, 1.0);
+        bridge.addAlgorithm("tick", new AlgorithmBuilder("tick").probabilisticTransition().build());
+        CompiledModel model = CompiledModel.compile(StateRegistry.registerGraph(bridge), "tick");
+        Assertions.assertEquals(0, model.outDegree(bridge.getId()));
+        Assertions.assertTrue(model.isApproximate(bridge.getId()));
+        Assertions.assertEquals("BRIDGE", new CoreProbabilisticAutomaton(bridge).getCurrentStateName());
+    }
+}
@@ -0,0 +1,117 @@
+import automaton.compiled.CompiledModel;
+import automaton.config.JsonAutomatonLoader;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.learning.FittedTraceModel;
+import automaton.learning.TraceModelFitter;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Параллельная оценка модели по файлам трасс.
+ */
+public class TraceModelFitterTest {
+
+    private static final String[] NEXT_OF_START = {"SCAN", "SCAN", "WAIT"};
+    private static final String[] NEXT_OF_SCAN = {"CLICK", "CLICK", "CLICK", "REPORT"};
+    private static final String[] NEXT_OF_CLICK = {"SCAN", "DONE"};
+
+    /** Пишет случайные трассы START -> ... -> {REPORT, DONE} и считает ожидаемые переходы. */
+    private static Path writeTraces(int traces, Map<String, Long> expected) throws Exception {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("# recorded sessions\n\n");
+        for (int t = 0; t < traces; t++) {
+            String state = "START";
+            StringBuilder line = new StringBuilder(state);
+            while (!state.equals("REPORT") && !state.equals("DONE")) {
+                String[] next;
+                switch (state) {
+                    case "START": next = NEXT_OF_START; break;
+                    case "WAIT": next = new String[]{"SCAN"}; break;
+                    case "SCAN": next = NEXT_OF_SCAN; break;
+                    default: next = NEXT_OF_CLICK; break;
+                }
+                String to = next[random.nextInt(next.length)];
+                expected.merge(state + ">" + to, 1L, Long::sum);
+                // Разные разделители, в том числе запятая и табуляция
+                line.append(t % 3 == 0 ? ", " : t % 3 == 1 ? "\t" : " ").append(to);
+                state = to;
+            }
+            sb.append(line).append(t % 5 == 0 ? "\r\n" : "\n");
+        }
+        sb.setLength(sb.length() - 1); // последняя строка без перевода строки
+        Path file = Files.createTempFile("traces", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertCounts(FittedTraceModel model, Map<String, Long> expected) {
+        long total = 0;
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            String[] pair = e.getKey().split(">");
+            Assertions.assertEquals((long) e.getValue(),
+                    model.getCount(model.stateId(pair[0]), model.stateId(pair[1])), e.getKey());
+            total += e.getValue();
+        }
+        Assertions.assertEquals(total, model.getTransitionCount());
+    }
+
+    @Test
+    void shardedFitMatchesSequentialCounts() throws Exception {
+        Map<String, Long> expected = new HashMap<>();
+        Path file = writeTraces(2000, expected);
+
+        // Маленькие куски: границы почти всегда приходятся на середину строки
+        FittedTraceModel sharded = new TraceModelFitter(4, 97).fit(file);
+        FittedTraceModel single = new TraceModelFitter(1, Long.MAX_VALUE).fit(file);
+
+        Assertions.assertEquals(2000, sharded.getTraceCount());
+        Assertions.assertEquals(6, sharded.getStateCount());
+        assertCounts(sharded, expected);
+        assertCounts(single, expected);
+        Assertions.assertEquals(Files.size(file), single.getBytesRead());
+
+        Assertions.assertEquals("START", sharded.getInitialState());
+        Assertions.assertTrue(sharded.isFinal(sharded.stateId("REPORT")));
+        Assertions.assertFalse(sharded.isFinal(sharded.stateId("SCAN")));
+        int scan = sharded.stateId("SCAN");
+        int click = sharded.stateId("CLICK");
+        Assertions.assertEquals(0.75, sharded.getProbability(scan, click), 0.03);
+
+        CompiledModel compiled = sharded.toCompiledModel();
+        Assertions.assertEquals(sharded.getProbability(scan, click), compiled.transitionProbability(scan, click), 1e-12);
+    }
+
+    @Test
+    void fittedModelRoundTripsThroughJson() throws Exception {
+        Path file = writeTraces(500, new HashMap<>());
+        FittedTraceModel model = new TraceModelFitter(2, 1024).fit(file);
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        model.writeJson(json, "step");
+        CoreProbabilisticAutomaton automaton = new JsonAutomatonLoader()
+                .load(new ByteArrayInputStream(json.toByteArray()));
+
+        Assertions.assertEquals("START", automaton.getCurrentStateName());
+        automaton.step("step", null); // START -> SCAN | WAIT
+        State start = automaton.getRegistry().find("START");
+        State scan = automaton.getRegistry().find("SCAN");
+        double expected = model.getProbability(model.stateId("START"), model.stateId("SCAN"));
+        Assertions.assertEquals(expected, start.getTransitionProbabilities().get(scan), 1e-12);
+
+        int steps = 0;
+        while (!automaton.isInFinalState() && steps++ < 10_000) automaton.step("step", null);
+        Assertions.assertTrue(automaton.isInFinalState());
+    }
+}
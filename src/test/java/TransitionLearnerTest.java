@@ -0,0 +1,241 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.Command;
+import automaton.compiled.CompiledModel;
+import automaton.context.Context;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.learning.SmoothingPrior;
+import automaton.learning.TransitionLearner;
+import automaton.probability.TransitionDistribution;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Онлайн-обучение вероятностей переходов: полосатые счётчики и публикация.
+ */
+public class TransitionLearnerTest {
+
+    private final State a = new State("A", false);
+    private final State b = new State("B", false);
+    private final State c = new State("C", false);
+
+    /** A -> {B:1, C:3}, B -> A, C -> A; выбор — случайным генератором текущего потока. */
+    private CoreProbabilisticAutomaton buildModel() {
+        RandomProvider rnd = () -> ThreadLocalRandom.current().nextDouble();
+        a.addNextState(b, 1.0);
+        a.addNextState(c, 3.0);
+        b.addNextState(a, 1.0);
+        c.addNextState(a, 1.0);
+        for (State s : List.of(a, b, c)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").probabilisticTransition(rnd).build());
+        }
+        StateRegistry.registerGraph(a);
+        return new CoreProbabilisticAutomaton(a);
+    }
+
+    @Test
+    void concurrentSessionsCountEveryTransitionWhilePublishing() throws Exception {
+        CoreProbabilisticAutomaton first = buildModel();
+        CompiledModel model = CompiledModel.compile(first.getRegistry());
+        TransitionLearner learner = new TransitionLearner(model, SmoothingPrior.laplace(1.0), 8);
+        Assertions.assertEquals(8, learner.getStripeCount());
+        Assertions.assertEquals(0.75, model.transitionProbability(a.getId(), c.getId()), 1e-12);
+
+        int threads = 4;
+        int steps = 10_000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread publisher = new Thread(() -> {
+            while (running.get()) learner.publish();
+        });
+        publisher.start();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                CoreProbabilisticAutomaton session = new CoreProbabilisticAutomaton(a);
+                session.setTransitionListener(learner);
+                for (int i = 0; i < steps; i++) session.step("tick", null);
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        running.set(false);
+        publisher.join();
+
+        Assertions.assertEquals((long) threads * steps, learner.getObservedCount());
+        Assertions.assertEquals(0, learner.getUnmatchedCount());
+        long toB = learner.getCount(a.getId(), b.getId());
+        long toC = learner.getCount(a.getId(), c.getId());
+        Assertions.assertEquals(threads * steps / 2, toB + toC);
+        Assertions.assertEquals(toB, learner.getCount(b.getId(), a.getId()));
+
+        CompiledModel published = learner.publish();
+        double expectedC = (toC + 1.0) / (toB + toC + 2.0);
+        Assertions.assertSame(published, learner.getModel());
+        Assertions.assertEquals(expectedC, published.transitionProbability(a.getId(), c.getId()), 1e-12);
+        // Выученные вероятности попали в таблицы выборки состояния
+        Assertions.assertEquals(expectedC, a.getTransitionProbabilities().get(c), 1e-12);
+        Assertions.assertEquals(1.0, b.getTransitionProbabilities().get(a), 1e-12);
+        Assertions.assertTrue(learner.getPublishCount() >= 1);
+    }
+
+    @Test
+    void dirichletPriorKeepsModelUntilObservationsArrive() {
+        CoreProbabilisticAutomaton automaton = buildModel();
+        CompiledModel model = CompiledModel.compile(automaton.getRegistry());
+        TransitionLearner learner = new TransitionLearner(model, SmoothingPrior.dirichlet(4.0), 1);
+
+        CompiledModel published = learner.publish();
+        Assertions.assertEquals(0.25, published.transitionProbability(a.getId(), b.getId()), 1e-12);
+        Assertions.assertEquals(0.75, a.getTransitionProbabilities().get(c), 1e-12);
+
+        // 4 наблюдения A -> B: (4 + 4 * 0.25) / (4 + 4) = 0.625
+        for (int i = 0; i < 4; i++) learner.onTransition(a, b);
+        learner.onTransition(b, c);          // такого ребра нет
+        learner.onTransition(a, new State("X", false)); // состояние вне модели
+        published = learner.publish();
+
+        Assertions.assertEquals(0.625, published.transitionProbability(a.getId(), b.getId()), 1e-12);
+        Assertions.assertEquals(0.625, a.getTransitionProbabilities().get(b), 1e-12);
+        Assertions.assertEquals(2, learner.getUnmatchedCount());
+        Assertions.assertEquals(0.25, learner.getPriorModel().transitionProbability(a.getId(), b.getId()), 1e-12);
+    }
+
+    @Test
+    void publishedWeightsWinOverConcurrentLazyRebuild() throws Exception {
+        // Выборка, начавшая ленивую сборку таблицы по старым весам, не должна затереть публикацию
+        for (int round = 0; round < 200; round++) {
+            State from = new State("FROM", false);
+            from.addNextState(b, 1.0);
+            from.addNextState(c, 1.0);
+            AtomicBoolean go = new AtomicBoolean();
+            Thread sampler = new Thread(() -> {
+                while (!go.get()) Thread.onSpinWait();
+                for (int i = 0; i < 50; i++) from.selectNextState(0.25);
+            });
+            sampler.start();
+            go.set(true);
+            from.publishWeights(new double[]{0.0, 1.0});
+            sampler.join();
+            Assertions.assertSame(c, from.selectNextState(0.25), "round " + round);
+            Assertions.assertSame(c, from.selectNextState(0.25), "round " + round);
+            Assertions.assertEquals(0.0, from.getNextStateWeight(0));
+        }
+
+        // Следующее изменение переходов продолжает с опубликованных весов
+        State from = new State("FROM", false);
+        from.addNextState(b, 1.0);
+        from.publishWeights(new double[]{5.0});
+        from.addNextState(c, 5.0);
+        Assertions.assertEquals(0.5, from.getTransitionProbabilities().get(b), 1e-12);
+    }
+
+    @Test
+    void compileFollowsOneAlgorithmAndFlagsMergedRows() {
+        // S: алгоритм "left" ведёт в X с вероятностью 0.9, "right" — в Y с вероятностью 0.9
+        State s = new State("S", false);
+        State x = new State("X", true);
+        State y = new State("Y", true);
+        s.addAlgorithm("left", new AlgorithmBuilder("left").clearNextStates()
+                .addExistingState(x, true, 0.9).addExistingState(y, true, 0.1).probabilisticTransition().build());
+        s.addAlgorithm("right", new AlgorithmBuilder("right").clearNextStates()
+                .addExistingState(x, true, 0.1).addExistingState(y, true, 0.9).probabilisticTransition().build());
+        // T: шаблон, выбираемый guard — вероятности зависят от сессии
+        State t = new State("T", false);
+        t.addAlgorithm("left", new AlgorithmBuilder("left").transitionTemplate((context, current) -> 0, null,
+                TransitionDistribution.of(x), TransitionDistribution.of(y)).build());
+        s.addNextState(t, 1.0);
+        StateRegistry.registerGraph(s);
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(s);
+
+        CompiledModel left = CompiledModel.compile(automaton.getRegistry(), "left");
+        CompiledModel right = CompiledModel.compile(automaton.getRegistry(), "right");
+        Assertions.assertEquals(0.9, left.transitionProbability(s.getId(), x.getId()), 1e-12);
+        Assertions.assertEquals(0.9, right.transitionProbability(s.getId(), y.getId()), 1e-12);
+        Assertions.assertEquals(0.0, left.transitionProbability(s.getId(), t.getId()));
+        Assertions.assertFalse(left.isApproximate(s.getId()));
+        Assertions.assertFalse(right.isApproximate(s.getId()));
+        Assertions.assertTrue(left.isApproximate(t.getId()));
+        Assertions.assertEquals(0, right.outDegree(t.getId()));
+        Assertions.assertFalse(right.isApproximate(t.getId()));
+
+        // Объединение годится для достижимости, но его строки помечены
+        CompiledModel union = CompiledModel.compile(automaton.getRegistry());
+        Assertions.assertEquals(3, union.outDegree(s.getId()));
+        Assertions.assertTrue(union.isApproximate(s.getId()));
+        Assertions.assertTrue(union.isApproximate(t.getId()));
+        Assertions.assertFalse(union.isApproximate(x.getId()));
+        Assertions.assertEquals(2, union.getApproximateStateCount());
+    }
+
+    @Test
+    void commandDrivenRowsAreNotLearned() throws Exception {
+        // R перестраивает переходы на каждом шаге (clear + add), как JSON-модели
+        State r = new State("R", false);
+        r.addAlgorithm("tick", new AlgorithmBuilder("tick").clearNextStates()
+                .addExistingState(b, false, 1.0).addExistingState(c, false, 1.0).probabilisticTransition().build());
+        // W меняет порядок своих переходов собственной командой — этого компиляция не видит
+        State w = new State("W", false);
+        w.addNextState(b, 1.0);
+        w.addNextState(c, 1.0);
+        Command reorder = new Command() {
+            @Override public void execute(Context context, State currentState) {
+                currentState.clearNextStates();
+                currentState.addNextState(c, 1.0);
+                currentState.addNextState(b, 1.0);
+            }
+            @Override public String getName() { return "reorder"; }
+        };
+        w.addAlgorithm("tick", new AlgorithmBuilder("tick").addCommand(reorder).probabilisticTransition().build());
+        b.addNextState(r, 1.0);
+        c.addNextState(w, 1.0);
+        for (State s : List.of(b, c)) {
+            s.addAlgorithm("tick", new AlgorithmBuilder("tick").probabilisticTransition().build());
+        }
+        StateRegistry.registerGraph(r).register(w);
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(r);
+        TransitionLearner learner = new TransitionLearner(
+                CompiledModel.compile(automaton.getRegistry(), "tick"), SmoothingPrior.laplace(1.0), 1);
+        Assertions.assertFalse(learner.isLearnedRow(r.getId()));
+        Assertions.assertTrue(learner.isLearnedRow(w.getId()));
+        Assertions.assertTrue(learner.isLearnedRow(b.getId()));
+
+        for (int i = 0; i < 9; i++) learner.onTransition(r, b);
+        learner.onTransition(r, c);
+        automaton.step("tick", null);
+        new CoreProbabilisticAutomaton(w).step("tick", null);
+        CompiledModel published = learner.publish();
+
+        // Снимок модели выучил строку R, а таблица R осталась командной
+        Assertions.assertEquals(10.0 / 12.0, published.transitionProbability(r.getId(), b.getId()), 1e-12);
+        Assertions.assertEquals(0.5, r.getTransitionProbabilities().get(b), 1e-12);
+        // Строка W изменилась после создания обучения: публикация в неё пропущена
+        Assertions.assertEquals(1, learner.getSkippedRowCount());
+        Assertions.assertEquals(c, w.getNextState(0));
+
+        // Периодическая публикация продолжается, пока сессии перестраивают строки
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            learner.schedulePublishing(scheduler, 1, TimeUnit.MILLISECONDS);
+            CoreProbabilisticAutomaton session = new CoreProbabilisticAutomaton(w);
+            session.setTransitionListener(learner);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (learner.getPublishCount() < 20 && System.nanoTime() < deadline) {
+                session.step("tick", null);
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+        Assertions.assertTrue(learner.getPublishCount() >= 20);
+        Assertions.assertEquals(0, learner.getPublishFailureCount());
+    }
+}
@@ -0,0 +1,142 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.Command;
+import automaton.context.Context;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.input.InputMessage;
+import automaton.input.SimpleInputMessage;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Overlay переходов: динамические переходы пишутся в контекст сессии,
+ * общий State при этом не изменяется.
+ */
+public class TransitionOverlayTest {
+
+    static class SequenceRandomProvider implements RandomProvider {
+        private final double[] seq;
+        private int i = 0;
+        SequenceRandomProvider(double... seq) { this.seq = seq; }
+        @Override public double nextUnit() {
+            double v = seq[i % seq.length];
+            i++;
+            return v;
+        }
+    }
+
+    /** Строит переходы в overlay по атрибуту bugFound входного сообщения. */
+    static class BuildScanOverlayCommand implements Command {
+        private final State wait;
+        private final State report;
+        BuildScanOverlayCommand(State wait, State report) {
+            this.wait = wait;
+            this.report = report;
+        }
+        @Override public void execute(Context context, State currentState) {
+            InputMessage msg = context.getInputMessage();
+            boolean bugFound = msg != null && Boolean.TRUE.equals(msg.getAttributes().get("bugFound"));
+            if (bugFound) {
+                context.getTransitionOverlay().add(report, 1.0);
+            } else {
+                context.getTransitionOverlay().add(wait, 0.8);
+                context.getTransitionOverlay().add(report, 0.2);
+            }
+        }
+        @Override public String getName() { return "build_scan_overlay"; }
+    }
+
+    @Test
+    void sessionsShareModelWithoutMutatingIt() {
+        State scan = new State("SCAN", false);
+        State wait = new State("WAIT", false);
+        State report = new State("REPORT", true);
+        scan.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .beginOverlay()
+                .addCommand(new BuildScanOverlayCommand(wait, report))
+                .probabilisticTransition(new SequenceRandomProvider(0.5))
+                .build());
+
+        CoreProbabilisticAutomaton first = new CoreProbabilisticAutomaton(scan);
+        CoreProbabilisticAutomaton second = new CoreProbabilisticAutomaton(scan);
+
+        first.step("tick", new SimpleInputMessage("scan", Map.of("bugFound", true)));
+        second.step("tick", new SimpleInputMessage("scan", Map.of("bugFound", false)));
+
+        Assertions.assertEquals("REPORT", first.getCurrentStateName());
+        Assertions.assertEquals("WAIT", second.getCurrentStateName());
+        Assertions.assertEquals(0, scan.getNextStateCount());
+    }
+
+    @Test
+    void overlayOverridesStaticTransitionsUntilStateChanges() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        State c = new State("C", false);
+        a.addNextState(b, 1.0);
+        a.addAlgorithm("overlay", new AlgorithmBuilder("overlay")
+                .beginOverlay()
+                .addOverlayState(c, 1.0)
+                .addOverlayState(a, 1.0)
+                .transitionToLast()
+                .build());
+        a.addAlgorithm("static", new AlgorithmBuilder("static")
+                .transitionToFirst()
+                .build());
+
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+        Context context = new Context(a);
+
+        // Переход в то же состояние оставляет overlay активным
+        automaton.step("overlay", null);
+        Assertions.assertEquals("A", automaton.getCurrentStateName());
+
+        a.executeAlgorithm(context, "overlay");
+        Assertions.assertTrue(context.getTransitionOverlay().isActiveFor(a));
+        Assertions.assertEquals(List.of(c, a), context.getTransitionOverlay().targetsView());
+        a.executeAlgorithm(context, "static");
+        Assertions.assertEquals(c, context.getCurrentState());
+        Assertions.assertFalse(context.getTransitionOverlay().isActiveFor(a));
+
+        // Без overlay используются статические переходы модели
+        automaton.reset();
+        automaton.step("static", null);
+        Assertions.assertEquals("B", automaton.getCurrentStateName());
+        Assertions.assertEquals(1, a.getNextStateCount());
+    }
+
+    @Test
+    void historyBasedTransitionSamplesFromOverlay() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        State c = new State("C", false);
+        a.addNextState(b, 1.0);
+        a.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .beginOverlay()
+                .addOverlayState(b, 1.0)
+                .addOverlayState(c, 1.0)
+                .historyBasedTransition((history, input, next) -> {
+                    Assertions.assertEquals(2, next.size());
+                    return new double[]{0.0, 1.0};
+                }, new SequenceRandomProvider(0.1))
+                .build());
+
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+        automaton.step("tick", null);
+
+        Assertions.assertEquals("C", automaton.getCurrentStateName());
+        Assertions.assertEquals(1, a.getNextStateCount());
+    }
+
+    @Test
+    void addWithoutBeginIsRejected() {
+        Context context = new Context(new State("A", false));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> context.getTransitionOverlay().add(new State("B", false), 1.0));
+    }
+}
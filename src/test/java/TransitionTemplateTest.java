@@ -0,0 +1,113 @@
+import automaton.builder.AlgorithmBuilder;
+import automaton.commands.TransitionTemplateCommand;
+import automaton.core.CoreProbabilisticAutomaton;
+import automaton.input.InputMessage;
+import automaton.input.SimpleInputMessage;
+import automaton.probability.TransitionDistribution;
+import automaton.random.RandomProvider;
+import automaton.state.State;
+import automaton.state.StateRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+/**
+ * Условные переходы по заранее собранным шаблонам распределений.
+ */
+public class TransitionTemplateTest {
+
+    static class SequenceRandomProvider implements RandomProvider {
+        private final double[] seq;
+        private int i = 0;
+        SequenceRandomProvider(double... seq) { this.seq = seq; }
+        @Override public double nextUnit() {
+            double v = seq[i % seq.length];
+            i++;
+            return v;
+        }
+    }
+
+    private static InputMessage verifyMsg(boolean clickOk) {
+        return new SimpleInputMessage("verify", Map.of("clickOk", clickOk));
+    }
+
+    @Test
+    void distributionNormalisesOnceAndSamplesLikeState() {
+        State scan = new State("SCAN", false);
+        State report = new State("REPORT", true);
+        TransitionDistribution d = TransitionDistribution.builder()
+                .add(scan, 9.0)
+                .add(report, 1.0)
+                .add(scan, 5.0) // повтор игнорируется
+                .build();
+
+        Assertions.assertEquals(2, d.size());
+        Assertions.assertEquals(0.9, d.getProbability(0), 1e-12);
+        Assertions.assertEquals(0.1, d.getProbability(1), 1e-12);
+
+        State reference = new State("VERIFY", false);
+        reference.addNextState(scan, 9.0);
+        reference.addNextState(report, 1.0);
+        for (double u : new double[]{0.0, 0.5, 0.9, 0.9000001, 0.999, 1.0}) {
+            Assertions.assertSame(reference.selectNextState(u), d.sample(u), "u=" + u);
+        }
+
+        Assertions.assertThrows(IllegalStateException.class, () -> TransitionDistribution.builder().build());
+    }
+
+    @Test
+    void guardPicksPrebuiltTemplateWithoutTouchingState() {
+        State verify = new State("VERIFY", false);
+        State scan = new State("SCAN", false);
+        State report = new State("REPORT", true);
+        verify.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .transitionTemplate((context, current) -> {
+                            InputMessage msg = context.getInputMessage();
+                            return Boolean.TRUE.equals(msg.getAttributes().get("clickOk")) ? 1 : 0;
+                        },
+                        new SequenceRandomProvider(0.5, 0.95),
+                        TransitionDistribution.of(report),
+                        TransitionDistribution.builder().add(scan, 0.9).add(report, 0.1).build())
+                .build());
+
+        StateRegistry registry = StateRegistry.registerGraph(verify);
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(verify);
+
+        automaton.step("tick", verifyMsg(false));
+        Assertions.assertEquals("REPORT", automaton.getCurrentStateName());
+
+        automaton.reset();
+        automaton.step("tick", verifyMsg(true)); // u = 0.95
+        Assertions.assertEquals("REPORT", automaton.getCurrentStateName());
+
+        automaton.reset();
+        automaton.step("tick", verifyMsg(true)); // u = 0.5
+        Assertions.assertEquals("SCAN", automaton.getCurrentStateName());
+
+        Assertions.assertEquals(0, verify.getNextStateCount());
+        // Цели шаблонов попадают в реестр модели
+        Assertions.assertEquals(3, registry.size());
+        Assertions.assertSame(registry, automaton.getRegistry());
+    }
+
+    @Test
+    void negativeGuardKeepsStateAndInvalidIndexFails() {
+        State a = new State("A", false);
+        State b = new State("B", false);
+        int[] choice = {-1};
+        a.addAlgorithm("tick", new AlgorithmBuilder("tick")
+                .transitionTemplate((context, current) -> choice[0], null, TransitionDistribution.of(b))
+                .build());
+        CoreProbabilisticAutomaton automaton = new CoreProbabilisticAutomaton(a);
+
+        automaton.step("tick", null);
+        Assertions.assertEquals("A", automaton.getCurrentStateName());
+
+        choice[0] = 3;
+        Assertions.assertThrows(IllegalStateException.class, () -> automaton.step("tick", null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new TransitionTemplateCommand((context, current) -> 0));
+    }
+}
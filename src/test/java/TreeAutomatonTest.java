@@ -1,6 +1,8 @@
 
 import automaton.builder.AlgorithmBuilder;
+import automaton.core.AutomatonResult;
 import automaton.core.CoreProbabilisticAutomaton;
+import automaton.core.ResultMode;
 import automaton.input.SimpleInputMessage;
 import automaton.random.RandomProvider;
 import automaton.state.State;
@@ -119,4 +121,41 @@ public class TreeAutomatonTest {
         a.reset();
         Assertions.assertEquals("N0", a.getCurrentStateName());
     }
+
+    @Test
+    public void lightweightResultsMaterialiseHistoryLazily() {
+        RandomProvider provider = new SequenceRandomProvider(0.1, 0.2, 0.9);
+
+        Node root = buildTreeStates();
+        wireAlgorithms(root, provider);
+
+        CoreProbabilisticAutomaton a = new CoreProbabilisticAutomaton(root.state);
+        a.setResultMode(ResultMode.LIGHTWEIGHT);
+
+        AutomatonResult first = a.step("tick", SimpleInputMessage.of("a"));
+        AutomatonResult second = a.step("tick", SimpleInputMessage.of("b"));
+        AutomatonResult third = a.step("tick", SimpleInputMessage.of("c"));
+
+        // Счётчики доступны без копирования истории
+        Assertions.assertEquals(2, first.getPathLength());
+        Assertions.assertEquals(2, second.getStepCount());
+        Assertions.assertEquals(3, second.getPathLength());
+        Assertions.assertEquals(4, third.getPathLength());
+        Assertions.assertEquals("N8", third.getFinalState().getName());
+
+        // Путь материализуется по запросу и соответствует моменту шага
+        List<String> firstPath = new ArrayList<>();
+        for (State st : first.getVisitedStates()) firstPath.add(st.getName());
+        Assertions.assertEquals(List.of("N0", "N1"), firstPath);
+
+        // resetTo только переходит в состояние, история продолжается: путь ещё доступен
+        a.resetTo(root.state);
+        Assertions.assertEquals(4, third.getVisitedStates().size());
+        Assertions.assertEquals("N8", third.getVisitedStates().get(3).getName());
+
+        // После сброса незапрошенный путь недоступен, уже материализованный — остаётся
+        a.reset();
+        Assertions.assertThrows(IllegalStateException.class, second::getVisitedStates);
+        Assertions.assertEquals(2, first.getVisitedStates().size());
+    }
 }
@@ -0,0 +1,71 @@
+import automaton.compiled.CompiledModel;
+import automaton.simulation.SimulationReport;
+import automaton.simulation.WalkerEngine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Массовые прогоны в структуре массивов с выбором перехода по таблице псевдонимов.
+ */
+public class WalkerEngineTest {
+
+    private static CompiledModel retryModel() {
+        return CompiledModel.of(null,
+                new String[]{"START", "RETRY", "OK", "FAIL", "RARE", "STUCK"},
+                new boolean[]{false, false, true, true, true, false},
+                new int[]{0, 3, 6, 6, 6, 6, 6},
+                new int[]{2, 1, 3, 0, 4, 5},
+                new double[]{0.5, 0.3, 0.2, 0.9, 0.001, 0.099});
+    }
+
+    @Test
+    void aliasTableReproducesUnevenWeights() {
+        // START -> пять конечных состояний с весами 1:2:3:0:14 (нулевой вес не выбирается)
+        double[] weights = {1, 2, 3, 0, 14};
+        CompiledModel model = CompiledModel.of(null,
+                new String[]{"START", "A", "B", "C", "D", "E"},
+                new boolean[]{false, true, true, true, true, true},
+                new int[]{0, 5, 5, 5, 5, 5, 5},
+                new int[]{1, 2, 3, 4, 5},
+                weights);
+        SimulationReport report = new WalkerEngine(model, 10).simulate(0, 400_000, 3L);
+
+        for (int i = 0; i < weights.length; i++) {
+            int s = i + 1;
+            Assertions.assertEquals(weights[i] / 20.0, report.getFrequency(s), 3 * report.getHalfWidth(s) + 1e-12,
+                    model.getStateName(s));
+        }
+        Assertions.assertEquals(0, report.getCount(4));
+        Assertions.assertEquals(1.0, report.getMeanSteps(), 0.0);
+    }
+
+    @Test
+    void outcomesMatchExactProbabilitiesAndThreadCount() {
+        CompiledModel model = retryModel();
+        SimulationReport single = new WalkerEngine(model, 1_000).simulate(0, 300_000, 17L);
+        SimulationReport parallel = new WalkerEngine(model, 1_000, 3).simulate(0, 300_000, 17L);
+
+        Assertions.assertEquals(0.5 / 0.73, single.getFrequency(2), 3 * single.getHalfWidth(2));
+        Assertions.assertEquals(0.3 * 0.099 / 0.73, single.getFrequency(5), 3 * single.getHalfWidth(5));
+        for (int s = 0; s < model.getStateCount(); s++) {
+            Assertions.assertEquals(single.getCount(s), parallel.getCount(s), "state " + s);
+        }
+        Assertions.assertEquals(single.getTotalSteps(), parallel.getTotalSteps());
+    }
+
+    @Test
+    void stepLimitAndTerminalStart() {
+        // A <-> B без конечных состояний: все прогоны упираются в лимит
+        CompiledModel loop = CompiledModel.of(null, new String[]{"A", "B"}, new boolean[]{false, false},
+                new int[]{0, 1, 2}, new int[]{1, 0}, new double[]{1, 1});
+        SimulationReport report = new WalkerEngine(loop, 7).simulate(0, 1_000, 1L);
+        Assertions.assertEquals(1_000, report.getUnfinishedCount());
+        Assertions.assertEquals(7.0, report.getMeanSteps(), 0.0);
+
+        SimulationReport fromOk = new WalkerEngine(retryModel(), 10).simulate(2, 100, 1L);
+        Assertions.assertEquals(100, fromOk.getCount(2));
+        Assertions.assertEquals(0.0, fromOk.getMeanSteps(), 0.0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new WalkerEngine(loop, 7).simulate(2, 1, 1L));
+    }
+}